@@ -0,0 +1,232 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mime4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.james.mime4j.dom.Message;
+import org.apache.james.mime4j.mboxiterator.CharBufferWrapper;
+import org.apache.james.mime4j.mboxiterator.MboxIterator;
+import org.apache.james.mime4j.message.DefaultMessageBuilder;
+import org.apache.james.mime4j.message.DefaultMessageWriter;
+import org.apache.james.mime4j.parser.AbstractContentHandler;
+import org.apache.james.mime4j.parser.MimeStreamParser;
+import org.apache.james.mime4j.stream.BodyDescriptor;
+import org.apache.james.mime4j.utils.search.MessageMatcher;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.openjdk.jmh.util.NullOutputStream;
+
+/**
+ * Measures the bytes allocated per message by the main entry points of
+ * mime4j over the {@link MessageCorpus}. Every benchmark operation handles
+ * exactly one message, so the <code>gc.alloc.rate.norm</code> figure of the
+ * GC profiler reads as bytes allocated per message.
+ * <p>
+ * The allocation figures are printed once the run completes. Set the
+ * <code>mime4j.allocation.output</code> system property to save them to a
+ * properties file, and <code>mime4j.allocation.baseline</code> to a
+ * previously saved file to fail when a benchmark allocates more than the
+ * baseline plus <code>mime4j.allocation.tolerance</code> (10% by default).
+ */
+@State(Scope.Benchmark)
+public class JMHAllocationBench {
+    private static final String ALLOC_RATE_NORM = "gc.alloc.rate.norm";
+    private static final int MBOX_MESSAGES = 10;
+    private static final byte[] BUFFER = new byte[4096];
+
+    @Param({"NOTIFICATION", "NEWSLETTER", "ATTACHMENT", "NESTED_FORWARD", "HEADER_HEAVY_SPAM"})
+    public MessageCorpus.Kind kind;
+
+    private byte[] content;
+    private Message message;
+    private MessageMatcher matcher;
+    private Path mbox;
+    private int maxMessageSize;
+
+    @Test
+    public void launchBenchmark() throws Exception {
+        Options opt = new OptionsBuilder()
+            .include(this.getClass().getName() + ".*")
+            .mode(Mode.AverageTime)
+            .addProfiler(GCProfiler.class)
+            .timeUnit(TimeUnit.MICROSECONDS)
+            .warmupTime(TimeValue.seconds(5))
+            .warmupIterations(2)
+            .measurementTime(TimeValue.seconds(5))
+            .measurementIterations(5)
+            .threads(1)
+            .forks(1)
+            .jvmArgsAppend("-Xmx2g")
+            .shouldFailOnError(true)
+            .shouldDoGC(true)
+            .build();
+
+        Map<String, Double> allocations = allocationsPerMessage(new Runner(opt).run());
+        for (Map.Entry<String, Double> entry : allocations.entrySet()) {
+            System.out.printf("%-50s %,15.0f bytes/message%n", entry.getKey(), entry.getValue());
+        }
+        String output = System.getProperty("mime4j.allocation.output");
+        if (output != null) {
+            Properties properties = new Properties();
+            for (Map.Entry<String, Double> entry : allocations.entrySet()) {
+                properties.setProperty(entry.getKey(), String.valueOf(entry.getValue().longValue()));
+            }
+            try (OutputStream out = new FileOutputStream(output)) {
+                properties.store(out, "Bytes allocated per message");
+            }
+        }
+        String baseline = System.getProperty("mime4j.allocation.baseline");
+        if (baseline != null) {
+            checkRegressions(allocations, baseline,
+                Double.parseDouble(System.getProperty("mime4j.allocation.tolerance", "0.1")));
+        }
+    }
+
+    private static Map<String, Double> allocationsPerMessage(Collection<RunResult> results) {
+        Map<String, Double> allocations = new TreeMap<>();
+        for (RunResult result : results) {
+            String benchmark = result.getParams().getBenchmark();
+            String name = benchmark.substring(benchmark.lastIndexOf('.') + 1)
+                + "." + result.getParams().getParam("kind");
+            for (Map.Entry<String, Result> secondary : result.getSecondaryResults().entrySet()) {
+                // JMH versions differ on the prefix of the profiler labels
+                if (secondary.getKey().endsWith(ALLOC_RATE_NORM)) {
+                    allocations.put(name, secondary.getValue().getScore());
+                }
+            }
+        }
+        return allocations;
+    }
+
+    private static void checkRegressions(Map<String, Double> allocations, String baselineFile, double tolerance)
+            throws IOException {
+        Properties baseline = new Properties();
+        try (InputStream in = new FileInputStream(baselineFile)) {
+            baseline.load(in);
+        }
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, Double> entry : allocations.entrySet()) {
+            String expected = baseline.getProperty(entry.getKey());
+            if (expected != null && entry.getValue() > Long.parseLong(expected) * (1 + tolerance)) {
+                regressions.add(String.format("%s: %,.0f bytes/message, baseline %,d",
+                    entry.getKey(), entry.getValue(), Long.parseLong(expected)));
+            }
+        }
+        Assert.assertTrue("Allocation regressions: " + regressions, regressions.isEmpty());
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        content = MessageCorpus.generate(kind);
+        message = new DefaultMessageBuilder().parseMessage(new ByteArrayInputStream(content));
+        matcher = MessageMatcher.builder()
+            .searchContents(Arrays.<CharSequence>asList("claim your prize"))
+            .caseInsensitive(true)
+            .includeHeaders(true)
+            .build();
+        mbox = Files.createTempFile("mime4j-bench", ".mbox");
+        Files.write(mbox, MessageCorpus.mbox(content, MBOX_MESSAGES));
+        // MboxIterator decodes each message into a char buffer of that size
+        maxMessageSize = content.length + 1024;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        message.dispose();
+        Files.deleteIfExists(mbox);
+    }
+
+    @Benchmark
+    public void parse(Blackhole bh) throws Exception {
+        MimeStreamParser parser = new MimeStreamParser();
+        parser.setContentDecoding(true);
+        parser.setContentHandler(new AbstractContentHandler() {
+            @Override
+            public void body(BodyDescriptor bd, InputStream is) throws IOException {
+                int n;
+                while ((n = is.read(BUFFER)) != -1) {
+                    bh.consume(n);
+                }
+            }
+        });
+        parser.parse(new ByteArrayInputStream(content));
+        parser.stop();
+    }
+
+    @Benchmark
+    public void build(Blackhole bh) throws Exception {
+        Message parsed = new DefaultMessageBuilder().parseMessage(new ByteArrayInputStream(content));
+        bh.consume(parsed);
+        parsed.dispose();
+    }
+
+    @Benchmark
+    public void write(Blackhole bh) throws Exception {
+        new DefaultMessageWriter().writeMessage(message, new NullOutputStream());
+        bh.consume(message);
+    }
+
+    @Benchmark
+    public void match(Blackhole bh) throws Exception {
+        bh.consume(matcher.messageMatches(new ByteArrayInputStream(content)));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MBOX_MESSAGES)
+    public void mboxIterate(Blackhole bh) throws Exception {
+        try (MboxIterator iterator = MboxIterator.fromFile(mbox).maxMessageSize(maxMessageSize).build()) {
+            for (CharBufferWrapper wrapper : iterator) {
+                bh.consume(wrapper);
+            }
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.james.mime4j.parser.AbstractContentHandler;
+import org.apache.james.mime4j.parser.MimeStreamParser;
+import org.apache.james.mime4j.stream.BodyDescriptor;
+import org.apache.james.mime4j.stream.InMemoryParserInstrumentation;
+import org.apache.james.mime4j.stream.MimeConfig;
+import org.apache.james.mime4j.stream.ParserInstrumentation;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Measures the cost of {@link ParserInstrumentation} on parsing the
+ * {@link MessageCorpus}: disabled (the default), with an instrumentation
+ * doing nothing, and with {@link InMemoryParserInstrumentation}.
+ * <p>
+ * Once the run completes, the overhead of each mode relative to the disabled
+ * one is printed. The run fails when the disabled mode is slower than the
+ * no-op instrumentation by more than <code>mime4j.instrumentation.tolerance</code>
+ * (5% by default). As the disabled mode only adds null checks to the parser,
+ * its scores should also match those of a build without instrumentation: set
+ * <code>mime4j.instrumentation.output</code> to save the scores to a
+ * properties file, and <code>mime4j.instrumentation.baseline</code> to such a
+ * file to fail when the disabled mode got slower than the baseline plus the
+ * tolerance.
+ */
+@State(Scope.Benchmark)
+public class JMHInstrumentationBench {
+    private static final byte[] BUFFER = new byte[4096];
+
+    private static final ParserInstrumentation NOOP = new ParserInstrumentation() {
+        public void bytesScanned(long count) {
+        }
+
+        public void entity(int depth) {
+        }
+
+        public void headerField(int length) {
+        }
+
+        public void decoded(String transferEncoding, long count) {
+        }
+
+        public void limitExceeded(Limit limit) {
+        }
+
+        public void phase(Phase phase, long nanos) {
+        }
+    };
+
+    @Param({"NOTIFICATION", "NEWSLETTER", "NESTED_FORWARD", "HEADER_HEAVY_SPAM"})
+    public MessageCorpus.Kind kind;
+
+    private byte[] content;
+    private MimeConfig noop;
+    private MimeConfig inMemory;
+
+    @Test
+    public void launchBenchmark() throws Exception {
+        Options opt = new OptionsBuilder()
+            .include(this.getClass().getName() + ".*")
+            .mode(Mode.AverageTime)
+            .timeUnit(TimeUnit.MICROSECONDS)
+            .warmupTime(TimeValue.seconds(5))
+            .warmupIterations(3)
+            .measurementTime(TimeValue.seconds(5))
+            .measurementIterations(5)
+            .threads(1)
+            .forks(1)
+            .shouldFailOnError(true)
+            .shouldDoGC(true)
+            .build();
+
+        Map<String, Double> scores = scores(new Runner(opt).run());
+        double tolerance = Double.parseDouble(System.getProperty("mime4j.instrumentation.tolerance", "0.05"));
+        List<String> regressions = new ArrayList<>();
+        for (MessageCorpus.Kind k : MessageCorpus.Kind.values()) {
+            Double disabled = scores.get("disabled." + k);
+            if (disabled == null) {
+                continue;
+            }
+            for (String mode : new String[] {"noop", "inMemory"}) {
+                double score = scores.get(mode + "." + k);
+                System.out.printf("%-30s %+6.1f%%%n", mode + "." + k, (score / disabled - 1) * 100);
+            }
+            if (disabled > scores.get("noop." + k) * (1 + tolerance)) {
+                regressions.add(String.format("disabled.%s: %.2f us, noop %.2f us",
+                    k, disabled, scores.get("noop." + k)));
+            }
+        }
+        String output = System.getProperty("mime4j.instrumentation.output");
+        if (output != null) {
+            Properties properties = new Properties();
+            for (Map.Entry<String, Double> entry : scores.entrySet()) {
+                properties.setProperty(entry.getKey(), String.valueOf(entry.getValue()));
+            }
+            try (OutputStream out = new FileOutputStream(output)) {
+                properties.store(out, "Microseconds per message");
+            }
+        }
+        String baseline = System.getProperty("mime4j.instrumentation.baseline");
+        if (baseline != null) {
+            regressions.addAll(baselineRegressions(scores, baseline, tolerance));
+        }
+        Assert.assertTrue("Disabled instrumentation overhead: " + regressions, regressions.isEmpty());
+    }
+
+    private static Map<String, Double> scores(Collection<RunResult> results) {
+        Map<String, Double> scores = new TreeMap<>();
+        for (RunResult result : results) {
+            String benchmark = result.getParams().getBenchmark();
+            String name = benchmark.substring(benchmark.lastIndexOf('.') + 1)
+                + "." + result.getParams().getParam("kind");
+            scores.put(name, result.getPrimaryResult().getScore());
+        }
+        return scores;
+    }
+
+    private static List<String> baselineRegressions(Map<String, Double> scores, String baselineFile, double tolerance)
+            throws IOException {
+        Properties baseline = new Properties();
+        try (InputStream in = new FileInputStream(baselineFile)) {
+            baseline.load(in);
+        }
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, Double> entry : scores.entrySet()) {
+            String expected = baseline.getProperty(entry.getKey());
+            if (entry.getKey().startsWith("disabled.") && expected != null
+                    && entry.getValue() > Double.parseDouble(expected) * (1 + tolerance)) {
+                regressions.add(String.format("%s: %.2f us, baseline %s us",
+                    entry.getKey(), entry.getValue(), expected));
+            }
+        }
+        return regressions;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        content = MessageCorpus.generate(kind);
+        noop = MimeConfig.custom().setInstrumentation(NOOP).build();
+        inMemory = MimeConfig.custom().setInstrumentation(new InMemoryParserInstrumentation()).build();
+    }
+
+    private void parse(MimeConfig config, Blackhole bh) throws Exception {
+        MimeStreamParser parser = new MimeStreamParser(config);
+        parser.setContentDecoding(true);
+        parser.setContentHandler(new AbstractContentHandler() {
+            @Override
+            public void body(BodyDescriptor bd, InputStream is) throws IOException {
+                int n;
+                while ((n = is.read(BUFFER)) != -1) {
+                    bh.consume(n);
+                }
+            }
+        });
+        parser.parse(new ByteArrayInputStream(content));
+        parser.stop();
+    }
+
+    @Benchmark
+    public void disabled(Blackhole bh) throws Exception {
+        parse(MimeConfig.DEFAULT, bh);
+    }
+
+    @Benchmark
+    public void noop(Blackhole bh) throws Exception {
+        parse(noop, bh);
+    }
+
+    @Benchmark
+    public void inMemory(Blackhole bh) throws Exception {
+        parse(inMemory, bh);
+    }
+}
@@ -0,0 +1,269 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mime4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.apache.james.mime4j.codec.EncoderUtil;
+
+/**
+ * Generates synthetic but realistic messages for the allocation benchmarks.
+ * Generation is seeded, so every run measures the very same bytes.
+ */
+public final class MessageCorpus {
+
+    public enum Kind {
+        /** Short plain text notification, about one kilobyte. */
+        NOTIFICATION,
+        /** Newsletter with quoted-printable text and HTML alternatives. */
+        NEWSLETTER,
+        /** Short text followed by a 20MB base64 encoded attachment. */
+        ATTACHMENT,
+        /** A message forwarded inline over and over again. */
+        NESTED_FORWARD,
+        /** Spam with hundreds of trace and extension header fields. */
+        HEADER_HEAVY_SPAM
+    }
+
+    public static final int ATTACHMENT_SIZE = 20 * 1024 * 1024;
+    public static final int FORWARD_DEPTH = 25;
+
+    private static final String CRLF = "\r\n";
+    private static final long SEED = 0x6d696d65346aL;
+
+    private MessageCorpus() {
+    }
+
+    public static byte[] generate(Kind kind) {
+        Random random = new Random(SEED + kind.ordinal());
+        switch (kind) {
+            case NOTIFICATION:
+                return notification(random);
+            case NEWSLETTER:
+                return newsletter(random);
+            case ATTACHMENT:
+                return attachment(random);
+            case NESTED_FORWARD:
+                return nestedForward(random);
+            case HEADER_HEAVY_SPAM:
+                return headerHeavySpam(random);
+            default:
+                throw new IllegalArgumentException("Unknown message kind: " + kind);
+        }
+    }
+
+    /**
+     * Concatenates <code>count</code> copies of the given message into the
+     * mbox format, each preceded by a From_ line.
+     */
+    public static byte[] mbox(byte[] message, int count) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((message.length + 64) * count);
+        byte[] fromLine = ("From sender@example.com Mon Jan  1 00:00:00 2024" + CRLF).getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < count; i++) {
+            out.write(fromLine, 0, fromLine.length);
+            out.write(message, 0, message.length);
+            out.write('\r');
+            out.write('\n');
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] notification(Random random) {
+        StringBuilder sb = new StringBuilder();
+        commonHeaders(sb, random, "Your build #" + random.nextInt(10000) + " succeeded");
+        sb.append("Content-Type: text/plain; charset=utf-8").append(CRLF);
+        sb.append("Content-Transfer-Encoding: 7bit").append(CRLF);
+        sb.append(CRLF);
+        for (int i = 0; i < 8; i++) {
+            sb.append(sentence(random)).append(CRLF);
+        }
+        return ascii(sb);
+    }
+
+    private static byte[] newsletter(Random random) {
+        StringBuilder text = new StringBuilder();
+        StringBuilder html = new StringBuilder();
+        html.append("<html><head><style type=\"text/css\">td { font-family: Arial; }</style></head><body>\n");
+        for (int i = 0; i < 300; i++) {
+            String sentence = sentence(random);
+            text.append(sentence).append(" – read more at https://news.example.com/article?id=").append(i).append('\n');
+            html.append("<table width=\"100%\" cellpadding=\"0\" cellspacing=\"0\"><tr><td class=\"article\">")
+                .append("<a href=\"https://news.example.com/article?id=").append(i).append("&utm_source=newsletter\">")
+                .append(sentence).append(" café à la une</a></td></tr></table>\n");
+        }
+        html.append("</body></html>\n");
+
+        String boundary = "----=_Part_" + Long.toHexString(random.nextLong());
+        StringBuilder sb = new StringBuilder();
+        commonHeaders(sb, random, "=?utf-8?Q?Your_weekly_digest_=E2=80=93_issue_42?=");
+        sb.append("Content-Type: multipart/alternative; boundary=\"").append(boundary).append('"').append(CRLF);
+        sb.append(CRLF);
+        sb.append("--").append(boundary).append(CRLF);
+        sb.append("Content-Type: text/plain; charset=utf-8").append(CRLF);
+        sb.append("Content-Transfer-Encoding: quoted-printable").append(CRLF);
+        sb.append(CRLF);
+        sb.append(quotedPrintable(text.toString()));
+        sb.append(CRLF).append("--").append(boundary).append(CRLF);
+        sb.append("Content-Type: text/html; charset=utf-8").append(CRLF);
+        sb.append("Content-Transfer-Encoding: quoted-printable").append(CRLF);
+        sb.append(CRLF);
+        sb.append(quotedPrintable(html.toString()));
+        sb.append(CRLF).append("--").append(boundary).append("--").append(CRLF);
+        return ascii(sb);
+    }
+
+    private static byte[] attachment(Random random) {
+        byte[] payload = new byte[ATTACHMENT_SIZE];
+        random.nextBytes(payload);
+
+        String boundary = "----=_Part_" + Long.toHexString(random.nextLong());
+        StringBuilder sb = new StringBuilder();
+        commonHeaders(sb, random, "Quarterly report");
+        sb.append("Content-Type: multipart/mixed; boundary=\"").append(boundary).append('"').append(CRLF);
+        sb.append(CRLF);
+        sb.append("--").append(boundary).append(CRLF);
+        sb.append("Content-Type: text/plain; charset=us-ascii").append(CRLF);
+        sb.append(CRLF);
+        sb.append("Please find the report attached.").append(CRLF);
+        sb.append("--").append(boundary).append(CRLF);
+        sb.append("Content-Type: application/octet-stream; name=\"report.bin\"").append(CRLF);
+        sb.append("Content-Disposition: attachment; filename=\"report.bin\"").append(CRLF);
+        sb.append("Content-Transfer-Encoding: base64").append(CRLF);
+        sb.append(CRLF);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(ATTACHMENT_SIZE / 3 * 4 + ATTACHMENT_SIZE / 38 + 4096);
+        try {
+            out.write(ascii(sb));
+            EncoderUtil.encodeB(new ByteArrayInputStream(payload), out);
+            out.write(ascii(new StringBuilder(CRLF).append("--").append(boundary).append("--").append(CRLF)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] nestedForward(Random random) {
+        StringBuilder message = new StringBuilder();
+        commonHeaders(message, random, "Original question");
+        message.append("Content-Type: text/plain; charset=us-ascii").append(CRLF);
+        message.append(CRLF);
+        message.append(sentence(random)).append(CRLF);
+
+        for (int depth = 1; depth <= FORWARD_DEPTH; depth++) {
+            String boundary = "fwd-" + depth + "-" + Long.toHexString(random.nextLong());
+            StringBuilder sb = new StringBuilder();
+            commonHeaders(sb, random, "Fwd: level " + depth);
+            sb.append("Content-Type: multipart/mixed; boundary=\"").append(boundary).append('"').append(CRLF);
+            sb.append(CRLF);
+            sb.append("--").append(boundary).append(CRLF);
+            sb.append("Content-Type: text/plain; charset=us-ascii").append(CRLF);
+            sb.append(CRLF);
+            sb.append("See below. ").append(sentence(random)).append(CRLF);
+            sb.append("--").append(boundary).append(CRLF);
+            sb.append("Content-Type: message/rfc822").append(CRLF);
+            sb.append("Content-Disposition: inline").append(CRLF);
+            sb.append(CRLF);
+            sb.append(message);
+            sb.append("--").append(boundary).append("--").append(CRLF);
+            message = sb;
+        }
+        return ascii(message);
+    }
+
+    private static byte[] headerHeavySpam(Random random) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 150; i++) {
+            sb.append("Received: from relay").append(i).append(".example.net (relay").append(i)
+                .append(".example.net [10.").append(random.nextInt(256)).append('.').append(random.nextInt(256))
+                .append('.').append(random.nextInt(256)).append("])").append(CRLF)
+                .append("\tby mx.example.com with ESMTPS id ").append(Long.toHexString(random.nextLong())).append(CRLF)
+                .append("\tfor <victim@example.com>; Mon, 1 Jan 2024 00:00:").append(String.format("%02d", i % 60))
+                .append(" +0000").append(CRLF);
+        }
+        for (int i = 0; i < 100; i++) {
+            sb.append("X-Spam-Token-").append(i).append(": ").append(Long.toHexString(random.nextLong())).append(CRLF);
+        }
+        sb.append("From: =?utf-8?B?V2lubmVyIE5vdGlmaWNhdGlvbg==?= <winner@lottery.example>").append(CRLF);
+        sb.append("To: ");
+        for (int i = 0; i < 200; i++) {
+            if (i > 0) {
+                sb.append(",").append(CRLF).append(' ');
+            }
+            sb.append("\"Recipient ").append(i).append("\" <user").append(i).append("@example.com>");
+        }
+        sb.append(CRLF);
+        sb.append("Subject: =?utf-8?Q?You_have_W=C3=96N_a_prize!?= =?iso-8859-1?Q?_Claim_it_now_=E0_l'instant?=").append(CRLF);
+        sb.append("Date: Mon, 1 Jan 2024 00:00:00 +0000").append(CRLF);
+        sb.append("Message-ID: <").append(Long.toHexString(random.nextLong())).append("@lottery.example>").append(CRLF);
+        sb.append("MIME-Version: 1.0").append(CRLF);
+        sb.append("Content-Type: text/html; charset=us-ascii").append(CRLF);
+        sb.append(CRLF);
+        sb.append("<html><body><a href=\"http://lottery.example/claim\">Claim your prize</a></body></html>").append(CRLF);
+        return ascii(sb);
+    }
+
+    private static void commonHeaders(StringBuilder sb, Random random, String subject) {
+        sb.append("Return-Path: <sender@example.com>").append(CRLF);
+        sb.append("Received: from mail.example.com (mail.example.com [192.0.2.1])").append(CRLF)
+            .append("\tby mx.example.org with ESMTPS; Mon, 1 Jan 2024 00:00:00 +0000").append(CRLF);
+        sb.append("From: Sender <sender@example.com>").append(CRLF);
+        sb.append("To: Recipient <recipient@example.org>").append(CRLF);
+        sb.append("Subject: ").append(subject).append(CRLF);
+        sb.append("Date: Mon, 1 Jan 2024 00:00:00 +0000").append(CRLF);
+        sb.append("Message-ID: <").append(Long.toHexString(random.nextLong())).append("@example.com>").append(CRLF);
+        sb.append("MIME-Version: 1.0").append(CRLF);
+    }
+
+    private static final String[] WORDS = {
+        "the", "quick", "brown", "fox", "jumps", "over", "lazy", "dog", "message", "parser",
+        "stream", "header", "body", "boundary", "release", "notes", "weekly", "update", "team", "build"
+    };
+
+    private static String sentence(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int words = 8 + random.nextInt(10);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sb.append('.').toString();
+    }
+
+    private static String quotedPrintable(String text) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            EncoderUtil.encodeQ(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new String(out.toByteArray(), StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] ascii(StringBuilder sb) {
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+}
@@ -0,0 +1,128 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Incremental Base-64 decoder, with the same handling of malformed content
+ * as {@link Base64InputStream}: characters outside of the Base-64 alphabet
+ * are ignored, and decoding stops at the first pad character.
+ */
+public class Base64Decoder extends ContentDecoder {
+
+    private static final int[] BASE64_DECODE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++)
+            BASE64_DECODE[i] = -1;
+        for (int i = 0; i < Base64OutputStream.BASE64_TABLE.length; i++)
+            BASE64_DECODE[Base64OutputStream.BASE64_TABLE[i] & 0xff] = i;
+    }
+
+    private static final byte BASE64_PAD = '=';
+
+    private final DecodeMonitor monitor;
+
+    private int data; // holds decoded data; up to four sextets
+    private int sextets; // number of sextets
+    private boolean padded; // pad character reached
+
+    public Base64Decoder(DecodeMonitor monitor) {
+        this.monitor = monitor != null ? monitor : DecodeMonitor.SILENT;
+    }
+
+    public Base64Decoder() {
+        this(null);
+    }
+
+    @Override
+    protected void decodeInput(ByteBuffer src) throws IOException {
+        if (padded) {
+            // content after the pad character is ignored
+            src.position(src.limit());
+            return;
+        }
+        while (src.hasRemaining() && hasRoom()) {
+            int value = src.get() & 0xff;
+
+            if (value == BASE64_PAD) {
+                decodePad();
+                src.position(src.limit());
+                return;
+            }
+
+            int decoded = BASE64_DECODE[value];
+            if (decoded < 0) { // -1: not a base64 char
+                if (value != 0x0D && value != 0x0A && value != 0x20) {
+                    if (monitor.warn(DecodeEvent.BASE64_UNEXPECTED_BYTE, value))
+                        throw new IOException("Unexpected base64 byte");
+                }
+                continue;
+            }
+
+            data = (data << 6) | decoded;
+            sextets++;
+
+            if (sextets == 4) {
+                sextets = 0;
+                write(data >>> 16);
+                write(data >>> 8);
+                write(data);
+            }
+        }
+    }
+
+    private void decodePad() throws IOException {
+        padded = true;
+
+        if (sextets == 2) {
+            // one byte encoded as "XY=="
+            write(data >>> 4);
+        } else if (sextets == 3) {
+            // two bytes encoded as "XYZ="
+            write(data >>> 10);
+            write(data >>> 2);
+        } else {
+            // error in encoded data
+            if (monitor.warn(DecodeEvent.BASE64_UNEXPECTED_PADDING, sextets))
+                throw new IOException("Unexpected padding character");
+        }
+        sextets = 0;
+    }
+
+    @Override
+    protected void endInput() throws IOException {
+        if (sextets != 0) {
+            // error in encoded data
+            if (monitor.warn(DecodeEvent.BASE64_PREMATURE_END, sextets))
+                throw new IOException("Unexpected end of BASE64 stream");
+        }
+    }
+
+    @Override
+    protected void resetState() {
+        data = 0;
+        sextets = 0;
+        padded = false;
+    }
+
+}
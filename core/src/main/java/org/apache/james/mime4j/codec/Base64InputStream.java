@@ -207,7 +207,7 @@ public class Base64InputStream extends InputStream {
                 int decoded = BASE64_DECODE[value];
                 if (decoded < 0) { // -1: not a base64 char
                     if (value != 0x0D && value != 0x0A && value != 0x20) {
-                        if (monitor.warn("Unexpected base64 byte: "+(byte) value, "ignoring."))
+                        if (monitor.warn(DecodeEvent.BASE64_UNEXPECTED_BYTE, value))
                             throw new IOException("Unexpected base64 byte");
                     }
                     continue;
@@ -292,12 +292,12 @@ public class Base64InputStream extends InputStream {
     }
 
     private void handleUnexpectedEof(int sextets) throws IOException {
-        if (monitor.warn("Unexpected end of BASE64 stream", "dropping " + sextets + " sextet(s)"))
+        if (monitor.warn(DecodeEvent.BASE64_PREMATURE_END, sextets))
             throw new IOException("Unexpected end of BASE64 stream");
     }
 
     private void handleUnexpecedPad(int sextets) throws IOException {
-        if (monitor.warn("Unexpected padding character", "dropping " + sextets + " sextet(s)"))
+        if (monitor.warn(DecodeEvent.BASE64_UNEXPECTED_PADDING, sextets))
             throw new IOException("Unexpected padding character");
     }
 }
@@ -0,0 +1,232 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.james.mime4j.util.ByteArrayBuffer;
+import org.apache.james.mime4j.util.MimeUtil;
+
+/**
+ * <p>
+ * Incremental decoder of a content transfer encoding working on
+ * <code>ByteBuffer</code>s, heap or direct, in the manner of
+ * {@link java.nio.charset.CharsetDecoder}.
+ * </p>
+ * <pre>
+ *      ContentDecoder decoder = ContentDecoder.forTransferEncoding(encoding, monitor);
+ *      // for each chunk of encoded content
+ *      decoder.decode(src, dst);   // repeat while src has remaining bytes,
+ *                                  // draining dst in between
+ *      // once all content has been decoded
+ *      decoder.finish(dst);        // repeat until it returns true
+ * </pre>
+ * <p>
+ * A decoder stops when the source is exhausted or the destination is full.
+ * Encoded bytes that do not make a decoded byte on their own, such as an
+ * incomplete Base64 quantum, are kept by the decoder; the source buffer can
+ * therefore be split anywhere. Decoded bytes that do not fit in the
+ * destination are held back and written first on the next call.
+ * </p>
+ * <p>
+ * Decoders are stateful and not thread-safe.
+ * </p>
+ *
+ * @see DecodingChannel
+ */
+public abstract class ContentDecoder {
+
+    private final ByteArrayBuffer overflow;
+
+    private int overflowPos;
+    private ByteBuffer out;
+    private boolean finished;
+
+    protected ContentDecoder() {
+        this.overflow = new ByteArrayBuffer(16);
+    }
+
+    /**
+     * Returns a decoder of the given content transfer encoding: Base64,
+     * Quoted-Printable, or one copying content as is for any other encoding.
+     *
+     * @param transferEncoding content transfer encoding, may be <code>null</code>.
+     * @param monitor monitor notified of malformed content, may be <code>null</code>.
+     */
+    public static ContentDecoder forTransferEncoding(String transferEncoding, DecodeMonitor monitor) {
+        if (MimeUtil.isBase64Encoding(transferEncoding)) {
+            return new Base64Decoder(monitor);
+        } else if (MimeUtil.isQuotedPrintableEncoded(transferEncoding)) {
+            return new QuotedPrintableDecoder(monitor);
+        } else {
+            return new IdentityDecoder();
+        }
+    }
+
+    /**
+     * Decodes the remaining bytes of <code>src</code> into <code>dst</code>,
+     * until either <code>src</code> is exhausted or <code>dst</code> is full.
+     *
+     * @throws IOException if the monitor of the decoder asks for malformed
+     *         content to be rejected.
+     * @throws IllegalStateException if {@link #finish(ByteBuffer)} has been
+     *         called since the decoder was created or reset.
+     */
+    public final void decode(ByteBuffer src, ByteBuffer dst) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("End of input already reached");
+        }
+        out = dst;
+        try {
+            if (flushOverflow()) {
+                decodeInput(src);
+            }
+        } finally {
+            out = null;
+        }
+    }
+
+    /**
+     * Signals that all encoded content has been passed to
+     * {@link #decode(ByteBuffer, ByteBuffer)}, and writes the last decoded
+     * bytes, if any, into <code>dst</code>.
+     *
+     * @return <code>true</code> once all decoded bytes have been written,
+     *         <code>false</code> if <code>dst</code> is full and this method
+     *         must be called again.
+     * @throws IOException if the monitor of the decoder asks for malformed
+     *         content to be rejected.
+     */
+    public final boolean finish(ByteBuffer dst) throws IOException {
+        out = dst;
+        try {
+            if (!finished) {
+                finished = true;
+                endInput();
+            }
+            return flushOverflow();
+        } finally {
+            out = null;
+        }
+    }
+
+    /**
+     * Resets this decoder, discarding any state, so that it can decode
+     * another content.
+     */
+    public final void reset() {
+        overflow.clear();
+        overflowPos = 0;
+        finished = false;
+        resetState();
+    }
+
+    /**
+     * Decodes bytes of <code>src</code> as long as {@link #hasRoom()} returns
+     * <code>true</code>.
+     */
+    protected abstract void decodeInput(ByteBuffer src) throws IOException;
+
+    /**
+     * Handles the end of the encoded content, writing any pending decoded byte.
+     */
+    protected abstract void endInput() throws IOException;
+
+    protected abstract void resetState();
+
+    /**
+     * Whether a decoded byte can still be written to the destination without
+     * being held back.
+     */
+    protected final boolean hasRoom() {
+        return overflow.length() == 0 && out.hasRemaining();
+    }
+
+    /**
+     * Writes a decoded byte to the destination, or holds it back if the
+     * destination is full.
+     */
+    protected final void write(int b) {
+        if (overflow.length() == 0 && out.hasRemaining()) {
+            out.put((byte) b);
+        } else {
+            overflow.append(b);
+        }
+    }
+
+    /**
+     * Writes decoded bytes to the destination, holding back those that do not
+     * fit.
+     */
+    protected final void write(byte[] b, int off, int len) {
+        if (overflow.length() == 0) {
+            int chunk = Math.min(len, out.remaining());
+            out.put(b, off, chunk);
+            off += chunk;
+            len -= chunk;
+        }
+        if (len > 0) {
+            overflow.append(b, off, len);
+        }
+    }
+
+    private boolean flushOverflow() {
+        int len = overflow.length() - overflowPos;
+        if (len == 0) {
+            return true;
+        }
+        int chunk = Math.min(len, out.remaining());
+        out.put(overflow.buffer(), overflowPos, chunk);
+        overflowPos += chunk;
+        if (overflowPos < overflow.length()) {
+            return false;
+        }
+        overflow.clear();
+        overflowPos = 0;
+        return true;
+    }
+
+    private static final class IdentityDecoder extends ContentDecoder {
+
+        @Override
+        protected void decodeInput(ByteBuffer src) {
+            ByteBuffer dst = ((ContentDecoder) this).out;
+            if (src.remaining() <= dst.remaining()) {
+                dst.put(src);
+            } else {
+                ByteBuffer slice = src.duplicate();
+                slice.limit(slice.position() + dst.remaining());
+                dst.put(slice);
+                src.position(slice.position());
+            }
+        }
+
+        @Override
+        protected void endInput() {
+        }
+
+        @Override
+        protected void resetState() {
+        }
+
+    }
+
+}
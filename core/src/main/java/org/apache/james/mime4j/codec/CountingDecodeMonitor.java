@@ -0,0 +1,120 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.codec;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link DecodeMonitor} counting the problems reported, for instance to
+ * collect statistics over many messages. Decisions are left to a delegate
+ * monitor, {@link DecodeMonitor#SILENT} by default. Instances are thread
+ * safe.
+ * <p>
+ * Problems reported as strings, through {@link #warn(String, String)}, are
+ * counted together as {@link #getOtherCount() other}. As this monitor is
+ * listening, such callers format their messages.
+ */
+public class CountingDecodeMonitor extends DecodeMonitor {
+
+    private static final DecodeEvent[] EVENTS = DecodeEvent.values();
+
+    private final DecodeMonitor delegate;
+    private final LongAdder[] counts;
+    private final LongAdder other;
+
+    public CountingDecodeMonitor(DecodeMonitor delegate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Delegate monitor may not be null");
+        }
+        this.delegate = delegate;
+        this.counts = new LongAdder[EVENTS.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+        this.other = new LongAdder();
+    }
+
+    public CountingDecodeMonitor() {
+        this(DecodeMonitor.SILENT);
+    }
+
+    @Override
+    public boolean warn(DecodeEvent event, long context) {
+        counts[event.ordinal()].increment();
+        return delegate.warn(event, context);
+    }
+
+    @Override
+    public boolean warn(String error, String dropDesc) {
+        other.increment();
+        return delegate.warn(error, dropDesc);
+    }
+
+    @Override
+    public boolean isListening() {
+        return true;
+    }
+
+    /**
+     * Returns how many times the given event was reported.
+     */
+    public long getCount(DecodeEvent event) {
+        return counts[event.ordinal()].sum();
+    }
+
+    /**
+     * Returns how many problems were reported as strings.
+     */
+    public long getOtherCount() {
+        return other.sum();
+    }
+
+    /**
+     * Returns how many problems were reported in total.
+     */
+    public long getTotalCount() {
+        long total = other.sum();
+        for (LongAdder count : counts) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    /**
+     * Sets all counters back to zero.
+     */
+    public void reset() {
+        for (LongAdder count : counts) {
+            count.reset();
+        }
+        other.reset();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder("[");
+        for (DecodeEvent event : EVENTS) {
+            b.append(event).append('=').append(getCount(event)).append(", ");
+        }
+        b.append("OTHER=").append(getOtherCount()).append(']');
+        return b.toString();
+    }
+
+}
@@ -0,0 +1,142 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.codec;
+
+/**
+ * Malformed data found by the transfer decoders, reported through
+ * {@link DecodeMonitor#warn(DecodeEvent, long)} along with a numeric context
+ * whose meaning depends on the event. Messages are only formatted on demand.
+ */
+public enum DecodeEvent {
+
+    /** A byte that is not part of the base64 alphabet. Context: the byte. */
+    BASE64_UNEXPECTED_BYTE("Unexpected base64 byte") {
+        @Override
+        public String getMessage(long context) {
+            return "Unexpected base64 byte: " + (byte) context;
+        }
+
+        @Override
+        public String getDropDescription(long context) {
+            return "ignoring.";
+        }
+    },
+
+    /** Padding after too few sextets. Context: the number of sextets dropped. */
+    BASE64_UNEXPECTED_PADDING("Unexpected padding character") {
+        @Override
+        public String getDropDescription(long context) {
+            return "dropping " + context + " sextet(s)";
+        }
+    },
+
+    /** Input ending in the middle of a quantum. Context: the number of sextets dropped. */
+    BASE64_PREMATURE_END("Unexpected end of BASE64 stream") {
+        @Override
+        public String getDropDescription(long context) {
+            return "dropping " + context + " sextet(s)";
+        }
+    },
+
+    /** A CR not followed by LF. No context. */
+    QP_CR_WITHOUT_LF("Found CR without LF") {
+        @Override
+        public String getDropDescription(long context) {
+            return "Leaving it as is";
+        }
+    },
+
+    /** A LF not preceded by CR. No context. */
+    QP_LF_WITHOUT_CR("Found LF without CR") {
+        @Override
+        public String getDropDescription(long context) {
+            return "Translating to CRLF";
+        }
+    },
+
+    /** A soft line break other than <code>=CRLF</code>. No context. */
+    QP_NON_STANDARD_SOFT_BREAK("Found non-standard soft line break") {
+        @Override
+        public String getDropDescription(long context) {
+            return "Translating to soft line break";
+        }
+    },
+
+    /** <code>==</code> at the end of a line. No context. */
+    QP_DOUBLE_EQUAL_EOL("Unexpected ==EOL encountered") {
+        @Override
+        public String getDropDescription(long context) {
+            return "==";
+        }
+    },
+
+    /** <code>==</code> within a line. No context. */
+    QP_DOUBLE_EQUAL("Unexpected == encountered") {
+        @Override
+        public String getDropDescription(long context) {
+            return "==";
+        }
+    },
+
+    /**
+     * <code>=</code> followed by two characters that are not hex digits.
+     * Context: the two characters, as returned by {@link #chars(int, int)}.
+     */
+    QP_MALFORMED_HEX("Malformed encoded value encountered") {
+        @Override
+        public String getDropDescription(long context) {
+            return "leaving =" + (char) (context >>> 16) + (char) context + " as is";
+        }
+    },
+
+    /** Trailing blanks dropped at the end of a line. Context: the number of blanks. */
+    QP_IGNORED_BLANKS("ignored blanks") {
+        @Override
+        public String getDropDescription(long context) {
+            return context + " blank(s)";
+        }
+    };
+
+    private final String message;
+
+    DecodeEvent(String message) {
+        this.message = message;
+    }
+
+    /**
+     * Returns the description of the problem.
+     */
+    public String getMessage(long context) {
+        return message;
+    }
+
+    /**
+     * Returns a description of how the data is dealt with.
+     */
+    public abstract String getDropDescription(long context);
+
+    /**
+     * Packs two characters into the context of {@link #QP_MALFORMED_HEX}.
+     */
+    public static long chars(int c1, int c2) {
+        return ((long) (c1 & 0xffff) << 16) | (c2 & 0xffff);
+    }
+
+}
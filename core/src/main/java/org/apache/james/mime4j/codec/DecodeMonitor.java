@@ -28,6 +28,13 @@ package org.apache.james.mime4j.codec;
  * <li>{@link #STRICT} return "true" on any occurrence</li>
  * <li>{@link #SILENT} ignores any problem</li>
  * </ul>
+ *
+ * Decoders report malformed data through {@link #warn(DecodeEvent, long)},
+ * which by default formats the event and forwards it to
+ * {@link #warn(String, String)}. Subclasses overriding the former avoid
+ * building message strings.
+ *
+ * @see CountingDecodeMonitor
  */
 public class DecodeMonitor {
 
@@ -41,6 +48,11 @@ public class DecodeMonitor {
             return true;
         }
 
+        @Override
+        public boolean warn(DecodeEvent event, long context) {
+            return true;
+        }
+
         @Override
         public boolean isListening() {
             return true;
@@ -50,12 +62,29 @@ public class DecodeMonitor {
     /**
      * The SILENT monitor ignore requests.
      */
-    public static final DecodeMonitor SILENT = new DecodeMonitor();
+    public static final DecodeMonitor SILENT = new DecodeMonitor() {
+
+        @Override
+        public boolean warn(DecodeEvent event, long context) {
+            return false;
+        }
+    };
 
     public boolean warn(String error, String dropDesc) {
         return false;
     }
 
+    /**
+     * Reports malformed data identified by an event code.
+     *
+     * @param event the problem found.
+     * @param context event specific detail, see {@link DecodeEvent}.
+     * @return <code>true</code> if decoding should fail.
+     */
+    public boolean warn(DecodeEvent event, long context) {
+        return warn(event.getMessage(context), event.getDropDescription(context));
+    }
+
     public boolean isListening() {
         return false;
     }
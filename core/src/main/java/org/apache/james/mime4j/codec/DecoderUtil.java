@@ -19,7 +19,6 @@
 
 package org.apache.james.mime4j.codec;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.lang.ref.SoftReference;
@@ -29,6 +28,7 @@ import java.util.Map;
 
 import org.apache.james.mime4j.io.InputStreams;
 import org.apache.james.mime4j.util.BufferRecycler;
+import org.apache.james.mime4j.util.ByteSequence;
 import org.apache.james.mime4j.util.CharsetUtil;
 import org.apache.james.mime4j.util.RecycledByteArrayBuffer;
 
@@ -215,137 +215,48 @@ public class DecoderUtil {
     public static String decodeEncodedWords(String body, DecodeMonitor monitor, Charset fallback,
             Map<Charset, Charset> charsetOverrides)
             throws IllegalArgumentException {
-
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        StringBuilder sb = new StringBuilder();
-        int position = 0;
-        String mimeCharset ="";
-        String encoding ="";
-
-        while (position < body.length()) {
-            int startPattern = body.indexOf("=?", position);
-            if (startPattern < 0) {
-                if (position == 0) {
-                    return body;
-                }
-                appendStringBuffer(fallback, charsetOverrides, out, sb, mimeCharset);
-                sb.append(body, position, body.length());
-                break;
-            }
-
-            int charsetEnd = body.indexOf('?', startPattern + 2);
-            int encodingEnd = body.indexOf('?', charsetEnd + 1);
-            int encodedTextEnd = body.indexOf("?=", encodingEnd + 1);
-
-            if (charsetEnd < 0 || encodingEnd < 0 || encodedTextEnd < 0) {
-                // Invalid pattern
-                appendStringBuffer(fallback, charsetOverrides, out, sb, mimeCharset);
-                sb.append(body, position, startPattern + 2);
-                position = startPattern + 2;
-            } else if (encodingEnd == encodedTextEnd) {
-                appendStringBuffer(fallback, charsetOverrides, out, sb, mimeCharset);
-                sb.append(body, position, Math.min(encodedTextEnd + 2, body.length()));
-                position = encodedTextEnd +2;
-            } else {
-                String separator = body.substring(position, startPattern);
-                if ((!CharsetUtil.isWhitespace(separator) || position == 0) && !separator.isEmpty()) {
-                    appendStringBuffer(fallback, charsetOverrides, out, sb, mimeCharset);
-                    sb.append(separator);
-                }
-                String mimeCurCharset = body.substring(startPattern + 2, charsetEnd);
-                String curEncoding = body.substring(charsetEnd + 1, encodingEnd);
-                String encodedText = body.substring(encodingEnd + 1, encodedTextEnd);
-
-                if (!mimeCharset.isEmpty() && !mimeCurCharset.equals(mimeCharset)){
-                    appendStringBuffer(fallback, charsetOverrides, out, sb, mimeCharset);
-                }
-
-                if (!encoding.isEmpty() && !curEncoding.equals(encoding)){
-                    appendStringBuffer(fallback, charsetOverrides, out, sb, mimeCharset);
-                }
-
-                mimeCharset=mimeCurCharset;
-                encoding=curEncoding;
-
-                if (encodedText.isEmpty()) {
-                    position = encodedTextEnd + 2;
-                    continue;
-                }
-                byte []decoded;
-
-                decoded = tryDecodeEncodedWord(mimeCurCharset, curEncoding, encodedText, monitor, fallback, charsetOverrides);
-                if (decoded != null) {
-                    if (0 < decoded.length) {
-                        try {
-                            out.write(decoded);
-                        } catch (IOException e) {
-                            throw new RuntimeException(e);
-                        }
-                    }
-                } else {
-                    sb.append(body, startPattern, encodedTextEnd + 2);
-                }
-                position = encodedTextEnd + 2;
-            }
-        }
-        appendStringBuffer(fallback, charsetOverrides, out, sb,mimeCharset);
-
-        return sb.toString();
+        return EncodedWordDecoder.get().decode(body, monitor, fallback, charsetOverrides);
     }
 
-    private static void appendStringBuffer(Charset fallback, Map<Charset, Charset> charsetOverrides, ByteArrayOutputStream out, StringBuilder sb, String mimeCharset) {
-        if (0 < out.size()) {
-            byte[] byTemp = out.toByteArray();
-            Charset charset = lookupCharset(mimeCharset, fallback, charsetOverrides);
-            sb.append(new String(byTemp, charset));
-            out.reset();
-        }
+    /**
+     * Decodes the encoded words of a sequence of bytes, such as the body of a
+     * raw header field, as described by
+     * {@link #decodeEncodedWords(String, DecodeMonitor)}. Bytes outside of
+     * encoded words are decoded as UTF-8. Line breaks are not removed.
+     * <p>
+     * Unlike the <code>String</code> based methods, US-ASCII input is scanned
+     * in place, without being turned into a string first.
+     *
+     * @param raw the bytes to decode
+     * @param monitor the DecodeMonitor to be used.
+     * @return the decoded string.
+     * @throws IllegalArgumentException only if the DecodeMonitor strategy throws it (Strict parsing)
+     */
+    public static String decodeEncodedWords(ByteSequence raw, DecodeMonitor monitor)
+            throws IllegalArgumentException {
+        return decodeEncodedWords(raw, monitor, null, Collections.<Charset, Charset>emptyMap());
     }
 
-    // return null on error
-    private static byte[] tryDecodeEncodedWord(
-            final String mimeCharset,
-            final String encoding,
-            final String encodedText,
-            final DecodeMonitor monitor,
-            final Charset fallback,
-            final Map<Charset, Charset> charsetOverrides) {
-        Charset charset = lookupCharset(mimeCharset, fallback, charsetOverrides);
-        if (charset == null) {
-            monitor(monitor, mimeCharset, encoding, encodedText, "leaving word encoded",
-                    "Mime charser '", mimeCharset, "' doesn't have a corresponding Java charset");
-            return null;
-        }
-
-        if (encodedText.length() == 0) {
-            monitor(monitor, mimeCharset, encoding, encodedText, "leaving word encoded",
-                    "Missing encoded text in encoded word");
-            return null;
-        }
-
-        try {
-            if (encoding.equalsIgnoreCase("Q")) {
-                return decodeByteAryQ(encodedText, monitor);
-            } else if (encoding.equalsIgnoreCase("B")) {
-                return decodeByteAryB(encodedText, monitor);
-            } else {
-                monitor(monitor, mimeCharset, encoding, encodedText, "leaving word encoded",
-                        "Warning: Unknown encoding in encoded word");
-                return null;
-            }
-        } catch (UnsupportedEncodingException e) {
-            // should not happen because of isDecodingSupported check above
-            monitor(monitor, mimeCharset, encoding, encodedText, "leaving word encoded",
-                    "Unsupported encoding (", e.getMessage(), ") in encoded word");
-            return null;
-        } catch (RuntimeException e) {
-            monitor(monitor, mimeCharset, encoding, encodedText, "leaving word encoded",
-                    "Could not decode (", e.getMessage(), ") encoded word");
-            return null;
-        }
+    /**
+     * Decodes the encoded words of a sequence of bytes, using the given
+     * fallback and overridden charsets, as described by
+     * {@link #decodeEncodedWords(String, DecodeMonitor, Charset, Map)}.
+     *
+     * @param raw the bytes to decode
+     * @param monitor the DecodeMonitor to be used.
+     * @param fallback the fallback Charset to be used.
+     * @param charsetOverrides the Charsets to override and their replacements. Must not be null.
+     * @return the decoded string.
+     * @throws IllegalArgumentException only if the DecodeMonitor strategy throws it (Strict parsing)
+     * @see #decodeEncodedWords(ByteSequence, DecodeMonitor)
+     */
+    public static String decodeEncodedWords(ByteSequence raw, DecodeMonitor monitor, Charset fallback,
+            Map<Charset, Charset> charsetOverrides)
+            throws IllegalArgumentException {
+        return EncodedWordDecoder.get().decode(raw, monitor, fallback, charsetOverrides);
     }
 
-    private static Charset lookupCharset(
+    static Charset lookupCharset(
             final String mimeCharset,
             final Charset fallback,
             final Map<Charset, Charset> charsetOverrides) {
@@ -357,28 +268,6 @@ public class DecoderUtil {
         return override != null ? override : charset;
     }
 
-    private static void monitor(DecodeMonitor monitor, String mimeCharset, String encoding,
-            String encodedText, String dropDesc, String... strings) throws IllegalArgumentException {
-        if (monitor.isListening()) {
-            String encodedWord = recombine(mimeCharset, encoding, encodedText);
-            StringBuilder text = new StringBuilder();
-            for (String str : strings) {
-                text.append(str);
-            }
-            text.append(" (");
-            text.append(encodedWord);
-            text.append(")");
-            String exceptionDesc = text.toString();
-            if (monitor.warn(exceptionDesc, dropDesc))
-                throw new IllegalArgumentException(text.toString());
-        }
-    }
-
-    private static String recombine(final String mimeCharset,
-            final String encoding, final String encodedText) {
-        return "=?" + mimeCharset + "?" + encoding + "?" + encodedText + "?=";
-    }
-
     // Replace _ with =20
     private static String replaceUnderscores(String str) {
         // probably faster than String#replace(CharSequence, CharSequence)
@@ -0,0 +1,121 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * <p>
+ * Decodes the content read from an underlying channel with a
+ * {@link ContentDecoder}.
+ * </p>
+ * <p>
+ * Encoded content is read into a direct buffer, so that reading from a file
+ * or socket channel and decoding into a direct buffer, for instance one to be
+ * written to a <code>FileChannel</code>, does not involve any heap array. A
+ * read returns as soon as some decoded bytes are available; with a
+ * non-blocking underlying channel it may return <code>0</code>.
+ * </p>
+ */
+public class DecodingChannel implements ReadableByteChannel {
+
+    private static final int DEFAULT_BUFFER_SIZE = 4096;
+
+    private final ReadableByteChannel channel;
+    private final ContentDecoder decoder;
+    private final ByteBuffer encoded;
+
+    private boolean eof;
+    private boolean done;
+    private boolean closed;
+
+    public DecodingChannel(ReadableByteChannel channel, ContentDecoder decoder, int bufferSize) {
+        if (channel == null || decoder == null) {
+            throw new IllegalArgumentException();
+        }
+        this.channel = channel;
+        this.decoder = decoder;
+        this.encoded = ByteBuffer.allocateDirect(bufferSize);
+        this.encoded.flip();
+    }
+
+    public DecodingChannel(ReadableByteChannel channel, ContentDecoder decoder) {
+        this(channel, decoder, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Decodes the content of the given channel according to the given
+     * content transfer encoding.
+     *
+     * @see ContentDecoder#forTransferEncoding(String, DecodeMonitor)
+     */
+    public DecodingChannel(ReadableByteChannel channel, String transferEncoding, DecodeMonitor monitor) {
+        this(channel, ContentDecoder.forTransferEncoding(transferEncoding, monitor));
+    }
+
+    public int read(ByteBuffer dst) throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        if (done) {
+            return -1;
+        }
+        int start = dst.position();
+        while (dst.hasRemaining()) {
+            if (eof) {
+                done = decoder.finish(dst);
+                break;
+            }
+            decoder.decode(encoded, dst);
+            if (dst.position() > start) {
+                break;
+            }
+            encoded.clear();
+            int n = channel.read(encoded);
+            encoded.flip();
+            if (n == -1) {
+                eof = true;
+            } else if (n == 0) {
+                break;
+            }
+        }
+        int n = dst.position() - start;
+        return n == 0 && done ? -1 : n;
+    }
+
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Closes this channel and the underlying one.
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        channel.close();
+    }
+
+}
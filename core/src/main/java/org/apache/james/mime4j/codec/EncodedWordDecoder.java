@@ -0,0 +1,384 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.codec;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.james.mime4j.util.ByteSequence;
+import org.apache.james.mime4j.util.CharsetUtil;
+import org.apache.james.mime4j.util.ContentUtil;
+
+/**
+ * Decodes encoded words in a single forward pass over the text, without
+ * creating intermediate strings for the parts of each word. The payloads of
+ * consecutive words in the same charset are decoded into one byte buffer and
+ * turned into characters at once. Instances are reused by the thread that
+ * created them, see {@link #get()}.
+ */
+final class EncodedWordDecoder {
+
+    /** Buffers that grew beyond this size are not kept for reuse. */
+    private static final int MAX_RETAINED = 8 * 1024;
+
+    private static final ThreadLocal<SoftReference<EncodedWordDecoder>> INSTANCE =
+            new ThreadLocal<SoftReference<EncodedWordDecoder>>();
+
+    private final Map<Charset, CharsetDecoder> charsetDecoders = new HashMap<Charset, CharsetDecoder>();
+
+    private StringBuilder text = new StringBuilder(128);
+    private byte[] pending = new byte[128];
+    private int pendingLength;
+    private byte[] encoded = new byte[128];
+    private CharBuffer chars = CharBuffer.allocate(128);
+
+    private DecodeMonitor monitor;
+    private Base64Decoder base64;
+    private QuotedPrintableDecoder quotedPrintable;
+    private boolean inUse;
+
+    private EncodedWordDecoder() {
+    }
+
+    /**
+     * Returns the decoder of the current thread, or a new one if it is
+     * already in use higher up the stack.
+     */
+    static EncodedWordDecoder get() {
+        SoftReference<EncodedWordDecoder> ref = INSTANCE.get();
+        EncodedWordDecoder decoder = ref == null ? null : ref.get();
+        if (decoder == null) {
+            decoder = new EncodedWordDecoder();
+            INSTANCE.set(new SoftReference<EncodedWordDecoder>(decoder));
+        } else if (decoder.inUse) {
+            return new EncodedWordDecoder();
+        }
+        return decoder;
+    }
+
+    /**
+     * Decodes the encoded words of the given bytes. Bytes outside of encoded
+     * words are decoded as UTF-8.
+     */
+    String decode(ByteSequence raw, DecodeMonitor monitor, Charset fallback,
+            Map<Charset, Charset> charsetOverrides) {
+        if (!CharsetUtil.isASCII(raw)) {
+            return decode(ContentUtil.decode(StandardCharsets.UTF_8, raw), monitor, fallback, charsetOverrides);
+        }
+        return decode(new AsciiChars(raw), monitor, fallback, charsetOverrides);
+    }
+
+    /**
+     * Decodes the encoded words of the given text, as described by
+     * {@link DecoderUtil#decodeEncodedWords(String, DecodeMonitor, Charset, Map)}.
+     */
+    String decode(CharSequence body, DecodeMonitor monitor, Charset fallback,
+            Map<Charset, Charset> charsetOverrides) {
+        int length = body.length();
+        int start = indexOf(body, '=', '?', 0);
+        if (start < 0) {
+            return body.toString();
+        }
+
+        inUse = true;
+        try {
+            setMonitor(monitor != null ? monitor : DecodeMonitor.SILENT);
+            text.setLength(0);
+            pendingLength = 0;
+
+            // charset and encoding of the previous word, as ranges of body
+            int charsetStart = 0;
+            int charsetEnd = 0;
+            int encodingStart = 0;
+            int encodingEnd = 0;
+            Charset charset = null;
+
+            int position = 0;
+            while (position < length) {
+                if (start < 0) {
+                    flush(charset);
+                    text.append(body, position, length);
+                    break;
+                }
+
+                int wordCharsetEnd = indexOf(body, '?', start + 2);
+                int wordEncodingEnd = indexOf(body, '?', wordCharsetEnd + 1);
+                int wordTextEnd = indexOf(body, '?', '=', wordEncodingEnd + 1);
+
+                if (wordCharsetEnd < 0 || wordEncodingEnd < 0 || wordTextEnd < 0) {
+                    // not an encoded word
+                    flush(charset);
+                    text.append(body, position, start + 2);
+                    position = start + 2;
+                } else if (wordEncodingEnd == wordTextEnd) {
+                    flush(charset);
+                    text.append(body, position, Math.min(wordTextEnd + 2, length));
+                    position = wordTextEnd + 2;
+                } else {
+                    if (start > position && (position == 0 || !isWhitespace(body, position, start))) {
+                        flush(charset);
+                        text.append(body, position, start);
+                    }
+
+                    int wordCharsetStart = start + 2;
+                    int wordEncodingStart = wordCharsetEnd + 1;
+                    boolean sameCharset = regionEquals(body, charsetStart, charsetEnd, wordCharsetStart, wordCharsetEnd);
+                    if (charsetEnd > charsetStart && !sameCharset) {
+                        flush(charset);
+                    }
+                    if (encodingEnd > encodingStart
+                            && !regionEquals(body, encodingStart, encodingEnd, wordEncodingStart, wordEncodingEnd)) {
+                        flush(charset);
+                    }
+                    if (!sameCharset || charset == null) {
+                        charset = DecoderUtil.lookupCharset(
+                                body.subSequence(wordCharsetStart, wordCharsetEnd).toString(), fallback, charsetOverrides);
+                    }
+                    charsetStart = wordCharsetStart;
+                    charsetEnd = wordCharsetEnd;
+                    encodingStart = wordEncodingStart;
+                    encodingEnd = wordEncodingEnd;
+
+                    if (wordTextEnd > wordEncodingEnd + 1
+                            && !decodeWord(body, charset, start, wordCharsetEnd, wordEncodingEnd, wordTextEnd)) {
+                        flush(charset);
+                        text.append(body, start, wordTextEnd + 2);
+                    }
+                    position = wordTextEnd + 2;
+                }
+                start = indexOf(body, '=', '?', position);
+            }
+            flush(charset);
+
+            String result = text.toString();
+            if (text.capacity() > MAX_RETAINED) {
+                text = new StringBuilder(128);
+            }
+            return result;
+        } finally {
+            inUse = false;
+        }
+    }
+
+    /**
+     * Decodes the payload of a word and appends it to the pending bytes.
+     *
+     * @return <code>false</code> if the word has to be left encoded.
+     */
+    private boolean decodeWord(CharSequence body, Charset charset, int wordStart,
+            int charsetEnd, int encodingEnd, int textEnd) {
+        int encodingStart = charsetEnd + 1;
+        int textStart = encodingEnd + 1;
+        if (charset == null) {
+            warn(body, wordStart, textEnd, "Mime charser '",
+                    body.subSequence(wordStart + 2, charsetEnd).toString(),
+                    "' doesn't have a corresponding Java charset");
+            return false;
+        }
+
+        ContentDecoder decoder;
+        boolean q = false;
+        if (encodingEnd - encodingStart == 1) {
+            char c = body.charAt(encodingStart);
+            q = c == 'Q' || c == 'q';
+            decoder = q ? quotedPrintable : (c == 'B' || c == 'b') ? base64 : null;
+        } else {
+            decoder = null;
+        }
+        if (decoder == null) {
+            warn(body, wordStart, textEnd, "Warning: Unknown encoding in encoded word");
+            return false;
+        }
+
+        int count = 0;
+        int max = (textEnd - textStart) * 3;
+        if (encoded.length < max) {
+            encoded = new byte[Math.max(max, encoded.length * 2)];
+        }
+        for (int i = textStart; i < textEnd; i++) {
+            char c = body.charAt(i);
+            if (q && c == '_') {
+                encoded[count++] = '=';
+                encoded[count++] = '2';
+                encoded[count++] = '0';
+            } else {
+                encoded[count++] = c < 0x80 ? (byte) c : (byte) '?';
+            }
+        }
+
+        // decoded data is never longer than the encoded text
+        if (pending.length - pendingLength < count) {
+            pending = grow(pending, pendingLength + count);
+        }
+        ByteBuffer dst = ByteBuffer.wrap(pending, pendingLength, pending.length - pendingLength);
+        decoder.reset();
+        try {
+            decoder.decode(ByteBuffer.wrap(encoded, 0, count), dst);
+            decoder.finish(dst);
+        } catch (IOException ex) {
+            warn(body, wordStart, textEnd, "Could not decode (", ex.getMessage(), ") encoded word");
+            return false;
+        }
+        pendingLength = dst.position();
+        return true;
+    }
+
+    /**
+     * Turns the pending bytes into characters of the given charset.
+     */
+    private void flush(Charset charset) {
+        if (pendingLength == 0) {
+            return;
+        }
+        CharsetDecoder decoder = charsetDecoders.get(charset);
+        if (decoder == null) {
+            if (charsetDecoders.size() >= 16) {
+                charsetDecoders.clear();
+            }
+            decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            charsetDecoders.put(charset, decoder);
+        }
+        int max = (int) Math.ceil(pendingLength * (double) decoder.maxCharsPerByte());
+        if (chars.capacity() < max) {
+            chars = CharBuffer.allocate(max);
+        }
+        chars.clear();
+        decoder.reset();
+        ByteBuffer in = ByteBuffer.wrap(pending, 0, pendingLength);
+        decoder.decode(in, chars, true);
+        decoder.flush(chars);
+        text.append(chars.array(), 0, chars.position());
+
+        pendingLength = 0;
+        if (pending.length > MAX_RETAINED) {
+            pending = new byte[128];
+        }
+        if (chars.capacity() > MAX_RETAINED) {
+            chars = CharBuffer.allocate(128);
+        }
+    }
+
+    private void setMonitor(DecodeMonitor monitor) {
+        if (monitor != this.monitor) {
+            this.monitor = monitor;
+            this.base64 = new Base64Decoder(monitor);
+            this.quotedPrintable = new QuotedPrintableDecoder(monitor);
+        }
+    }
+
+    private void warn(CharSequence body, int wordStart, int wordTextEnd, String... message) {
+        if (monitor.isListening()) {
+            StringBuilder buf = new StringBuilder();
+            for (String str : message) {
+                buf.append(str);
+            }
+            buf.append(" (");
+            buf.append(body, wordStart, wordTextEnd + 2);
+            buf.append(")");
+            String desc = buf.toString();
+            if (monitor.warn(desc, "leaving word encoded"))
+                throw new IllegalArgumentException(desc);
+        }
+    }
+
+    private static byte[] grow(byte[] buffer, int minLength) {
+        byte[] grown = new byte[Math.max(minLength, buffer.length * 2)];
+        System.arraycopy(buffer, 0, grown, 0, buffer.length);
+        return grown;
+    }
+
+    private static int indexOf(CharSequence s, char c, int from) {
+        for (int i = Math.max(from, 0); i < s.length(); i++) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(CharSequence s, char c1, char c2, int from) {
+        for (int i = Math.max(from, 0); i < s.length() - 1; i++) {
+            if (s.charAt(i) == c1 && s.charAt(i + 1) == c2) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isWhitespace(CharSequence s, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!CharsetUtil.isWhitespace(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean regionEquals(CharSequence s, int start1, int end1, int start2, int end2) {
+        if (end1 - start1 != end2 - start2) {
+            return false;
+        }
+        for (int i = 0; i < end1 - start1; i++) {
+            if (s.charAt(start1 + i) != s.charAt(start2 + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Characters of a sequence of US-ASCII bytes.
+     */
+    private static final class AsciiChars implements CharSequence {
+        private final ByteSequence bytes;
+
+        AsciiChars(ByteSequence bytes) {
+            this.bytes = bytes;
+        }
+
+        public int length() {
+            return bytes.length();
+        }
+
+        public char charAt(int index) {
+            return (char) (bytes.byteAt(index) & 0xff);
+        }
+
+        public CharSequence subSequence(int start, int end) {
+            return ContentUtil.decode(bytes, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return ContentUtil.decode(bytes);
+        }
+    }
+
+}
@@ -0,0 +1,471 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.james.mime4j.codec.EncoderUtil.Encoding;
+import org.apache.james.mime4j.codec.EncoderUtil.Usage;
+import org.apache.james.mime4j.util.ByteArrayBuffer;
+import org.apache.james.mime4j.util.ByteSequence;
+
+/**
+ * Encodes header field text into encoded words as defined in <a
+ * href='http://www.faqs.org/rfcs/rfc2047.html'>RFC 2047</a>, and parameter
+ * values as defined in <a href='http://www.faqs.org/rfcs/rfc2231.html'>RFC
+ * 2231</a>, writing bytes ready to be written out as part of a header.
+ * <p>
+ * Unlike {@link EncoderUtil#encodeEncodedWord(String, Usage, int, Charset, Encoding)},
+ * which splits text that does not fit in one encoded word by halves, the
+ * text is converted to bytes once and the words are filled one after the
+ * other, each as long as allowed. The output is therefore not identical to
+ * that of <code>EncoderUtil</code>, but follows the same rules: words are
+ * separated by a single space, none is longer than 75 characters, and the
+ * first one also accounts for the characters already used on its line.
+ * <p>
+ * An encoder keeps its buffers from one call to the next. It is not thread
+ * safe and is meant to be reused by one thread at a time.
+ */
+public final class EncodedWordEncoder {
+
+    private static final int ENCODED_WORD_MAX_LENGTH = 75;
+    private static final int MAX_USED_CHARACTERS = 50;
+
+    /** Longest value of a parameter section, so that it can be folded. */
+    private static final int PARAMETER_SECTION_LENGTH = 60;
+
+    private static final byte[] BASE64_TABLE = Base64OutputStream.BASE64_TABLE;
+
+    /** RFC 2231 attribute-char, less the characters some decoders mistreat. */
+    private static final boolean[] ATTRIBUTE_CHARS = new boolean[256];
+
+    static {
+        for (char ch = 'a'; ch <= 'z'; ch++) {
+            ATTRIBUTE_CHARS[ch] = true;
+            ATTRIBUTE_CHARS[Character.toUpperCase(ch)] = true;
+        }
+        for (char ch = '0'; ch <= '9'; ch++) {
+            ATTRIBUTE_CHARS[ch] = true;
+        }
+        for (char ch : "!#$&-.^_`|~".toCharArray()) {
+            ATTRIBUTE_CHARS[ch] = true;
+        }
+    }
+
+    private final Usage usage;
+    private final Charset charset;
+    private final Encoding encoding;
+    private final boolean[] qChars;
+
+    private final Map<Charset, CharsetEncoder> encoders = new HashMap<Charset, CharsetEncoder>();
+    private final CharBuffer codePoint = CharBuffer.allocate(2);
+    private final ByteArrayBuffer buffer = new ByteArrayBuffer(256);
+
+    /** Encoded text, and the end offset of the bytes of each code point. */
+    private byte[] bytes = new byte[256];
+    private int[] ends = new int[128];
+
+    /**
+     * Creates an encoder choosing the charset and encoding of each text
+     * automatically, as {@link EncoderUtil#encodeEncodedWord(String, Usage)}
+     * does.
+     *
+     * @param usage
+     *            whether the encoded-words are to be used to replace text
+     *            tokens or word entities (see RFC 822).
+     */
+    public EncodedWordEncoder(Usage usage) {
+        this(usage, null, null);
+    }
+
+    /**
+     * Creates an encoder using the given charset and encoding.
+     *
+     * @param usage
+     *            whether the encoded-words are to be used to replace text
+     *            tokens or word entities (see RFC 822).
+     * @param charset
+     *            the Java charset used to encode the text into bytes, or
+     *            <code>null</code> to detect a suitable one for each text.
+     * @param encoding
+     *            the encoding of the encoded-words, or <code>null</code> to
+     *            choose a suitable one for each text.
+     */
+    public EncodedWordEncoder(Usage usage, Charset charset, Encoding encoding) {
+        if (usage == null)
+            throw new IllegalArgumentException();
+
+        this.usage = usage;
+        this.charset = charset;
+        this.encoding = encoding;
+        this.qChars = EncoderUtil.qChars(usage);
+    }
+
+    /**
+     * Encodes the given text into a sequence of encoded words separated by
+     * spaces.
+     *
+     * @param text
+     *            text to encode.
+     * @param usedCharacters
+     *            number of characters already used up (<code>0 &lt;= usedCharacters &lt;= 50</code>).
+     * @return the encoded words, as US-ASCII bytes.
+     */
+    public ByteSequence encode(CharSequence text, int usedCharacters) {
+        ByteArrayBuffer dst = new ByteArrayBuffer(text.length() + 32);
+        encode(text, usedCharacters, dst);
+        return dst;
+    }
+
+    /**
+     * Encodes the given text into a sequence of encoded words separated by
+     * spaces, and writes them to the given stream.
+     *
+     * @see #encode(CharSequence, int)
+     */
+    public void encode(CharSequence text, int usedCharacters, OutputStream out) throws IOException {
+        buffer.clear();
+        encode(text, usedCharacters, buffer);
+        out.write(buffer.buffer(), 0, buffer.length());
+    }
+
+    /**
+     * Encodes the given text into a sequence of encoded words separated by
+     * spaces, and appends them to the given buffer.
+     *
+     * @see #encode(CharSequence, int)
+     */
+    public void encode(CharSequence text, int usedCharacters, ByteArrayBuffer dst) {
+        if (text == null)
+            throw new IllegalArgumentException();
+        if (usedCharacters < 0 || usedCharacters > MAX_USED_CHARACTERS)
+            throw new IllegalArgumentException();
+
+        Charset cs = charset != null ? charset : EncoderUtil.determineCharset(text);
+        int count = toBytes(text, cs);
+        if (count < 0) {
+            // the charset cannot encode code points one by one
+            appendAscii(dst, EncoderUtil.encodeEncodedWord(text.toString(), usage, usedCharacters, cs, encoding));
+            return;
+        }
+        int length = count == 0 ? 0 : ends[count - 1];
+        Encoding enc = encoding != null ? encoding : determineEncoding(length);
+        boolean b = enc == Encoding.B;
+
+        String prefix = "=?" + cs.name() + (b ? "?B?" : "?Q?");
+        int available = ENCODED_WORD_MAX_LENGTH - usedCharacters - prefix.length() - 2;
+
+        int wordStart = 0;
+        int wordLength = 0;
+        for (int i = 0; i < count; i++) {
+            int start = i == 0 ? 0 : ends[i - 1];
+            int end = ends[i];
+            int width;
+            if (b) {
+                width = (end - wordStart + 2) / 3 * 4 - wordLength;
+            } else {
+                width = 0;
+                for (int j = start; j < end; j++) {
+                    int v = bytes[j] & 0xff;
+                    width += v == 32 || qChars[v] ? 1 : 3;
+                }
+            }
+            if (wordLength + width > available && start > wordStart) {
+                appendWord(dst, prefix, b, wordStart, start);
+                dst.append(' ');
+                available = ENCODED_WORD_MAX_LENGTH - prefix.length() - 2;
+                wordStart = start;
+                width = b ? (end - start + 2) / 3 * 4 : width;
+                wordLength = 0;
+            }
+            wordLength += width;
+        }
+        appendWord(dst, prefix, b, wordStart, length);
+    }
+
+    /**
+     * Encodes a header parameter. Values made of printable US-ASCII
+     * characters are written as tokens or quoted strings, as by
+     * {@link EncoderUtil#encodeHeaderParameter(String, String)}. Other values
+     * are written as UTF-8 extended values as defined in RFC 2231, and split
+     * into numbered sections if long.
+     *
+     * @param name
+     *            parameter name.
+     * @param value
+     *            parameter value.
+     * @param dst
+     *            buffer the encoded parameter is appended to.
+     */
+    public void encodeParameter(String name, CharSequence value, ByteArrayBuffer dst) {
+        if (!hasToBeExtended(value)) {
+            appendAscii(dst, EncoderUtil.encodeHeaderParameter(name, value.toString()));
+            return;
+        }
+
+        name = name.toLowerCase(Locale.US);
+        int count = toBytes(value, StandardCharsets.UTF_8);
+        int length = count == 0 ? 0 : ends[count - 1];
+
+        int encodedLength = 0;
+        for (int i = 0; i < length; i++) {
+            encodedLength += ATTRIBUTE_CHARS[bytes[i] & 0xff] ? 1 : 3;
+        }
+        if (encodedLength <= PARAMETER_SECTION_LENGTH) {
+            appendAscii(dst, name);
+            appendAscii(dst, "*=UTF-8''");
+            appendPercentEncoded(dst, 0, length);
+            return;
+        }
+
+        int section = 0;
+        int start = 0;
+        while (start < length) {
+            int end = start;
+            int sectionLength = 0;
+            while (end < length) {
+                int width = ATTRIBUTE_CHARS[bytes[end] & 0xff] ? 1 : 3;
+                if (sectionLength + width > PARAMETER_SECTION_LENGTH)
+                    break;
+                sectionLength += width;
+                end++;
+            }
+            if (section > 0) {
+                appendAscii(dst, "; ");
+            }
+            appendAscii(dst, name);
+            dst.append('*');
+            appendAscii(dst, Integer.toString(section));
+            appendAscii(dst, section == 0 ? "*=UTF-8''" : "*=");
+            appendPercentEncoded(dst, start, end);
+            section++;
+            start = end;
+        }
+    }
+
+    /**
+     * Encodes the text into {@link #bytes}, one code point at a time.
+     *
+     * @return the number of code points, or <code>-1</code> if the charset
+     *         does not encode code points independently.
+     */
+    private int toBytes(CharSequence text, Charset cs) {
+        int len = text.length();
+        if (ends.length < len) {
+            ends = new int[Math.max(len, ends.length * 2)];
+        }
+        if (cs == StandardCharsets.UTF_8 || cs == StandardCharsets.US_ASCII
+                || cs == StandardCharsets.ISO_8859_1) {
+            return toBytesDirect(text, cs);
+        }
+
+        CharsetEncoder encoder = encoder(cs);
+        if (encoder == null) {
+            return -1;
+        }
+        ByteBuffer out = ByteBuffer.wrap(bytes);
+        int count = 0;
+        for (int i = 0; i < len; i++) {
+            codePoint.clear();
+            char ch = text.charAt(i);
+            codePoint.put(ch);
+            if (Character.isHighSurrogate(ch) && i + 1 < len && Character.isLowSurrogate(text.charAt(i + 1))) {
+                codePoint.put(text.charAt(++i));
+            }
+            codePoint.flip();
+            encoder.reset();
+            while (encoder.encode(codePoint, out, true).isOverflow()
+                    || encoder.flush(out).isOverflow()) {
+                out = grow(out);
+            }
+            ends[count++] = out.position();
+        }
+        return count;
+    }
+
+    private int toBytesDirect(CharSequence text, Charset cs) {
+        int len = text.length();
+        int max = cs == StandardCharsets.UTF_8 ? len * 3 : len;
+        if (bytes.length < max) {
+            bytes = new byte[Math.max(max, bytes.length * 2)];
+        }
+        int limit = cs == StandardCharsets.US_ASCII ? 0x80 : 0x100;
+        int pos = 0;
+        int count = 0;
+        for (int i = 0; i < len; i++) {
+            char ch = text.charAt(i);
+            int cp = ch;
+            if (Character.isHighSurrogate(ch) && i + 1 < len && Character.isLowSurrogate(text.charAt(i + 1))) {
+                cp = Character.toCodePoint(ch, text.charAt(++i));
+            }
+            if (cs != StandardCharsets.UTF_8) {
+                bytes[pos++] = cp < limit ? (byte) cp : (byte) '?';
+            } else if (cp < 0x80) {
+                bytes[pos++] = (byte) cp;
+            } else if (cp < 0x800) {
+                bytes[pos++] = (byte) (0xc0 | cp >> 6);
+                bytes[pos++] = (byte) (0x80 | cp & 0x3f);
+            } else if (Character.isSurrogate(ch) && cp == ch) {
+                // unpaired surrogate
+                bytes[pos++] = (byte) '?';
+            } else if (cp < 0x10000) {
+                bytes[pos++] = (byte) (0xe0 | cp >> 12);
+                bytes[pos++] = (byte) (0x80 | cp >> 6 & 0x3f);
+                bytes[pos++] = (byte) (0x80 | cp & 0x3f);
+            } else {
+                bytes[pos++] = (byte) (0xf0 | cp >> 18);
+                bytes[pos++] = (byte) (0x80 | cp >> 12 & 0x3f);
+                bytes[pos++] = (byte) (0x80 | cp >> 6 & 0x3f);
+                bytes[pos++] = (byte) (0x80 | cp & 0x3f);
+            }
+            ends[count++] = pos;
+        }
+        return count;
+    }
+
+    /**
+     * Returns a cached encoder of the given charset, or <code>null</code> if
+     * encoding code points separately would not give the same bytes as
+     * encoding them together, as for charsets writing a byte order mark.
+     */
+    private CharsetEncoder encoder(Charset cs) {
+        if (encoders.containsKey(cs)) {
+            return encoders.get(cs);
+        }
+        CharsetEncoder encoder = cs.canEncode() ? cs.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE) : null;
+        if (encoder != null && cs.encode("aa").remaining() != 2 * cs.encode("a").remaining()) {
+            encoder = null;
+        }
+        encoders.put(cs, encoder);
+        return encoder;
+    }
+
+    private ByteBuffer grow(ByteBuffer out) {
+        byte[] grown = new byte[bytes.length * 2];
+        System.arraycopy(bytes, 0, grown, 0, out.position());
+        ByteBuffer buf = ByteBuffer.wrap(grown);
+        buf.position(out.position());
+        bytes = grown;
+        return buf;
+    }
+
+    private Encoding determineEncoding(int length) {
+        if (length == 0)
+            return Encoding.Q;
+
+        int qEncoded = 0;
+        for (int i = 0; i < length; i++) {
+            int v = bytes[i] & 0xff;
+            if (v != 32 && !qChars[v]) {
+                qEncoded++;
+            }
+        }
+        return qEncoded * 100 / length > 30 ? Encoding.B : Encoding.Q;
+    }
+
+    private void appendWord(ByteArrayBuffer dst, String prefix, boolean b, int start, int end) {
+        appendAscii(dst, prefix);
+        if (b) {
+            appendB(dst, start, end);
+        } else {
+            for (int i = start; i < end; i++) {
+                int v = bytes[i] & 0xff;
+                if (v == 32) {
+                    dst.append('_');
+                } else if (qChars[v]) {
+                    dst.append(v);
+                } else {
+                    dst.append('=');
+                    dst.append(EncoderUtil.hexDigit(v >>> 4));
+                    dst.append(EncoderUtil.hexDigit(v & 0xf));
+                }
+            }
+        }
+        dst.append('?');
+        dst.append('=');
+    }
+
+    private void appendB(ByteArrayBuffer dst, int start, int end) {
+        int idx = start;
+        for (; idx < end - 2; idx += 3) {
+            int data = (bytes[idx] & 0xff) << 16 | (bytes[idx + 1] & 0xff) << 8
+                    | bytes[idx + 2] & 0xff;
+            dst.append(BASE64_TABLE[data >> 18 & 0x3f]);
+            dst.append(BASE64_TABLE[data >> 12 & 0x3f]);
+            dst.append(BASE64_TABLE[data >> 6 & 0x3f]);
+            dst.append(BASE64_TABLE[data & 0x3f]);
+        }
+        if (idx == end - 2) {
+            int data = (bytes[idx] & 0xff) << 16 | (bytes[idx + 1] & 0xff) << 8;
+            dst.append(BASE64_TABLE[data >> 18 & 0x3f]);
+            dst.append(BASE64_TABLE[data >> 12 & 0x3f]);
+            dst.append(BASE64_TABLE[data >> 6 & 0x3f]);
+            dst.append('=');
+        } else if (idx == end - 1) {
+            int data = (bytes[idx] & 0xff) << 16;
+            dst.append(BASE64_TABLE[data >> 18 & 0x3f]);
+            dst.append(BASE64_TABLE[data >> 12 & 0x3f]);
+            dst.append('=');
+            dst.append('=');
+        }
+    }
+
+    private void appendPercentEncoded(ByteArrayBuffer dst, int start, int end) {
+        for (int i = start; i < end; i++) {
+            int v = bytes[i] & 0xff;
+            if (ATTRIBUTE_CHARS[v]) {
+                dst.append(v);
+            } else {
+                dst.append('%');
+                dst.append(EncoderUtil.hexDigit(v >>> 4));
+                dst.append(EncoderUtil.hexDigit(v & 0xf));
+            }
+        }
+    }
+
+    private static boolean hasToBeExtended(CharSequence s) {
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch < 32 || ch >= 127) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void appendAscii(ByteArrayBuffer dst, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            dst.append(s.charAt(i));
+        }
+    }
+
+}
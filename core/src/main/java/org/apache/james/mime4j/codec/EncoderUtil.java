@@ -41,9 +41,9 @@ public class EncoderUtil {
     private static final byte[] BASE64_TABLE = Base64OutputStream.BASE64_TABLE;
     private static final char BASE64_PAD = '=';
 
-    private static final BitSet Q_REGULAR_CHARS = initChars("=_?");
+    private static final boolean[] Q_REGULAR_CHARS = initTable("=_?");
 
-    private static final BitSet Q_RESTRICTED_CHARS = initChars("=_?\"#$%&'(),.:;<>@[\\]^`{|}~");
+    private static final boolean[] Q_RESTRICTED_CHARS = initTable("=_?\"#$%&'(),.:;<>@[\\]^`{|}~");
 
     private static final int MAX_USED_CHARACTERS = 50;
 
@@ -68,6 +68,22 @@ public class EncoderUtil {
         return bs;
     }
 
+    private static boolean[] initTable(String specials) {
+        boolean[] table = new boolean[256];
+        for (char ch = 33; ch < 127; ch++) {
+            table[ch] = specials.indexOf(ch) == -1;
+        }
+        return table;
+    }
+
+    /**
+     * Returns the bytes that may appear as is in Q encoded text, indexed by
+     * their unsigned value.
+     */
+    static boolean[] qChars(Usage usage) {
+        return usage == Usage.TEXT_TOKEN ? Q_REGULAR_CHARS : Q_RESTRICTED_CHARS;
+    }
+
     /**
      * Selects one of the two encodings specified in RFC 2047.
      */
@@ -384,15 +400,14 @@ public class EncoderUtil {
      * @return encoded string.
      */
     public static String encodeQ(byte[] bytes, Usage usage) {
-        BitSet qChars = usage == Usage.TEXT_TOKEN ? Q_REGULAR_CHARS
-                : Q_RESTRICTED_CHARS;
+        boolean[] qChars = qChars(usage);
 
         StringBuilder sb = new StringBuilder();
         for (byte aByte : bytes) {
             int v = aByte & 0xff;
             if (v == 32) {
                 sb.append('_');
-            } else if (!qChars.get(v)) {
+            } else if (!qChars[v]) {
                 sb.append('=');
                 sb.append(hexDigit(v >>> 4));
                 sb.append(hexDigit(v & 0xf));
@@ -583,8 +598,7 @@ public class EncoderUtil {
     }
 
     private static int qEncodedLength(byte[] bytes, Usage usage) {
-        BitSet qChars = usage == Usage.TEXT_TOKEN ? Q_REGULAR_CHARS
-                : Q_RESTRICTED_CHARS;
+        boolean[] qChars = qChars(usage);
 
         int count = 0;
 
@@ -592,7 +606,7 @@ public class EncoderUtil {
             int v = aByte & 0xff;
             if (v == 32) {
                 count++;
-            } else if (!qChars.get(v)) {
+            } else if (!qChars[v]) {
                 count += 3;
             } else {
                 count++;
@@ -609,7 +623,7 @@ public class EncoderUtil {
         return bytes;
     }
 
-    private static Charset determineCharset(String text) {
+    static Charset determineCharset(CharSequence text) {
         // it is an important property of iso-8859-1 that it directly maps
         // unicode code points 0000 to 00ff to byte values 00 to ff.
         boolean ascii = true;
@@ -630,13 +644,12 @@ public class EncoderUtil {
         if (bytes.length == 0)
             return Encoding.Q;
 
-        BitSet qChars = usage == Usage.TEXT_TOKEN ? Q_REGULAR_CHARS
-                : Q_RESTRICTED_CHARS;
+        boolean[] qChars = qChars(usage);
 
         int qEncoded = 0;
         for (byte aByte : bytes) {
             int v = aByte & 0xff;
-            if (v != 32 && !qChars.get(v)) {
+            if (v != 32 && !qChars[v]) {
                 qEncoded++;
             }
         }
@@ -645,7 +658,7 @@ public class EncoderUtil {
         return percentage > 30 ? Encoding.B : Encoding.Q;
     }
 
-    private static char hexDigit(int i) {
+    static char hexDigit(int i) {
         return i < 10 ? (char) (i + '0') : (char) (i - 10 + 'A');
     }
 }
@@ -0,0 +1,254 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.james.mime4j.util.ByteArrayBuffer;
+
+/**
+ * Incremental Quoted-Printable decoder, with the same handling of malformed
+ * content as {@link QuotedPrintableInputStream}. Where the stream looks ahead
+ * in its buffer, this decoder keeps track of the bytes seen so far, so that
+ * the encoded content can be split anywhere.
+ */
+public class QuotedPrintableDecoder extends ContentDecoder {
+
+    private static final byte EQ = 0x3D;
+    private static final byte CR = 0x0D;
+    private static final byte LF = 0x0A;
+
+    // what the last bytes were, when they need the next ones to be decoded
+    private static final int TEXT = 0; // nothing pending
+    private static final int EQUAL = 1; // '='
+    private static final int EQUAL_HEX = 2; // '=' and the first hex digit
+    private static final int EQUAL_EQUAL = 3; // "=="
+    private static final int EQUAL_EQUAL_CR = 4; // "==\r"
+    private static final int EQUAL_CR = 5; // "=\r"
+
+    private final DecodeMonitor monitor;
+    private final ByteArrayBuffer blanks;
+
+    private int state;
+    private int digit;
+    private boolean lastWasCR;
+
+    public QuotedPrintableDecoder(DecodeMonitor monitor) {
+        this.monitor = monitor != null ? monitor : DecodeMonitor.SILENT;
+        this.blanks = new ByteArrayBuffer(32);
+    }
+
+    public QuotedPrintableDecoder() {
+        this(null);
+    }
+
+    @Override
+    protected void decodeInput(ByteBuffer src) throws IOException {
+        while (src.hasRemaining() && hasRoom()) {
+            int b = src.get() & 0xff;
+            switch (state) {
+                case EQUAL:
+                    equal(b);
+                    break;
+                case EQUAL_HEX:
+                    state = TEXT;
+                    hex(digit, b);
+                    break;
+                case EQUAL_EQUAL:
+                    if (b == CR) {
+                        state = EQUAL_EQUAL_CR;
+                    } else {
+                        state = TEXT;
+                        doubleEqual(b == LF);
+                        text(b);
+                    }
+                    break;
+                case EQUAL_EQUAL_CR:
+                    state = TEXT;
+                    doubleEqual(b == LF);
+                    text(CR);
+                    text(b);
+                    break;
+                case EQUAL_CR:
+                    state = TEXT;
+                    softBreak(b == LF);
+                    text(b);
+                    break;
+                default:
+                    text(b);
+            }
+        }
+    }
+
+    @Override
+    protected void endInput() throws IOException {
+        switch (state) {
+            case EQUAL:
+                hex(-1, -1);
+                break;
+            case EQUAL_HEX:
+                hex(digit, -1);
+                break;
+            case EQUAL_EQUAL:
+            case EQUAL_EQUAL_CR:
+                doubleEqual(false);
+                break;
+            case EQUAL_CR:
+                softBreak(false);
+                break;
+            default:
+        }
+        // trailing blanks and CR are dropped
+        state = TEXT;
+        blanks.clear();
+        lastWasCR = false;
+    }
+
+    @Override
+    protected void resetState() {
+        state = TEXT;
+        blanks.clear();
+        lastWasCR = false;
+    }
+
+    private void text(int b) throws IOException {
+        if (lastWasCR && b != LF) {
+            if (monitor.warn(DecodeEvent.QP_CR_WITHOUT_LF, 0)) {
+                throw new IOException("Found CR without LF");
+            }
+            transfer(CR, false);
+        } else if (!lastWasCR && b == LF) {
+            if (monitor.warn(DecodeEvent.QP_LF_WITHOUT_CR, 0)) {
+                throw new IOException("Found LF without CR");
+            }
+        }
+
+        if (b == CR) {
+            lastWasCR = true;
+            return;
+        }
+        lastWasCR = false;
+
+        if (b == LF) {
+            // at end of line
+            if (blanks.length() == 0 || blanks.byteAt(0) != EQ) {
+                // hard line break
+                transfer(CR, false);
+                transfer(LF, false);
+            }
+            blanks.clear();
+        } else if (b == EQ) {
+            state = EQUAL;
+        } else if (Character.isWhitespace(b)) {
+            blanks.append(b);
+        } else {
+            transfer(b, true);
+        }
+    }
+
+    private void equal(int b2) throws IOException {
+        if (b2 == EQ) {
+            transfer(b2, true);
+            state = EQUAL_EQUAL;
+        } else if (b2 == CR) {
+            state = EQUAL_CR;
+        } else if (Character.isWhitespace((char) b2)) {
+            // soft line break
+            state = TEXT;
+            if (monitor.warn(DecodeEvent.QP_NON_STANDARD_SOFT_BREAK, 0)) {
+                throw new IOException("Non-standard soft line break");
+            }
+            transfer(-1, true);
+            if (b2 != LF) {
+                blanks.append(EQ);
+                blanks.append(b2);
+            }
+        } else {
+            digit = b2;
+            state = EQUAL_HEX;
+        }
+    }
+
+    private void softBreak(boolean lf) throws IOException {
+        if (lf) {
+            lastWasCR = true;
+        } else if (monitor.warn(DecodeEvent.QP_NON_STANDARD_SOFT_BREAK, 0)) {
+            throw new IOException("Non-standard soft line break");
+        }
+        transfer(-1, true);
+        blanks.append(EQ);
+        blanks.append(CR);
+    }
+
+    private void doubleEqual(boolean eol) {
+        // deal with '==\r\n' brokenness
+        if (eol) {
+            monitor.warn(DecodeEvent.QP_DOUBLE_EQUAL_EOL, 0);
+            blanks.append(EQ);
+        } else {
+            monitor.warn(DecodeEvent.QP_DOUBLE_EQUAL, 0);
+        }
+    }
+
+    private void hex(int b2, int b3) throws IOException {
+        int upper = convert(b2);
+        int lower = convert(b3);
+        if (upper < 0 || lower < 0) {
+            monitor.warn(DecodeEvent.QP_MALFORMED_HEX, DecodeEvent.chars(b2, b3));
+            transfer(EQ, true);
+            transfer(b2, false);
+            transfer(b3, false);
+        } else {
+            transfer((upper << 4) | lower, true);
+        }
+    }
+
+    private void transfer(int b, boolean keepblanks) throws IOException {
+        if (keepblanks && blanks.length() > 0) {
+            write(blanks.buffer(), 0, blanks.length());
+            blanks.clear();
+        } else if (blanks.length() > 0 && !keepblanks) {
+            if (monitor.warn(DecodeEvent.QP_IGNORED_BLANKS, blanks.length()))
+                throw new IOException("ignored blanks");
+        }
+        if (b != -1) {
+            write(b);
+        }
+    }
+
+    /**
+     * Converts '0' => 0, 'A' => 10, etc.
+     * @param c ASCII character value.
+     * @return Numeric value of hexadecimal character.
+     */
+    private int convert(int c) {
+        if (c >= '0' && c <= '9') {
+            return (c - '0');
+        } else if (c >= 'A' && c <= 'F') {
+            return (0xA + (c - 'A'));
+        } else if (c >= 'a' && c <= 'f') {
+            return (0xA + (c - 'a'));
+        } else {
+            return -1;
+        }
+    }
+
+}
@@ -159,9 +159,7 @@ public class QuotedPrintableInputStream extends InputStream {
             }
             blanks.clear();
         } else if (blanks.length() > 0 && !keepblanks) {
-            StringBuilder sb = new StringBuilder(blanks.length() * 3);
-            for (int i = 0; i < blanks.length(); i++) sb.append(" ").append(blanks.byteAt(i));
-            if (monitor.warn("ignored blanks", sb.toString()))
+            if (monitor.warn(DecodeEvent.QP_IGNORED_BLANKS, blanks.length()))
                 throw new IOException("ignored blanks");
         }
         if (b != -1) {
@@ -203,12 +201,12 @@ public class QuotedPrintableInputStream extends InputStream {
                 int b = encoded[pos++] & 0xFF;
 
                 if (lastWasCR && b != LF) {
-                    if (monitor.warn("Found CR without LF", "Leaving it as is")) {
+                    if (monitor.warn(DecodeEvent.QP_CR_WITHOUT_LF, 0)) {
                         throw new IOException("Found CR without LF");
                     }
                     index = transfer(CR, buffer, index, to, false);
                 } else if (!lastWasCR && b == LF) {
-                    if (monitor.warn("Found LF without CR", "Translating to CRLF")) {
+                    if (monitor.warn(DecodeEvent.QP_LF_WITHOUT_CR, 0)) {
                         throw new IOException("Found LF without CR");
                     }
                 }
@@ -248,16 +246,16 @@ public class QuotedPrintableInputStream extends InputStream {
                         int bb1 = peek(0);
                         int bb2 = peek(1);
                         if (bb1 == LF || (bb1 == CR && bb2 == LF)) {
-                            monitor.warn("Unexpected ==EOL encountered", "== 0x"+bb1+" 0x"+bb2);
+                            monitor.warn(DecodeEvent.QP_DOUBLE_EQUAL_EOL, 0);
                             blanks.append(b2);
                         } else {
-                            monitor.warn("Unexpected == encountered", "==");
+                            monitor.warn(DecodeEvent.QP_DOUBLE_EQUAL, 0);
                         }
                     } else if (Character.isWhitespace((char) b2)) {
                         // soft line break
                         int b3 = peek(0);
                         if (!(b2 == CR && b3 == LF)) {
-                            if (monitor.warn("Found non-standard soft line break", "Translating to soft line break")) {
+                            if (monitor.warn(DecodeEvent.QP_NON_STANDARD_SOFT_BREAK, 0)) {
                                 throw new IOException("Non-standard soft line break");
                             }
                         }
@@ -274,7 +272,7 @@ public class QuotedPrintableInputStream extends InputStream {
                         int upper = convert(b2);
                         int lower = convert(b3);
                         if (upper < 0 || lower < 0) {
-                            monitor.warn("Malformed encoded value encountered", "leaving "+((char) EQ)+((char) b2)+((char) b3)+" as is");
+                            monitor.warn(DecodeEvent.QP_MALFORMED_HEX, DecodeEvent.chars(b2, b3));
                             // TODO see MIME4J-160
                             index = transfer(EQ, buffer, index, to, true);
                             index = transfer(b2, buffer, index, to, false);
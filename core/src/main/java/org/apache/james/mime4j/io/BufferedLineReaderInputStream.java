@@ -61,6 +61,8 @@ public class BufferedLineReaderInputStream extends LineReaderInputStream {
     private byte[] cachedShiftPattern;
 
     private final int maxLineLen;
+    private final int bufferSize;
+    private boolean released;
 
     public BufferedLineReaderInputStream(
             final InputStream instream,
@@ -78,6 +80,7 @@ public class BufferedLineReaderInputStream extends LineReaderInputStream {
         this.bufpos = 0;
         this.buflen = 0;
         this.maxLineLen = maxLineLen;
+        this.bufferSize = buffersize;
         this.truncated = false;
         this.shiftTable = bufferRecycler.allocintBuffer(256);
     }
@@ -150,12 +153,54 @@ public class BufferedLineReaderInputStream extends LineReaderInputStream {
         this.truncated = true;
     }
 
+    /**
+     * Hands the buffers back to the recycler of the current thread. Releasing
+     * an already released stream has no effect.
+     */
     public void release() {
+        if (this.released) {
+            return;
+        }
+        this.released = true;
+        if (this.tempBuffer) {
+            // the unread buffer belongs to the caller
+            this.buffer = this.origBuffer;
+            this.tempBuffer = false;
+        }
         BufferRecycler bufferRecycler = getBufferRecycler();
         bufferRecycler.releaseByteBuffer(0, buffer);
         bufferRecycler.releaseIntBuffer(shiftTable);
     }
 
+    /**
+     * Prepares this instance to read from another stream, discarding any
+     * buffered data. Buffers are kept, or acquired again from the recycler
+     * if they have been released.
+     *
+     * @param instream the stream to read from.
+     */
+    public void reuse(final InputStream instream) {
+        if (instream == null) {
+            throw new IllegalArgumentException("Input stream may not be null");
+        }
+        if (this.tempBuffer) {
+            this.buffer = this.origBuffer;
+            this.tempBuffer = false;
+        }
+        if (this.released) {
+            BufferRecycler bufferRecycler = getBufferRecycler();
+            this.buffer = bufferRecycler.allocByteBuffer(0, this.bufferSize);
+            this.shiftTable = bufferRecycler.allocintBuffer(256);
+            this.cachedShiftPattern = null;
+            this.released = false;
+        }
+        this.in = instream;
+        this.bufpos = 0;
+        this.buflen = 0;
+        this.truncated = false;
+        this.origBuffer = null;
+    }
+
     protected boolean readAllowed() {
         return !this.truncated;
     }
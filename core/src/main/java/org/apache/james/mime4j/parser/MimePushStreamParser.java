@@ -0,0 +1,303 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.apache.james.mime4j.MimeException;
+import org.apache.james.mime4j.codec.Base64InputStream;
+import org.apache.james.mime4j.codec.DecodeMonitor;
+import org.apache.james.mime4j.codec.QuotedPrintableInputStream;
+import org.apache.james.mime4j.io.MaxContentLengthLimitException;
+import org.apache.james.mime4j.stream.BodyDescriptor;
+import org.apache.james.mime4j.stream.BodyDescriptorBuilder;
+import org.apache.james.mime4j.stream.EntityState;
+import org.apache.james.mime4j.stream.MimeConfig;
+import org.apache.james.mime4j.stream.MimePushParser;
+import org.apache.james.mime4j.stream.RecursionMode;
+import org.apache.james.mime4j.util.ByteArrayBuffer;
+import org.apache.james.mime4j.util.MimeUtil;
+
+/**
+ * <p>
+ * Push based counterpart of {@link MimeStreamParser}: reports the parsing
+ * events of a message fed in chunks by a {@link MimePushParser} to a
+ * {@link ContentHandler}.
+ * </p>
+ * <pre>
+ *      MimePushStreamParser parser = new MimePushStreamParser(config);
+ *      parser.setContentHandler(handler);
+ *      // for each chunk received
+ *      parser.feed(chunk);
+ *      // once the message is complete
+ *      parser.endOfInput();
+ * </pre>
+ * <p>
+ * As {@link ContentHandler} receives the content of an entity as a whole,
+ * through an <code>InputStream</code>, the content of each body, preamble,
+ * epilogue or raw entity is held in memory until it is complete. The amount
+ * held is bounded by {@link MimeConfig#getMaxContentLen()} or, when that is
+ * unlimited, by {@link #DEFAULT_MAX_CONTENT_LEN}; larger content is rejected
+ * with a {@link MaxContentLengthLimitException}. Use {@link MimePushParser}
+ * directly to process content of any size as it arrives.
+ * </p>
+ */
+public class MimePushStreamParser {
+
+    /**
+     * Maximum number of bytes of content held for a single entity when
+     * {@link MimeConfig#getMaxContentLen()} is unlimited.
+     */
+    public static final long DEFAULT_MAX_CONTENT_LEN = 32 * 1024 * 1024;
+
+    private final MimePushParser parser;
+    private final DecodeMonitor monitor;
+    private final ByteArrayBuffer content;
+    private final long maxContentLen;
+
+    private ContentHandler handler = null;
+    private boolean contentDecoding;
+    private EntityState pending;
+    private BodyDescriptor pendingBody;
+
+    public MimePushStreamParser(
+            final MimeConfig config,
+            final DecodeMonitor monitor,
+            final BodyDescriptorBuilder bodyDescBuilder) {
+        MimeConfig localConfig = config != null ? config : MimeConfig.DEFAULT;
+        this.monitor = monitor != null ? monitor :
+            (localConfig.isStrictParsing() ? DecodeMonitor.STRICT : DecodeMonitor.SILENT);
+        this.parser = new MimePushParser(localConfig, this.monitor, bodyDescBuilder, new Listener());
+        this.content = new ByteArrayBuffer(1024);
+        this.maxContentLen = localConfig.getMaxContentLen() >= 0 ?
+            localConfig.getMaxContentLen() : DEFAULT_MAX_CONTENT_LEN;
+        this.contentDecoding = false;
+    }
+
+    public MimePushStreamParser(final MimeConfig config) {
+        this(config, null, null);
+    }
+
+    public MimePushStreamParser() {
+        this(null);
+    }
+
+    /**
+     * Determines whether this parser automatically decodes body content
+     * based on the on the MIME fields with the standard defaults.
+     */
+    public boolean isContentDecoding() {
+        return contentDecoding;
+    }
+
+    /**
+     * Defines whether parser should automatically decode body content
+     * based on the on the MIME fields with the standard defaults.
+     */
+    public void setContentDecoding(boolean b) {
+        this.contentDecoding = b;
+    }
+
+    /**
+     * Parses the remaining bytes of the given buffer.
+     *
+     * @see MimePushParser#feed(ByteBuffer)
+     */
+    public void feed(ByteBuffer src) throws MimeException, IOException {
+        parser.feed(src);
+    }
+
+    /**
+     * Signals that the whole message has been fed.
+     *
+     * @see MimePushParser#endOfInput()
+     */
+    public void endOfInput() throws MimeException, IOException {
+        parser.endOfInput();
+    }
+
+    /**
+     * Determines if this parser is currently in raw mode.
+     *
+     * @return <code>true</code> if in raw mode, <code>false</code>
+     *         otherwise.
+     * @see #setRaw()
+     */
+    public boolean isRaw() {
+        return parser.getRecursionMode() == RecursionMode.M_RAW;
+    }
+
+    /**
+     * Enables raw mode.
+     *
+     * @see MimeStreamParser#setRaw()
+     */
+    public void setRaw() {
+        parser.setRecursionMode(RecursionMode.M_RAW);
+    }
+
+    /**
+     * Enables flat mode.
+     *
+     * @see MimeStreamParser#setFlat()
+     */
+    public void setFlat() {
+        parser.setRecursionMode(RecursionMode.M_FLAT);
+    }
+
+    /**
+     * Enables recursive mode.
+     *
+     * @see MimeStreamParser#setRecurse()
+     */
+    public void setRecurse() {
+        parser.setRecursionMode(RecursionMode.M_RECURSE);
+    }
+
+    /**
+     * Disables recursive mode.
+     *
+     * @see MimeStreamParser#setNoRecurse()
+     */
+    public void setNoRecurse() {
+        parser.setRecursionMode(RecursionMode.M_NO_RECURSE);
+    }
+
+    /**
+     * Abandons the message being parsed, if any, so that this parser can be
+     * fed another one. The content handler, content decoding flag and
+     * recursion mode are kept.
+     */
+    public void reset() {
+        parser.reset();
+        content.clear();
+        pending = null;
+        pendingBody = null;
+    }
+
+    /**
+     * Sets the <code>ContentHandler</code> to use when reporting
+     * parsing events.
+     *
+     * @param h the <code>ContentHandler</code>.
+     */
+    public void setContentHandler(ContentHandler h) {
+        this.handler = h;
+    }
+
+    private void deliver() throws MimeException, IOException {
+        EntityState state = pending;
+        pending = null;
+        InputStream instream = new ByteArrayInputStream(content.buffer(), 0, content.length());
+        switch (state) {
+            case T_BODY:
+                if (contentDecoding) {
+                    String transferEncoding = pendingBody.getTransferEncoding();
+                    if (MimeUtil.isBase64Encoding(transferEncoding)) {
+                        instream = new Base64InputStream(instream, monitor);
+                    } else if (MimeUtil.isQuotedPrintableEncoded(transferEncoding)) {
+                        instream = new QuotedPrintableInputStream(instream, monitor);
+                    }
+                }
+                handler.body(pendingBody, instream);
+                instream.close();
+                break;
+            case T_PREAMBLE:
+                handler.preamble(instream);
+                break;
+            case T_EPILOGUE:
+                handler.epilogue(instream);
+                break;
+            default:
+                handler.raw(instream);
+        }
+        content.clear();
+        pendingBody = null;
+    }
+
+    private class Listener implements MimePushParser.Listener {
+
+        public void event(MimePushParser parser, EntityState state) throws MimeException, IOException {
+            if (pending != null) {
+                deliver();
+            }
+            switch (state) {
+                case T_BODY:
+                case T_PREAMBLE:
+                case T_EPILOGUE:
+                    pendingBody = parser.getBodyDescriptor();
+                    pending = state;
+                    break;
+                case T_RAW_ENTITY:
+                    pending = state;
+                    break;
+                case T_END_BODYPART:
+                    handler.endBodyPart();
+                    break;
+                case T_END_HEADER:
+                    handler.endHeader();
+                    break;
+                case T_END_MESSAGE:
+                    handler.endMessage();
+                    break;
+                case T_END_MULTIPART:
+                    handler.endMultipart();
+                    break;
+                case T_END_OF_STREAM:
+                    break;
+                case T_FIELD:
+                    handler.field(parser.getField());
+                    break;
+                case T_START_BODYPART:
+                    handler.startBodyPart();
+                    break;
+                case T_START_HEADER:
+                    handler.startHeader();
+                    break;
+                case T_START_MESSAGE:
+                    handler.startMessage();
+                    break;
+                case T_START_MULTIPART:
+                    handler.startMultipart(parser.getBodyDescriptor());
+                    break;
+                default:
+                    throw new IllegalStateException("Invalid state: " + state);
+            }
+        }
+
+        public void content(MimePushParser parser, ByteBuffer chunk) throws IOException {
+            if (content.length() + (long) chunk.remaining() > maxContentLen) {
+                throw new MaxContentLengthLimitException("Input stream limit exceeded. Limit was " + maxContentLen);
+            }
+            if (chunk.hasArray()) {
+                content.append(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+            } else {
+                while (chunk.hasRemaining()) {
+                    content.append(chunk.get());
+                }
+            }
+        }
+
+    }
+
+}
@@ -240,6 +240,17 @@ public class MimeStreamParser {
         mimeTokenStream.stop();
     }
 
+    /**
+     * Resets the underlying {@link MimeTokenStream} so that this parser can
+     * be pooled and reused for another message with its buffers retained.
+     * The content handler, content decoding flag and recursion mode are kept.
+     *
+     * @see MimeTokenStream#reset()
+     */
+    public void reset() {
+        mimeTokenStream.reset();
+    }
+
     /**
      * Sets the <code>ContentHandler</code> to use when reporting
      * parsing events.
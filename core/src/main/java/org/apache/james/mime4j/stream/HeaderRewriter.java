@@ -0,0 +1,494 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.james.mime4j.MimeException;
+import org.apache.james.mime4j.util.ByteArrayBuffer;
+import org.apache.james.mime4j.util.ByteSequence;
+import org.apache.james.mime4j.util.ContentUtil;
+
+/**
+ * <p>
+ * Rewrites the header of a message without parsing its body. The header block,
+ * up to and including the first empty line, is read with a
+ * {@link MimeTokenStream}, the configured edits are applied to its fields,
+ * the new header is written and the remaining bytes are copied as they are.
+ * Memory use only depends on the size of the header.
+ * </p>
+ * <pre>
+ * HeaderRewriter rewriter = new HeaderRewriter()
+ *     .prepend(new RawField("Received", "from relay.example.com ..."))
+ *     .remove("X-Spam-Score");
+ * rewriter.rewrite(in, out);
+ * </pre>
+ * <p>
+ * Edits are applied in the order they have been added. Fields are written
+ * using their original raw form followed by the line terminator of the first
+ * header line, CRLF if there is none. Header lines the parser
+ * cannot make sense of, including the ones it leaves unread when
+ * {@link MimeConfig#isMalformedHeaderStartsBody()} is set, are copied as they
+ * are at their original position. A <code>HeaderRewriter</code> can be
+ * shared between threads once configured.
+ * </p>
+ */
+public class HeaderRewriter {
+
+    private static final byte[] CRLF = { '\r', '\n' };
+
+    private static final byte[] LF = { '\n' };
+    private static final int BUFFER_SIZE = 4096;
+
+    private enum Operation { PREPEND, APPEND, REMOVE, REPLACE }
+
+    private static final class Edit {
+        final Operation operation;
+        final String name;
+        final Field field;
+
+        Edit(Operation operation, String name, Field field) {
+            this.operation = operation;
+            this.name = name;
+            this.field = field;
+        }
+    }
+
+    private final MimeConfig config;
+    private final List<Edit> edits;
+
+    public HeaderRewriter(MimeConfig config) {
+        this.config = config != null ? config : MimeConfig.DEFAULT;
+        this.edits = new ArrayList<Edit>();
+    }
+
+    public HeaderRewriter() {
+        this(null);
+    }
+
+    /**
+     * Adds the given field on top of the header, as done for trace fields.
+     */
+    public HeaderRewriter prepend(Field field) {
+        return add(Operation.PREPEND, field);
+    }
+
+    /**
+     * Adds the given field at the end of the header.
+     */
+    public HeaderRewriter append(Field field) {
+        return add(Operation.APPEND, field);
+    }
+
+    /**
+     * Removes all the fields with the given name, ignoring case.
+     */
+    public HeaderRewriter remove(String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("Field name may not be null");
+        }
+        edits.add(new Edit(Operation.REMOVE, name.toLowerCase(Locale.US), null));
+        return this;
+    }
+
+    /**
+     * Replaces the first field having the name of the given field and removes
+     * the other ones. The field is appended if the header has no such field.
+     */
+    public HeaderRewriter replace(Field field) {
+        return add(Operation.REPLACE, field);
+    }
+
+    private HeaderRewriter add(Operation operation, Field field) {
+        if (field == null) {
+            throw new IllegalArgumentException("Field may not be null");
+        }
+        edits.add(new Edit(operation, field.getNameLowerCase(), field));
+        return this;
+    }
+
+    /**
+     * Applies the edits to the given list of fields.
+     */
+    public List<Field> apply(List<Field> fields) {
+        List<Field> result = new ArrayList<Field>(fields);
+        for (Edit edit : edits) {
+            switch (edit.operation) {
+                case PREPEND:
+                    result.add(0, edit.field);
+                    break;
+                case APPEND:
+                    result.add(edit.field);
+                    break;
+                case REMOVE:
+                    removeAll(result, edit.name, -1);
+                    break;
+                case REPLACE:
+                    int first = indexOf(result, edit.name);
+                    if (first == -1) {
+                        result.add(edit.field);
+                    } else {
+                        result.set(first, edit.field);
+                        removeAll(result, edit.name, first);
+                    }
+                    break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes the message read from the given stream with its header rewritten.
+     * The body is copied unchanged. Streams are not closed.
+     *
+     * @return the number of bytes written.
+     */
+    public long rewrite(InputStream in, OutputStream out) throws IOException, MimeException {
+        HeaderInputStream header = new HeaderInputStream(in);
+        ByteArrayBuffer newHeader = rewriteHeader(header);
+        out.write(newHeader.buffer(), 0, newHeader.length());
+        long count = newHeader.length();
+        int remaining = header.remainingBuffered();
+        if (remaining > 0) {
+            out.write(header.buffer, header.pos, remaining);
+            count += remaining;
+        }
+        if (!header.endOfStream) {
+            CountingOutputStream counter = new CountingOutputStream(out);
+            ContentUtil.copy(in, counter);
+            count += counter.count;
+        }
+        return count;
+    }
+
+    /**
+     * Writes the message read from the given file channel, from its current
+     * position, with its header rewritten. The body is handed to the target
+     * channel using {@link FileChannel#transferTo(long, long, WritableByteChannel)}
+     * so that its bytes need not be copied through the Java heap.
+     *
+     * @return the number of bytes written.
+     */
+    public long rewrite(FileChannel source, WritableByteChannel target) throws IOException, MimeException {
+        long start = source.position();
+        HeaderInputStream header = new HeaderInputStream(Channels.newInputStream(source));
+        ByteArrayBuffer newHeader = rewriteHeader(header);
+        ByteBuffer headerBuffer = ByteBuffer.wrap(newHeader.buffer(), 0, newHeader.length());
+        while (headerBuffer.hasRemaining()) {
+            target.write(headerBuffer);
+        }
+        long count = newHeader.length();
+        long position = start + header.headerLength;
+        long end = source.size();
+        while (position < end) {
+            long transferred = source.transferTo(position, end - position, target);
+            if (transferred <= 0) {
+                break;
+            }
+            position += transferred;
+            count += transferred;
+        }
+        source.position(position);
+        return count;
+    }
+
+    private ByteArrayBuffer rewriteHeader(HeaderInputStream header) throws IOException, MimeException {
+        List<Field> fields = new ArrayList<Field>();
+        MimeTokenStream stream = new MimeTokenStream(config);
+        stream.parse(header);
+        for (EntityState state = stream.getState();
+                state != EntityState.T_END_HEADER && state != EntityState.T_END_OF_STREAM;
+                state = stream.next()) {
+            if (state == EntityState.T_FIELD) {
+                fields.add(stream.getField());
+            }
+        }
+        stream.stop();
+        // the parser may not have read the end of the header block
+        byte[] skipped = new byte[256];
+        while (header.read(skipped, 0, skipped.length) != -1) {
+        }
+
+        byte[] eol = lineTerminator(header.raw);
+        ByteArrayBuffer buffer = new ByteArrayBuffer(BUFFER_SIZE);
+        for (Field field : apply(withUnparsedLines(fields, header))) {
+            if (field instanceof UnparsedLines) {
+                ByteArrayBuffer lines = ((UnparsedLines) field).raw;
+                buffer.append(lines.buffer(), 0, lines.length());
+                continue;
+            }
+            ByteSequence raw = field.getSafeRaw();
+            if (raw instanceof ByteArrayBuffer) {
+                buffer.append(((ByteArrayBuffer) raw).buffer(), 0, raw.length());
+            } else {
+                byte[] bytes = raw.toByteArray();
+                buffer.append(bytes, 0, bytes.length);
+            }
+            buffer.append(eol, 0, eol.length);
+        }
+        buffer.append(eol, 0, eol.length);
+        return buffer;
+    }
+
+    /**
+     * Returns the line terminator of the first line of the header block.
+     */
+    private static byte[] lineTerminator(ByteArrayBuffer raw) {
+        int lf = raw.indexOf((byte) '\n');
+        return lf == -1 || (lf > 0 && raw.byteAt(lf - 1) == '\r') ? CRLF : LF;
+    }
+
+    /**
+     * Inserts the header lines that did not make it into a field among the
+     * parsed fields, at their position in the raw header block.
+     */
+    private static List<Field> withUnparsedLines(List<Field> fields, HeaderInputStream header) {
+        ByteArrayBuffer raw = header.raw;
+        int end = raw.length();
+        if (header.blankLine) {
+            // leave the empty line out
+            end = end - 1;
+            if (end > 0 && raw.byteAt(end - 1) == '\r') {
+                end--;
+            }
+        }
+        List<Field> result = new ArrayList<Field>(fields.size());
+        int cursor = 0;
+        for (Field field : fields) {
+            ByteSequence fieldRaw = field.getRaw();
+            int start = fieldRaw != null ? indexOfLine(raw, cursor, end, fieldRaw) : -1;
+            if (start == -1) {
+                result.add(field);
+                continue;
+            }
+            if (start > cursor) {
+                result.add(new UnparsedLines(raw, cursor, start));
+            }
+            result.add(field);
+            cursor = start + fieldRaw.length();
+            if (cursor < end && raw.byteAt(cursor) == '\r') {
+                cursor++;
+            }
+            if (cursor < end && raw.byteAt(cursor) == '\n') {
+                cursor++;
+            }
+        }
+        if (cursor < end) {
+            result.add(new UnparsedLines(raw, cursor, end));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the offset of the first line of <code>raw</code>, from
+     * <code>from</code> up to <code>to</code>, starting with the given bytes,
+     * or <code>-1</code>.
+     */
+    private static int indexOfLine(ByteArrayBuffer raw, int from, int to, ByteSequence bytes) {
+        int length = bytes.length();
+        for (int start = from; start + length <= to; ) {
+            int i = 0;
+            while (i < length && raw.byteAt(start + i) == bytes.byteAt(i)) {
+                i++;
+            }
+            if (i == length) {
+                return start;
+            }
+            while (start < to && raw.byteAt(start) != '\n') {
+                start++;
+            }
+            start++;
+        }
+        return -1;
+    }
+
+    private static int indexOf(List<Field> fields, String name) {
+        for (int i = 0; i < fields.size(); i++) {
+            if (fields.get(i).getNameLowerCase().equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void removeAll(List<Field> fields, String name, int except) {
+        for (int i = fields.size() - 1; i >= 0; i--) {
+            if (i != except && fields.get(i).getNameLowerCase().equals(name)) {
+                fields.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Header lines copied as they are, line terminators included. Has no
+     * name, so that edits never match it.
+     */
+    private static final class UnparsedLines implements Field {
+
+        final ByteArrayBuffer raw;
+
+        UnparsedLines(ByteArrayBuffer header, int start, int end) {
+            this.raw = new ByteArrayBuffer(end - start);
+            this.raw.append(header.buffer(), start, end - start);
+        }
+
+        @Override
+        public String getName() {
+            return "";
+        }
+
+        @Override
+        public String getBody() {
+            return ContentUtil.decode(raw);
+        }
+
+        @Override
+        public ByteSequence getRaw() {
+            return raw;
+        }
+
+        @Override
+        public ByteSequence getSafeRaw() {
+            return raw;
+        }
+    }
+
+    /**
+     * Delivers the bytes of the header block, up to and including the first
+     * empty line, then reports the end of the stream. Bytes read ahead stay
+     * available in the buffer.
+     */
+    private static final class HeaderInputStream extends InputStream {
+
+        private static final int LINE_START = 0;
+        private static final int CR_AT_LINE_START = 1;
+        private static final int IN_LINE = 2;
+
+        private final InputStream in;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int pos;
+        private int len;
+        private int state = LINE_START;
+        private boolean endOfHeader;
+        private boolean endOfStream;
+        private boolean blankLine;
+        private long headerLength;
+        /** Bytes of the header block delivered so far. */
+        final ByteArrayBuffer raw = new ByteArrayBuffer(BUFFER_SIZE);
+
+        HeaderInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        int remainingBuffered() {
+            return len - pos;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return n == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int n) throws IOException {
+            if (endOfHeader) {
+                return -1;
+            }
+            if (pos == len) {
+                int filled = in.read(buffer, 0, buffer.length);
+                if (filled == -1) {
+                    endOfHeader = true;
+                    endOfStream = true;
+                    return -1;
+                }
+                pos = 0;
+                len = filled;
+            }
+            int end = Math.min(len, pos + n);
+            int i = pos;
+            while (i < end && !endOfHeader) {
+                byte c = buffer[i++];
+                switch (state) {
+                    case LINE_START:
+                        if (c == '\n') {
+                            endOfHeader = true;
+                            blankLine = true;
+                        } else {
+                            state = c == '\r' ? CR_AT_LINE_START : IN_LINE;
+                        }
+                        break;
+                    case CR_AT_LINE_START:
+                        if (c == '\n') {
+                            endOfHeader = true;
+                            blankLine = true;
+                        } else {
+                            state = IN_LINE;
+                        }
+                        break;
+                    default:
+                        if (c == '\n') {
+                            state = LINE_START;
+                        }
+                        break;
+                }
+            }
+            int count = i - pos;
+            System.arraycopy(buffer, pos, b, off, count);
+            raw.append(buffer, pos, count);
+            pos = i;
+            headerLength += count;
+            return count;
+        }
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+
+        private final OutputStream out;
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+}
@@ -0,0 +1,188 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.stream;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link ParserInstrumentation} keeping totals in memory. Instances are
+ * thread safe and may be shared by all parsers of an application.
+ */
+public class InMemoryParserInstrumentation implements ParserInstrumentation {
+
+    private final LongAdder bytesScanned = new LongAdder();
+    private final LongAdder entities = new LongAdder();
+    private final LongAdder headerFields = new LongAdder();
+    private final LongAdder headerBytes = new LongAdder();
+    private final ConcurrentMap<Integer, LongAdder> entitiesPerDepth = new ConcurrentHashMap<Integer, LongAdder>();
+    private final ConcurrentMap<String, LongAdder> decodedBytes = new ConcurrentHashMap<String, LongAdder>();
+    private final Map<Limit, LongAdder> limits = new EnumMap<Limit, LongAdder>(Limit.class);
+    private final Map<Phase, LongAdder> phaseNanos = new EnumMap<Phase, LongAdder>(Phase.class);
+    private final Map<Phase, LongAdder> phaseCounts = new EnumMap<Phase, LongAdder>(Phase.class);
+
+    public InMemoryParserInstrumentation() {
+        // maps are filled up front so that they are only read afterwards
+        for (Limit limit : Limit.values()) {
+            limits.put(limit, new LongAdder());
+        }
+        for (Phase phase : Phase.values()) {
+            phaseNanos.put(phase, new LongAdder());
+            phaseCounts.put(phase, new LongAdder());
+        }
+    }
+
+    public void bytesScanned(long count) {
+        bytesScanned.add(count);
+    }
+
+    public void entity(int depth) {
+        entities.increment();
+        counter(entitiesPerDepth, depth).increment();
+    }
+
+    public void headerField(int length) {
+        headerFields.increment();
+        headerBytes.add(length);
+    }
+
+    public void decoded(String transferEncoding, long count) {
+        counter(decodedBytes, transferEncoding).add(count);
+    }
+
+    public void limitExceeded(Limit limit) {
+        limits.get(limit).increment();
+    }
+
+    public void phase(Phase phase, long nanos) {
+        phaseNanos.get(phase).add(nanos);
+        phaseCounts.get(phase).increment();
+    }
+
+    private static <K> LongAdder counter(ConcurrentMap<K, LongAdder> map, K key) {
+        LongAdder counter = map.get(key);
+        if (counter == null) {
+            LongAdder created = new LongAdder();
+            counter = map.putIfAbsent(key, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    public long getBytesScanned() {
+        return bytesScanned.sum();
+    }
+
+    public long getEntities() {
+        return entities.sum();
+    }
+
+    /**
+     * Returns the number of entities seen at the given depth, <code>0</code>
+     * being top level messages.
+     */
+    public long getEntities(int depth) {
+        LongAdder counter = entitiesPerDepth.get(depth);
+        return counter != null ? counter.sum() : 0;
+    }
+
+    public long getHeaderFields() {
+        return headerFields.sum();
+    }
+
+    public long getHeaderBytes() {
+        return headerBytes.sum();
+    }
+
+    public long getDecodedBytes(String transferEncoding) {
+        LongAdder counter = decodedBytes.get(transferEncoding);
+        return counter != null ? counter.sum() : 0;
+    }
+
+    /**
+     * Returns decoded byte counts keyed by transfer encoding.
+     */
+    public Map<String, Long> getDecodedBytes() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, LongAdder> entry : decodedBytes.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().sum());
+        }
+        return result;
+    }
+
+    public long getLimitsExceeded(Limit limit) {
+        return limits.get(limit).sum();
+    }
+
+    public long getPhaseNanos(Phase phase) {
+        return phaseNanos.get(phase).sum();
+    }
+
+    /**
+     * Returns how many timings were reported for the given phase.
+     */
+    public long getPhaseCount(Phase phase) {
+        return phaseCounts.get(phase).sum();
+    }
+
+    /**
+     * Sets all counters back to zero.
+     */
+    public void reset() {
+        bytesScanned.reset();
+        entities.reset();
+        headerFields.reset();
+        headerBytes.reset();
+        entitiesPerDepth.clear();
+        decodedBytes.clear();
+        for (LongAdder counter : limits.values()) {
+            counter.reset();
+        }
+        for (Phase phase : Phase.values()) {
+            phaseNanos.get(phase).reset();
+            phaseCounts.get(phase).reset();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        b.append("[bytesScanned=").append(getBytesScanned())
+                .append(", entities=").append(getEntities())
+                .append(", headerFields=").append(getHeaderFields())
+                .append(", headerBytes=").append(getHeaderBytes())
+                .append(", decodedBytes=").append(getDecodedBytes());
+        for (Limit limit : Limit.values()) {
+            b.append(", ").append(limit).append('=').append(getLimitsExceeded(limit));
+        }
+        for (Phase phase : Phase.values()) {
+            b.append(", ").append(phase).append("Nanos=").append(getPhaseNanos(phase));
+        }
+        b.append("]");
+        return b.toString();
+    }
+
+}
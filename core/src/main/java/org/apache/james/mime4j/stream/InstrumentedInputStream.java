@@ -0,0 +1,124 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.stream;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.james.mime4j.io.MaxContentLengthLimitException;
+import org.apache.james.mime4j.io.MaxHeaderLengthLimitException;
+import org.apache.james.mime4j.io.MaxHeaderLimitException;
+import org.apache.james.mime4j.io.MaxLineLimitException;
+
+/**
+ * Content stream reporting to a {@link ParserInstrumentation}. Only created
+ * when instrumentation is enabled. Bulk reads are timed; bytes read one at a
+ * time are only counted, and reported in batches, so that the bookkeeping
+ * does not outweigh the reads.
+ */
+class InstrumentedInputStream extends FilterInputStream {
+
+    private static final int BATCH_SIZE = 4096;
+
+    private final ParserInstrumentation instrumentation;
+    private final String transferEncoding;
+    private int pending;
+
+    /**
+     * @param transferEncoding transfer encoding of a decoded stream, whose
+     *            bytes and read time are reported; null for a raw content
+     *            stream, of which only limit violations are reported.
+     */
+    InstrumentedInputStream(InputStream in, ParserInstrumentation instrumentation, String transferEncoding) {
+        super(in);
+        this.instrumentation = instrumentation;
+        this.transferEncoding = transferEncoding;
+    }
+
+    @Override
+    public int read() throws IOException {
+        try {
+            int b = in.read();
+            if (transferEncoding != null && (b == -1 || ++pending == BATCH_SIZE)) {
+                flush();
+            }
+            return b;
+        } catch (IOException ex) {
+            limitExceeded(instrumentation, ex);
+            throw ex;
+        }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        long start = transferEncoding != null ? System.nanoTime() : 0;
+        try {
+            int n = in.read(b, off, len);
+            if (transferEncoding != null) {
+                instrumentation.phase(ParserInstrumentation.Phase.DECODE, System.nanoTime() - start);
+                pending += Math.max(n, 0);
+                flush();
+            }
+            return n;
+        } catch (IOException ex) {
+            limitExceeded(instrumentation, ex);
+            throw ex;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (transferEncoding != null) {
+            flush();
+        }
+        super.close();
+    }
+
+    private void flush() {
+        if (pending > 0) {
+            instrumentation.decoded(transferEncoding, pending);
+            pending = 0;
+        }
+    }
+
+    /**
+     * Reports the limit violated by the given exception or one of its causes,
+     * if any.
+     */
+    static void limitExceeded(ParserInstrumentation instrumentation, Throwable ex) {
+        for (Throwable t = ex; t != null; t = t.getCause()) {
+            if (t instanceof MaxLineLimitException) {
+                instrumentation.limitExceeded(ParserInstrumentation.Limit.LINE_LENGTH);
+                return;
+            } else if (t instanceof MaxHeaderLimitException) {
+                instrumentation.limitExceeded(ParserInstrumentation.Limit.HEADER_COUNT);
+                return;
+            } else if (t instanceof MaxHeaderLengthLimitException) {
+                instrumentation.limitExceeded(ParserInstrumentation.Limit.HEADER_LENGTH);
+                return;
+            } else if (t instanceof MaxContentLengthLimitException) {
+                instrumentation.limitExceeded(ParserInstrumentation.Limit.CONTENT_LENGTH);
+                return;
+            }
+        }
+    }
+
+}
@@ -46,6 +46,7 @@ public final class MimeConfig {
     private final boolean countLineNumbers;
     private final String headlessParsing;
     private final boolean malformedHeaderStartsBody;
+    private final ParserInstrumentation instrumentation;
 
     MimeConfig(
             boolean strictParsing,
@@ -55,7 +56,8 @@ public final class MimeConfig {
             long maxContentLen,
             boolean countLineNumbers,
             String headlessParsing,
-            boolean malformedHeaderStartsBody) {
+            boolean malformedHeaderStartsBody,
+            ParserInstrumentation instrumentation) {
         this.strictParsing = strictParsing;
         this.countLineNumbers = countLineNumbers;
         this.malformedHeaderStartsBody = malformedHeaderStartsBody;
@@ -64,6 +66,7 @@ public final class MimeConfig {
         this.maxHeaderLen = maxHeaderLen;
         this.maxContentLen = maxContentLen;
         this.headlessParsing = headlessParsing;
+        this.instrumentation = instrumentation;
     }
 
     /**
@@ -151,6 +154,17 @@ public final class MimeConfig {
         return headlessParsing;
     }
 
+    /**
+     * Returns the instrumentation notified while parsing.
+     *
+     * @see Builder#setInstrumentation(ParserInstrumentation)
+     *
+     * @return instrumentation, null if disabled
+     */
+    public ParserInstrumentation getInstrumentation() {
+        return instrumentation;
+    }
+
     @Override
     public String toString() {
         StringBuilder b = new StringBuilder();
@@ -162,6 +176,7 @@ public final class MimeConfig {
                 .append(", countLineNumbers=").append(countLineNumbers)
                 .append(", headlessParsing=").append(headlessParsing)
                 .append(", malformedHeaderStartsBody=").append(malformedHeaderStartsBody)
+                .append(", instrumentation=").append(instrumentation)
                 .append("]");
         return b.toString();
     }
@@ -182,7 +197,8 @@ public final class MimeConfig {
             .setMaxContentLen(config.getMaxContentLen())
             .setCountLineNumbers(config.isCountLineNumbers())
             .setHeadlessParsing(config.getHeadlessParsing())
-            .setMalformedHeaderStartsBody(config.isMalformedHeaderStartsBody());
+            .setMalformedHeaderStartsBody(config.isMalformedHeaderStartsBody())
+            .setInstrumentation(config.getInstrumentation());
     }
 
     public static class Builder {
@@ -195,6 +211,7 @@ public final class MimeConfig {
         private boolean countLineNumbers;
         private String headlessParsing;
         private boolean malformedHeaderStartsBody;
+        private ParserInstrumentation instrumentation;
 
         public Builder() {
             this.strictParsing = false;
@@ -205,6 +222,7 @@ public final class MimeConfig {
             this.maxHeaderLen = 10000;
             this.maxContentLen = -1;
             this.headlessParsing = null;
+            this.instrumentation = null;
         }
 
         /**
@@ -339,6 +357,20 @@ public final class MimeConfig {
             return this;
         }
 
+        /**
+         * Sets the instrumentation notified of counters and timings while
+         * parsing. When null, the parser does no bookkeeping at all.
+         * <p>
+         * Default value: <code>null</code>
+         *
+         * @param instrumentation
+         *            instrumentation, null to disable
+         */
+        public Builder setInstrumentation(ParserInstrumentation instrumentation) {
+            this.instrumentation = instrumentation;
+            return this;
+        }
+
         public MimeConfig build() {
             return new MimeConfig(
                     strictParsing,
@@ -348,7 +380,8 @@ public final class MimeConfig {
                     maxContentLen,
                     countLineNumbers,
                     headlessParsing,
-                    malformedHeaderStartsBody);
+                    malformedHeaderStartsBody,
+                    instrumentation);
         }
 
     }
@@ -63,7 +63,7 @@ class MimeEntity implements EntityStateMachine {
     private final BodyDescriptorBuilder bodyDescBuilder;
 
     private final ByteArrayBuffer linebuf;
-    private final LineNumberSource lineSource;
+    private LineNumberSource lineSource;
     private final BufferedLineReaderInputStream inbuffer;
 
     private EntityState state;
@@ -156,10 +156,34 @@ class MimeEntity implements EntityStateMachine {
         this.recursionMode = recursionMode;
     }
 
+    /**
+     * Makes this entity parse another stream from the given state, as if it
+     * had just been created. Buffers released by {@link #stop()} are acquired
+     * again, the other ones are kept.
+     */
+    void reset(LineNumberSource lineSource, InputStream instream, EntityState startState) {
+        this.lineSource = lineSource;
+        this.state = startState;
+        this.lineCount = 0;
+        this.endOfHeader = false;
+        this.headerCount = 0;
+        this.field = null;
+        this.body = null;
+        this.currentMimePartStream = null;
+        this.linebuf.clear();
+        this.inbuffer.reuse(instream);
+        this.dataStream = new LineReaderInputStreamAdaptor(
+                inbuffer,
+                config.getMaxLineLen());
+    }
+
     public void stop() {
         stopSoft();
         inbuffer.release();
-        getBufferRecycler().releaseByteBuffer(0, tmpbuf);
+        if (tmpbuf != null) {
+            getBufferRecycler().releaseByteBuffer(0, tmpbuf);
+            tmpbuf = null;
+        }
     }
 
     public void stopSoft() {
@@ -415,16 +439,28 @@ class MimeEntity implements EntityStateMachine {
         // optimize nesting of streams returning the "lower" stream instead of
         // always return dataStream (that would add a LineReaderInputStreamAdaptor in the chain)
         InputStream instream = currentMimePartStream != null ? currentMimePartStream : inbuffer;
-        instream = decodedStream(instream);
+        instream = decodedStream(instream, false);
         return nextMimeEntity(EntityState.T_START_MESSAGE, EntityState.T_END_MESSAGE, instream);
     }
 
-    private InputStream decodedStream(InputStream instream) {
+    /**
+     * @param identity whether reading content that has no transfer encoding
+     *            is reported to the instrumentation.
+     */
+    private InputStream decodedStream(InputStream instream, boolean identity) {
         String transferEncoding = body.getTransferEncoding();
+        boolean decoding = true;
         if (MimeUtil.isBase64Encoding(transferEncoding)) {
             instream = new Base64InputStream(instream, monitor);
         } else if (MimeUtil.isQuotedPrintableEncoded(transferEncoding)) {
             instream = new QuotedPrintableInputStream(instream, monitor);
+        } else {
+            decoding = identity;
+        }
+        ParserInstrumentation instrumentation = config.getInstrumentation();
+        if (instrumentation != null && decoding) {
+            instream = new InstrumentedInputStream(instream, instrumentation,
+                    transferEncoding != null ? transferEncoding : "7bit");
         }
         return instream;
     }
@@ -503,11 +539,24 @@ class MimeEntity implements EntityStateMachine {
      * @see org.apache.james.mime4j.stream.EntityStateMachine#getContentStream()
      */
     public InputStream getContentStream() {
+        return contentStream(true);
+    }
+
+    /**
+     * @param instrumented whether limit violations are reported from the
+     *            returned stream, false when it gets wrapped by a stream
+     *            reporting them.
+     */
+    private InputStream contentStream(boolean instrumented) {
         switch (state) {
         case T_START_MULTIPART:
         case T_PREAMBLE:
         case T_EPILOGUE:
         case T_BODY:
+            ParserInstrumentation instrumentation = config.getInstrumentation();
+            if (instrumentation != null && instrumented) {
+                return new InstrumentedInputStream(getLimitedContentStream(), instrumentation, null);
+            }
             return getLimitedContentStream();
         default:
             throw new IllegalStateException("Invalid state: " + stateToString(state));
@@ -518,7 +567,7 @@ class MimeEntity implements EntityStateMachine {
      * @see org.apache.james.mime4j.stream.EntityStateMachine#getDecodedContentStream()
      */
     public InputStream getDecodedContentStream() throws IllegalStateException {
-        return decodedStream(getContentStream());
+        return decodedStream(contentStream(false), true);
     }
 
     @Override
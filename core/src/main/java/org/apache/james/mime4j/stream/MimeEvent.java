@@ -0,0 +1,94 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.stream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An event of a parsed MIME stream: either a change of {@link EntityState},
+ * or a chunk of the content of the current entity. Events are immutable and
+ * do not depend on the parser once created.
+ */
+public final class MimeEvent {
+
+    private final EntityState state;
+    private final Field field;
+    private final BodyDescriptor bodyDescriptor;
+    private final ByteBuffer content;
+
+    MimeEvent(EntityState state, Field field, BodyDescriptor bodyDescriptor, ByteBuffer content) {
+        this.state = state;
+        this.field = field;
+        this.bodyDescriptor = bodyDescriptor;
+        this.content = content;
+    }
+
+    /**
+     * The state entered, or for a content chunk the state of the entity the
+     * content belongs to: {@link EntityState#T_BODY},
+     * {@link EntityState#T_PREAMBLE}, {@link EntityState#T_EPILOGUE} or
+     * {@link EntityState#T_RAW_ENTITY}.
+     */
+    public EntityState getState() {
+        return state;
+    }
+
+    /**
+     * The field of a {@link EntityState#T_FIELD} event, <code>null</code>
+     * otherwise.
+     */
+    public Field getField() {
+        return field;
+    }
+
+    /**
+     * The body descriptor of {@link EntityState#T_BODY},
+     * {@link EntityState#T_START_MULTIPART}, {@link EntityState#T_PREAMBLE}
+     * and {@link EntityState#T_EPILOGUE} events and content chunks,
+     * <code>null</code> otherwise.
+     */
+    public BodyDescriptor getBodyDescriptor() {
+        return bodyDescriptor;
+    }
+
+    public boolean isContent() {
+        return content != null;
+    }
+
+    /**
+     * The bytes of a content chunk, as a read-only buffer of its own,
+     * <code>null</code> for other events.
+     */
+    public ByteBuffer getContent() {
+        return content != null ? content.asReadOnlyBuffer() : null;
+    }
+
+    @Override
+    public String toString() {
+        if (content != null) {
+            return state + " content [" + content.remaining() + " bytes]";
+        } else if (field != null) {
+            return state + " " + field;
+        } else {
+            return state.toString();
+        }
+    }
+
+}
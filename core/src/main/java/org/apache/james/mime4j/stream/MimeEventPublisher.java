@@ -0,0 +1,327 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.stream;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.james.mime4j.codec.DecodeMonitor;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * <p>
+ * Publishes the {@link MimeEvent}s of a message published as a sequence of
+ * <code>ByteBuffer</code>s, parsing it with a {@link MimePushParser} as the
+ * buffers arrive.
+ * </p>
+ * <pre>
+ *      Publisher&lt;MimeEvent&gt; events = new MimeEventPublisher(bytes, config);
+ *      events.subscribe(subscriber);
+ * </pre>
+ * <p>
+ * Back-pressure is propagated: a buffer is only requested from upstream once
+ * the events of the previous one have all been delivered and the subscriber
+ * still has demand. Memory use is thus bounded by the size of the upstream
+ * buffers, whatever the size of the message, and a slow subscriber slows the
+ * upstream down. Content chunks are copied out of the upstream buffers,
+ * which can be reused as soon as they have been handed over. Signals to the
+ * subscriber are serialized, from whichever thread has made progress
+ * possible.
+ * </p>
+ * <p>
+ * The message can only be consumed once: the publisher accepts a single
+ * subscriber.
+ * </p>
+ * <p>
+ * Upstream and downstream are Reactive Streams publishers and subscribers;
+ * on Java 9 and later, <code>org.reactivestreams.FlowAdapters</code>
+ * converts them to and from <code>java.util.concurrent.Flow</code>. The
+ * <code>org.reactivestreams:reactive-streams</code> dependency of this
+ * library is optional: applications using this class have to declare it.
+ * </p>
+ */
+public class MimeEventPublisher implements Publisher<MimeEvent> {
+
+    private final Publisher<ByteBuffer> upstream;
+    private final MimeConfig config;
+    private final DecodeMonitor monitor;
+    private final AtomicBoolean subscribed;
+
+    private volatile RecursionMode recursionMode = RecursionMode.M_RECURSE;
+
+    public MimeEventPublisher(
+            final Publisher<ByteBuffer> upstream,
+            final MimeConfig config,
+            final DecodeMonitor monitor) {
+        if (upstream == null) {
+            throw new IllegalArgumentException("Upstream publisher may not be null");
+        }
+        this.upstream = upstream;
+        this.config = config != null ? config : MimeConfig.DEFAULT;
+        this.monitor = monitor;
+        this.subscribed = new AtomicBoolean();
+    }
+
+    public MimeEventPublisher(final Publisher<ByteBuffer> upstream, final MimeConfig config) {
+        this(upstream, config, null);
+    }
+
+    public MimeEventPublisher(final Publisher<ByteBuffer> upstream) {
+        this(upstream, null, null);
+    }
+
+    public RecursionMode getRecursionMode() {
+        return recursionMode;
+    }
+
+    /**
+     * Sets the recursion mode of the parser, to be called before
+     * {@link #subscribe(Subscriber)}.
+     */
+    public void setRecursionMode(RecursionMode recursionMode) {
+        if (recursionMode != null) {
+            this.recursionMode = recursionMode;
+        }
+    }
+
+    public void subscribe(Subscriber<? super MimeEvent> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("Subscriber may not be null");
+        }
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Subscription() {
+
+                public void request(long n) {
+                }
+
+                public void cancel() {
+                }
+
+            });
+            subscriber.onError(new IllegalStateException("Only one subscriber is supported"));
+            return;
+        }
+        upstream.subscribe(new EventSubscription(subscriber, this));
+    }
+
+    private static final class EventSubscription
+            implements Subscriber<ByteBuffer>, Subscription, MimePushParser.Listener {
+
+        private final Subscriber<? super MimeEvent> downstream;
+        private final MimePushParser parser;
+        private final Queue<MimeEvent> queue;
+        private final AtomicLong requested;
+        private final AtomicInteger wip;
+        private final AtomicBoolean pending;
+
+        private volatile Subscription subscription;
+        private volatile boolean done;
+        private volatile boolean cancelled;
+        private volatile Throwable error;
+
+        EventSubscription(Subscriber<? super MimeEvent> downstream, MimeEventPublisher publisher) {
+            this.downstream = downstream;
+            this.parser = new MimePushParser(publisher.config, publisher.monitor, null, this);
+            this.parser.setRecursionMode(publisher.recursionMode);
+            this.queue = new ConcurrentLinkedQueue<>();
+            this.requested = new AtomicLong();
+            this.wip = new AtomicInteger();
+            this.pending = new AtomicBoolean();
+        }
+
+        // upstream signals
+
+        public void onSubscribe(Subscription subscription) {
+            if (this.subscription != null) {
+                subscription.cancel();
+                return;
+            }
+            this.subscription = subscription;
+            downstream.onSubscribe(this);
+        }
+
+        public void onNext(ByteBuffer item) {
+            if (done || cancelled) {
+                return;
+            }
+            try {
+                parser.feed(item);
+            } catch (Exception e) {
+                subscription.cancel();
+                fail(e);
+                return;
+            }
+            pending.set(false);
+            drain();
+        }
+
+        public void onError(Throwable throwable) {
+            if (done) {
+                return;
+            }
+            fail(throwable);
+        }
+
+        public void onComplete() {
+            if (done) {
+                return;
+            }
+            try {
+                parser.endOfInput();
+            } catch (Exception e) {
+                fail(e);
+                return;
+            }
+            done = true;
+            drain();
+        }
+
+        // downstream requests
+
+        public void request(long n) {
+            if (n <= 0) {
+                subscription.cancel();
+                fail(new IllegalArgumentException("Non-positive request: " + n));
+                return;
+            }
+            for (;;) {
+                long current = requested.get();
+                long next = current + n;
+                if (next < 0) {
+                    next = Long.MAX_VALUE;
+                }
+                if (requested.compareAndSet(current, next)) {
+                    break;
+                }
+            }
+            drain();
+        }
+
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                subscription.cancel();
+            }
+        }
+
+        // parser events
+
+        public void event(MimePushParser parser, EntityState state) {
+            Field field = state == EntityState.T_FIELD ? parser.getField() : null;
+            queue.offer(new MimeEvent(state, field, bodyDescriptor(state), null));
+        }
+
+        public void content(MimePushParser parser, ByteBuffer chunk) {
+            ByteBuffer copy = ByteBuffer.allocate(chunk.remaining());
+            copy.put(chunk);
+            copy.flip();
+            EntityState state = parser.getState();
+            queue.offer(new MimeEvent(state, null, bodyDescriptor(state), copy));
+        }
+
+        private BodyDescriptor bodyDescriptor(EntityState state) {
+            switch (state) {
+            case T_BODY:
+            case T_START_MULTIPART:
+            case T_PREAMBLE:
+            case T_EPILOGUE:
+                return parser.getBodyDescriptor();
+            default:
+                return null;
+            }
+        }
+
+        private void fail(Throwable throwable) {
+            if (error == null) {
+                error = throwable;
+            }
+            done = true;
+            drain();
+        }
+
+        /**
+         * Delivers queued events as long as there is demand, and asks upstream
+         * for another buffer once the queue is empty. Only one thread runs the
+         * loop at a time, the others leave their work to it.
+         */
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            for (;;) {
+                long demand = requested.get();
+                long emitted = 0;
+                while (emitted != demand) {
+                    if (terminate()) {
+                        return;
+                    }
+                    MimeEvent event = queue.poll();
+                    if (event == null) {
+                        break;
+                    }
+                    downstream.onNext(event);
+                    emitted++;
+                }
+                if (terminate()) {
+                    return;
+                }
+                if (emitted != 0 && demand != Long.MAX_VALUE) {
+                    demand = requested.addAndGet(-emitted);
+                }
+                if (demand > 0 && queue.isEmpty() && !done && pending.compareAndSet(false, true)) {
+                    subscription.request(1);
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        private boolean terminate() {
+            if (cancelled) {
+                queue.clear();
+                return true;
+            }
+            Throwable throwable = error;
+            if (throwable != null) {
+                cancelled = true;
+                queue.clear();
+                downstream.onError(throwable);
+                return true;
+            }
+            if (done && queue.isEmpty()) {
+                cancelled = true;
+                downstream.onComplete();
+                return true;
+            }
+            return false;
+        }
+
+    }
+
+}
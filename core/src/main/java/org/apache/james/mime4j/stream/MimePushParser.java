@@ -0,0 +1,1070 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.stream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+import org.apache.james.mime4j.MimeException;
+import org.apache.james.mime4j.MimeIOException;
+import org.apache.james.mime4j.codec.ContentDecoder;
+import org.apache.james.mime4j.codec.DecodeMonitor;
+import org.apache.james.mime4j.io.MaxContentLengthLimitException;
+import org.apache.james.mime4j.io.MaxHeaderLimitException;
+import org.apache.james.mime4j.io.MaxLineLimitException;
+import org.apache.james.mime4j.util.ByteArrayBuffer;
+import org.apache.james.mime4j.util.CharsetUtil;
+import org.apache.james.mime4j.util.MimeUtil;
+import org.apache.james.mime4j.util.RecycledByteArrayBuffer;
+
+/**
+ * <p>
+ * Push based counterpart of {@link MimeTokenStream}. Instead of pulling the
+ * message from a blocking <code>InputStream</code>, the parser is handed the
+ * bytes as they arrive with {@link #feed(ByteBuffer)} and is told about the
+ * end of the message with {@link #endOfInput()}. Events are reported to a
+ * {@link Listener} as soon as the bytes they depend on have been fed, so no
+ * thread needs to wait for a message still in transit.
+ * </p>
+ * <pre>
+ *      MimePushParser parser = new MimePushParser(config, new MimePushParser.Listener() {
+ *          public void event(MimePushParser parser, EntityState state) {
+ *              if (state == EntityState.T_FIELD) {
+ *                  System.out.println("Header field detected: " + parser.getField());
+ *              }
+ *          }
+ *          public void content(MimePushParser parser, ByteBuffer chunk) {
+ *              // part of the content of the current T_BODY
+ *          }
+ *      });
+ *      // for each chunk received
+ *      parser.feed(chunk);
+ *      // once the message is complete
+ *      parser.endOfInput();
+ * </pre>
+ * <p>
+ * The sequence of states is the one {@link MimeTokenStream} goes through for
+ * the same message, ending with {@link EntityState#T_END_OF_STREAM}. The
+ * content of {@link EntityState#T_BODY}, {@link EntityState#T_PREAMBLE},
+ * {@link EntityState#T_EPILOGUE} and {@link EntityState#T_RAW_ENTITY} entities
+ * follows their event as zero or more chunks, as they appear in the message,
+ * without any transfer decoding. Like {@link MimeTokenStream}, the parser
+ * decodes an embedded message with a base64 or quoted-printable transfer
+ * encoding as it arrives, and parses the decoded bytes or, in
+ * {@link RecursionMode#M_RAW}, reports them as the content of the
+ * {@link EntityState#T_RAW_ENTITY}.
+ * </p>
+ * <p>
+ * The state kept between two chunks is bounded: the header line being read
+ * (up to {@link MimeConfig#getMaxLineLen()}), the field being built (up to
+ * {@link MimeConfig#getMaxHeaderLen()}), the first bytes of a line which may
+ * still turn out to be a boundary delimiter, and a small frame per enclosing
+ * entity, including the few bytes held back by the decoder of an encoded
+ * message. Content is passed on as soon as it is known not to be part of a
+ * delimiter and is never accumulated.
+ * </p>
+ * <p>
+ * With strict parsing, a multipart entity ending without its close delimiter
+ * is rejected with a {@link MimeIOException} as soon as its end is known,
+ * that is when the delimiter of an enclosing entity or the end of the input
+ * is reached, as {@link MimeTokenStream} does.
+ * </p>
+ * <p>
+ * Instances are not thread safe. Once {@link #endOfInput()} has been called,
+ * or after a failure, {@link #reset()} makes the parser ready for another
+ * message.
+ * </p>
+ */
+public class MimePushParser {
+
+    /**
+     * Receives the events of a {@link MimePushParser}. The accessors of the
+     * parser reflect the reported state for the duration of the call.
+     */
+    public interface Listener {
+
+        /**
+         * Called when the parser enters the given state.
+         */
+        void event(MimePushParser parser, EntityState state) throws MimeException, IOException;
+
+        /**
+         * Called with a chunk of the content of the current entity. The chunk
+         * is only valid for the duration of the call.
+         */
+        void content(MimePushParser parser, ByteBuffer chunk) throws MimeException, IOException;
+
+    }
+
+    private enum Phase {
+        HEADER, BODY, MULTIPART, EPILOGUE, MESSAGE, RAW
+    }
+
+    private enum LineMode {
+        /** At the start of a line which may still be a boundary delimiter */
+        START,
+        /** Within a header line */
+        HEADER,
+        /** Within a content line */
+        CONTENT,
+        /** Within a boundary delimiter line */
+        DELIMITER
+    }
+
+    private static final class Entity {
+
+        private final BodyDescriptorBuilder builder;
+        private final EntityState endState;
+        private Phase phase;
+        private BodyDescriptor body;
+        private byte[] boundary;
+        private boolean preamble;
+        private boolean epilogue;
+        private ContentDecoder decoder;
+        private MimePushParser nested;
+
+        Entity(BodyDescriptorBuilder builder, EntityState endState, Phase phase) {
+            this.builder = builder;
+            this.endState = endState;
+            this.phase = phase;
+        }
+
+    }
+
+    private static final int NO_MATCH = 0;
+    private static final int MATCH = 1;
+    private static final int UNDECIDED = 2;
+
+    private static final byte[] CRLF = { '\r', '\n' };
+
+    private final MimeConfig config;
+    private final DecodeMonitor monitor;
+    private final FieldBuilder fieldBuilder;
+    private final BodyDescriptorBuilder bodyDescBuilder;
+    private final Listener listener;
+    private final ArrayDeque<Entity> entities = new ArrayDeque<>();
+    private final ByteArrayBuffer linebuf;
+    private final byte[] outbuf;
+    private final ByteBuffer out;
+
+    private RecursionMode recursionMode = RecursionMode.M_RECURSE;
+    private EntityState state;
+    private Field field;
+    private BodyDescriptor body;
+    private boolean started;
+    private boolean ended;
+
+    private LineMode lineMode = LineMode.START;
+    private int terminator;
+    private boolean cr;
+    private Entity delimited;
+    private boolean dash;
+    private boolean lastPart;
+    private byte last;
+    private int trailing;
+    private boolean fieldPending;
+    private int headerCount;
+    private long contentLength;
+    private int lineNumber;
+    private int outlen;
+    private byte[] inbuf;
+    private ByteBuffer decoded;
+    private boolean embedded;
+
+    public MimePushParser(final Listener listener) {
+        this(null, listener);
+    }
+
+    public MimePushParser(final MimeConfig config, final Listener listener) {
+        this(config, null, null, null, listener);
+    }
+
+    public MimePushParser(
+            final MimeConfig config,
+            final DecodeMonitor monitor,
+            final BodyDescriptorBuilder bodyDescBuilder,
+            final Listener listener) {
+        this(config, monitor, null, bodyDescBuilder, listener);
+    }
+
+    public MimePushParser(
+            final MimeConfig config,
+            final DecodeMonitor monitor,
+            final FieldBuilder fieldBuilder,
+            final BodyDescriptorBuilder bodyDescBuilder,
+            final Listener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener may not be null");
+        }
+        this.config = config != null ? config : MimeConfig.DEFAULT;
+        this.fieldBuilder = fieldBuilder != null ? fieldBuilder :
+            new DefaultFieldBuilder(this.config.getMaxHeaderLen());
+        this.monitor = monitor != null ? monitor :
+            (this.config.isStrictParsing() ? DecodeMonitor.STRICT : DecodeMonitor.SILENT);
+        this.bodyDescBuilder = bodyDescBuilder != null ? bodyDescBuilder :
+            new FallbackBodyDescriptorBuilder();
+        this.listener = listener;
+        this.linebuf = new ByteArrayBuffer(128);
+        this.outbuf = new byte[4096];
+        this.out = ByteBuffer.wrap(outbuf);
+        this.lineNumber = 1;
+    }
+
+    public MimeConfig getConfig() {
+        return config;
+    }
+
+    public RecursionMode getRecursionMode() {
+        return recursionMode;
+    }
+
+    /**
+     * Sets the recursion mode used for the entities which have not been
+     * started yet.
+     */
+    public void setRecursionMode(RecursionMode mode) {
+        if (mode != null) {
+            this.recursionMode = mode;
+            Entity entity = entities.peekLast();
+            if (entity != null && entity.nested != null) {
+                entity.nested.setRecursionMode(mode);
+            }
+        }
+    }
+
+    /**
+     * Returns the state last reported to the listener.
+     */
+    public EntityState getState() {
+        return state;
+    }
+
+    /**
+     * This method is valid, if {@link #getState()} returns
+     * {@link EntityState#T_FIELD}.
+     */
+    public Field getField() {
+        if (state != EntityState.T_FIELD) {
+            throw new IllegalStateException("Invalid state: " + MimeEntity.stateToString(state));
+        }
+        return field;
+    }
+
+    /**
+     * This method is valid, if {@link #getState()} returns
+     * {@link EntityState#T_BODY}, {@link EntityState#T_START_MULTIPART},
+     * {@link EntityState#T_PREAMBLE} or {@link EntityState#T_EPILOGUE}.
+     */
+    public BodyDescriptor getBodyDescriptor() {
+        switch (state) {
+        case T_BODY:
+        case T_START_MULTIPART:
+        case T_PREAMBLE:
+        case T_EPILOGUE:
+            return body;
+        default:
+            throw new IllegalStateException("Invalid state: " + MimeEntity.stateToString(state));
+        }
+    }
+
+    /**
+     * Parses the remaining bytes of the given buffer, which is left at its
+     * limit.
+     */
+    public void feed(ByteBuffer src) throws MimeException, IOException {
+        begin();
+        if (src.hasArray()) {
+            int off = src.arrayOffset() + src.position();
+            int len = src.remaining();
+            src.position(src.limit());
+            process(src.array(), off, len);
+        } else {
+            if (inbuf == null) {
+                inbuf = new byte[4096];
+            }
+            while (src.hasRemaining()) {
+                int len = Math.min(src.remaining(), inbuf.length);
+                src.get(inbuf, 0, len);
+                process(inbuf, 0, len);
+            }
+        }
+        flush();
+    }
+
+    public void feed(byte[] b, int off, int len) throws MimeException, IOException {
+        begin();
+        process(b, off, len);
+        flush();
+    }
+
+    /**
+     * Signals that the whole message has been fed. The entities still open
+     * are closed, as the end of an <code>InputStream</code> would close them,
+     * and {@link EntityState#T_END_OF_STREAM} is reported.
+     */
+    public void endOfInput() throws MimeException, IOException {
+        begin();
+        ended = true;
+        endLine();
+        if (trailing == 1) {
+            write(CRLF, 1, 1);
+        }
+        trailing = 0;
+        writeTerminator();
+        while (!entities.isEmpty()) {
+            close(true);
+        }
+        flush();
+        report(EntityState.T_END_OF_STREAM);
+    }
+
+    /**
+     * Abandons the message being parsed, if any, so that the parser can be
+     * fed another one. The configuration, decode monitor and recursion mode
+     * are unchanged.
+     */
+    public void reset() {
+        entities.clear();
+        linebuf.clear();
+        fieldBuilder.reset();
+        bodyDescBuilder.reset();
+        state = null;
+        field = null;
+        body = null;
+        started = false;
+        ended = false;
+        lineMode = LineMode.START;
+        terminator = 0;
+        cr = false;
+        delimited = null;
+        trailing = 0;
+        fieldPending = false;
+        headerCount = 0;
+        contentLength = 0;
+        lineNumber = 1;
+        outlen = 0;
+    }
+
+    private void begin() throws MimeException, IOException {
+        if (ended) {
+            throw new IllegalStateException("End of input already reached");
+        }
+        if (started) {
+            return;
+        }
+        started = true;
+        bodyDescBuilder.reset();
+        Entity root = new Entity(bodyDescBuilder, EntityState.T_END_MESSAGE, Phase.HEADER);
+        entities.add(root);
+        report(EntityState.T_START_MESSAGE);
+        report(EntityState.T_START_HEADER);
+        String contentType = embedded ? null : config.getHeadlessParsing();
+        if (contentType != null) {
+            RawField rawContentType = new RawField("Content-Type", contentType);
+            Field parsed = bodyDescBuilder.addField(rawContentType);
+            field = parsed != null ? parsed : rawContentType;
+            headerCount++;
+            report(EntityState.T_FIELD);
+            endHeader();
+        }
+    }
+
+    private void process(byte[] b, int off, int len) throws MimeException, IOException {
+        int end = off + len;
+        int i = off;
+        while (i < end) {
+            switch (lineMode) {
+            case CONTENT:
+                i = contentLine(b, i, end);
+                break;
+            case HEADER:
+                i = headerLine(b, i, end);
+                break;
+            case DELIMITER:
+                i = delimiterLine(b, i, end);
+                break;
+            default:
+                byte ch = b[i++];
+                linebuf.append(ch);
+                if (ch == '\n') {
+                    lineNumber++;
+                }
+                int match = classify(false);
+                if (match == NO_MATCH && trailing == 1 && ch == '\r' && linebuf.length() == 1) {
+                    match = UNDECIDED;
+                }
+                if (match == MATCH) {
+                    endTrailing(true);
+                    startDelimiter();
+                    if (ch == '\n') {
+                        endDelimiter(true);
+                    }
+                } else if (match == NO_MATCH) {
+                    endTrailing(false);
+                    startLine(ch == '\n');
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles the line cut short by the end of the input, if any.
+     */
+    private void endLine() throws MimeException, IOException {
+        switch (lineMode) {
+        case START:
+            if (linebuf.length() > 0) {
+                if (classify(true) == MATCH) {
+                    endTrailing(true);
+                    startDelimiter();
+                    endDelimiter(false);
+                } else {
+                    endTrailing(false);
+                    startLine(false);
+                    endLine();
+                }
+            }
+            break;
+        case HEADER:
+            headerLine();
+            break;
+        case DELIMITER:
+            endDelimiter(false);
+            break;
+        default:
+            lineMode = LineMode.START;
+            if (cr) {
+                cr = false;
+                write(CRLF, 0, 1);
+            }
+        }
+    }
+
+    /**
+     * Mimics {@link MimeEntity} with the line following the last delimiter of
+     * a multipart entity. The bare LF ending the delimiter line is only
+     * skipped when more bytes follow within the enclosing entity, otherwise
+     * it makes up the epilogue. <code>trailing</code> is 1 right after such a
+     * delimiter line and 2 after an empty line following it.
+     */
+    private void endTrailing(boolean delimiter) throws MimeException, IOException {
+        if (trailing == 0) {
+            return;
+        }
+        if (delimiter) {
+            if (trailing == 2) {
+                write(CRLF, 1, 1);
+            }
+            trailing = 0;
+        } else {
+            int len = linebuf.length();
+            boolean empty = linebuf.byteAt(len - 1) == '\n'
+                && (len == 1 || (len == 2 && linebuf.byteAt(0) == '\r'));
+            trailing = trailing == 1 && empty ? 2 : 0;
+        }
+    }
+
+    /**
+     * Tells whether the line buffered so far is the delimiter line of one of
+     * the enclosing multipart entities. The outermost entity wins, as its
+     * delimiter ends the content of all the entities it contains.
+     */
+    private int classify(boolean eof) {
+        int len = linebuf.length();
+        if (linebuf.byteAt(0) != '-') {
+            return NO_MATCH;
+        }
+        int result = NO_MATCH;
+        Iterator<Entity> iterator = entities.iterator();
+        while (iterator.hasNext()) {
+            Entity entity = iterator.next();
+            if (entity.phase != Phase.MULTIPART) {
+                continue;
+            }
+            int match = matches(entity.boundary, len, eof);
+            if (match == UNDECIDED) {
+                return UNDECIDED;
+            } else if (match == MATCH && result == NO_MATCH) {
+                delimited = entity;
+                result = MATCH;
+            }
+        }
+        return result;
+    }
+
+    private int matches(byte[] boundary, int len, boolean eof) {
+        int n = Math.min(len, boundary.length);
+        for (int i = 0; i < n; i++) {
+            if (linebuf.byteAt(i) != boundary[i]) {
+                return NO_MATCH;
+            }
+        }
+        if (len == boundary.length) {
+            return eof ? MATCH : UNDECIDED;
+        } else if (len < boundary.length) {
+            return eof ? NO_MATCH : UNDECIDED;
+        }
+        char ch = (char) linebuf.byteAt(boundary.length);
+        if (CharsetUtil.isWhitespace(ch)) {
+            return MATCH;
+        } else if (ch != '-') {
+            return NO_MATCH;
+        } else if (len > boundary.length + 1) {
+            return linebuf.byteAt(boundary.length + 1) == '-' ? MATCH : NO_MATCH;
+        } else {
+            return eof ? NO_MATCH : UNDECIDED;
+        }
+    }
+
+    /**
+     * Handles the line buffered so far once it is known not to be a
+     * delimiter.
+     */
+    private void startLine(boolean complete) throws MimeException, IOException {
+        Entity entity = entities.getLast();
+        if (entity.phase == Phase.HEADER) {
+            lineMode = LineMode.HEADER;
+            checkLineLength();
+            if (complete) {
+                headerLine();
+            }
+            return;
+        }
+        if (entity.phase == Phase.MULTIPART && !entity.preamble) {
+            entity.preamble = true;
+            body = entity.body;
+            report(EntityState.T_PREAMBLE);
+        }
+        writeTerminator();
+        int len = linebuf.length();
+        if (complete) {
+            len--;
+            if (len > 0 && linebuf.byteAt(len - 1) == '\r') {
+                len--;
+                terminator = 2;
+            } else {
+                terminator = 1;
+            }
+            lineMode = LineMode.START;
+        } else {
+            if (linebuf.byteAt(len - 1) == '\r') {
+                len--;
+                cr = true;
+            }
+            lineMode = LineMode.CONTENT;
+        }
+        write(linebuf.buffer(), 0, len);
+        linebuf.clear();
+    }
+
+    private int contentLine(byte[] b, int off, int end) throws MimeException, IOException {
+        int i = off;
+        while (i < end && b[i] != '\n') {
+            i++;
+        }
+        if (i < end) {
+            lineNumber++;
+            lineMode = LineMode.START;
+            if (i == off) {
+                terminator = cr ? 2 : 1;
+                cr = false;
+            } else {
+                if (cr) {
+                    cr = false;
+                    write(CRLF, 0, 1);
+                }
+                if (b[i - 1] == '\r') {
+                    write(b, off, i - off - 1);
+                    terminator = 2;
+                } else {
+                    write(b, off, i - off);
+                    terminator = 1;
+                }
+            }
+            return i + 1;
+        }
+        if (cr) {
+            cr = false;
+            write(CRLF, 0, 1);
+        }
+        if (b[end - 1] == '\r') {
+            write(b, off, end - off - 1);
+            cr = true;
+        } else {
+            write(b, off, end - off);
+        }
+        return end;
+    }
+
+    private int headerLine(byte[] b, int off, int end) throws MimeException, IOException {
+        int i = off;
+        while (i < end && b[i] != '\n') {
+            i++;
+        }
+        if (i < end) {
+            linebuf.append(b, off, i + 1 - off);
+            lineNumber++;
+            checkLineLength();
+            headerLine();
+            return i + 1;
+        }
+        linebuf.append(b, off, end - off);
+        checkLineLength();
+        return end;
+    }
+
+    private void checkLineLength() throws MimeException {
+        int maxLineLen = config.getMaxLineLen();
+        if (maxLineLen > 0 && linebuf.length() >= maxLineLen) {
+            throw new MimeException(new MaxLineLimitException(
+                    "Maximum line length limit (" + maxLineLen + ") exceeded"));
+        }
+    }
+
+    /**
+     * Handles a header line, complete or cut short by the end of the input.
+     */
+    private void headerLine() throws MimeException, IOException {
+        lineMode = LineMode.START;
+        int len = linebuf.length();
+        if (len > 0 && linebuf.byteAt(len - 1) == '\n') {
+            len--;
+        }
+        if (len > 0 && linebuf.byteAt(len - 1) == '\r') {
+            len--;
+        }
+        if (len == 0) {
+            linebuf.clear();
+            if (headerCount == 0) {
+                // like MimeEntity, builds a field out of an empty header
+                startField();
+                if (!endField()) {
+                    malformedField();
+                    return;
+                }
+            } else if (fieldPending && !endField()) {
+                malformedField();
+                return;
+            }
+            endHeader();
+            return;
+        }
+        int ch = linebuf.byteAt(0);
+        if (fieldPending && (ch == CharsetUtil.SP || ch == CharsetUtil.HT)) {
+            fieldBuilder.append(linebuf);
+            linebuf.clear();
+            return;
+        }
+        if (fieldPending && !endField()) {
+            malformedField();
+            return;
+        }
+        startField();
+        fieldBuilder.append(linebuf);
+        linebuf.clear();
+    }
+
+    private void startField() throws MimeException {
+        int maxHeaderCount = config.getMaxHeaderCount();
+        if (maxHeaderCount > 0 && headerCount >= maxHeaderCount) {
+            throw new MaxHeaderLimitException("Maximum header limit (" + maxHeaderCount + ") exceeded");
+        }
+        headerCount++;
+        fieldBuilder.reset();
+        fieldPending = true;
+    }
+
+    /**
+     * Reports the pending field.
+     *
+     * @return <code>false</code> if the field is malformed and should be
+     *   treated as the start of the body.
+     */
+    private boolean endField() throws MimeException, IOException {
+        fieldPending = false;
+        try {
+            RawField rawfield = fieldBuilder.build();
+            if (rawfield == null) {
+                return true;
+            }
+            if (rawfield.getDelimiterIdx() != rawfield.getName().length()) {
+                monitor(Event.OBSOLETE_HEADER);
+            }
+            Field parsedField = entities.getLast().builder.addField(rawfield);
+            field = parsedField != null ? parsedField : rawfield;
+        } catch (MimeException e) {
+            monitor(Event.INVALID_HEADER);
+            return !config.isMalformedHeaderStartsBody();
+        }
+        report(EntityState.T_FIELD);
+        return true;
+    }
+
+    /**
+     * Ends the header before a malformed field and parses the field again as
+     * the start of the body. Like {@link MimeEntity}, which has already read
+     * it at that point, the line following the field is dropped.
+     */
+    private void malformedField() throws MimeException, IOException {
+        RecycledByteArrayBuffer raw = fieldBuilder.getRaw();
+        byte[] replay = raw != null ? raw.toByteArray() : new byte[0];
+        linebuf.clear();
+        endHeader();
+        process(replay, 0, replay.length);
+    }
+
+    private void endHeader() throws MimeException, IOException {
+        Entity entity = entities.getLast();
+        fieldPending = false;
+        report(EntityState.T_END_HEADER);
+        entity.body = entity.builder.build();
+        body = entity.body;
+        String mimeType = body.getMimeType();
+        if (recursionMode == RecursionMode.M_FLAT) {
+            entity.phase = Phase.BODY;
+            report(EntityState.T_BODY);
+        } else if (MimeUtil.isMultipart(mimeType)) {
+            entity.phase = Phase.MULTIPART;
+            report(EntityState.T_START_MULTIPART);
+            String boundary = body.getBoundary();
+            if (boundary == null) {
+                throw new MimeException("Multipart body does not have a valid boundary");
+            }
+            entity.boundary = new byte[boundary.length() + 2];
+            entity.boundary[0] = '-';
+            entity.boundary[1] = '-';
+            for (int i = 0; i < boundary.length(); i++) {
+                entity.boundary[i + 2] = (byte) boundary.charAt(i);
+            }
+        } else if (recursionMode != RecursionMode.M_NO_RECURSE
+                && MimeUtil.isMessage(mimeType)) {
+            entity.phase = Phase.MESSAGE;
+            String transferEncoding = body.getTransferEncoding();
+            if (MimeUtil.isBase64Encoding(transferEncoding)
+                    || MimeUtil.isQuotedPrintableEncoded(transferEncoding)) {
+                startEncodedMessage(entity, ContentDecoder.forTransferEncoding(transferEncoding, monitor));
+            } else {
+                startEntity(entity, EntityState.T_START_MESSAGE, EntityState.T_END_MESSAGE);
+            }
+        } else {
+            entity.phase = Phase.BODY;
+            report(EntityState.T_BODY);
+        }
+        contentLength = 0;
+    }
+
+    private void startEntity(Entity parent, EntityState startState, EntityState endState)
+            throws MimeException, IOException {
+        BodyDescriptorBuilder builder = parent.builder.newChild();
+        if (recursionMode == RecursionMode.M_RAW) {
+            entities.add(new Entity(builder, null, Phase.RAW));
+            contentLength = 0;
+            report(EntityState.T_RAW_ENTITY);
+        } else {
+            entities.add(new Entity(builder, endState, Phase.HEADER));
+            headerCount = 0;
+            fieldPending = false;
+            builder.reset();
+            report(startState);
+            report(EntityState.T_START_HEADER);
+        }
+    }
+
+    /**
+     * Starts the message embedded in the given entity, whose content is
+     * passed through the given decoder. Except in raw mode, the decoded
+     * bytes are parsed by a nested parser whose events are reported as ours.
+     */
+    private void startEncodedMessage(Entity parent, ContentDecoder decoder)
+            throws MimeException, IOException {
+        BodyDescriptorBuilder builder = parent.builder.newChild();
+        if (recursionMode == RecursionMode.M_RAW) {
+            Entity entity = new Entity(builder, null, Phase.RAW);
+            entity.decoder = decoder;
+            entities.add(entity);
+            contentLength = 0;
+            report(EntityState.T_RAW_ENTITY);
+        } else {
+            MimePushParser nested = new MimePushParser(config, monitor, fieldBuilder, builder, new NestedListener());
+            nested.recursionMode = recursionMode;
+            nested.embedded = true;
+            parent.decoder = decoder;
+            parent.nested = nested;
+            nested.begin();
+        }
+    }
+
+    private void startDelimiter() throws MimeException, IOException {
+        terminator = 0;
+        lineMode = LineMode.DELIMITER;
+        lastPart = false;
+        dash = false;
+        last = 0;
+        int len = linebuf.length();
+        for (int i = delimited.boundary.length; i < len; i++) {
+            byte ch = linebuf.byteAt(i);
+            if (ch != '\n') {
+                delimiter(ch);
+            }
+        }
+        linebuf.clear();
+    }
+
+    private int delimiterLine(byte[] b, int off, int end) throws MimeException, IOException {
+        for (int i = off; i < end; i++) {
+            byte ch = b[i];
+            if (ch == '\n') {
+                lineNumber++;
+                endDelimiter(true);
+                return i + 1;
+            }
+            delimiter(ch);
+        }
+        return end;
+    }
+
+    private void delimiter(byte ch) {
+        last = ch;
+        if (ch == '-') {
+            if (dash) {
+                lastPart = true;
+            }
+            dash = !dash;
+        } else {
+            dash = false;
+        }
+    }
+
+    /**
+     * Closes the entities within the one whose delimiter has been read, then
+     * starts its next part or its epilogue.
+     */
+    private void endDelimiter(boolean lf) throws MimeException, IOException {
+        lineMode = LineMode.START;
+        Entity entity = delimited;
+        delimited = null;
+        while (entities.getLast() != entity) {
+            close(false);
+        }
+        entity.preamble = true;
+        if (lastPart) {
+            trailing = lf && last != '\r' ? 1 : 0;
+            entity.phase = Phase.EPILOGUE;
+            body = entity.body;
+            contentLength = 0;
+        } else {
+            startEntity(entity, EntityState.T_START_BODYPART, EntityState.T_END_BODYPART);
+        }
+    }
+
+    /**
+     * Closes the innermost entity, whose content has come to an end, either
+     * at the end of the input or at the delimiter of an enclosing entity.
+     */
+    private void close(boolean eof) throws MimeException, IOException {
+        Entity entity = entities.getLast();
+        switch (entity.phase) {
+        case HEADER:
+            monitor(Event.HEADERS_PREMATURE_END);
+            if (headerCount == 0) {
+                startField();
+            }
+            if (fieldPending && !endField()) {
+                malformedField();
+                endLine();
+                if (eof) {
+                    writeTerminator();
+                } else {
+                    terminator = 0;
+                }
+            } else {
+                endHeader();
+            }
+            return;
+        case MULTIPART:
+            if (config.isStrictParsing()) {
+                throw new MimeIOException(new MimeException("Unexpected end of stream"));
+            }
+            body = entity.body;
+            if (!entity.preamble) {
+                entity.preamble = true;
+                report(EntityState.T_PREAMBLE);
+            }
+            monitor(Event.MIME_BODY_PREMATURE_END);
+            report(EntityState.T_END_MULTIPART);
+            break;
+        case EPILOGUE:
+            flush();
+            report(EntityState.T_END_MULTIPART);
+            break;
+        default:
+            if (entity.decoder != null) {
+                endDecoding(entity);
+            }
+            flush();
+        }
+        entities.removeLast();
+        if (entity.endState != null) {
+            report(entity.endState);
+        }
+    }
+
+    private void writeTerminator() throws MimeException, IOException {
+        if (terminator > 0) {
+            write(CRLF, 2 - terminator, terminator);
+            terminator = 0;
+        }
+    }
+
+    private void write(byte[] b, int off, int len) throws MimeException, IOException {
+        if (len == 0) {
+            return;
+        }
+        Entity entity = entities.getLast();
+        if (entity.decoder != null) {
+            decode(entity, b, off, len);
+            return;
+        }
+        if (entity.phase == Phase.EPILOGUE && !entity.epilogue) {
+            entity.epilogue = true;
+            body = entity.body;
+            report(EntityState.T_EPILOGUE);
+        }
+        append(b, off, len);
+    }
+
+    private void append(byte[] b, int off, int len) throws MimeException, IOException {
+        long maxContentLen = config.getMaxContentLen();
+        contentLength += len;
+        if (maxContentLen >= 0 && contentLength > maxContentLen) {
+            throw new MaxContentLengthLimitException("Input stream limit exceeded. Limit was " + maxContentLen);
+        }
+        while (len > 0) {
+            int chunk = Math.min(len, outbuf.length - outlen);
+            System.arraycopy(b, off, outbuf, outlen, chunk);
+            outlen += chunk;
+            off += chunk;
+            len -= chunk;
+            if (outlen == outbuf.length) {
+                flush();
+            }
+        }
+    }
+
+    private void decode(Entity entity, byte[] b, int off, int len) throws MimeException, IOException {
+        ByteBuffer src = ByteBuffer.wrap(b, off, len);
+        ByteBuffer dst = decodeBuffer();
+        do {
+            dst.clear();
+            entity.decoder.decode(src, dst);
+            dst.flip();
+            decoded(entity, dst);
+        } while (src.hasRemaining());
+    }
+
+    /**
+     * Passes on the bytes still held by the decoder of the given entity and
+     * ends the message it contains.
+     */
+    private void endDecoding(Entity entity) throws MimeException, IOException {
+        ByteBuffer dst = decodeBuffer();
+        boolean done;
+        do {
+            dst.clear();
+            done = entity.decoder.finish(dst);
+            dst.flip();
+            decoded(entity, dst);
+        } while (!done);
+        entity.decoder = null;
+        if (entity.nested != null) {
+            MimePushParser nested = entity.nested;
+            entity.nested = null;
+            nested.endOfInput();
+        }
+    }
+
+    private void decoded(Entity entity, ByteBuffer dst) throws MimeException, IOException {
+        if (!dst.hasRemaining()) {
+            return;
+        }
+        if (entity.nested != null) {
+            entity.nested.feed(dst);
+        } else {
+            append(dst.array(), 0, dst.limit());
+        }
+    }
+
+    private ByteBuffer decodeBuffer() {
+        if (decoded == null) {
+            decoded = ByteBuffer.allocate(4096);
+        }
+        return decoded;
+    }
+
+    private void flush() throws MimeException, IOException {
+        if (outlen > 0) {
+            out.clear();
+            out.limit(outlen);
+            outlen = 0;
+            listener.content(this, out);
+        }
+    }
+
+    private void report(EntityState newState) throws MimeException, IOException {
+        flush();
+        state = newState;
+        listener.event(this, newState);
+    }
+
+    private void monitor(Event event) throws MimeException, IOException {
+        if (monitor.isListening()) {
+            String message = event.toString();
+            if (config.isCountLineNumbers()) {
+                message = "Line " + lineNumber + ": " + message;
+            }
+            if (monitor.warn(message, "ignoring")) {
+                throw new MimeParseEventException(event);
+            }
+        }
+    }
+
+    /**
+     * Reports the events of the parser of an encoded message as events of
+     * this parser, except for the end of its input.
+     */
+    private final class NestedListener implements Listener {
+
+        public void event(MimePushParser nested, EntityState newState) throws MimeException, IOException {
+            if (newState != EntityState.T_END_OF_STREAM) {
+                field = nested.field;
+                body = nested.body;
+                report(newState);
+            }
+        }
+
+        public void content(MimePushParser nested, ByteBuffer chunk) throws MimeException, IOException {
+            listener.content(MimePushParser.this, chunk);
+        }
+
+    }
+
+}
@@ -31,6 +31,9 @@ import org.apache.james.mime4j.Charsets;
 import org.apache.james.mime4j.MimeException;
 import org.apache.james.mime4j.codec.DecodeMonitor;
 import org.apache.james.mime4j.io.LineNumberInputStream;
+import org.apache.james.mime4j.io.LineNumberSource;
+import org.apache.james.mime4j.io.PositionInputStream;
+import org.apache.james.mime4j.util.ByteSequence;
 import org.apache.james.mime4j.util.CharsetUtil;
 
 /**
@@ -72,9 +75,13 @@ import org.apache.james.mime4j.util.CharsetUtil;
  * </pre>
  * <p>Instances of {@link MimeTokenStream} are reusable: Invoking the
  * method {@link #parse(InputStream)} resets the token streams internal
- * state. However, they are definitely <em>not</em> thread safe. If you
- * have a multi threaded application, then the suggested use is to have
- * one instance per thread.</p>
+ * state. The top level entity, its line and read buffers, the field builder
+ * and the body descriptor builder are kept from one parse to the next, so a
+ * reused instance parses small messages with little allocation. Call
+ * {@link #reset()} before returning an instance to a pool. However, they
+ * are definitely <em>not</em> thread safe. If you have a multi threaded
+ * application, then the suggested use is to have one instance per thread,
+ * or to take instances from a pool.</p>
  */
 public class MimeTokenStream {
 
@@ -83,11 +90,14 @@ public class MimeTokenStream {
     private final FieldBuilder fieldBuilder;
     private final BodyDescriptorBuilder bodyDescBuilder;
     private final ArrayDeque<EntityStateMachine> entities = new ArrayDeque<>();
+    private final ParserInstrumentation instrumentation;
 
     private EntityState state = EntityState.T_END_OF_STREAM;
     private EntityStateMachine currentStateMachine;
     private RecursionMode recursionMode = RecursionMode.M_RECURSE;
     private MimeEntity rootentity;
+    private PositionInputStream positionStream;
+    private long reportedPosition;
 
     /**
      * Constructs a standard (lax) stream.
@@ -131,6 +141,7 @@ public class MimeTokenStream {
             (this.config.isStrictParsing() ? DecodeMonitor.STRICT : DecodeMonitor.SILENT);
         this.bodyDescBuilder = bodyDescBuilder != null ? bodyDescBuilder :
             new FallbackBodyDescriptorBuilder();
+        this.instrumentation = this.config.getInstrumentation();
     }
 
     /** Instructs the {@code MimeTokenStream} to parse the given streams contents.
@@ -156,6 +167,7 @@ public class MimeTokenStream {
             throw new IllegalArgumentException("Content type may not be null");
         }
         Field newContentType;
+        bodyDescBuilder.reset();
         try {
             RawField rawContentType = new RawField("Content-Type", contentType);
             newContentType = bodyDescBuilder.addField(rawContentType);
@@ -179,11 +191,23 @@ public class MimeTokenStream {
     }
 
     private void doParse(InputStream stream, EntityState start) {
+        LineNumberSource lineSource = null;
+        InputStream instream = stream;
+        if (instrumentation != null) {
+            positionStream = new PositionInputStream(instream);
+            reportedPosition = 0;
+            instream = positionStream;
+            instrumentation.entity(0);
+        }
         if (config.isCountLineNumbers()) {
-            LineNumberInputStream lnstream = new LineNumberInputStream(stream);
+            LineNumberInputStream lnstream = new LineNumberInputStream(instream);
+            lineSource = lnstream;
+            instream = lnstream;
+        }
+        if (rootentity == null) {
             rootentity = new MimeEntity(
-                    lnstream,
-                    lnstream,
+                    lineSource,
+                    instream,
                     config,
                     start,
                     EntityState.T_END_MESSAGE,
@@ -191,15 +215,7 @@ public class MimeTokenStream {
                     fieldBuilder,
                     bodyDescBuilder);
         } else {
-            rootentity = new MimeEntity(
-                    null,
-                    stream,
-                    config,
-                    start,
-                    EntityState.T_END_MESSAGE,
-                    monitor,
-                    fieldBuilder,
-                    bodyDescBuilder);
+            rootentity.reset(lineSource, instream, start);
         }
 
         rootentity.setRecursionMode(recursionMode);
@@ -209,6 +225,28 @@ public class MimeTokenStream {
         state = currentStateMachine.getState();
     }
 
+    /**
+     * <p>Resets the token stream to its initial state, ready for another
+     * call to {@link #parse(InputStream)} or
+     * {@link #parseHeadless(InputStream, String)}. Any parse in progress is
+     * abandoned and the streams it handed out must not be used anymore.</p>
+     * <p>Read buffers go back to the buffer recycler of the current thread
+     * and are picked up again by the next parse; the other internal buffers
+     * are retained. The configuration, decode monitor and recursion mode are
+     * unchanged.</p>
+     */
+    public void reset() {
+        if (rootentity != null) {
+            rootentity.stop();
+        }
+        fieldBuilder.reset();
+        bodyDescBuilder.reset();
+        entities.clear();
+        currentStateMachine = null;
+        positionStream = null;
+        state = EntityState.T_END_OF_STREAM;
+    }
+
     /**
      * Determines if this parser is currently in raw mode.
      *
@@ -371,11 +409,54 @@ public class MimeTokenStream {
         if (state == EntityState.T_END_OF_STREAM  ||  currentStateMachine == null) {
             throw new IllegalStateException("No more tokens are available.");
         }
+        if (instrumentation != null) {
+            return instrumentedNext();
+        }
+        return advance();
+    }
+
+    private EntityState instrumentedNext() throws IOException, MimeException {
+        ParserInstrumentation.Phase phase;
+        switch (state) {
+        case T_BODY:
+        case T_PREAMBLE:
+        case T_EPILOGUE:
+        case T_RAW_ENTITY:
+            phase = ParserInstrumentation.Phase.BOUNDARY_SCAN;
+            break;
+        default:
+            phase = ParserInstrumentation.Phase.HEADER;
+        }
+        long start = System.nanoTime();
+        try {
+            advance();
+        } catch (IOException | MimeException ex) {
+            InstrumentedInputStream.limitExceeded(instrumentation, ex);
+            throw ex;
+        } finally {
+            instrumentation.phase(phase, System.nanoTime() - start);
+            long position = positionStream.getPosition();
+            if (position > reportedPosition) {
+                instrumentation.bytesScanned(position - reportedPosition);
+                reportedPosition = position;
+            }
+        }
+        if (state == EntityState.T_FIELD) {
+            ByteSequence raw = currentStateMachine.getField().getRaw();
+            instrumentation.headerField(raw != null ? raw.length() : 0);
+        }
+        return state;
+    }
+
+    private EntityState advance() throws IOException, MimeException {
         while (currentStateMachine != null) {
             EntityStateMachine next = currentStateMachine.advance();
             if (next != null) {
                 entities.add(next);
                 currentStateMachine = next;
+                if (instrumentation != null) {
+                    instrumentation.entity(entities.size() - 1);
+                }
             }
             state = currentStateMachine.getState();
             if (state != EntityState.T_END_OF_STREAM) {
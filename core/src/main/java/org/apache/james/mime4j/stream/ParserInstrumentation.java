@@ -0,0 +1,98 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.stream;
+
+/**
+ * <p>
+ * Receives counters and timings from the parser, for instance to feed a
+ * metrics registry. Set an implementation with
+ * {@link MimeConfig.Builder#setInstrumentation(ParserInstrumentation)}. When
+ * no instrumentation is configured, which is the default, the parser skips
+ * all bookkeeping.
+ * </p>
+ * <p>
+ * Implementations are called from the parsing thread and should return
+ * quickly. An instance shared by several parsers must be thread safe.
+ * </p>
+ *
+ * @see InMemoryParserInstrumentation
+ */
+public interface ParserInstrumentation {
+
+    /**
+     * Parsing phases that are timed.
+     */
+    enum Phase {
+        /** Reading the header fields and the structure of entities. */
+        HEADER,
+        /** Scanning bodies, preambles and epilogues for boundaries. */
+        BOUNDARY_SCAN,
+        /** Reading transfer decoded content. */
+        DECODE,
+        /** Creating bodies, including reading their content. */
+        STORAGE
+    }
+
+    /**
+     * Limits of {@link MimeConfig} whose violation is reported.
+     */
+    enum Limit {
+        LINE_LENGTH,
+        HEADER_COUNT,
+        HEADER_LENGTH,
+        CONTENT_LENGTH
+    }
+
+    /**
+     * Reports bytes read from the input stream of a message.
+     */
+    void bytesScanned(long count);
+
+    /**
+     * Reports the start of an entity: <code>0</code> for the top level
+     * message, <code>1</code> for its body parts and so on.
+     */
+    void entity(int depth);
+
+    /**
+     * Reports a header field and its raw length.
+     */
+    void headerField(int length);
+
+    /**
+     * Reports bytes read from a transfer decoded content stream.
+     *
+     * @param transferEncoding transfer encoding of the content, as returned
+     *            by {@link ContentDescriptor#getTransferEncoding()}.
+     * @param count number of decoded bytes.
+     */
+    void decoded(String transferEncoding, long count);
+
+    /**
+     * Reports a violated limit.
+     */
+    void limitExceeded(Limit limit);
+
+    /**
+     * Reports time spent in a phase.
+     */
+    void phase(Phase phase, long nanos);
+
+}
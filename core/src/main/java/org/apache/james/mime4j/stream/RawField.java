@@ -22,6 +22,8 @@ package org.apache.james.mime4j.stream;
 import java.nio.charset.StandardCharsets;
 import java.util.Locale;
 
+import org.apache.james.mime4j.util.BufferRecycler;
+import org.apache.james.mime4j.util.ByteArrayBuffer;
 import org.apache.james.mime4j.util.ByteSequence;
 import org.apache.james.mime4j.util.CharsetUtil;
 import org.apache.james.mime4j.util.ContentUtil;
@@ -43,6 +45,7 @@ public final class RawField implements Field {
     private final String name;
     private final String body;
     private String nameLowerCase;
+    private ByteSequence safeRaw;
 
     RawField(ByteSequence raw, int delimiterIdx, String name, String body) {
         if (name == null) {
@@ -87,18 +90,22 @@ public final class RawField implements Field {
 
     /**
      * Gets original (raw) representation of the field, if available,
-     * or compute it lazily otherwise.
+     * or compute it lazily otherwise. The computed representation is
+     * folded once and kept for subsequent calls.
      */
     public ByteSequence getSafeRaw() {
         if (raw == null) {
-            StringBuilder buf = new StringBuilder();
-            buf.append(getName());
-            buf.append(": ");
-            String body = getBody();
-            if (body != null) {
-                buf.append(body);
+            if (safeRaw == null) {
+                StringBuilder buf = new StringBuilder();
+                buf.append(getName());
+                buf.append(": ");
+                String body = getBody();
+                if (body != null) {
+                    buf.append(body);
+                }
+                safeRaw = MimeUtil.fold(ContentUtil.encode(buf), 0);
             }
-            return ContentUtil.encode(MimeUtil.fold(buf.toString(), 0));
+            return safeRaw;
         }
         return raw;
     }
@@ -125,7 +132,15 @@ public final class RawField implements Field {
             if (len > off + 1 && (CharsetUtil.isWhitespace((char) (raw.byteAt(off) & 0xff)))) {
                 off++;
             }
-            return MimeUtil.unfold(ContentUtil.decode(raw, off, len - off, StandardCharsets.UTF_8));
+            // unfold the bytes into a recycled buffer and decode them once
+            BufferRecycler bufferRecycler = ContentUtil.getBufferRecycler();
+            byte[] buffer = bufferRecycler.allocByteBuffer(0, len - off);
+            try {
+                int unfolded = MimeUtil.unfold(raw, off, len - off, buffer);
+                return ContentUtil.decode(new ByteArrayBuffer(buffer, unfolded, true), 0, unfolded, StandardCharsets.UTF_8);
+            } finally {
+                bufferRecycler.releaseByteBuffer(0, buffer);
+            }
         }
         return null;
     }
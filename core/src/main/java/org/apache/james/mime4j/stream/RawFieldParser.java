@@ -470,8 +470,7 @@ public class RawFieldParser {
         if (CharsetUtil.isASCII(dstRaw)) {
             // Check for encoded word directly on bytes — avoids an intermediate String
             if (dstRaw.length() > 1 && dstRaw.byteAt(0) == '=' && dstRaw.byteAt(1) == '?') {
-                String raw = ContentUtil.decode(dstRaw);
-                dst.append(DecoderUtil.decodeEncodedWords(raw, DecodeMonitor.SILENT));
+                dst.append(DecoderUtil.decodeEncodedWords(dstRaw, DecodeMonitor.SILENT));
             } else {
                 // Pure ASCII, not encoded: append bytes as chars — no String allocation
                 for (int i = 0; i < dstRaw.length(); i++) {
@@ -22,6 +22,13 @@ package org.apache.james.mime4j.util;
 import java.nio.charset.Charset;
 import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.UnsupportedCharsetException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Utility class for working with character sets.
@@ -151,6 +158,63 @@ public class CharsetUtil {
         return true;
     }
 
+    /** Maximum number of labels whose resolution is cached. */
+    private static final int CACHE_SIZE = 512;
+
+    /** Cached result for labels no charset could be resolved for. */
+    private static final Optional<Charset> UNSUPPORTED = Optional.empty();
+
+    private static final ConcurrentMap<String, Optional<Charset>> CACHE =
+            new ConcurrentHashMap<String, Optional<Charset>>();
+    private static final AtomicLong CACHE_HITS = new AtomicLong();
+    private static final AtomicLong CACHE_MISSES = new AtomicLong();
+
+    /**
+     * Labels found in mail that the Java runtime does not know, or knows as
+     * another charset than mail clients mean, keyed by their lower case form.
+     */
+    private static final Map<String, String> ALIASES = new HashMap<String, String>();
+
+    static {
+        for (int i = 0; i <= 8; i++) {
+            String name = "windows-125" + i;
+            ALIASES.put("windows125" + i, name);
+            ALIASES.put("win-125" + i, name);
+            ALIASES.put("win125" + i, name);
+            ALIASES.put("cp-125" + i, name);
+            ALIASES.put("x-cp125" + i, name);
+            ALIASES.put("x-windows-125" + i, name);
+        }
+        for (int i = 1; i <= 16; i++) {
+            String name = "ISO-8859-" + i;
+            ALIASES.put("iso8859-" + i, name);
+            ALIASES.put("iso8859_" + i, name);
+            ALIASES.put("iso_8859_" + i, name);
+            ALIASES.put("iso-8859_" + i, name);
+            ALIASES.put("iso8859" + i, name);
+            ALIASES.put("iso-8859" + i, name);
+            ALIASES.put("x-iso-8859-" + i, name);
+        }
+        ALIASES.put("utf8", "UTF-8");
+        ALIASES.put("x-utf8", "UTF-8");
+        ALIASES.put("x-utf-8", "UTF-8");
+        ALIASES.put("unicode-1-1-utf-8", "UTF-8");
+        ALIASES.put("latin-1", "ISO-8859-1");
+        // mail clients labelling their text ks_c_5601-1987 use the windows
+        // extension of EUC-KR
+        ALIASES.put("ks_c_5601-1987", "x-windows-949");
+        ALIASES.put("ks_c_5601", "x-windows-949");
+        ALIASES.put("x-sjis", "Shift_JIS");
+        ALIASES.put("x-shift_jis", "Shift_JIS");
+        ALIASES.put("x-euc-jp", "EUC-JP");
+        ALIASES.put("x-euc-kr", "EUC-KR");
+        ALIASES.put("x-gbk", "GBK");
+        ALIASES.put("x-gb2312", "GB2312");
+        ALIASES.put("x-big5", "Big5");
+        ALIASES.put("x-mac-roman", "x-MacRoman");
+        ALIASES.put("macintosh", "x-MacRoman");
+    }
+
     /**
      * <p>
      * Returns a {@link Charset} instance if character set with the given name
@@ -161,12 +225,65 @@ public class CharsetUtil {
      * This method is a wrapper around {@link Charset#forName(String)} method
      * that catches {@link IllegalCharsetNameException} and
      *  {@link UnsupportedCharsetException} and returns <code>null</code>.
+     * Surrounding white space and quotes are ignored, and common labels
+     * used by mail clients but unknown to the Java runtime, such as
+     * <code>win-1252</code> or <code>iso8859_15</code>, are mapped to the
+     * charset they stand for.
+     * </p>
+     * <p>
+     * Results, including unsupported names, are cached so that labels
+     * repeated across messages, body parts and encoded words are only
+     * resolved once.
      * </p>
      */
     public static Charset lookup(final String name) {
         if (name == null) {
             return null;
         }
+        Optional<Charset> cached = CACHE.get(name);
+        if (cached != null) {
+            CACHE_HITS.incrementAndGet();
+            return cached.orElse(null);
+        }
+        CACHE_MISSES.incrementAndGet();
+        Charset charset = resolve(name);
+        if (CACHE.size() >= CACHE_SIZE) {
+            // unbounded sets of labels are only seen in crafted input;
+            // starting over is cheaper than tracking the least used ones
+            CACHE.clear();
+        }
+        CACHE.put(name, charset != null ? Optional.of(charset) : UNSUPPORTED);
+        return charset;
+    }
+
+    /**
+     * Returns the ratio of the calls to {@link #lookup(String)} answered from
+     * the cache to the total number of calls, or <code>0</code> if there
+     * has been no call yet.
+     */
+    public static double getLookupHitRate() {
+        long hits = CACHE_HITS.get();
+        long total = hits + CACHE_MISSES.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    private static Charset resolve(final String name) {
+        String label = name.trim();
+        if (label.length() > 1 && label.charAt(0) == '"' && label.charAt(label.length() - 1) == '"') {
+            label = label.substring(1, label.length() - 1).trim();
+        }
+        label = label.toLowerCase(Locale.ROOT);
+        String alias = ALIASES.get(label);
+        if (alias != null) {
+            Charset charset = forName(alias);
+            if (charset != null) {
+                return charset;
+            }
+        }
+        return forName(label);
+    }
+
+    private static Charset forName(final String name) {
         try {
             return Charset.forName(name);
         } catch (IllegalCharsetNameException ex) {
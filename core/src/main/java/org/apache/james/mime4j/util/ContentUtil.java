@@ -29,6 +29,7 @@ import java.io.Writer;
 import java.lang.ref.SoftReference;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 
@@ -87,6 +88,31 @@ public class ContentUtil {
         bufferRecycler.releaseByteBuffer(0, buffer);
     }
 
+    /**
+     * Copies the contents of a stream to a channel.
+     * @param in not null
+     * @param out not null, in blocking mode
+     * @return the number of bytes copied
+     * @throws IOException
+     */
+    public static long copy(final InputStream in, final WritableByteChannel out) throws IOException {
+        BufferRecycler bufferRecycler = getBufferRecycler();
+        byte[] buffer = bufferRecycler.allocByteBuffer(0, DEFAULT_COPY_BUFFER_SIZE);
+        ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+        long count = 0;
+        int inputLength;
+        while (-1 != (inputLength = in.read(buffer))) {
+            wrapper.clear();
+            wrapper.limit(inputLength);
+            while (wrapper.hasRemaining()) {
+                out.write(wrapper);
+            }
+            count += inputLength;
+        }
+        bufferRecycler.releaseByteBuffer(0, buffer);
+        return count;
+    }
+
     /**
      * Copies the contents of one stream to the other.
      * @param in not null
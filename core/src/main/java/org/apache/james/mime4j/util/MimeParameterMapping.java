@@ -188,11 +188,11 @@ public class MimeParameterMapping {
         charset = value.substring(0, charsetEnd);
         String fileName = value.substring(languageEnd + 1);
         //check that the charset is valid
-        try {
-            Charset.forName(charset);
-        } catch (IllegalArgumentException e) {
+        Charset resolved = CharsetUtil.lookup(charset);
+        if (resolved == null) {
             return fileName;
         }
+        charset = resolved.name();
         return urlDecode(fileName);
     }
 
@@ -78,6 +78,9 @@ public final class MimeUtil {
      */
     public static final int DEFAULT_MAX_CHARACTERS = 76;
 
+    private static final byte CR = 0x0D;
+    private static final byte LF = 0x0A;
+
     // used to create unique ids
     private static final Random random = new Random();
 
@@ -289,6 +292,128 @@ public final class MimeUtil {
         return s;
     }
 
+    /**
+     * Byte oriented counterpart of {@link #fold(String, int, int)}: splits the
+     * specified raw field into a multiple-line representation with lines no
+     * longer than the maximum number of octets. Line breaks are inserted
+     * before whitespace exactly as the <code>String</code> variant does.
+     *
+     * @param raw
+     *            bytes to split.
+     * @param usedCharacters
+     *            number of octets already used up on the first line.
+     * @param maxCharacters
+     *            maximum number of octets per line.
+     * @return a multiple-line representation of the given bytes, or
+     *         <code>raw</code> itself if no line break had to be inserted.
+     */
+    public static ByteSequence fold(ByteSequence raw, int usedCharacters, int maxCharacters) {
+        final int length = raw.length();
+        if (usedCharacters + length <= maxCharacters)
+            return raw;
+
+        ByteArrayBuffer buf = null;
+
+        int lastLineBreak = -usedCharacters;
+        int wspIdx = indexOfWsp(raw, 0);
+        while (wspIdx < length) {
+            int nextWspIdx = indexOfWsp(raw, wspIdx + 1);
+
+            if (nextWspIdx - lastLineBreak > maxCharacters) {
+                if (buf == null) {
+                    buf = new ByteArrayBuffer(length + 2 * (length / maxCharacters + 1));
+                }
+                append(buf, raw, Math.max(0, lastLineBreak), wspIdx);
+                buf.append(CR);
+                buf.append(LF);
+                lastLineBreak = wspIdx;
+            }
+
+            wspIdx = nextWspIdx;
+        }
+        if (buf == null) {
+            return raw;
+        }
+        append(buf, raw, Math.max(0, lastLineBreak), length);
+        return buf;
+    }
+
+    /**
+     * Byte oriented counterpart of {@link #fold(String, int)} using a line
+     * length of {@link #DEFAULT_MAX_CHARACTERS} octets.
+     *
+     * @param raw
+     *            bytes to split.
+     * @param usedCharacters
+     *            number of octets already used up on the first line.
+     * @return a multiple-line representation of the given bytes, or
+     *         <code>raw</code> itself if no line break had to be inserted.
+     */
+    public static ByteSequence fold(ByteSequence raw, int usedCharacters) {
+        return fold(raw, usedCharacters, DEFAULT_MAX_CHARACTERS);
+    }
+
+    /**
+     * Byte oriented counterpart of {@link #unfold(String)}: removes all CR and
+     * LF octets.
+     *
+     * @param raw
+     *            bytes to unfold.
+     * @return unfolded bytes, or <code>raw</code> itself if it does not
+     *         contain any line break.
+     */
+    public static ByteSequence unfold(ByteSequence raw) {
+        final int length = raw.length();
+        int idx = indexOfLineBreak(raw, 0, length);
+        if (idx == length) {
+            return raw;
+        }
+        byte[] b = new byte[length];
+        int len = unfold(raw, 0, length, b);
+        return new ByteArrayBuffer(b, len, true);
+    }
+
+    /**
+     * Copies the given range of bytes to the destination array leaving out
+     * all CR and LF octets. This allows callers to unfold into a buffer they
+     * reuse.
+     *
+     * @param raw
+     *            bytes to unfold.
+     * @param offset
+     *            offset of the first byte to unfold.
+     * @param length
+     *            number of bytes to unfold.
+     * @param dst
+     *            destination array, at least <code>length</code> bytes long.
+     * @return number of bytes written to <code>dst</code>.
+     */
+    public static int unfold(ByteSequence raw, int offset, int length, byte[] dst) {
+        if (dst.length < length) {
+            throw new IndexOutOfBoundsException();
+        }
+        int n = 0;
+        if (raw instanceof ByteArrayBuffer) {
+            byte[] src = ((ByteArrayBuffer) raw).buffer();
+            int from = offset;
+            int end = offset + length;
+            while (from < end) {
+                int idx = indexOfLineBreak(raw, from, end);
+                System.arraycopy(src, from, dst, n, idx - from);
+                n += idx - from;
+                from = idx + 1;
+            }
+        } else {
+            for (int idx = offset; idx < offset + length; idx++) {
+                byte b = raw.byteAt(idx);
+                if (b != CR && b != LF) {
+                    dst[n++] = b;
+                }
+            }
+        }
+        return n;
+    }
+
     /**
      Unfold and decode header value
      */
@@ -323,6 +448,35 @@ public final class MimeUtil {
         return sb.toString();
     }
 
+    private static int indexOfWsp(ByteSequence raw, int fromIndex) {
+        final int len = raw.length();
+        for (int index = fromIndex; index < len; index++) {
+            byte b = raw.byteAt(index);
+            if (b == ' ' || b == '\t')
+                return index;
+        }
+        return len;
+    }
+
+    private static int indexOfLineBreak(ByteSequence raw, int fromIndex, int toIndex) {
+        for (int index = fromIndex; index < toIndex; index++) {
+            byte b = raw.byteAt(index);
+            if (b == CR || b == LF)
+                return index;
+        }
+        return toIndex;
+    }
+
+    private static void append(ByteArrayBuffer buf, ByteSequence raw, int from, int to) {
+        if (raw instanceof ByteArrayBuffer) {
+            buf.append(((ByteArrayBuffer) raw).buffer(), from, to - from);
+        } else {
+            for (int i = from; i < to; i++) {
+                buf.append(raw.byteAt(i));
+            }
+        }
+    }
+
     private static int indexOfWsp(String s, int fromIndex) {
         final int len = s.length();
         for (int index = fromIndex; index < len; index++) {
@@ -25,6 +25,8 @@ import java.nio.charset.StandardCharsets;
  * A resizable byte array.
  */
 public final class RecycledByteArrayBuffer implements ByteSequence {
+    private static final byte[] RELEASED = new byte[0];
+
     private final BufferRecycler bufferRecycler;
     private byte[] buffer;
     private int len;
@@ -61,7 +63,9 @@ public final class RecycledByteArrayBuffer implements ByteSequence {
     private void expand(int newlen) {
         byte newbuffer[] = bufferRecycler.allocByteBuffer(0, Math.max(this.buffer.length << 1, newlen));
         System.arraycopy(this.buffer, 0, newbuffer, 0, this.len);
-        bufferRecycler.releaseByteBuffer(0, buffer);
+        if (this.buffer != RELEASED) {
+            bufferRecycler.releaseByteBuffer(0, buffer);
+        }
         this.buffer = newbuffer;
     }
 
@@ -181,8 +185,17 @@ public final class RecycledByteArrayBuffer implements ByteSequence {
         return new String(this.buffer, 0, this.len, StandardCharsets.ISO_8859_1);
     }
 
+    /**
+     * Hands the underlying array back to the recycler. The buffer is cleared
+     * and acquires a new array if more data gets appended. Releasing an
+     * already released buffer has no effect.
+     */
     public void release() {
-        bufferRecycler.releaseByteBuffer(0, buffer);
+        if (this.buffer != RELEASED) {
+            bufferRecycler.releaseByteBuffer(0, buffer);
+            this.buffer = RELEASED;
+            this.len = 0;
+        }
     }
 
 }
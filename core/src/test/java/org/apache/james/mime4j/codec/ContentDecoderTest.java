@@ -0,0 +1,207 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.james.mime4j.util.ContentUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ContentDecoderTest {
+
+    static final class RecordingMonitor extends DecodeMonitor {
+
+        final List<String> warnings = new ArrayList<>();
+
+        @Override
+        public boolean warn(String error, String dropDesc) {
+            warnings.add(error);
+            return false;
+        }
+
+    }
+
+    private static byte[] decode(ContentDecoder decoder, byte[] encoded, int srcSize, int dstSize, boolean direct)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer dst = direct ? ByteBuffer.allocateDirect(dstSize) : ByteBuffer.allocate(dstSize);
+        for (int off = 0; off < encoded.length; off += srcSize) {
+            int len = Math.min(srcSize, encoded.length - off);
+            ByteBuffer src;
+            if (direct) {
+                src = ByteBuffer.allocateDirect(len);
+                src.put(encoded, off, len);
+                src.flip();
+            } else {
+                src = ByteBuffer.wrap(encoded, off, len);
+            }
+            while (src.hasRemaining()) {
+                decoder.decode(src, dst);
+                drain(dst, out);
+            }
+        }
+        boolean finished;
+        do {
+            finished = decoder.finish(dst);
+            drain(dst, out);
+        } while (!finished);
+        return out.toByteArray();
+    }
+
+    private static void drain(ByteBuffer dst, ByteArrayOutputStream out) {
+        dst.flip();
+        while (dst.hasRemaining()) {
+            out.write(dst.get());
+        }
+        dst.clear();
+    }
+
+    private static byte[] random(Random random, String alphabet, int len) {
+        byte[] b = new byte[len];
+        for (int i = 0; i < len; i++) {
+            b[i] = (byte) alphabet.charAt(random.nextInt(alphabet.length()));
+        }
+        return b;
+    }
+
+    private static void assertSameAsStream(boolean base64, byte[] encoded) throws IOException {
+        RecordingMonitor streamMonitor = new RecordingMonitor();
+        InputStream in = new ByteArrayInputStream(encoded);
+        InputStream stream = base64 ? new Base64InputStream(in, streamMonitor)
+                : new QuotedPrintableInputStream(in, streamMonitor);
+        byte[] expected = IOUtils.toByteArray(stream);
+        for (int srcSize : new int[] {1, 2, 3, 5, 64, encoded.length + 1}) {
+            for (int dstSize : new int[] {1, 2, 7, 1024}) {
+                RecordingMonitor monitor = new RecordingMonitor();
+                ContentDecoder decoder = base64 ? new Base64Decoder(monitor) : new QuotedPrintableDecoder(monitor);
+                String message = ContentUtil.toAsciiString(ContentUtil.buffer(new ByteArrayInputStream(encoded)))
+                        + " / " + srcSize + " / " + dstSize;
+                Assert.assertArrayEquals(message, expected, decode(decoder, encoded, srcSize, dstSize, srcSize == 3));
+                Assert.assertEquals(message, streamMonitor.warnings, monitor.warnings);
+            }
+        }
+    }
+
+    @Test
+    public void testBase64SameAsStream() throws IOException {
+        String[] samples = {
+            "", "Zm9v", "Zm9vYg==", "Zm9vYmE=", "Zm9v\r\nYmFy\r\n", "Zm9vYmFy!Zm9v", "Zm9vY", "Zm9vYmFy=Zm9v", "Z==="
+        };
+        for (String sample : samples) {
+            assertSameAsStream(true, ContentUtil.toAsciiByteArray(sample));
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            assertSameAsStream(true, random(random, "ABCz09+/= \r\n!", random.nextInt(64)));
+        }
+    }
+
+    @Test
+    public void testQuotedPrintableSameAsStream() throws IOException {
+        String[] samples = {
+            "", "=e1=e2=E3=E4\r\n", "=e1=g2=E3=E4\r\n", "   =e1 =e2  =E3\t=E4  \t \t    \r\n",
+            "Soft line   =\r\nHard line\r\n", "Soft line   =\nHard line\r\n", "Invalid=\rCR\rHard line\r\n",
+            "Soft line   = \r\nHard line\r\n", "width==340 height=3d200\r\n", "width==\r\n340 height=3d200\r\n",
+            "some\r\n spaced\r\ncontent\r\n", "01234=", "01234=5", "01234   ", "01234\r", "text\nbare LF\n"
+        };
+        for (String sample : samples) {
+            assertSameAsStream(false, ContentUtil.toAsciiByteArray(sample));
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            assertSameAsStream(false, random(random, "aB3=\r\n \tf\u000b", random.nextInt(40)));
+        }
+    }
+
+    @Test
+    public void testStrictMonitor() throws IOException {
+        try {
+            decode(new Base64Decoder(DecodeMonitor.STRICT), ContentUtil.toAsciiByteArray("Zm9v!"), 2, 16, false);
+            Assert.fail("IOException should have been thrown");
+        } catch (IOException expected) {
+        }
+        try {
+            decode(new QuotedPrintableDecoder(DecodeMonitor.STRICT), ContentUtil.toAsciiByteArray("a\rb"), 1, 16, false);
+            Assert.fail("IOException should have been thrown");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void testReset() throws IOException {
+        ContentDecoder decoder = new Base64Decoder();
+        decoder.decode(ByteBuffer.wrap(ContentUtil.toAsciiByteArray("Zm9")), ByteBuffer.allocate(16));
+        decoder.finish(ByteBuffer.allocate(16));
+        decoder.reset();
+        Assert.assertArrayEquals(ContentUtil.toAsciiByteArray("foobar"),
+                decode(decoder, ContentUtil.toAsciiByteArray("Zm9vYmFy"), 3, 2, false));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDecodeAfterFinish() throws IOException {
+        ContentDecoder decoder = new QuotedPrintableDecoder();
+        decoder.finish(ByteBuffer.allocate(16));
+        decoder.decode(ByteBuffer.allocate(1), ByteBuffer.allocate(16));
+    }
+
+    @Test
+    public void testForTransferEncoding() throws IOException {
+        Assert.assertTrue(ContentDecoder.forTransferEncoding("BASE64", null) instanceof Base64Decoder);
+        Assert.assertTrue(ContentDecoder.forTransferEncoding("quoted-printable", null) instanceof QuotedPrintableDecoder);
+        byte[] content = ContentUtil.toAsciiByteArray("=e1 as is");
+        Assert.assertArrayEquals(content, decode(ContentDecoder.forTransferEncoding("8bit", null), content, 4, 3, true));
+        Assert.assertArrayEquals(content, decode(ContentDecoder.forTransferEncoding(null, null), content, 9, 9, false));
+    }
+
+    @Test
+    public void testDecodingChannel() throws IOException {
+        byte[] decoded = new byte[20000];
+        new Random(7).nextBytes(decoded);
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        try (Base64OutputStream out = new Base64OutputStream(encoded)) {
+            out.write(decoded);
+        }
+        ReadableByteChannel channel = new DecodingChannel(
+                Channels.newChannel(new ByteArrayInputStream(encoded.toByteArray())), "base64", null);
+        ByteBuffer dst = ByteBuffer.allocateDirect(1000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int n;
+        while ((n = channel.read(dst)) != -1) {
+            Assert.assertTrue(n > 0);
+            drain(dst, out);
+        }
+        Assert.assertArrayEquals(decoded, out.toByteArray());
+        Assert.assertEquals(-1, channel.read(dst));
+        channel.close();
+        Assert.assertFalse(channel.isOpen());
+    }
+
+}
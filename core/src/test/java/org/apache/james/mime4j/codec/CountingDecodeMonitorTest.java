@@ -0,0 +1,118 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.james.mime4j.io.InputStreams;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CountingDecodeMonitorTest {
+
+    private static byte[] base64(String s, DecodeMonitor monitor) throws IOException {
+        return IOUtils.toByteArray(new Base64InputStream(InputStreams.createAscii(s), monitor));
+    }
+
+    private static byte[] quotedPrintable(String s, DecodeMonitor monitor) throws IOException {
+        return IOUtils.toByteArray(new QuotedPrintableInputStream(InputStreams.createAscii(s), monitor));
+    }
+
+    @Test
+    public void testCountsBase64Events() throws Exception {
+        CountingDecodeMonitor monitor = new CountingDecodeMonitor();
+
+        Assert.assertEquals("foo", new String(base64("Zm!9v", monitor), "US-ASCII"));
+        Assert.assertEquals(1, monitor.getCount(DecodeEvent.BASE64_UNEXPECTED_BYTE));
+
+        base64("Zm9vY", monitor);
+        Assert.assertEquals(1, monitor.getCount(DecodeEvent.BASE64_PREMATURE_END));
+
+        base64("Zm9vY===", monitor);
+        Assert.assertEquals(1, monitor.getCount(DecodeEvent.BASE64_UNEXPECTED_PADDING));
+        Assert.assertEquals(3, monitor.getTotalCount());
+
+        monitor.reset();
+        Assert.assertEquals(0, monitor.getTotalCount());
+    }
+
+    @Test
+    public void testCountsQuotedPrintableEvents() throws Exception {
+        CountingDecodeMonitor monitor = new CountingDecodeMonitor();
+
+        quotedPrintable("a=zzb\r\nc==d\r\n", monitor);
+        Assert.assertEquals(1, monitor.getCount(DecodeEvent.QP_MALFORMED_HEX));
+        Assert.assertEquals(1, monitor.getCount(DecodeEvent.QP_DOUBLE_EQUAL));
+        Assert.assertEquals(2, monitor.getTotalCount());
+    }
+
+    @Test
+    public void testCountsStringEvents() {
+        CountingDecodeMonitor monitor = new CountingDecodeMonitor();
+        Assert.assertTrue(monitor.isListening());
+        Assert.assertFalse(monitor.warn("error", "ignoring"));
+        Assert.assertEquals(1, monitor.getOtherCount());
+        Assert.assertEquals(1, monitor.getTotalCount());
+    }
+
+    @Test
+    public void testDelegates() throws Exception {
+        CountingDecodeMonitor monitor = new CountingDecodeMonitor(DecodeMonitor.STRICT);
+        try {
+            base64("Zm!9v", monitor);
+            Assert.fail("IOException expected");
+        } catch (IOException expected) {
+        }
+        Assert.assertEquals(1, monitor.getCount(DecodeEvent.BASE64_UNEXPECTED_BYTE));
+    }
+
+    @Test
+    public void testFormatsMessagesForStringMonitors() throws Exception {
+        final List<String> warnings = new ArrayList<String>();
+        DecodeMonitor monitor = new DecodeMonitor() {
+            @Override
+            public boolean warn(String error, String dropDesc) {
+                warnings.add(error + ": " + dropDesc);
+                return false;
+            }
+        };
+
+        base64("Zm!9vY", monitor);
+        quotedPrintable("a=zzb", monitor);
+
+        Assert.assertEquals(3, warnings.size());
+        Assert.assertEquals("Unexpected base64 byte: 33: ignoring.", warnings.get(0));
+        Assert.assertEquals("Unexpected end of BASE64 stream: dropping 1 sextet(s)", warnings.get(1));
+        Assert.assertEquals("Malformed encoded value encountered: leaving =zz as is", warnings.get(2));
+    }
+
+    @Test
+    public void testFormatsLazily() {
+        Assert.assertEquals("Unexpected base64 byte: -1", DecodeEvent.BASE64_UNEXPECTED_BYTE.getMessage(0xff));
+        Assert.assertEquals("leaving =\u00e9Z as is",
+                DecodeEvent.QP_MALFORMED_HEX.getDropDescription(DecodeEvent.chars(0xe9, 'Z')));
+        Assert.assertEquals("2 blank(s)", DecodeEvent.QP_IGNORED_BLANKS.getDropDescription(2));
+    }
+
+}
@@ -19,6 +19,7 @@
 
 package org.apache.james.mime4j.codec;
 
+import org.apache.james.mime4j.util.ContentUtil;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -173,4 +174,36 @@ public class DecoderUtilTest {
         String decoded = DecoderUtil.decodeEncodedWords("=?ISO-8859-1?Q?You=92re_a_winner?=", DecodeMonitor.SILENT, null, overrides);
         Assert.assertEquals("You’re a winner", decoded);
     }
+
+    @Test
+    public void testSplitMultiByteCharacterIsJoined() {
+        // the two bytes of \u00e9 in UTF-8 are in separate words
+        Assert.assertEquals("caf\u00e9 au lait",
+                DecoderUtil.decodeEncodedWords("=?utf-8?Q?caf=C3?= =?utf-8?Q?=A9_au_lait?="));
+        Assert.assertEquals("caf\u00e9",
+                DecoderUtil.decodeEncodedWords("=?utf-8?B?Y2Fmww==?=\r\n =?utf-8?B?qQ==?="));
+    }
+
+    @Test
+    public void testWordsLeftEncodedKeepTheirPosition() {
+        Assert.assertEquals("a=?no-such-charset?Q?b?=c",
+                DecoderUtil.decodeEncodedWords("=?iso-8859-1?Q?a?= =?no-such-charset?Q?b?= =?iso-8859-1?Q?c?="));
+        Assert.assertEquals("a=?iso-8859-1?X?b?=",
+                DecoderUtil.decodeEncodedWords("=?iso-8859-1?Q?a?= =?iso-8859-1?X?b?="));
+    }
+
+    @Test
+    public void testDecodeByteSequence() {
+        Assert.assertEquals("! a b c !", DecoderUtil.decodeEncodedWords(
+                ContentUtil.encode("! =?ISO-8859-1?Q?a?= b =?ISO-8859-1?Q?c?= !"), DecodeMonitor.SILENT));
+        Assert.assertEquals("Yada yada", DecoderUtil.decodeEncodedWords(
+                ContentUtil.encode("Yada yada"), DecodeMonitor.SILENT));
+        Assert.assertEquals("\u00e0 la caf\u00e9", DecoderUtil.decodeEncodedWords(
+                ContentUtil.encode("\u00e0 la =?utf-8?Q?caf=C3=A9?="), DecodeMonitor.SILENT));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStrictMonitorRejectsUnknownCharset() {
+        DecoderUtil.decodeEncodedWords("=?no-such-charset?Q?b?=", DecodeMonitor.STRICT);
+    }
 }
@@ -0,0 +1,144 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.james.mime4j.codec.EncoderUtil.Encoding;
+import org.apache.james.mime4j.codec.EncoderUtil.Usage;
+import org.apache.james.mime4j.util.ByteArrayBuffer;
+import org.apache.james.mime4j.util.ContentUtil;
+import org.apache.james.mime4j.util.MimeParameterMapping;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EncodedWordEncoderTest {
+
+    private static String encode(EncodedWordEncoder encoder, String text, int usedCharacters) {
+        String encoded = ContentUtil.decode(encoder.encode(text, usedCharacters));
+        String[] words = encoded.split(" ");
+        Assert.assertTrue(encoded, words[0].length() <= 75 - usedCharacters);
+        for (String word : words) {
+            Assert.assertTrue(encoded, word.length() <= 75);
+        }
+        Assert.assertEquals(text, DecoderUtil.decodeEncodedWords(encoded, DecodeMonitor.STRICT));
+        return encoded;
+    }
+
+    private static String repeat(String s, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testSingleWordMatchesEncoderUtil() {
+        EncodedWordEncoder encoder = new EncodedWordEncoder(Usage.TEXT_TOKEN);
+        String[] texts = {"", "testing 123", "latin 1: \344", "unicode: \u20ac", "\344\344\344\344\344"};
+        for (String text : texts) {
+            Assert.assertEquals(EncoderUtil.encodeEncodedWord(text, Usage.TEXT_TOKEN),
+                    ContentUtil.decode(encoder.encode(text, 0)));
+        }
+
+        encoder = new EncodedWordEncoder(Usage.WORD_ENTITY, Charset.forName("Cp1252"), Encoding.Q);
+        Assert.assertEquals("=?windows-1252?Q?100_=80?=", ContentUtil.decode(encoder.encode("100 \u20ac", 0)));
+        encoder = new EncodedWordEncoder(Usage.WORD_ENTITY, Charset.forName("Cp1252"), Encoding.B);
+        Assert.assertEquals("=?windows-1252?B?MTAwIIA=?=", ContentUtil.decode(encoder.encode("100 \u20ac", 0)));
+    }
+
+    @Test
+    public void testWordsAreFilled() {
+        EncodedWordEncoder encoder = new EncodedWordEncoder(Usage.TEXT_TOKEN, null, Encoding.Q);
+        String sixty = "123456789012345678901234567890123456789012345678901234567890";
+        Assert.assertEquals("=?US-ASCII?Q?" + sixty + "?=", encode(encoder, sixty, 0));
+        Assert.assertEquals("=?US-ASCII?Q?" + sixty + "?= =?US-ASCII?Q?1?=", encode(encoder, sixty + "1", 0));
+    }
+
+    @Test
+    public void testLongTexts() {
+        EncodedWordEncoder encoder = new EncodedWordEncoder(Usage.TEXT_TOKEN);
+        String[] texts = {
+                repeat("The quick brown fox jumps over the lazy dog. ", 10),
+                repeat("Gr\374\337e aus K\366ln ", 20),
+                repeat("z\uD835\uDD6B", 40),
+                repeat("\u65e5\u672c\u8a9e\u306e\u4ef6\u540d", 15)};
+        for (String text : texts) {
+            for (int used = 0; used <= 50; used += 25) {
+                String encoded = encode(encoder, text, used);
+                Assert.assertTrue(encoded.split(" ").length
+                        <= EncoderUtil.encodeEncodedWord(text, Usage.TEXT_TOKEN, used).split(" ").length);
+            }
+        }
+
+        encoder = new EncodedWordEncoder(Usage.WORD_ENTITY, null, Encoding.B);
+        for (String text : texts) {
+            encode(encoder, text, 10);
+        }
+    }
+
+    @Test
+    public void testCharsetWithByteOrderMark() {
+        Charset utf16 = StandardCharsets.UTF_16;
+        EncodedWordEncoder encoder = new EncodedWordEncoder(Usage.TEXT_TOKEN, utf16, Encoding.B);
+        String text = repeat("caf\u00e9 ", 10);
+        Assert.assertEquals(EncoderUtil.encodeEncodedWord(text, Usage.TEXT_TOKEN, 0, utf16, Encoding.B),
+                ContentUtil.decode(encoder.encode(text, 0)));
+    }
+
+    @Test
+    public void testEncodeToOutputStream() throws Exception {
+        EncodedWordEncoder encoder = new EncodedWordEncoder(Usage.TEXT_TOKEN);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.encode("caf\u00e9", 0, out);
+        encoder.encode(" au lait", 0, out);
+        Assert.assertEquals("=?ISO-8859-1?Q?caf=E9?==?US-ASCII?Q?_au_lait?=", new String(out.toByteArray(), "US-ASCII"));
+    }
+
+    @Test
+    public void testEncodeParameter() {
+        EncodedWordEncoder encoder = new EncodedWordEncoder(Usage.WORD_ENTITY);
+
+        ByteArrayBuffer dst = new ByteArrayBuffer(64);
+        encoder.encodeParameter("Filename", "report 2024.pdf", dst);
+        Assert.assertEquals(EncoderUtil.encodeHeaderParameter("Filename", "report 2024.pdf"), ContentUtil.decode(dst));
+
+        dst.clear();
+        encoder.encodeParameter("filename", "\u20ac 100+.txt", dst);
+        Assert.assertEquals("filename*=UTF-8''%E2%82%AC%20100%2B.txt", ContentUtil.decode(dst));
+
+        String name = repeat("\u00e9t\u00e9 ", 20);
+        dst.clear();
+        encoder.encodeParameter("filename", name, dst);
+        String encoded = ContentUtil.decode(dst);
+        Assert.assertTrue(encoded, encoded.startsWith("filename*0*=UTF-8''"));
+        MimeParameterMapping mapping = new MimeParameterMapping();
+        for (String parameter : encoded.split("; ")) {
+            Assert.assertTrue(parameter, parameter.length() <= 80);
+            int eq = parameter.indexOf('=');
+            mapping.addParameter(parameter.substring(0, eq), parameter.substring(eq + 1));
+        }
+        Assert.assertEquals(name, mapping.get("filename"));
+    }
+
+}
@@ -0,0 +1,95 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+
+import junit.framework.TestSuite;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.james.mime4j.Charsets;
+import org.apache.james.mime4j.ExampleMessageTestCase;
+import org.apache.james.mime4j.ExampleMessageTestCaseFactory;
+import org.apache.james.mime4j.ExampleMessageTestSuiteBuilder;
+import org.apache.james.mime4j.stream.MimeConfig;
+import org.junit.Assert;
+import org.junit.runner.RunWith;
+import org.junit.runners.AllTests;
+
+/**
+ * Test parsing of all sample messages fed in small chunks
+ */
+@RunWith(AllTests.class)
+public class MimePushStreamParserExampleMessagesTest extends ExampleMessageTestCase {
+
+    private static final int[] CHUNK_SIZES = { 1, 3, 17, 4096 };
+
+    public static TestSuite suite() throws IOException {
+        ExampleMessageTestSuiteBuilder testSuiteBuilder = new ExampleMessageTestSuiteBuilder(
+                new ExampleMessageTestCaseFactory() {
+
+                    public ExampleMessageTestCase create(final File file, final URL resource) throws IOException {
+                        return new MimePushStreamParserExampleMessagesTest(file, resource);
+                    }
+
+                });
+        return testSuiteBuilder.build();
+    }
+
+    public MimePushStreamParserExampleMessagesTest(final File file, final URL resource) {
+        super(file, resource);
+    }
+
+    @Override
+    public void runTest() throws Exception {
+        MimeConfig config = getConfig();
+        byte[] message;
+        InputStream msgstream = getResource().openStream();
+        try {
+            message = IOUtils.toByteArray(msgstream);
+        } finally {
+            msgstream.close();
+        }
+
+        String expected;
+        InputStream contentstream = new URL(getResourceBase() + ".xml").openStream();
+        try {
+            expected = IOUtils.toString(contentstream, Charsets.ISO_8859_1.name());
+        } finally {
+            contentstream.close();
+        }
+
+        for (int chunkSize : CHUNK_SIZES) {
+            TestHandler handler = new TestHandler();
+            MimePushStreamParser parser = new MimePushStreamParser(config);
+            parser.setContentHandler(handler);
+            for (int off = 0; off < message.length; off += chunkSize) {
+                parser.feed(ByteBuffer.wrap(message, off, Math.min(chunkSize, message.length - off)));
+            }
+            parser.endOfInput();
+            Assert.assertEquals("chunks of " + chunkSize, expected, handler.sb.toString());
+        }
+    }
+
+}
@@ -0,0 +1,186 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HeaderRewriterTest {
+
+    private static final String BODY =
+        "--boundary\r\n" +
+        "Content-Type: text/plain\r\n" +
+        "\r\n" +
+        "Subject: not a header\r\n" +
+        "--boundary--\r\n";
+
+    private static final String MESSAGE =
+        "Received: from a.example.com\r\n" +
+        "Subject: Hello\r\n" +
+        "X-Spam-Score: 5\r\n" +
+        "To: someone@example.com,\r\n" +
+        " other@example.com\r\n" +
+        "x-spam-score: 7\r\n" +
+        "Content-Type: multipart/mixed; boundary=boundary\r\n" +
+        "\r\n" +
+        BODY;
+
+    private final HeaderRewriter rewriter = new HeaderRewriter()
+        .prepend(new RawField("Received", "from b.example.com"))
+        .remove("X-Spam-Score")
+        .replace(new RawField("Subject", "Rewritten"))
+        .append(new RawField("X-Checked", "yes"));
+
+    private static final String EXPECTED =
+        "Received: from b.example.com\r\n" +
+        "Received: from a.example.com\r\n" +
+        "Subject: Rewritten\r\n" +
+        "To: someone@example.com,\r\n" +
+        " other@example.com\r\n" +
+        "Content-Type: multipart/mixed; boundary=boundary\r\n" +
+        "X-Checked: yes\r\n" +
+        "\r\n" +
+        BODY;
+
+    @Test
+    public void testRewriteStream() throws Exception {
+        Assert.assertEquals(EXPECTED, rewrite(MESSAGE));
+    }
+
+    @Test
+    public void testRewriteFileChannel() throws Exception {
+        File source = File.createTempFile("mime4j", ".eml");
+        File target = File.createTempFile("mime4j", ".eml");
+        try {
+            Files.write(source.toPath(), MESSAGE.getBytes(StandardCharsets.US_ASCII));
+            long count;
+            try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.WRITE)) {
+                count = rewriter.rewrite(in, out);
+                Assert.assertEquals(in.size(), in.position());
+            }
+            byte[] written = Files.readAllBytes(target.toPath());
+            Assert.assertEquals(EXPECTED, new String(written, StandardCharsets.US_ASCII));
+            Assert.assertEquals(written.length, count);
+        } finally {
+            source.delete();
+            target.delete();
+        }
+    }
+
+    @Test
+    public void testRewriteLargeBodyIsCopiedUnchanged() throws Exception {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            body.append("line ").append(i).append("\n");
+        }
+        String message = "Subject: Hello\n\n" + body;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long count = new HeaderRewriter().remove("Subject")
+            .rewrite(new ByteArrayInputStream(message.getBytes(StandardCharsets.US_ASCII)), out);
+
+        Assert.assertEquals("\n" + body, new String(out.toByteArray(), StandardCharsets.US_ASCII));
+        Assert.assertEquals(out.size(), count);
+    }
+
+    @Test
+    public void testRewriteHeaderWithoutBody() throws Exception {
+        Assert.assertEquals("Received: from b.example.com\r\n" +
+                "Subject: Rewritten\r\n" +
+                "X-Checked: yes\r\n" +
+                "\r\n",
+            rewrite("Subject: Hello\r\n"));
+    }
+
+    @Test
+    public void testRewriteEmptyHeader() throws Exception {
+        Assert.assertEquals("Received: from b.example.com\r\n" +
+                "Subject: Rewritten\r\n" +
+                "X-Checked: yes\r\n" +
+                "\r\n" +
+                "body\r\n",
+            rewrite("\r\nbody\r\n"));
+    }
+
+    @Test
+    public void testRewriteKeepsLfLineEndings() throws Exception {
+        Assert.assertEquals(EXPECTED.replace("\r\n", "\n"), rewrite(MESSAGE.replace("\r\n", "\n")));
+        Assert.assertEquals("Received: from b.example.com\n" +
+                "Subject: Rewritten\n" +
+                "X-Checked: yes\n" +
+                "\n" +
+                "body\n",
+            rewrite("\nbody\n"));
+    }
+
+    @Test
+    public void testRewriteKeepsMalformedLines() throws Exception {
+        Assert.assertEquals("Received: from b.example.com\r\n" +
+                "Received: from a.example.com\r\n" +
+                "this is not a header\n" +
+                "Subject: Rewritten\r\n" +
+                "X-Checked: yes\r\n" +
+                "\r\n" +
+                "body\r\n",
+            rewrite("Received: from a.example.com\r\n" +
+                "this is not a header\n" +
+                "Subject: Hello\r\n" +
+                "\r\n" +
+                "body\r\n"));
+    }
+
+    @Test
+    public void testRewriteKeepsLinesAfterMalformedHeaderStartingBody() throws Exception {
+        HeaderRewriter rewriter = new HeaderRewriter(MimeConfig.custom()
+                .setMalformedHeaderStartsBody(true)
+                .build())
+            .remove("X-Spam-Score");
+        String message = "Received: from a.example.com\r\n" +
+            "X-Spam-Score: 5\r\n" +
+            "this is not a header\r\n" +
+            "Subject: kept?\r\n" +
+            "\r\n" +
+            "body\r\n";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        rewriter.rewrite(new ByteArrayInputStream(message.getBytes(StandardCharsets.US_ASCII)), out);
+        Assert.assertEquals("Received: from a.example.com\r\n" +
+                "this is not a header\r\n" +
+                "Subject: kept?\r\n" +
+                "\r\n" +
+                "body\r\n",
+            new String(out.toByteArray(), StandardCharsets.US_ASCII));
+    }
+
+    private String rewrite(String message) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        rewriter.rewrite(new ByteArrayInputStream(message.getBytes(StandardCharsets.US_ASCII)), out);
+        return new String(out.toByteArray(), StandardCharsets.US_ASCII);
+    }
+
+}
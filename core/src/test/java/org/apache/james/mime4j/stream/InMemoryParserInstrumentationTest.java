@@ -0,0 +1,216 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.james.mime4j.MimeException;
+import org.apache.james.mime4j.stream.ParserInstrumentation.Limit;
+import org.apache.james.mime4j.stream.ParserInstrumentation.Phase;
+import org.apache.james.mime4j.util.ContentUtil;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InMemoryParserInstrumentationTest {
+
+    private static final String MESSAGE =
+            "From: foo@bar.com\r\n" +
+            "Subject: test\r\n" +
+            "Content-Type: multipart/mixed; boundary=aaaa\r\n" +
+            "\r\n" +
+            "preamble\r\n" +
+            "--aaaa\r\n" +
+            "Content-Type: text/plain\r\n" +
+            "\r\n" +
+            "plain text\r\n" +
+            "--aaaa\r\n" +
+            "Content-Type: application/octet-stream\r\n" +
+            "Content-Transfer-Encoding: base64\r\n" +
+            "\r\n" +
+            "AAECAwQFBgcICQ==\r\n" +
+            "--aaaa\r\n" +
+            "Content-Type: message/rfc822\r\n" +
+            "\r\n" +
+            "Subject: inner\r\n" +
+            "\r\n" +
+            "inner body\r\n" +
+            "--aaaa--\r\n";
+
+    private InMemoryParserInstrumentation instrumentation;
+
+    @Before
+    public void setUp() {
+        instrumentation = new InMemoryParserInstrumentation();
+    }
+
+    private MimeTokenStream newStream(MimeConfig.Builder builder) {
+        return new MimeTokenStream(builder.setInstrumentation(instrumentation).build());
+    }
+
+    private static void consume(MimeTokenStream stream, String content) throws IOException, MimeException {
+        stream.parse(new ByteArrayInputStream(content.getBytes("US-ASCII")));
+        for (EntityState state = stream.getState();
+                state != EntityState.T_END_OF_STREAM;
+                state = stream.next()) {
+            if (state == EntityState.T_BODY) {
+                InputStream in = stream.getDecodedInputStream();
+                byte[] buf = new byte[16];
+                while (in.read(buf) != -1) {
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCounters() throws Exception {
+        consume(newStream(MimeConfig.custom()), MESSAGE);
+
+        Assert.assertEquals(MESSAGE.length(), instrumentation.getBytesScanned());
+        Assert.assertEquals(5, instrumentation.getEntities());
+        Assert.assertEquals(1, instrumentation.getEntities(0));
+        Assert.assertEquals(3, instrumentation.getEntities(1));
+        Assert.assertEquals(1, instrumentation.getEntities(2));
+        Assert.assertEquals(8, instrumentation.getHeaderFields());
+        Assert.assertEquals(10, instrumentation.getDecodedBytes("base64"));
+        Assert.assertEquals(20, instrumentation.getDecodedBytes("7bit"));
+        Assert.assertTrue(instrumentation.getPhaseCount(Phase.HEADER) > 0);
+        Assert.assertTrue(instrumentation.getPhaseCount(Phase.BOUNDARY_SCAN) > 0);
+        Assert.assertTrue(instrumentation.getPhaseCount(Phase.DECODE) > 0);
+        Assert.assertEquals(0, instrumentation.getPhaseCount(Phase.STORAGE));
+        for (Limit limit : Limit.values()) {
+            Assert.assertEquals(0, instrumentation.getLimitsExceeded(limit));
+        }
+
+        consume(newStream(MimeConfig.custom()), MESSAGE);
+        Assert.assertEquals(2 * MESSAGE.length(), instrumentation.getBytesScanned());
+        Assert.assertEquals(10, instrumentation.getEntities());
+
+        instrumentation.reset();
+        Assert.assertEquals(0, instrumentation.getBytesScanned());
+        Assert.assertEquals(0, instrumentation.getEntities(1));
+        Assert.assertEquals(0, instrumentation.getDecodedBytes("base64"));
+        Assert.assertEquals(0, instrumentation.getPhaseNanos(Phase.HEADER));
+    }
+
+    @Test
+    public void testCountersWithLineNumbers() throws Exception {
+        consume(newStream(MimeConfig.custom().setCountLineNumbers(true)), MESSAGE);
+
+        Assert.assertEquals(MESSAGE.length(), instrumentation.getBytesScanned());
+        Assert.assertEquals(5, instrumentation.getEntities());
+        Assert.assertEquals(8, instrumentation.getHeaderFields());
+    }
+
+    @Test
+    public void testReusedStream() throws Exception {
+        MimeTokenStream stream = newStream(MimeConfig.custom());
+        consume(stream, MESSAGE);
+        consume(stream, MESSAGE);
+
+        Assert.assertEquals(2 * MESSAGE.length(), instrumentation.getBytesScanned());
+        Assert.assertEquals(2, instrumentation.getEntities(0));
+    }
+
+    @Test
+    public void testLineLengthLimit() throws Exception {
+        try {
+            consume(newStream(MimeConfig.custom().setMaxLineLen(10)), MESSAGE);
+            Assert.fail("MimeException expected");
+        } catch (MimeException expected) {
+        }
+        Assert.assertEquals(1, instrumentation.getLimitsExceeded(Limit.LINE_LENGTH));
+    }
+
+    @Test
+    public void testHeaderCountLimit() throws Exception {
+        try {
+            consume(newStream(MimeConfig.custom().setMaxHeaderCount(2)), MESSAGE);
+            Assert.fail("MimeException expected");
+        } catch (MimeException expected) {
+        }
+        Assert.assertEquals(1, instrumentation.getLimitsExceeded(Limit.HEADER_COUNT));
+    }
+
+    @Test
+    public void testHeaderLengthLimit() throws Exception {
+        try {
+            consume(newStream(MimeConfig.custom().setMaxHeaderLen(20)), MESSAGE);
+            Assert.fail("MimeException expected");
+        } catch (MimeException expected) {
+        }
+        Assert.assertEquals(1, instrumentation.getLimitsExceeded(Limit.HEADER_LENGTH));
+    }
+
+    @Test
+    public void testContentLengthLimit() throws Exception {
+        try {
+            consume(newStream(MimeConfig.custom().setMaxContentLen(5)), MESSAGE);
+            Assert.fail("IOException expected");
+        } catch (IOException expected) {
+        }
+        Assert.assertEquals(1, instrumentation.getLimitsExceeded(Limit.CONTENT_LENGTH));
+    }
+
+    @Test
+    public void testDecodedContentLengthLimitReportedOnce() throws Exception {
+        MimeTokenStream stream = newStream(MimeConfig.custom().setMaxContentLen(8));
+        stream.parse(new ByteArrayInputStream((
+                "Content-Transfer-Encoding: base64\r\n" +
+                "\r\n" +
+                "AAECAwQFBgcICQ==\r\n").getBytes("US-ASCII")));
+        while (stream.next() != EntityState.T_BODY) {
+        }
+        try {
+            ContentUtil.buffer(stream.getDecodedInputStream());
+            Assert.fail("IOException expected");
+        } catch (IOException expected) {
+        }
+        Assert.assertEquals(1, instrumentation.getLimitsExceeded(Limit.CONTENT_LENGTH));
+    }
+
+    @Test
+    public void testSingleByteReads() throws Exception {
+        MimeTokenStream stream = newStream(MimeConfig.custom());
+        stream.parse(new ByteArrayInputStream((
+                "Content-Transfer-Encoding: base64\r\n" +
+                "\r\n" +
+                "AAECAwQFBgcICQ==\r\n").getBytes("US-ASCII")));
+        while (stream.next() != EntityState.T_BODY) {
+        }
+        InputStream in = stream.getDecodedInputStream();
+        int count = 0;
+        while (in.read() != -1) {
+            count++;
+        }
+        Assert.assertEquals(10, count);
+        Assert.assertEquals(10, instrumentation.getDecodedBytes("base64"));
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        Assert.assertNull(MimeConfig.DEFAULT.getInstrumentation());
+        MimeConfig config = MimeConfig.custom().setInstrumentation(instrumentation).build();
+        Assert.assertSame(instrumentation, MimeConfig.copy(config).build().getInstrumentation());
+    }
+
+}
@@ -0,0 +1,291 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.stream;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.james.mime4j.ExampleMail;
+import org.apache.james.mime4j.MimeException;
+import org.apache.james.mime4j.util.ContentUtil;
+import org.junit.Assert;
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+public class MimeEventPublisherTest {
+
+    /**
+     * Publishes a message in chunks, on the requesting thread or on the given
+     * executor.
+     */
+    static final class ChunkPublisher implements Publisher<ByteBuffer> {
+
+        final byte[] message;
+        final int chunkSize;
+        final ExecutorService executor;
+        final AtomicInteger requests = new AtomicInteger();
+        volatile boolean cancelled;
+        Throwable failure;
+
+        ChunkPublisher(byte[] message, int chunkSize, ExecutorService executor) {
+            this.message = message;
+            this.chunkSize = chunkSize;
+            this.executor = executor;
+        }
+
+        public void subscribe(final Subscriber<? super ByteBuffer> subscriber) {
+            subscriber.onSubscribe(new Subscription() {
+
+                final AtomicInteger wip = new AtomicInteger();
+                int offset = 0;
+                long demand = 0;
+
+                public void request(long n) {
+                    requests.incrementAndGet();
+                    if (executor != null) {
+                        executor.execute(() -> emit(n));
+                    } else {
+                        emit(n);
+                    }
+                }
+
+                private synchronized void emit(long n) {
+                    demand += n;
+                    if (wip.getAndIncrement() != 0) {
+                        return;
+                    }
+                    do {
+                        while (demand > 0 && !cancelled) {
+                            if (failure != null) {
+                                cancelled = true;
+                                subscriber.onError(failure);
+                            } else if (offset < message.length) {
+                                int len = Math.min(chunkSize, message.length - offset);
+                                ByteBuffer chunk = ByteBuffer.wrap(message, offset, len);
+                                offset += len;
+                                demand--;
+                                subscriber.onNext(chunk);
+                            } else {
+                                cancelled = true;
+                                subscriber.onComplete();
+                            }
+                        }
+                    } while (wip.decrementAndGet() != 0);
+                }
+
+                public void cancel() {
+                    cancelled = true;
+                }
+
+            });
+        }
+
+    }
+
+    static final class Recorder implements Subscriber<MimeEvent> {
+
+        final List<String> events = new ArrayList<>();
+        final StringBuilder content = new StringBuilder();
+        final CountDownLatch terminated = new CountDownLatch(1);
+        final long batch;
+        Subscription subscription;
+        Throwable error;
+        boolean completed;
+
+        Recorder(long batch) {
+            this.batch = batch;
+        }
+
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            if (batch > 0) {
+                subscription.request(batch);
+            }
+        }
+
+        public void onNext(MimeEvent event) {
+            if (event.isContent()) {
+                content.append(StandardCharsets.ISO_8859_1.decode(event.getContent()));
+            } else {
+                endContent();
+                Field field = event.getField();
+                events.add(field != null ? event.getState() + " " + field.getRaw() : event.getState().toString());
+            }
+            if (batch == 1) {
+                subscription.request(1);
+            }
+        }
+
+        public void onError(Throwable throwable) {
+            error = throwable;
+            terminated.countDown();
+        }
+
+        public void onComplete() {
+            endContent();
+            completed = true;
+            terminated.countDown();
+        }
+
+        void endContent() {
+            if (content.length() > 0) {
+                events.add(content.toString());
+                content.setLength(0);
+            }
+        }
+
+    }
+
+    private static final byte[][] MESSAGES = {
+        ExampleMail.MIME_MULTIPART_EMBEDDED_MESSAGES_BYTES,
+        ExampleMail.MULTIPART_WITH_BINARY_ATTACHMENTS_PREAMBLE_EPILOGUE_BYTES,
+        ExampleMail.MIME_MIXED_MULTIPART_VARIOUS_ENCODINGS_BYTES,
+        ExampleMail.RFC822_SIMPLE_BYTES,
+        new byte[0]
+    };
+
+    @Test
+    public void testSameEventsAsMimePushParser() throws Exception {
+        for (byte[] message : MESSAGES) {
+            for (int chunkSize : new int[] {1, 7, 4096}) {
+                for (long batch : new long[] {1, 3, Long.MAX_VALUE}) {
+                    List<String> expected = MimePushParserTest.push(message, RecursionMode.M_RECURSE, chunkSize);
+                    Recorder recorder = new Recorder(batch);
+                    new MimeEventPublisher(new ChunkPublisher(message, chunkSize, null), null).subscribe(recorder);
+                    if (batch == 3) {
+                        while (!recorder.completed && recorder.error == null) {
+                            recorder.subscription.request(3);
+                        }
+                    }
+                    Assert.assertNull(recorder.error);
+                    Assert.assertTrue(recorder.completed);
+                    Assert.assertEquals(expected, recorder.events);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRecursionMode() throws Exception {
+        byte[] message = ExampleMail.MIME_MULTIPART_EMBEDDED_MESSAGES_BYTES;
+        MimeEventPublisher publisher = new MimeEventPublisher(new ChunkPublisher(message, 64, null));
+        publisher.setRecursionMode(RecursionMode.M_FLAT);
+        Recorder recorder = new Recorder(Long.MAX_VALUE);
+        publisher.subscribe(recorder);
+        Assert.assertEquals(MimePushParserTest.push(message, RecursionMode.M_FLAT, 64), recorder.events);
+    }
+
+    @Test
+    public void testAsynchronousUpstream() throws Exception {
+        byte[] message = ExampleMail.MIME_MULTIPART_EMBEDDED_MESSAGES_BYTES;
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Recorder recorder = new Recorder(1);
+            new MimeEventPublisher(new ChunkPublisher(message, 5, executor)).subscribe(recorder);
+            Assert.assertTrue(recorder.terminated.await(30, TimeUnit.SECONDS));
+            Assert.assertNull(recorder.error);
+            Assert.assertEquals(MimePushParserTest.push(message, RecursionMode.M_RECURSE, 5), recorder.events);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testBackPressure() throws Exception {
+        ChunkPublisher upstream = new ChunkPublisher(ExampleMail.RFC822_SIMPLE_BYTES, 4096, null);
+        Recorder recorder = new Recorder(0);
+        new MimeEventPublisher(upstream).subscribe(recorder);
+        Assert.assertEquals(0, upstream.requests.get());
+
+        recorder.subscription.request(1);
+        Assert.assertEquals(1, upstream.requests.get());
+        Assert.assertEquals(1, recorder.events.size());
+        Assert.assertEquals("T_START_MESSAGE", recorder.events.get(0));
+
+        // the events of the first chunk are queued, no further chunk is requested
+        recorder.subscription.request(2);
+        Assert.assertEquals(1, upstream.requests.get());
+        Assert.assertEquals(3, recorder.events.size());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        ChunkPublisher upstream = new ChunkPublisher(ExampleMail.RFC822_SIMPLE_BYTES, 16, null);
+        Recorder recorder = new Recorder(2);
+        new MimeEventPublisher(upstream).subscribe(recorder);
+        recorder.subscription.cancel();
+        Assert.assertTrue(upstream.cancelled);
+        recorder.subscription.request(10);
+        Assert.assertEquals(2, recorder.events.size());
+        Assert.assertFalse(recorder.completed);
+        Assert.assertNull(recorder.error);
+    }
+
+    @Test
+    public void testNonPositiveRequest() throws Exception {
+        ChunkPublisher upstream = new ChunkPublisher(ExampleMail.RFC822_SIMPLE_BYTES, 16, null);
+        Recorder recorder = new Recorder(0);
+        new MimeEventPublisher(upstream).subscribe(recorder);
+        recorder.subscription.request(0);
+        Assert.assertTrue(upstream.cancelled);
+        Assert.assertTrue(recorder.error instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void testUpstreamError() throws Exception {
+        ChunkPublisher upstream = new ChunkPublisher(ExampleMail.RFC822_SIMPLE_BYTES, 16, null);
+        upstream.failure = new IllegalStateException("broken");
+        Recorder recorder = new Recorder(Long.MAX_VALUE);
+        new MimeEventPublisher(upstream).subscribe(recorder);
+        Assert.assertSame(upstream.failure, recorder.error);
+        Assert.assertFalse(recorder.completed);
+    }
+
+    @Test
+    public void testParserError() throws Exception {
+        MimeConfig config = MimeConfig.custom().setMaxLineLen(10).build();
+        byte[] message = ContentUtil.toAsciiByteArray("Subject: a rather long line\r\n\r\nbody");
+        Recorder recorder = new Recorder(Long.MAX_VALUE);
+        ChunkPublisher upstream = new ChunkPublisher(message, 4, null);
+        new MimeEventPublisher(upstream, config).subscribe(recorder);
+        Assert.assertTrue(recorder.error instanceof MimeException);
+        Assert.assertTrue(upstream.cancelled);
+    }
+
+    @Test
+    public void testSingleSubscriber() throws Exception {
+        MimeEventPublisher publisher = new MimeEventPublisher(
+                new ChunkPublisher(ExampleMail.RFC822_SIMPLE_BYTES, 16, null));
+        publisher.subscribe(new Recorder(0));
+        Recorder second = new Recorder(0);
+        publisher.subscribe(second);
+        Assert.assertTrue(second.error instanceof IllegalStateException);
+    }
+
+}
@@ -0,0 +1,303 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.james.mime4j.ExampleMail;
+import org.apache.james.mime4j.MimeException;
+import org.apache.james.mime4j.MimeIOException;
+import org.apache.james.mime4j.io.MaxContentLengthLimitException;
+import org.apache.james.mime4j.parser.AbstractContentHandler;
+import org.apache.james.mime4j.parser.MimePushStreamParser;
+import org.apache.james.mime4j.util.ContentUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MimePushParserTest {
+
+    private static final byte[][] MESSAGES = {
+        ExampleMail.MAIL_WITH_RFC822_PART_BYTES,
+        ExampleMail.MIME_MULTIPART_EMBEDDED_MESSAGES_BYTES,
+        ExampleMail.MULTIPART_WITH_BINARY_ATTACHMENTS_PREAMBLE_EPILOGUE_BYTES,
+        ExampleMail.MULTIPART_WITH_BINARY_ATTACHMENTS_NOPREAMBLE_BYTES,
+        ExampleMail.MIME_MIXED_MULTIPART_VARIOUS_ENCODINGS_BYTES,
+        ExampleMail.ONE_PART_MIME_QUOTED_PRINTABLE_ASCII_BYTES,
+        ExampleMail.RFC822_SIMPLE_BYTES,
+        ContentUtil.toAsciiByteArray(
+            "Content-Type: multipart/mixed; boundary=outer\r\n\r\n" +
+            "--outer\r\n" +
+            "Content-Type: multipart/alternative; boundary=inner\r\n\r\n" +
+            "--inner\r\n\r\nunterminated inner part\r\n" +
+            "--outer--\r\n"),
+        ContentUtil.toAsciiByteArray(
+            "Subject: truncated\r\n" +
+            "Content-Type: multipart/mixed; boundary=b\r\n\r\n" +
+            "--b\r\nContent-Type: text/plain\r\n"),
+        ContentUtil.toAsciiByteArray(
+            "Content-Type: multipart/mixed; boundary=b\r\n\r\n" +
+            "--b\r\n" +
+            "Content-Type: message/rfc822\r\n" +
+            "Content-Transfer-Encoding: base64\r\n\r\n" +
+            "U3ViamVjdDogZW5jb2RlZA0KQ29udGVudC1UeXBlOiBtdWx0aXBhcnQvbWl4ZWQ7IGJvdW5kYXJ5\r\n" +
+            "PWkNCg0KLS1pDQoNCmZpcnN0DQotLWkNCkNvbnRlbnQtVHlwZTogdGV4dC9wbGFpbg0KDQpzZWNv\r\n" +
+            "bmQNCi0taS0tDQo=\r\n" +
+            "--b\r\n" +
+            "Content-Type: message/rfc822\r\n" +
+            "Content-Transfer-Encoding: quoted-printable\r\n\r\n" +
+            "Subject: quoted=\r\n" +
+            "-printable\r\n\r\n" +
+            "caf=E9 au lait\r\n" +
+            "--b--\r\n"),
+        new byte[0]
+    };
+
+    private static final RecursionMode[] MODES = {
+        RecursionMode.M_RECURSE, RecursionMode.M_NO_RECURSE, RecursionMode.M_FLAT, RecursionMode.M_RAW
+    };
+
+    static final class Recorder implements MimePushParser.Listener {
+
+        final List<String> events = new ArrayList<>();
+        final StringBuilder content = new StringBuilder();
+
+        public void event(MimePushParser parser, EntityState state) {
+            endContent();
+            events.add(describe(state, state == EntityState.T_FIELD ? parser.getField() : null));
+        }
+
+        public void content(MimePushParser parser, ByteBuffer chunk) {
+            while (chunk.hasRemaining()) {
+                content.append((char) (chunk.get() & 0xff));
+            }
+        }
+
+        void endContent() {
+            if (content.length() > 0) {
+                events.add(content.toString());
+                content.setLength(0);
+            }
+        }
+
+    }
+
+    private static String describe(EntityState state, Field field) {
+        return field != null ? state + " " + field.getRaw() : state.toString();
+    }
+
+    private static List<String> pull(byte[] message, RecursionMode mode) throws Exception {
+        List<String> events = new ArrayList<>();
+        MimeTokenStream stream = new MimeTokenStream();
+        stream.setRecursionMode(mode);
+        stream.parse(new ByteArrayInputStream(message));
+        for (EntityState state = stream.getState(); ; state = stream.next()) {
+            events.add(describe(state, state == EntityState.T_FIELD ? stream.getField() : null));
+            switch (state) {
+            case T_BODY:
+            case T_PREAMBLE:
+            case T_EPILOGUE:
+            case T_RAW_ENTITY:
+                String content = new String(ContentUtil.buffer(stream.getInputStream()), StandardCharsets.ISO_8859_1);
+                if (content.length() > 0) {
+                    events.add(content);
+                }
+                break;
+            case T_END_OF_STREAM:
+                return events;
+            default:
+            }
+        }
+    }
+
+    static List<String> push(byte[] message, RecursionMode mode, int chunkSize) throws Exception {
+        Recorder recorder = new Recorder();
+        MimePushParser parser = new MimePushParser(recorder);
+        parser.setRecursionMode(mode);
+        for (int off = 0; off < message.length; off += chunkSize) {
+            parser.feed(ByteBuffer.wrap(message, off, Math.min(chunkSize, message.length - off)));
+        }
+        parser.endOfInput();
+        recorder.endContent();
+        return recorder.events;
+    }
+
+    @Test
+    public void testSameEventsAsMimeTokenStream() throws Exception {
+        for (byte[] message : MESSAGES) {
+            for (RecursionMode mode : MODES) {
+                List<String> expected = pull(message, mode);
+                for (int chunkSize : new int[] { 1, 2, 5, 64, 1 << 16 }) {
+                    Assert.assertEquals(mode + ", chunks of " + chunkSize, expected, push(message, mode, chunkSize));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDirectBuffers() throws Exception {
+        byte[] message = ExampleMail.MIME_MULTIPART_EMBEDDED_MESSAGES_BYTES;
+        Recorder recorder = new Recorder();
+        MimePushParser parser = new MimePushParser(recorder);
+        ByteBuffer direct = ByteBuffer.allocateDirect(message.length);
+        direct.put(message).flip();
+        parser.feed(direct);
+        parser.endOfInput();
+        recorder.endContent();
+        Assert.assertFalse(direct.hasRemaining());
+        Assert.assertEquals(pull(message, RecursionMode.M_RECURSE), recorder.events);
+    }
+
+    @Test
+    public void testContentIsNotAccumulated() throws Exception {
+        final int[] received = new int[1];
+        MimePushParser parser = new MimePushParser(new MimePushParser.Listener() {
+
+            public void event(MimePushParser parser, EntityState state) {
+            }
+
+            public void content(MimePushParser parser, ByteBuffer chunk) {
+                received[0] += chunk.remaining();
+            }
+
+        });
+        parser.feed(ByteBuffer.wrap(ContentUtil.toAsciiByteArray(
+                "Content-Type: multipart/mixed; boundary=b\r\n\r\n--b\r\n\r\n")));
+        byte[] chunk = new byte[8192];
+        Arrays.fill(chunk, (byte) 'x');
+        for (int i = 0; i < 128; i++) {
+            parser.feed(ByteBuffer.wrap(chunk));
+            // content is handed on as it arrives
+            Assert.assertEquals((i + 1) * chunk.length, received[0]);
+        }
+        parser.feed(ByteBuffer.wrap(ContentUtil.toAsciiByteArray("\r\n--b")));
+        Assert.assertEquals(128 * chunk.length, received[0]);
+        parser.endOfInput();
+        Assert.assertEquals(EntityState.T_END_OF_STREAM, parser.getState());
+    }
+
+    @Test
+    public void testReset() throws Exception {
+        Recorder recorder = new Recorder();
+        MimePushParser parser = new MimePushParser(recorder);
+        parser.feed(ByteBuffer.wrap(ExampleMail.MIME_MULTIPART_EMBEDDED_MESSAGES_BYTES, 0, 500));
+        parser.reset();
+        recorder.events.clear();
+        recorder.content.setLength(0);
+        parser.feed(ByteBuffer.wrap(ExampleMail.MAIL_WITH_RFC822_PART_BYTES));
+        parser.endOfInput();
+        recorder.endContent();
+        Assert.assertEquals(pull(ExampleMail.MAIL_WITH_RFC822_PART_BYTES, RecursionMode.M_RECURSE), recorder.events);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFeedAfterEndOfInput() throws Exception {
+        MimePushParser parser = new MimePushParser(new Recorder());
+        parser.feed(ByteBuffer.wrap(ExampleMail.RFC822_SIMPLE_BYTES));
+        parser.endOfInput();
+        parser.feed(ByteBuffer.wrap(ExampleMail.RFC822_SIMPLE_BYTES));
+    }
+
+    @Test(expected = MimeException.class)
+    public void testMaxLineLen() throws Exception {
+        MimeConfig config = MimeConfig.custom().setMaxLineLen(100).build();
+        MimePushParser parser = new MimePushParser(config, new Recorder());
+        byte[] line = new byte[60];
+        Arrays.fill(line, (byte) 'x');
+        line[0] = 'X';
+        line[1] = ':';
+        parser.feed(ByteBuffer.wrap(line));
+        parser.feed(ByteBuffer.wrap(line));
+    }
+
+    @Test(expected = MaxContentLengthLimitException.class)
+    public void testMaxContentLen() throws Exception {
+        MimeConfig config = MimeConfig.custom().setMaxContentLen(10).build();
+        MimePushParser parser = new MimePushParser(config, new Recorder());
+        parser.feed(ByteBuffer.wrap(ContentUtil.toAsciiByteArray(
+                "Subject: test\r\n\r\nmore than ten bytes of body\r\n")));
+        parser.endOfInput();
+    }
+
+    @Test(expected = MaxContentLengthLimitException.class)
+    public void testStreamParserMaxContentLen() throws Exception {
+        MimeConfig config = MimeConfig.custom().setMaxContentLen(10).build();
+        MimePushStreamParser parser = new MimePushStreamParser(config);
+        parser.setContentHandler(new AbstractContentHandler() {
+        });
+        byte[] body = new byte[4096];
+        Arrays.fill(body, (byte) 'x');
+        parser.feed(ByteBuffer.wrap(ContentUtil.toAsciiByteArray("Subject: test\r\n\r\n")));
+        parser.feed(ByteBuffer.wrap(body));
+        parser.endOfInput();
+    }
+
+    @Test
+    public void testStreamParserDefaultMaxContentLen() throws Exception {
+        MimePushStreamParser parser = new MimePushStreamParser();
+        parser.setContentHandler(new AbstractContentHandler() {
+        });
+        byte[] body = new byte[1 << 20];
+        Arrays.fill(body, (byte) 'x');
+        parser.feed(ByteBuffer.wrap(ContentUtil.toAsciiByteArray("Subject: test\r\n\r\n")));
+        long fed = 0;
+        try {
+            while (fed <= MimePushStreamParser.DEFAULT_MAX_CONTENT_LEN) {
+                parser.feed(ByteBuffer.wrap(body));
+                fed += body.length;
+            }
+            Assert.fail("MaxContentLengthLimitException expected");
+        } catch (MaxContentLengthLimitException expected) {
+            Assert.assertEquals(MimePushStreamParser.DEFAULT_MAX_CONTENT_LEN, fed);
+        }
+    }
+
+    @Test(expected = MimeIOException.class)
+    public void testStrictPrematureEnd() throws Exception {
+        MimeConfig config = MimeConfig.custom().setStrictParsing(true).build();
+        MimePushParser parser = new MimePushParser(config, new Recorder());
+        parser.feed(ByteBuffer.wrap(ContentUtil.toAsciiByteArray(
+                "Content-Type: multipart/mixed; boundary=b\r\n\r\n--b\r\nSubject: part\r\n\r\nno end\r\n")));
+        parser.endOfInput();
+    }
+
+    @Test
+    public void testStrictPrematureEndAtEnclosingDelimiter() throws Exception {
+        MimeConfig config = MimeConfig.custom().setStrictParsing(true).build();
+        MimePushParser parser = new MimePushParser(config, new Recorder());
+        parser.feed(ByteBuffer.wrap(ContentUtil.toAsciiByteArray(
+                "Content-Type: multipart/mixed; boundary=outer\r\n\r\n" +
+                "--outer\r\n" +
+                "Content-Type: multipart/alternative; boundary=inner\r\n\r\n" +
+                "--inner\r\nSubject: part\r\n\r\nunterminated inner part\r\n")));
+        try {
+            // the delimiter of the outer entity ends the inner one too early
+            parser.feed(ByteBuffer.wrap(ContentUtil.toAsciiByteArray("--outer--\r\n")));
+            Assert.fail("MimeIOException expected");
+        } catch (MimeIOException expected) {
+        }
+    }
+
+}
@@ -20,11 +20,13 @@
 package org.apache.james.mime4j.stream;
 
 import org.apache.james.mime4j.ExampleMail;
+import org.apache.james.mime4j.util.ContentUtil;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 
 public class MimeTokenStreamTest {
 
@@ -81,4 +83,63 @@ public class MimeTokenStreamTest {
     private void checkNextIs(EntityState expected) throws Exception {
         Assert.assertEquals(MimeTokenStream.stateToString(expected), MimeTokenStream.stateToString(stream.next()));
     }
+    @Test
+    public void testParseSeveralMessagesWithSameInstance() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            stream.parse(new ByteArrayInputStream(
+                    ("Subject: message " + i + "\r\n\r\nbody " + i).getBytes(StandardCharsets.US_ASCII)));
+            checkNextIs(EntityState.T_START_HEADER);
+            checkNextIs(EntityState.T_FIELD);
+            Assert.assertEquals("message " + i, stream.getField().getBody().trim());
+            checkNextIs(EntityState.T_END_HEADER);
+            checkNextIs(EntityState.T_BODY);
+            Assert.assertEquals("body " + i, readBody());
+            checkNextIs(EntityState.T_END_MESSAGE);
+            checkNextIs(EntityState.T_END_OF_STREAM);
+        }
+    }
+
+    @Test
+    public void testResetMidParse() throws Exception {
+        stream.parse(new ByteArrayInputStream(ExampleMail.MAIL_WITH_RFC822_PART_BYTES));
+        checkNextIs(EntityState.T_START_HEADER);
+        checkNextIs(EntityState.T_FIELD);
+        stream.reset();
+        Assert.assertEquals(EntityState.T_END_OF_STREAM, stream.getState());
+        stream.reset();
+
+        stream.parse(new ByteArrayInputStream(
+                "Subject: second\r\n\r\nsecond body".getBytes(StandardCharsets.US_ASCII)));
+        checkNextIs(EntityState.T_START_HEADER);
+        checkNextIs(EntityState.T_FIELD);
+        checkNextIs(EntityState.T_END_HEADER);
+        checkNextIs(EntityState.T_BODY);
+        Assert.assertEquals("second body", readBody());
+        checkNextIs(EntityState.T_END_MESSAGE);
+        checkNextIs(EntityState.T_END_OF_STREAM);
+    }
+
+    @Test
+    public void testParseAfterStop() throws Exception {
+        stream.parse(new ByteArrayInputStream(ExampleMail.MAIL_WITH_RFC822_PART_BYTES));
+        checkNextIs(EntityState.T_START_HEADER);
+        stream.stop();
+        while (stream.next() != EntityState.T_END_OF_STREAM) {
+        }
+
+        stream.parse(new ByteArrayInputStream(
+                "Subject: again\r\n\r\nagain".getBytes(StandardCharsets.US_ASCII)));
+        checkNextIs(EntityState.T_START_HEADER);
+        checkNextIs(EntityState.T_FIELD);
+        Assert.assertEquals("again", stream.getField().getBody().trim());
+        checkNextIs(EntityState.T_END_HEADER);
+        checkNextIs(EntityState.T_BODY);
+        Assert.assertEquals("again", readBody());
+        checkNextIs(EntityState.T_END_MESSAGE);
+        checkNextIs(EntityState.T_END_OF_STREAM);
+    }
+
+    private String readBody() throws Exception {
+        return ContentUtil.toAsciiString(ContentUtil.buffer(stream.getInputStream()));
+    }
 }
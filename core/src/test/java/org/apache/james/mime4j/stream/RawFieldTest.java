@@ -24,6 +24,7 @@ import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
 
 import org.apache.james.mime4j.util.ByteSequence;
 import org.apache.james.mime4j.util.ContentUtil;
+import org.apache.james.mime4j.util.MimeUtil;
 import org.junit.Test;
 
 import junit.framework.Assert;
@@ -105,4 +106,22 @@ public class RawFieldTest {
         assertThatCode(() -> new RawField("Name", "Value")).doesNotThrowAnyException();
     }
 
+
+    @Test
+    public void testUnfoldedBody() throws Exception {
+        String s = "raw: stuff;\r\n  more \u00e9\r\n\tstuff";
+        ByteSequence raw = ContentUtil.encode(s);
+        RawField field = new RawField(raw, 3, "raw", null);
+        Assert.assertEquals("stuff;  more \u00e9\tstuff", field.getBody());
+    }
+
+    @Test
+    public void testComputedRawIsFoldedOnce() throws Exception {
+        String body = "this is a rather long field body that will need to be folded once written out";
+        RawField field = new RawField("Subject", body);
+        ByteSequence safeRaw = field.getSafeRaw();
+        Assert.assertEquals(MimeUtil.fold("Subject: " + body, 0), ContentUtil.decode(safeRaw));
+        Assert.assertSame(safeRaw, field.getSafeRaw());
+    }
+
 }
@@ -62,4 +62,28 @@ public class CharsetUtilTest {
         Assert.assertNull(c1);
     }
 
+    @Test
+    public void testCharsetLookupMailAliases() {
+        Assert.assertEquals(Charsets.UTF_8, CharsetUtil.lookup("utf8"));
+        Assert.assertEquals(Charsets.UTF_8, CharsetUtil.lookup(" \"UTF-8\" "));
+        Assert.assertEquals(Charsets.ISO_8859_1, CharsetUtil.lookup("iso8859_1"));
+        Assert.assertEquals(Charsets.ISO_8859_1, CharsetUtil.lookup("ISO-8859_1"));
+        Assert.assertEquals(Charset.forName("ISO-8859-15"), CharsetUtil.lookup("iso8859-15"));
+        Assert.assertEquals(Charset.forName("windows-1252"), CharsetUtil.lookup("win-1252"));
+        Assert.assertEquals(Charset.forName("windows-1251"), CharsetUtil.lookup("x-cp1251"));
+        Assert.assertEquals(Charset.forName("Shift_JIS"), CharsetUtil.lookup("x-sjis"));
+    }
+
+    @Test
+    public void testCharsetLookupIsCached() {
+        Charset c1 = CharsetUtil.lookup("x-euc-jp");
+        double rate = CharsetUtil.getLookupHitRate();
+        Charset c2 = CharsetUtil.lookup("x-euc-jp");
+        Assert.assertSame(c1, c2);
+        Assert.assertTrue(CharsetUtil.getLookupHitRate() > rate);
+
+        Assert.assertNull(CharsetUtil.lookup("no such charset"));
+        Assert.assertNull(CharsetUtil.lookup("no such charset"));
+    }
+
 }
@@ -19,6 +19,8 @@
 
 package org.apache.james.mime4j.util;
 
+import java.nio.charset.StandardCharsets;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -78,4 +80,71 @@ public class MimeUtilTest {
             .unfold("this\r\n is\r\n a\r\n test"));
     }
 
+
+    @Test
+    public void testFoldBytes() {
+        assertFoldBytes("this is a test", 0, 4);
+        assertFoldBytes("this is a test", 0, 5);
+        assertFoldBytes("this is a test", 1, 4);
+        assertFoldBytes("this     is a test", 70, MimeUtil.DEFAULT_MAX_CHARACTERS);
+
+        String ninety = "1234567890123456789012345678901234567890"
+            + "12345678901234567890123456789012345678901234567890";
+        assertFoldBytes(String.format("testing 1 2 %s testing %s", ninety, ninety), 0,
+            MimeUtil.DEFAULT_MAX_CHARACTERS);
+        assertFoldBytes(ninety, 0, MimeUtil.DEFAULT_MAX_CHARACTERS);
+    }
+
+    @Test
+    public void testFoldBytesReturnsInputWhenNoFoldingIsNeeded() {
+        ByteSequence raw = ContentUtil.encode("this is a test");
+        Assert.assertSame(raw, MimeUtil.fold(raw, 0));
+        Assert.assertSame(raw, MimeUtil.fold(raw, 62));
+
+        ByteSequence unbreakable = ContentUtil.encode("12345678901234567890");
+        Assert.assertSame(unbreakable, MimeUtil.fold(unbreakable, 0, 4));
+    }
+
+    @Test
+    public void testUnfoldBytes() {
+        String[] inputs = { "", "x", "\r", "\n", "\r\n", " \r\n", "\r\n ",
+                "this is\r\n a test", "this  \r\n   is a test", "this\r\n is\r\n a\r\n test" };
+        for (String input : inputs) {
+            ByteSequence raw = ContentUtil.encode(input);
+            Assert.assertEquals(MimeUtil.unfold(input), ContentUtil.decode(MimeUtil.unfold(raw)));
+        }
+
+        ByteSequence raw = ContentUtil.encode("this is a test");
+        Assert.assertSame(raw, MimeUtil.unfold(raw));
+    }
+
+    @Test
+    public void testUnfoldBytesIntoBuffer() {
+        ByteSequence raw = ContentUtil.encode("Subject: this\r\n is\r\n\ta test");
+        byte[] dst = new byte[64];
+        int len = MimeUtil.unfold(raw, 9, raw.length() - 9, dst);
+        Assert.assertEquals("this is\ta test", new String(dst, 0, len, StandardCharsets.US_ASCII));
+
+        ByteSequence bytes = new ByteSequence() {
+            public int length() {
+                return raw.length();
+            }
+
+            public byte byteAt(int index) {
+                return raw.byteAt(index);
+            }
+
+            public byte[] toByteArray() {
+                return raw.toByteArray();
+            }
+        };
+        len = MimeUtil.unfold(bytes, 9, bytes.length() - 9, dst);
+        Assert.assertEquals("this is\ta test", new String(dst, 0, len, StandardCharsets.US_ASCII));
+    }
+
+    private static void assertFoldBytes(String s, int used, int max) {
+        ByteSequence folded = MimeUtil.fold(ContentUtil.encode(s), used, max);
+        Assert.assertEquals(MimeUtil.fold(s, used, max), ContentUtil.decode(folded));
+    }
+
 }
\ No newline at end of file
@@ -22,6 +22,10 @@ package org.apache.james.mime4j.dom;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.NullOutputStream;
@@ -84,6 +88,67 @@ public abstract class SingleBody implements Body {
         in.close();
     }
 
+    /**
+     * Writes this single body to the given channel. The default implementation
+     * writes the buffer returned by {@link #getByteBuffer()} if any, and
+     * copies the input stream obtained by {@link #getInputStream()} otherwise.
+     * May be overwritten by a subclass to improve performance, for example
+     * using <code>FileChannel.transferTo</code> for file backed content.
+     *
+     * @param channel
+     *            the channel to write to.
+     * @return the number of bytes written.
+     * @throws IOException
+     *             in case of an I/O error
+     */
+    public long writeTo(WritableByteChannel channel) throws IOException {
+        if (channel == null)
+            throw new IllegalArgumentException();
+
+        ByteBuffer content = getByteBuffer();
+        if (content != null) {
+            long written = content.remaining();
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+            return written;
+        }
+
+        try (InputStream in = getInputStream()) {
+            return ContentUtil.copy(in, channel);
+        }
+    }
+
+    /**
+     * Returns the bytes of this body as a read only buffer if they are held in
+     * memory, so that they can be written without being copied. The returned
+     * buffer is independent from the buffers returned by previous calls.
+     * <p>
+     * This implementation returns <code>null</code>.
+     *
+     * @return a buffer holding the content, transfer decoded, or
+     *         <code>null</code> if the content is not held in memory.
+     * @throws IOException
+     *             on I/O errors.
+     */
+    public ByteBuffer getByteBuffer() throws IOException {
+        return null;
+    }
+
+    /**
+     * Gets a channel which reads the bytes of the body. The default
+     * implementation wraps the input stream obtained by
+     * {@link #getInputStream()}; file backed bodies may return a channel on
+     * the file itself.
+     *
+     * @return the channel, transfer decoded
+     * @throws IOException
+     *             on I/O errors.
+     */
+    public ReadableByteChannel getChannel() throws IOException {
+        return Channels.newChannel(getInputStream());
+    }
+
     public long size() throws IOException {
         return IOUtils.copyLarge(getInputStream(), NullOutputStream.NULL_OUTPUT_STREAM);
     }
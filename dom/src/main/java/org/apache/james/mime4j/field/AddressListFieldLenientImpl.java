@@ -26,6 +26,7 @@ import org.apache.james.mime4j.dom.FieldParser;
 import org.apache.james.mime4j.dom.address.AddressList;
 import org.apache.james.mime4j.dom.address.Mailbox;
 import org.apache.james.mime4j.dom.field.AddressListField;
+import org.apache.james.mime4j.field.address.CompactAddressList;
 import org.apache.james.mime4j.field.address.LenientAddressParser;
 import org.apache.james.mime4j.stream.Field;
 import org.apache.james.mime4j.stream.ParserCursor;
@@ -53,6 +54,24 @@ public class AddressListFieldLenientImpl extends AbstractField implements Addres
         return addressList;
     }
 
+    /**
+     * Parses this field into a {@link CompactAddressList}, which records the
+     * offsets of each mailbox instead of creating address objects. The result
+     * is not cached.
+     */
+    public CompactAddressList getCompactAddressList() {
+        RawField f = getRawField();
+        ByteSequence buf = f.getRaw();
+        int pos = f.getDelimiterIdx() + 1;
+        if (buf == null) {
+            String body = f.getBody();
+            buf = ContentUtil.encode(body != null ? body : "");
+            pos = 0;
+        }
+        ParserCursor cursor = new ParserCursor(pos, buf.length());
+        return LenientAddressParser.DEFAULT.parseCompactAddressList(buf, cursor);
+    }
+
     private void parse() {
         parsed = true;
         RawField f = getRawField();
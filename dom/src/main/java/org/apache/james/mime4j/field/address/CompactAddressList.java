@@ -0,0 +1,359 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.field.address;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.james.mime4j.dom.address.Address;
+import org.apache.james.mime4j.dom.address.AddressList;
+import org.apache.james.mime4j.dom.address.Group;
+import org.apache.james.mime4j.dom.address.Mailbox;
+import org.apache.james.mime4j.stream.ParserCursor;
+import org.apache.james.mime4j.util.ByteSequence;
+import org.apache.james.mime4j.util.ContentUtil;
+
+/**
+ * Flat representation of an address list produced by
+ * {@link LenientAddressParser#parseCompactAddressList(ByteSequence, ParserCursor)}.
+ * <p>
+ * Mailboxes are stored as offsets into the raw field: the whole mailbox, its
+ * display name, local part and domain. Mailboxes belonging to a group are
+ * listed in place, the group only records its name and the range of mailboxes
+ * it holds, so that {@link #size()} is the number of recipients. Offsets of
+ * missing parts are <code>-1</code>.
+ * </p>
+ * <p>
+ * {@link Mailbox} objects are only created on demand, by parsing the mailbox
+ * slice with the lenient parser that produced this list, and are then kept.
+ * Instances are therefore not thread-safe.
+ * </p>
+ */
+public final class CompactAddressList {
+
+    private static final int START        = 0;
+    private static final int END          = 1;
+    private static final int NAME_START   = 2;
+    private static final int NAME_END     = 3;
+    private static final int LOCAL_START  = 4;
+    private static final int LOCAL_END    = 5;
+    private static final int DOMAIN_START = 6;
+    private static final int DOMAIN_END   = 7;
+    private static final int GROUP        = 8;
+    private static final int STRIDE       = 9;
+
+    private static final int GROUP_NAME_START = 0;
+    private static final int GROUP_NAME_END   = 1;
+    private static final int GROUP_FIRST      = 2;
+    private static final int GROUP_COUNT      = 3;
+    private static final int GROUP_STRIDE     = 4;
+
+    private final LenientAddressParser parser;
+    private final ByteSequence raw;
+
+    private int[] mailboxes;
+    private int size;
+    private int[] groups;
+    private int groupCount;
+    private Mailbox[] materialized;
+
+    CompactAddressList(final LenientAddressParser parser, final ByteSequence raw) {
+        this.parser = parser;
+        this.raw = raw;
+        this.mailboxes = new int[STRIDE * 4];
+        this.groups = new int[0];
+    }
+
+    void addMailbox(int start, int end, long name, long localPart, long domain, int group) {
+        if (mailboxes.length < (size + 1) * STRIDE) {
+            mailboxes = Arrays.copyOf(mailboxes, mailboxes.length << 1);
+        }
+        int off = size * STRIDE;
+        mailboxes[off + START] = start;
+        mailboxes[off + END] = end;
+        mailboxes[off + NAME_START] = LenientAddressParser.spanStart(name);
+        mailboxes[off + NAME_END] = LenientAddressParser.spanEnd(name);
+        mailboxes[off + LOCAL_START] = LenientAddressParser.spanStart(localPart);
+        mailboxes[off + LOCAL_END] = LenientAddressParser.spanEnd(localPart);
+        mailboxes[off + DOMAIN_START] = LenientAddressParser.spanStart(domain);
+        mailboxes[off + DOMAIN_END] = LenientAddressParser.spanEnd(domain);
+        mailboxes[off + GROUP] = group;
+        size++;
+        if (group >= 0) {
+            groups[group * GROUP_STRIDE + GROUP_COUNT]++;
+        }
+    }
+
+    int addGroup(long name) {
+        if (groups.length < (groupCount + 1) * GROUP_STRIDE) {
+            groups = Arrays.copyOf(groups, Math.max(GROUP_STRIDE * 2, groups.length << 1));
+        }
+        int off = groupCount * GROUP_STRIDE;
+        groups[off + GROUP_NAME_START] = LenientAddressParser.spanStart(name);
+        groups[off + GROUP_NAME_END] = LenientAddressParser.spanEnd(name);
+        groups[off + GROUP_FIRST] = size;
+        groups[off + GROUP_COUNT] = 0;
+        return groupCount++;
+    }
+
+    /**
+     * Returns the raw bytes the offsets of this list refer to.
+     */
+    public ByteSequence getRaw() {
+        return raw;
+    }
+
+    /**
+     * Returns the number of mailboxes, including the members of groups.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getStart(int index) {
+        return get(index, START);
+    }
+
+    public int getEnd(int index) {
+        return get(index, END);
+    }
+
+    public int getDisplayNameStart(int index) {
+        return get(index, NAME_START);
+    }
+
+    public int getDisplayNameEnd(int index) {
+        return get(index, NAME_END);
+    }
+
+    public int getLocalPartStart(int index) {
+        return get(index, LOCAL_START);
+    }
+
+    public int getLocalPartEnd(int index) {
+        return get(index, LOCAL_END);
+    }
+
+    public int getDomainStart(int index) {
+        return get(index, DOMAIN_START);
+    }
+
+    public int getDomainEnd(int index) {
+        return get(index, DOMAIN_END);
+    }
+
+    /**
+     * Returns the index of the group the given mailbox belongs to, or
+     * <code>-1</code> if it is not part of a group.
+     */
+    public int getGroupIndex(int index) {
+        return get(index, GROUP);
+    }
+
+    /**
+     * Returns the display name of the given mailbox, with encoded words
+     * decoded, or <code>null</code> if it has none.
+     */
+    public String getDisplayName(int index) {
+        int start = get(index, NAME_START);
+        if (start < 0) {
+            return null;
+        }
+        int end = get(index, NAME_END);
+        if (isPlain(start, end)) {
+            return ContentUtil.decode(raw, start, end - start);
+        }
+        return getMailbox(index).getName();
+    }
+
+    public String getLocalPart(int index) {
+        int start = get(index, LOCAL_START);
+        if (start < 0) {
+            return "";
+        }
+        int end = get(index, LOCAL_END);
+        if (isPlain(start, end)) {
+            return ContentUtil.decode(raw, start, end - start);
+        }
+        return getMailbox(index).getLocalPart();
+    }
+
+    /**
+     * Returns the domain of the given mailbox, or <code>null</code> if it has
+     * none.
+     */
+    public String getDomain(int index) {
+        int start = get(index, DOMAIN_START);
+        if (start < 0) {
+            return null;
+        }
+        int end = get(index, DOMAIN_END);
+        if (isPlain(start, end)) {
+            return ContentUtil.decode(raw, start, end - start);
+        }
+        return getMailbox(index).getDomain();
+    }
+
+    /**
+     * Determines whether the domain of the given mailbox equals the given one,
+     * ignoring ASCII case. Plain domains are compared on the raw bytes without
+     * creating any object.
+     */
+    public boolean isDomain(int index, CharSequence domain) {
+        int start = get(index, DOMAIN_START);
+        int end = get(index, DOMAIN_END);
+        if (start < 0 || !isPlain(start, end)) {
+            String s = getDomain(index);
+            return s != null && s.equalsIgnoreCase(domain.toString());
+        }
+        if (end - start != domain.length()) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (toLower((char) (raw.byteAt(i) & 0xff)) != toLower(domain.charAt(i - start))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the given mailbox, parsing it on first access.
+     */
+    public Mailbox getMailbox(int index) {
+        checkIndex(index);
+        if (materialized == null) {
+            materialized = new Mailbox[size];
+        }
+        Mailbox mailbox = materialized[index];
+        if (mailbox == null) {
+            mailbox = parser.parseCompactMailbox(raw,
+                    new ParserCursor(getStart(index), getEnd(index)), getGroupIndex(index) >= 0);
+            materialized[index] = mailbox;
+        }
+        return mailbox;
+    }
+
+    public int getGroupCount() {
+        return groupCount;
+    }
+
+    public String getGroupName(int group) {
+        checkGroup(group);
+        int start = groups[group * GROUP_STRIDE + GROUP_NAME_START];
+        if (start < 0) {
+            return "";
+        }
+        int end = groups[group * GROUP_STRIDE + GROUP_NAME_END];
+        return parser.parseCompactValue(raw, new ParserCursor(start, end));
+    }
+
+    /**
+     * Returns the index of the first mailbox of the given group.
+     */
+    public int getGroupFirst(int group) {
+        checkGroup(group);
+        return groups[group * GROUP_STRIDE + GROUP_FIRST];
+    }
+
+    public int getGroupSize(int group) {
+        checkGroup(group);
+        return groups[group * GROUP_STRIDE + GROUP_COUNT];
+    }
+
+    public Group getGroup(int group) {
+        int first = getGroupFirst(group);
+        int count = getGroupSize(group);
+        List<Mailbox> members = new ArrayList<Mailbox>(count);
+        for (int i = first; i < first + count; i++) {
+            members.add(getMailbox(i));
+        }
+        return new Group(getGroupName(group), members);
+    }
+
+    /**
+     * Materializes the whole list. The result is the same as the one of
+     * {@link LenientAddressParser#parseAddressList(ByteSequence, ParserCursor)}.
+     */
+    public AddressList toAddressList() {
+        List<Address> addresses = new ArrayList<Address>();
+        int group = 0;
+        int index = 0;
+        while (index < size || group < groupCount) {
+            if (group < groupCount && getGroupFirst(group) == index) {
+                addresses.add(getGroup(group));
+                index += getGroupSize(group);
+                group++;
+            } else {
+                addresses.add(getMailbox(index));
+                index++;
+            }
+        }
+        return new AddressList(addresses, true);
+    }
+
+    private int get(int index, int field) {
+        checkIndex(index);
+        return mailboxes[index * STRIDE + field];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    private void checkGroup(int group) {
+        if (group < 0 || group >= groupCount) {
+            throw new IndexOutOfBoundsException("Group: " + group + ", Groups: " + groupCount);
+        }
+    }
+
+    /**
+     * A span is plain if its bytes are the value itself: ASCII without
+     * whitespace, comments, quoting or encoded words.
+     */
+    private boolean isPlain(int start, int end) {
+        byte prev = 0;
+        for (int i = start; i < end; i++) {
+            byte b = raw.byteAt(i);
+            if (b < 0x21 || b == '(' || b == '"' || b == '\\' || b == 0x7f || (prev == '=' && b == '?')) {
+                return false;
+            }
+            prev = b;
+        }
+        return true;
+    }
+
+    private static char toLower(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    @Override
+    public String toString() {
+        return toAddressList().toString();
+    }
+
+}
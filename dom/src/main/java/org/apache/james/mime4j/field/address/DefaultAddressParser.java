@@ -19,16 +19,15 @@
 
 package org.apache.james.mime4j.field.address;
 
-import org.apache.james.mime4j.Charsets;
 import org.apache.james.mime4j.codec.DecodeMonitor;
 import org.apache.james.mime4j.dom.address.Address;
 import org.apache.james.mime4j.dom.address.AddressList;
 import org.apache.james.mime4j.dom.address.Group;
 import org.apache.james.mime4j.dom.address.Mailbox;
-import org.apache.james.mime4j.io.InputStreams;
 
 /**
  * Default (strict) builder for {@link Address} and its subclasses.
+ * Parsing is delegated to {@link StrictAddressParser}.
  */
 public class DefaultAddressParser implements AddressParser {
 
@@ -48,8 +47,7 @@ public class DefaultAddressParser implements AddressParser {
      * @throws ParseException if the raw string does not represent a single address.
      */
     public Address parseAddress(CharSequence text, DecodeMonitor monitor) throws ParseException {
-        AddressListParser parser = new AddressListParser(InputStreams.create(text, Charsets.UTF_8));
-        return Builder.getInstance().buildAddress(parser.parseAddress(), monitor);
+        return StrictAddressParser.DEFAULT.parseAddress(text, monitor);
     }
 
     public Address parseAddress(CharSequence text) throws ParseException {
@@ -65,8 +63,7 @@ public class DefaultAddressParser implements AddressParser {
      */
     public AddressList parseAddressList(CharSequence text, DecodeMonitor monitor)
             throws ParseException {
-        AddressListParser parser = new AddressListParser(InputStreams.create(text, Charsets.UTF_8));
-        return Builder.getInstance().buildAddressList(parser.parseAddressList(), monitor);
+        return StrictAddressParser.DEFAULT.parseAddressList(text, monitor);
     }
 
     public AddressList parseAddressList(CharSequence text) throws ParseException {
@@ -85,8 +82,7 @@ public class DefaultAddressParser implements AddressParser {
      *             address.
      */
     public Mailbox parseMailbox(CharSequence text, DecodeMonitor monitor) throws ParseException {
-        AddressListParser parser = new AddressListParser(InputStreams.create(text, Charsets.UTF_8));
-        return Builder.getInstance().buildMailbox(parser.parseMailbox(), monitor);
+        return StrictAddressParser.DEFAULT.parseMailbox(text, monitor);
     }
 
     public Mailbox parseMailbox(CharSequence text) throws ParseException {
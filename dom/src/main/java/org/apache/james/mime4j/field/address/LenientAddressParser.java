@@ -55,6 +55,12 @@ public class LenientAddressParser implements AddressParser {
     private static final BitSet COMMA_ONLY             = RawFieldParser.INIT_BITSET(COMMA);
     private static final BitSet COLON_ONLY             = RawFieldParser.INIT_BITSET(COLON);
     private static final BitSet SEMICOLON_ONLY         = RawFieldParser.INIT_BITSET(SEMICOLON);
+    private static final BitSet COMMA_AND_SEMICOLON    = RawFieldParser.INIT_BITSET(COMMA, SEMICOLON);
+    private static final BitSet ROUTE_DELIMITERS       = RawFieldParser.INIT_BITSET(COMMA, COLON, CLOSING_BRACKET);
+    private static final BitSet ADDRESS_DELIMITERS     = RawFieldParser.INIT_BITSET(COLON, AT, OPENING_BRACKET, COMMA);
+    private static final BitSet MAILBOX_DELIMITERS     = RawFieldParser.INIT_BITSET(AT, OPENING_BRACKET, COMMA, SEMICOLON);
+
+    static final long NO_SPAN = -1L;
 
     public static final LenientAddressParser DEFAULT = new LenientAddressParser(DecodeMonitor.SILENT);
 
@@ -331,4 +337,275 @@ public class LenientAddressParser implements AddressParser {
         return parseAddressList(raw, cursor);
     }
 
+    /**
+     * Parses an address list into a {@link CompactAddressList}. The input is
+     * scanned exactly as {@link #parseAddressList(ByteSequence, ParserCursor)}
+     * does, but only the offsets of each mailbox and of its parts are
+     * recorded: no <code>String</code>, {@link Mailbox} or {@link Group} is
+     * created until the list is asked for one.
+     */
+    public CompactAddressList parseCompactAddressList(final ByteSequence buf, final ParserCursor cursor) {
+        CompactAddressList list = new CompactAddressList(this, buf);
+        while (!cursor.atEnd()) {
+            int pos = cursor.getPos();
+            int current = (char) (buf.byteAt(pos) & 0xff);
+            if (current == COMMA) {
+                cursor.updatePos(pos + 1);
+            } else {
+                scanAddress(buf, cursor, list);
+            }
+        }
+        return list;
+    }
+
+    public CompactAddressList parseCompactAddressList(final CharSequence text) {
+        ByteSequence raw = ContentUtil.encode(text);
+        ParserCursor cursor = new ParserCursor(0, raw.length());
+        return parseCompactAddressList(raw, cursor);
+    }
+
+    Mailbox parseCompactMailbox(final ByteSequence buf, final ParserCursor cursor, final boolean groupMember) {
+        if (groupMember) {
+            return parseMailbox(buf, cursor, COMMA_AND_SEMICOLON);
+        } else {
+            return (Mailbox) parseAddress(buf, cursor, COMMA_ONLY);
+        }
+    }
+
+    String parseCompactValue(final ByteSequence buf, final ParserCursor cursor) {
+        return this.parser.parseValue(buf, cursor, null);
+    }
+
+    // the scan methods below mirror the control flow of their parse counterparts
+
+    private void scanAddress(final ByteSequence buf, final ParserCursor cursor, final CompactAddressList list) {
+        int start = cursor.getPos();
+        long openingText = skipValue(buf, cursor, ADDRESS_DELIMITERS);
+        if (cursor.atEnd()) {
+            scanPlainMailbox(start, openingText, buf, cursor, list, -1);
+            return;
+        }
+        int pos = cursor.getPos();
+        char current = (char) (buf.byteAt(pos) & 0xff);
+        if (current == OPENING_BRACKET) {
+            scanMailboxAddress(start, openingText, buf, cursor, list, -1);
+        } else if (current == AT) {
+            cursor.updatePos(pos + 1);
+            long domain = skipDomain(buf, cursor, COMMA_ONLY);
+            list.addMailbox(start, cursor.getPos(), NO_SPAN, openingText, domain, -1);
+        } else if (current == COLON) {
+            cursor.updatePos(pos + 1);
+            int group = list.addGroup(openingText);
+            while (!cursor.atEnd()) {
+                pos = cursor.getPos();
+                current = (char) (buf.byteAt(pos) & 0xff);
+                if (current == SEMICOLON) {
+                    cursor.updatePos(pos + 1);
+                    break;
+                } else if (current == COMMA) {
+                    cursor.updatePos(pos + 1);
+                } else {
+                    scanMailbox(buf, cursor, list, group);
+                }
+            }
+        } else {
+            scanPlainMailbox(start, openingText, buf, cursor, list, -1);
+        }
+    }
+
+    private void scanMailbox(
+            final ByteSequence buf, final ParserCursor cursor, final CompactAddressList list, final int group) {
+        int start = cursor.getPos();
+        long openingText = skipValue(buf, cursor, MAILBOX_DELIMITERS);
+        if (cursor.atEnd()) {
+            scanPlainMailbox(start, openingText, buf, cursor, list, group);
+            return;
+        }
+        int pos = cursor.getPos();
+        char current = (char) (buf.byteAt(pos) & 0xff);
+        if (current == OPENING_BRACKET) {
+            scanMailboxAddress(start, openingText, buf, cursor, list, group);
+        } else if (current == AT) {
+            cursor.updatePos(pos + 1);
+            long domain = skipDomain(buf, cursor, COMMA_AND_SEMICOLON);
+            list.addMailbox(start, cursor.getPos(), NO_SPAN, openingText, domain, group);
+        } else {
+            scanPlainMailbox(start, openingText, buf, cursor, list, group);
+        }
+    }
+
+    private void scanPlainMailbox(final int start, final long openingText,
+            final ByteSequence buf, final ParserCursor cursor, final CompactAddressList list, final int group) {
+        if (openingText == NO_SPAN) {
+            return;
+        }
+        // quoted text may well be empty, in which case there is no mailbox
+        String s = this.parser.parseValue(buf, new ParserCursor(spanStart(openingText), spanEnd(openingText)), null);
+        if (s.length() > 0) {
+            list.addMailbox(start, cursor.getPos(), NO_SPAN, openingText, NO_SPAN, group);
+        }
+    }
+
+    private void scanMailboxAddress(final int start, final long openingText,
+            final ByteSequence buf, final ParserCursor cursor, final CompactAddressList list, final int group) {
+        cursor.updatePos(cursor.getPos() + 1);
+        skipRoute(buf, cursor);
+        long localPart = skipValue(buf, cursor, AT_AND_CLOSING_BRACKET);
+        long domain = NO_SPAN;
+        if (!cursor.atEnd()) {
+            int pos = cursor.getPos();
+            char current = (char) (buf.byteAt(pos) & 0xff);
+            if (current == AT || current == CLOSING_BRACKET) {
+                cursor.updatePos(pos + 1);
+                domain = skipDomain(buf, cursor, CLOSING_BRACKET_ONLY);
+                if (!cursor.atEnd()) {
+                    pos = cursor.getPos();
+                    current = (char) (buf.byteAt(pos) & 0xff);
+                    if (current == CLOSING_BRACKET) {
+                        cursor.updatePos(pos + 1);
+                        skipCommentsAndWhiteSpace(buf, cursor);
+                    }
+                }
+            }
+        }
+        list.addMailbox(start, cursor.getPos(), openingText, localPart, domain, group);
+    }
+
+    private void skipRoute(final ByteSequence buf, final ParserCursor cursor) {
+        for (;;) {
+            this.parser.skipAllWhiteSpace(buf, cursor);
+            if (cursor.atEnd()) {
+                break;
+            }
+            int pos = cursor.getPos();
+            int current = (char) (buf.byteAt(pos) & 0xff);
+            if (current == AT) {
+                cursor.updatePos(pos + 1);
+            } else {
+                break;
+            }
+            skipDomain(buf, cursor, ROUTE_DELIMITERS);
+            if (cursor.atEnd()) {
+                break;
+            }
+            pos = cursor.getPos();
+            current = (char) (buf.byteAt(pos) & 0xff);
+            if (current == COMMA) {
+                cursor.updatePos(pos + 1);
+            } else if (current == COLON) {
+                cursor.updatePos(pos + 1);
+                break;
+            } else {
+                break;
+            }
+        }
+    }
+
+    private void skipCommentsAndWhiteSpace(final ByteSequence buf, final ParserCursor cursor) {
+        while (!cursor.atEnd()) {
+            char current = (char) (buf.byteAt(cursor.getPos()) & 0xff);
+            if (CharsetUtil.isWhitespace(current)) {
+                this.parser.skipWhiteSpace(buf, cursor);
+            } else if (current == '(') {
+                this.parser.skipComment(buf, cursor);
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Skips what {@link RawFieldParser#parseValue(ByteSequence, ParserCursor, BitSet)}
+     * would parse and returns the span from the first to the last byte of
+     * content, or {@link #NO_SPAN} if there is none.
+     */
+    private long skipValue(final ByteSequence buf, final ParserCursor cursor, final BitSet delimiters) {
+        long span = NO_SPAN;
+        while (!cursor.atEnd()) {
+            int pos = cursor.getPos();
+            char current = (char) (buf.byteAt(pos) & 0xff);
+            if (delimiters.get(current)) {
+                break;
+            } else if (CharsetUtil.isWhitespace(current)) {
+                this.parser.skipWhiteSpace(buf, cursor);
+            } else if (current == '(') {
+                this.parser.skipComment(buf, cursor);
+            } else if (current == '\"') {
+                skipQuotedContent(buf, cursor);
+                span = span(span == NO_SPAN ? pos : spanStart(span), cursor.getPos());
+            } else {
+                skipContent(buf, cursor, delimiters, true);
+                span = span(span == NO_SPAN ? pos : spanStart(span), cursor.getPos());
+            }
+        }
+        return span;
+    }
+
+    /**
+     * Skips what {@link #parseDomain(ByteSequence, ParserCursor, BitSet)}
+     * would parse and returns the span of its content.
+     */
+    private long skipDomain(final ByteSequence buf, final ParserCursor cursor, final BitSet delimiters) {
+        long span = NO_SPAN;
+        while (!cursor.atEnd()) {
+            int pos = cursor.getPos();
+            char current = (char) (buf.byteAt(pos) & 0xff);
+            if (delimiters.get(current)) {
+                break;
+            } else if (CharsetUtil.isWhitespace(current)) {
+                this.parser.skipWhiteSpace(buf, cursor);
+            } else if (current == '(') {
+                this.parser.skipComment(buf, cursor);
+            } else {
+                skipContent(buf, cursor, delimiters, false);
+                span = span(span == NO_SPAN ? pos : spanStart(span), cursor.getPos());
+            }
+        }
+        return span;
+    }
+
+    private static void skipContent(
+            final ByteSequence buf, final ParserCursor cursor, final BitSet delimiters, final boolean stopAtQuote) {
+        int pos = cursor.getPos();
+        int indexTo = cursor.getUpperBound();
+        for (; pos < indexTo; pos++) {
+            char current = (char) (buf.byteAt(pos) & 0xff);
+            if (delimiters.get(current) || CharsetUtil.isWhitespace(current) || current == '('
+                    || (stopAtQuote && current == '\"')) {
+                break;
+            }
+        }
+        cursor.updatePos(pos);
+    }
+
+    private static void skipQuotedContent(final ByteSequence buf, final ParserCursor cursor) {
+        int pos = cursor.getPos() + 1;
+        int indexTo = cursor.getUpperBound();
+        boolean escaped = false;
+        for (; pos < indexTo; pos++) {
+            char current = (char) (buf.byteAt(pos) & 0xff);
+            if (escaped) {
+                escaped = false;
+            } else if (current == '\"') {
+                pos++;
+                break;
+            } else if (current == '\\') {
+                escaped = true;
+            }
+        }
+        cursor.updatePos(pos);
+    }
+
+    static long span(int start, int end) {
+        return ((long) start << 32) | (end & 0xffffffffL);
+    }
+
+    static int spanStart(long span) {
+        return span == NO_SPAN ? -1 : (int) (span >>> 32);
+    }
+
+    static int spanEnd(long span) {
+        return span == NO_SPAN ? -1 : (int) span;
+    }
+
 }
@@ -0,0 +1,601 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.field.address;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.apache.james.mime4j.codec.DecodeMonitor;
+import org.apache.james.mime4j.codec.DecoderUtil;
+import org.apache.james.mime4j.dom.address.Address;
+import org.apache.james.mime4j.dom.address.AddressList;
+import org.apache.james.mime4j.dom.address.DomainList;
+import org.apache.james.mime4j.dom.address.Group;
+import org.apache.james.mime4j.dom.address.Mailbox;
+import org.apache.james.mime4j.dom.address.MailboxList;
+import org.apache.james.mime4j.stream.ParserCursor;
+import org.apache.james.mime4j.stream.RawFieldParser;
+import org.apache.james.mime4j.util.ByteArrayBuffer;
+import org.apache.james.mime4j.util.ByteSequence;
+import org.apache.james.mime4j.util.ContentUtil;
+
+/**
+ * Strict RFC 5322 parser for {@link Address} and its subclasses.
+ * <p>
+ * This parser accepts the same grammar as the JJTree generated
+ * <code>AddressListParser</code> and builds the same objects as its
+ * <code>Builder</code>, but works directly on the raw bytes: the input is
+ * split into tokens and the addresses are built while the tokens are
+ * consumed, without an intermediate syntax tree. Input the grammar does
+ * not accept is reported with a {@link ParseException}.
+ * </p>
+ */
+public class StrictAddressParser implements AddressParser {
+
+    public static final StrictAddressParser DEFAULT = new StrictAddressParser();
+
+    private static final int EOF            = 0;
+    private static final int DOTATOM        = 1;
+    private static final int QUOTEDSTRING   = 2;
+    private static final int DOMAINLITERAL  = 3;
+    private static final int COMMA          = 4;
+    private static final int COLON          = 5;
+    private static final int SEMICOLON      = 6;
+    private static final int LT             = 7;
+    private static final int GT             = 8;
+    private static final int AT             = 9;
+    private static final int DOT            = 10;
+
+    private static final BitSet ATEXT = RawFieldParser.INIT_BITSET(
+            '!', '#', '$', '%', '&', '\'', '*', '+', '-', '/', '=', '?', '^', '_', '`', '{', '|', '}', '~');
+
+    static {
+        ATEXT.set('a', 'z' + 1);
+        ATEXT.set('A', 'Z' + 1);
+        ATEXT.set('0', '9' + 1);
+        // non ASCII (UTF-8) content is accepted as atom text
+        ATEXT.set(0x80, 0x100);
+    }
+
+    protected StrictAddressParser() {
+        super();
+    }
+
+    /**
+     * Parses an address list, such as the value of a From, To, Cc, Bcc,
+     * Sender, or Reply-To header, spanning the whole cursor range.
+     *
+     * The bytes MUST be unfolded already.
+     */
+    public AddressList parseAddressList(
+            final ByteSequence buf, final ParserCursor cursor, final DecodeMonitor monitor) throws ParseException {
+        Tokens tokens = new Tokens(buf, cursor, monitor);
+        List<Address> addresses = new ArrayList<Address>();
+        if (tokens.startsAddress()) {
+            addresses.add(tokens.address());
+        }
+        while (tokens.kind() == COMMA) {
+            tokens.next();
+            if (tokens.startsAddress()) {
+                addresses.add(tokens.address());
+            }
+        }
+        tokens.expect(EOF);
+        return new AddressList(addresses, true);
+    }
+
+    /**
+     * Parses a single address spanning the whole cursor range.
+     */
+    public Address parseAddress(
+            final ByteSequence buf, final ParserCursor cursor, final DecodeMonitor monitor) throws ParseException {
+        Tokens tokens = new Tokens(buf, cursor, monitor);
+        Address address = tokens.address();
+        tokens.expect(EOF);
+        return address;
+    }
+
+    /**
+     * Parses a single mailbox spanning the whole cursor range.
+     */
+    public Mailbox parseMailbox(
+            final ByteSequence buf, final ParserCursor cursor, final DecodeMonitor monitor) throws ParseException {
+        Tokens tokens = new Tokens(buf, cursor, monitor);
+        Mailbox mailbox = tokens.mailbox();
+        tokens.expect(EOF);
+        return mailbox;
+    }
+
+    public Address parseAddress(CharSequence text, DecodeMonitor monitor) throws ParseException {
+        ByteSequence raw = ContentUtil.encode(text);
+        return parseAddress(raw, new ParserCursor(0, raw.length()), monitor);
+    }
+
+    public Address parseAddress(CharSequence text) throws ParseException {
+        return parseAddress(text, DecodeMonitor.STRICT);
+    }
+
+    public AddressList parseAddressList(CharSequence text, DecodeMonitor monitor) throws ParseException {
+        ByteSequence raw = ContentUtil.encode(text);
+        return parseAddressList(raw, new ParserCursor(0, raw.length()), monitor);
+    }
+
+    public AddressList parseAddressList(CharSequence text) throws ParseException {
+        return parseAddressList(text, DecodeMonitor.STRICT);
+    }
+
+    public Mailbox parseMailbox(CharSequence text, DecodeMonitor monitor) throws ParseException {
+        ByteSequence raw = ContentUtil.encode(text);
+        return parseMailbox(raw, new ParserCursor(0, raw.length()), monitor);
+    }
+
+    public Mailbox parseMailbox(CharSequence text) throws ParseException {
+        return parseMailbox(text, DecodeMonitor.STRICT);
+    }
+
+    public Group parseGroup(CharSequence text, DecodeMonitor monitor) throws ParseException {
+        Address address = parseAddress(text, monitor);
+        if (!(address instanceof Group))
+            throw new ParseException("Not a group address");
+        return (Group) address;
+    }
+
+    public Group parseGroup(CharSequence text) throws ParseException {
+        return parseGroup(text, DecodeMonitor.STRICT);
+    }
+
+    /**
+     * Tokens of the input and the state of the parse. The whole input is
+     * tokenized up front, which gives the unbounded look-ahead needed to tell
+     * an addr-spec from a phrase.
+     */
+    private static final class Tokens {
+
+        private final ByteSequence buf;
+        private final DecodeMonitor monitor;
+        private final ByteArrayBuffer image;
+
+        private int[] kinds;
+        private int[] starts;
+        private int[] ends;
+        private int count;
+        private int pos;
+
+        Tokens(final ByteSequence buf, final ParserCursor cursor, final DecodeMonitor monitor) throws ParseException {
+            this.buf = buf;
+            this.monitor = monitor;
+            this.image = new ByteArrayBuffer(64);
+            this.kinds = new int[16];
+            this.starts = new int[16];
+            this.ends = new int[16];
+            tokenize(cursor.getPos(), cursor.getUpperBound());
+            cursor.updatePos(cursor.getUpperBound());
+        }
+
+        private void tokenize(final int from, final int to) throws ParseException {
+            int i = from;
+            while (i < to) {
+                int start = i;
+                char c = (char) (buf.byteAt(i) & 0xff);
+                switch (c) {
+                    case ' ':
+                    case '\t':
+                        i++;
+                        continue;
+                    case '(':
+                        i = skipComment(i, to);
+                        continue;
+                    case '"':
+                        i = add(QUOTEDSTRING, start, skipQuoted(i, to));
+                        continue;
+                    case '[':
+                        i = add(DOMAINLITERAL, start, skipDomainLiteral(i, to));
+                        continue;
+                    case ',':
+                        i = add(COMMA, start, i + 1);
+                        continue;
+                    case ':':
+                        i = add(COLON, start, i + 1);
+                        continue;
+                    case ';':
+                        i = add(SEMICOLON, start, i + 1);
+                        continue;
+                    case '<':
+                        i = add(LT, start, i + 1);
+                        continue;
+                    case '>':
+                        i = add(GT, start, i + 1);
+                        continue;
+                    case '@':
+                        i = add(AT, start, i + 1);
+                        continue;
+                    case '.':
+                        i = add(DOT, start, i + 1);
+                        continue;
+                    default:
+                        if (!ATEXT.get(c)) {
+                            throw new ParseException("Unexpected character '" + c + "' at position " + i);
+                        }
+                        i++;
+                        while (i < to) {
+                            char next = (char) (buf.byteAt(i) & 0xff);
+                            if (!ATEXT.get(next) && next != '.') {
+                                break;
+                            }
+                            i++;
+                        }
+                        if (c >= 0x80 && isSingleChar(start, i)) {
+                            // the grammar declares a UTF8NONASCII token ahead of
+                            // DOTATOM: a lone non ASCII character is lexed as
+                            // such, and no production accepts it
+                            throw new ParseException("Unexpected character '"
+                                    + ContentUtil.decode(StandardCharsets.UTF_8, buf, start, i - start)
+                                    + "' at position " + start);
+                        }
+                        add(DOTATOM, start, i);
+                }
+            }
+            add(EOF, to, to);
+        }
+
+        /**
+         * Tells whether the given bytes make up a single UTF-16 character: one
+         * byte, or one UTF-8 sequence of a character of the Basic Multilingual
+         * Plane.
+         */
+        private boolean isSingleChar(final int start, final int end) {
+            int lead = buf.byteAt(start) & 0xff;
+            int len = lead >= 0xf0 ? 4 : lead >= 0xe0 ? 3 : lead >= 0xc0 ? 2 : 1;
+            if (end - start == 1) {
+                return true;
+            } else if (end - start != len || len == 4) {
+                return false;
+            }
+            for (int i = start + 1; i < end; i++) {
+                if ((buf.byteAt(i) & 0xc0) != 0x80) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int add(int kind, int start, int end) {
+            if (count == kinds.length) {
+                kinds = Arrays.copyOf(kinds, count << 1);
+                starts = Arrays.copyOf(starts, count << 1);
+                ends = Arrays.copyOf(ends, count << 1);
+            }
+            kinds[count] = kind;
+            starts[count] = start;
+            ends[count] = end;
+            count++;
+            return end;
+        }
+
+        private int skipComment(int i, final int to) throws ParseException {
+            int level = 0;
+            for (; i < to; i++) {
+                char c = (char) (buf.byteAt(i) & 0xff);
+                if (c == '\\') {
+                    i++;
+                } else if (c == '(') {
+                    level++;
+                } else if (c == ')') {
+                    level--;
+                    if (level == 0) {
+                        return i + 1;
+                    }
+                }
+            }
+            throw new ParseException("Unterminated comment");
+        }
+
+        private int skipQuoted(int i, final int to) throws ParseException {
+            for (i++; i < to; i++) {
+                char c = (char) (buf.byteAt(i) & 0xff);
+                if (c == '\\') {
+                    i++;
+                } else if (c == '"') {
+                    return i + 1;
+                }
+            }
+            throw new ParseException("Unterminated quoted string");
+        }
+
+        private int skipDomainLiteral(int i, final int to) throws ParseException {
+            for (i++; i < to; i++) {
+                char c = (char) (buf.byteAt(i) & 0xff);
+                if (c == '\\') {
+                    i++;
+                } else if (c == ']') {
+                    return i + 1;
+                } else if (c == '[') {
+                    throw new ParseException("Unexpected character '[' in domain literal");
+                }
+            }
+            throw new ParseException("Unterminated domain literal");
+        }
+
+        int kind() {
+            return kinds[pos];
+        }
+
+        void next() {
+            pos++;
+        }
+
+        void expect(int kind) throws ParseException {
+            if (kinds[pos] != kind) {
+                throw unexpected();
+            }
+            pos++;
+        }
+
+        private ParseException unexpected() {
+            if (kinds[pos] == EOF) {
+                return new ParseException("Unexpected end of input");
+            }
+            return new ParseException("Unexpected \""
+                    + ContentUtil.decode(StandardCharsets.UTF_8, buf, starts[pos], ends[pos] - starts[pos])
+                    + "\" at position " + starts[pos]);
+        }
+
+        private boolean isWord(int index) {
+            return kinds[index] == DOTATOM || kinds[index] == QUOTEDSTRING;
+        }
+
+        boolean startsAddress() {
+            return isWord(pos) || kinds[pos] == LT;
+        }
+
+        /**
+         * Determines whether the tokens ahead match <code>local-part "@"
+         * domain</code>, ignoring the semantic checks on dots.
+         */
+        private boolean isAddrSpecAhead() {
+            int i = pos;
+            if (!isWord(i)) {
+                return false;
+            }
+            i++;
+            for (;;) {
+                int j = kinds[i] == DOT ? i + 1 : i;
+                if (isWord(j)) {
+                    i = j + 1;
+                } else {
+                    break;
+                }
+            }
+            return kinds[i] == AT && (kinds[i + 1] == DOTATOM || kinds[i + 1] == DOMAINLITERAL);
+        }
+
+        Address address() throws ParseException {
+            if (isAddrSpecAhead()) {
+                return addrSpec(null);
+            } else if (kinds[pos] == LT) {
+                return angleAddr(null);
+            } else if (isWord(pos)) {
+                String name = phrase();
+                if (kinds[pos] == COLON) {
+                    return new Group(name, groupBody());
+                } else if (kinds[pos] == LT) {
+                    return angleAddr(decode(name));
+                }
+            }
+            throw unexpected();
+        }
+
+        Mailbox mailbox() throws ParseException {
+            if (isAddrSpecAhead()) {
+                return addrSpec(null);
+            } else if (kinds[pos] == LT) {
+                return angleAddr(null);
+            } else if (isWord(pos)) {
+                String name = phrase();
+                if (kinds[pos] == LT) {
+                    return angleAddr(decode(name));
+                }
+            }
+            throw unexpected();
+        }
+
+        private String decode(String name) throws ParseException {
+            try {
+                return DecoderUtil.decodeEncodedWords(name, monitor);
+            } catch (IllegalArgumentException e) {
+                throw new ParseException(e);
+            }
+        }
+
+        private MailboxList groupBody() throws ParseException {
+            expect(COLON);
+            List<Mailbox> mailboxes = new ArrayList<Mailbox>();
+            if (startsAddress()) {
+                mailboxes.add(mailbox());
+            }
+            while (kinds[pos] == COMMA) {
+                pos++;
+                if (startsAddress()) {
+                    mailboxes.add(mailbox());
+                }
+            }
+            expect(SEMICOLON);
+            return new MailboxList(mailboxes, true);
+        }
+
+        private Mailbox angleAddr(String name) throws ParseException {
+            expect(LT);
+            DomainList route = null;
+            if (kinds[pos] == AT) {
+                route = route();
+            }
+            Mailbox mailbox = addrSpec(route);
+            expect(GT);
+            return name != null ? new Mailbox(name, route, mailbox.getLocalPart(), mailbox.getDomain()) : mailbox;
+        }
+
+        private DomainList route() throws ParseException {
+            List<String> domains = new ArrayList<String>();
+            expect(AT);
+            domains.add(domain());
+            while (kinds[pos] == COMMA || kinds[pos] == AT) {
+                while (kinds[pos] == COMMA) {
+                    pos++;
+                }
+                expect(AT);
+                domains.add(domain());
+            }
+            expect(COLON);
+            return new DomainList(domains);
+        }
+
+        private Mailbox addrSpec(DomainList route) throws ParseException {
+            String localPart = localPart();
+            expect(AT);
+            String domain = domain();
+            return new Mailbox(route, localPart, domain);
+        }
+
+        private String localPart() throws ParseException {
+            if (!isWord(pos)) {
+                throw unexpected();
+            }
+            image.clear();
+            int last = pos;
+            appendImage(pos++);
+            while (kinds[pos] == DOT || isWord(pos)) {
+                if (kinds[pos] == DOT) {
+                    last = pos;
+                    appendImage(pos++);
+                }
+                if (kinds[last] == QUOTEDSTRING || buf.byteAt(ends[last] - 1) != '.') {
+                    throw new ParseException("Words in local part must be separated by '.'");
+                }
+                if (!isWord(pos)) {
+                    throw unexpected();
+                }
+                last = pos;
+                appendImage(pos++);
+            }
+            return imageString();
+        }
+
+        private String domain() throws ParseException {
+            image.clear();
+            if (kinds[pos] == DOMAINLITERAL) {
+                appendImage(pos++);
+                return imageString();
+            }
+            if (kinds[pos] != DOTATOM) {
+                throw unexpected();
+            }
+            int last = pos;
+            appendImage(pos++);
+            while (kinds[pos] == DOT || kinds[pos] == DOTATOM) {
+                if (kinds[pos] == DOT) {
+                    last = pos;
+                    appendImage(pos++);
+                }
+                if (buf.byteAt(ends[last] - 1) != '.') {
+                    throw new ParseException("Atoms in domain names must be separated by '.'");
+                }
+                if (kinds[pos] != DOTATOM) {
+                    throw unexpected();
+                }
+                last = pos;
+                appendImage(pos++);
+            }
+            return imageString();
+        }
+
+        /**
+         * Words of a phrase keep the white space found between them, comments
+         * excepted.
+         */
+        private String phrase() {
+            image.clear();
+            appendImage(pos++);
+            while (isWord(pos)) {
+                appendWhiteSpace(ends[pos - 1], starts[pos]);
+                appendImage(pos++);
+            }
+            return imageString();
+        }
+
+        private void appendWhiteSpace(final int from, final int to) {
+            int level = 0;
+            for (int i = from; i < to; i++) {
+                byte b = buf.byteAt(i);
+                if (b == '\\') {
+                    i++;
+                } else if (b == '(') {
+                    level++;
+                } else if (b == ')') {
+                    level--;
+                } else if (level == 0) {
+                    image.append(b);
+                }
+            }
+        }
+
+        /**
+         * Appends the image of a token: quoted strings lose their quotes,
+         * quoted pairs their backslash.
+         */
+        private void appendImage(final int index) {
+            int start = starts[index];
+            int end = ends[index];
+            switch (kinds[index]) {
+                case QUOTEDSTRING:
+                    appendUnquoted(start + 1, end - 1);
+                    break;
+                case DOMAINLITERAL:
+                    image.append('[');
+                    appendUnquoted(start + 1, end - 1);
+                    image.append(']');
+                    break;
+                default:
+                    for (int i = start; i < end; i++) {
+                        image.append(buf.byteAt(i));
+                    }
+            }
+        }
+
+        private void appendUnquoted(final int from, final int to) {
+            for (int i = from; i < to; i++) {
+                byte b = buf.byteAt(i);
+                if (b == '\\') {
+                    i++;
+                    b = buf.byteAt(i);
+                }
+                image.append(b);
+            }
+        }
+
+        private String imageString() {
+            return ContentUtil.decode(image, 0, image.length(), StandardCharsets.UTF_8);
+        }
+
+    }
+
+}
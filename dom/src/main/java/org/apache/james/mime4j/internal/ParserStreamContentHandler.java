@@ -20,22 +20,28 @@
 package org.apache.james.mime4j.internal;
 
 import org.apache.james.mime4j.MimeException;
+import org.apache.james.mime4j.codec.DecodeMonitor;
 import org.apache.james.mime4j.dom.Body;
 import org.apache.james.mime4j.dom.Entity;
 import org.apache.james.mime4j.dom.Header;
 import org.apache.james.mime4j.dom.Message;
 import org.apache.james.mime4j.dom.Multipart;
+import org.apache.james.mime4j.dom.TextBody;
 import org.apache.james.mime4j.message.BodyFactory;
 import org.apache.james.mime4j.message.BodyPart;
 import org.apache.james.mime4j.message.DefaultMessageImplFactory;
 import org.apache.james.mime4j.message.HeaderImpl;
 import org.apache.james.mime4j.message.MessageImplFactory;
 import org.apache.james.mime4j.message.MultipartImpl;
+import org.apache.james.mime4j.message.TransferEncodedBinaryBody;
+import org.apache.james.mime4j.message.TransferEncodedTextBody;
 import org.apache.james.mime4j.parser.ContentHandler;
 import org.apache.james.mime4j.stream.BodyDescriptor;
 import org.apache.james.mime4j.stream.Field;
+import org.apache.james.mime4j.stream.ParserInstrumentation;
 import org.apache.james.mime4j.util.ByteArrayBuffer;
 import org.apache.james.mime4j.util.ByteSequence;
+import org.apache.james.mime4j.util.MimeUtil;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -51,6 +57,9 @@ public class ParserStreamContentHandler implements ContentHandler {
     private final MessageImplFactory messageImplFactory;
     private final BodyFactory bodyFactory;
     private final Stack<Object> stack;
+    private boolean preserveRaw = false;
+    private DecodeMonitor monitor = DecodeMonitor.SILENT;
+    private ParserInstrumentation instrumentation = null;
 
     public ParserStreamContentHandler(
             final Entity entity,
@@ -71,6 +80,32 @@ public class ParserStreamContentHandler implements ContentHandler {
         this.stack = new Stack<Object>();
     }
 
+    /**
+     * Tells whether base64 and quoted-printable bodies are received transfer
+     * encoded, in which case they are kept encoded in a
+     * {@link org.apache.james.mime4j.message.TransferEncodedBody} and decoded
+     * on demand. The parser has to be set up not to decode the content.
+     */
+    public void setPreserveRaw(boolean preserveRaw) {
+        this.preserveRaw = preserveRaw;
+    }
+
+    /**
+     * Sets the monitor used when decoding bodies kept transfer encoded.
+     */
+    public void setDecodeMonitor(DecodeMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    /**
+     * Sets the instrumentation to which the time spent creating bodies is
+     * reported as {@link ParserInstrumentation.Phase#STORAGE}, null to
+     * disable.
+     */
+    public void setInstrumentation(ParserInstrumentation instrumentation) {
+        this.instrumentation = instrumentation;
+    }
+
     private void expect(Class<?> c) {
         if (!c.isInstance(stack.peek())) {
             throw new IllegalStateException("Internal stack error: "
@@ -125,16 +160,40 @@ public class ParserStreamContentHandler implements ContentHandler {
         expect(Entity.class);
 
         final Body body;
-        if (bd.getMimeType().startsWith("text/")) {
-            body = bodyFactory.textBody(is, bd.getCharset());
+        if (instrumentation != null) {
+            long start = System.nanoTime();
+            try {
+                body = createBody(bd, is);
+            } finally {
+                instrumentation.phase(ParserInstrumentation.Phase.STORAGE, System.nanoTime() - start);
+            }
         } else {
-            body = bodyFactory.binaryBody(is);
+            body = createBody(bd, is);
         }
 
         Entity entity = ((Entity) stack.peek());
         entity.setBody(body);
     }
 
+    private Body createBody(BodyDescriptor bd, final InputStream is) throws IOException {
+        final Body body;
+        final String transferEncoding = bd.getTransferEncoding();
+        if (preserveRaw && (MimeUtil.isBase64Encoding(transferEncoding)
+                || MimeUtil.isQuotedPrintableEncoded(transferEncoding))) {
+            if (bd.getMimeType().startsWith("text/")) {
+                TextBody encoded = bodyFactory.textBody(is, bd.getCharset(), bd);
+                body = new TransferEncodedTextBody(encoded, transferEncoding, monitor);
+            } else {
+                body = new TransferEncodedBinaryBody(bodyFactory.binaryBody(is, bd), transferEncoding, monitor);
+            }
+        } else if (bd.getMimeType().startsWith("text/")) {
+            body = bodyFactory.textBody(is, bd.getCharset(), bd);
+        } else {
+            body = bodyFactory.binaryBody(is, bd);
+        }
+        return body;
+    }
+
     public void endMultipart() throws MimeException {
         stack.pop();
     }
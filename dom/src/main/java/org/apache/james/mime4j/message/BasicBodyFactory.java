@@ -26,9 +26,10 @@ import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
-import java.nio.charset.IllegalCharsetNameException;
-import java.nio.charset.UnsupportedCharsetException;
 
 import org.apache.james.mime4j.Charsets;
 import org.apache.james.mime4j.dom.BinaryBody;
@@ -36,6 +37,7 @@ import org.apache.james.mime4j.dom.SingleBody;
 import org.apache.james.mime4j.dom.TextBody;
 import org.apache.james.mime4j.io.InputStreams;
 import org.apache.james.mime4j.util.ByteArrayOutputStreamRecycler;
+import org.apache.james.mime4j.util.CharsetUtil;
 import org.apache.james.mime4j.util.ContentUtil;
 
 /**
@@ -85,16 +87,12 @@ public class BasicBodyFactory implements BodyFactory {
      */
     protected Charset resolveCharset(final String mimeCharset) throws UnsupportedEncodingException {
         if (mimeCharset != null) {
-            try {
-                return Charset.forName(mimeCharset);
-            } catch (UnsupportedCharsetException ex) {
-                if (defaultCharset == null) {
-                    throw new UnsupportedEncodingException(mimeCharset);
-                }
-            } catch (IllegalCharsetNameException ex) {
-                if (defaultCharset == null) {
-                    throw new UnsupportedEncodingException(mimeCharset);
-                }
+            Charset charset = CharsetUtil.lookup(mimeCharset);
+            if (charset != null) {
+                return charset;
+            }
+            if (defaultCharset == null) {
+                throw new UnsupportedEncodingException(mimeCharset);
             }
         }
         return defaultCharset;
@@ -226,6 +224,11 @@ public class BasicBodyFactory implements BodyFactory {
             out.write(content);
         }
 
+        @Override
+        public ByteBuffer getByteBuffer() {
+            return ByteBuffer.wrap(content).asReadOnlyBuffer();
+        }
+
         @Override
         public long size() {
             return content.length;
@@ -283,6 +286,13 @@ public class BasicBodyFactory implements BodyFactory {
             content.getValue().writeTo(out);
         }
 
+        @Override
+        public long writeTo(WritableByteChannel channel) throws IOException {
+            // writes the internal chunks without copying them first
+            content.getValue().writeTo(Channels.newOutputStream(channel));
+            return content.getValue().size();
+        }
+
         @Override
         public void dispose() {
             this.content.release();
@@ -314,6 +324,11 @@ public class BasicBodyFactory implements BodyFactory {
             out.write(content);
         }
 
+        @Override
+        public ByteBuffer getByteBuffer() {
+            return ByteBuffer.wrap(content).asReadOnlyBuffer();
+        }
+
         @Override
         public long size() {
             return content.length;
@@ -349,6 +364,13 @@ public class BasicBodyFactory implements BodyFactory {
             content.getValue().writeTo(out);
         }
 
+        @Override
+        public long writeTo(WritableByteChannel channel) throws IOException {
+            // writes the internal chunks without copying them first
+            content.getValue().writeTo(Channels.newOutputStream(channel));
+            return content.getValue().size();
+        }
+
         @Override
         public long size() {
             return content.getValue().size();
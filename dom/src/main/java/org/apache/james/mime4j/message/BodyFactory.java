@@ -24,6 +24,7 @@ import java.io.InputStream;
 
 import org.apache.james.mime4j.dom.BinaryBody;
 import org.apache.james.mime4j.dom.TextBody;
+import org.apache.james.mime4j.stream.BodyDescriptor;
 
 /**
  * Factory for creating message bodies.
@@ -62,4 +63,42 @@ public interface BodyFactory {
      */
     TextBody textBody(InputStream is, String mimeCharset) throws IOException;
 
+    /**
+     * Creates a {@link BinaryBody} that holds the content of the given input
+     * stream, parsed with the given descriptor. Factories may use the size
+     * hints of the descriptor to choose how to hold the content. The default
+     * implementation ignores the descriptor.
+     *
+     * @param is
+     *            input stream to create a message body from.
+     * @param bd
+     *            descriptor of the body.
+     * @return a binary body.
+     * @throws IOException
+     *             if an I/O error occurs.
+     */
+    default BinaryBody binaryBody(InputStream is, BodyDescriptor bd) throws IOException {
+        return binaryBody(is);
+    }
+
+    /**
+     * Creates a {@link TextBody} that holds the content of the given input
+     * stream, parsed with the given descriptor. Factories may use the size
+     * hints of the descriptor to choose how to hold the content. The default
+     * implementation ignores the descriptor.
+     *
+     * @param is
+     *            input stream to create a message body from.
+     * @param mimeCharset
+     *            name of a MIME charset.
+     * @param bd
+     *            descriptor of the body.
+     * @return a text body.
+     * @throws IOException
+     *             if an I/O error occurs.
+     */
+    default TextBody textBody(InputStream is, String mimeCharset, BodyDescriptor bd) throws IOException {
+        return textBody(is, mimeCharset);
+    }
+
 }
@@ -0,0 +1,220 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mime4j.message;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.apache.james.mime4j.dom.Body;
+import org.apache.james.mime4j.dom.Entity;
+import org.apache.james.mime4j.dom.Message;
+import org.apache.james.mime4j.dom.SingleBody;
+import org.apache.james.mime4j.util.ByteArrayBuffer;
+import org.apache.james.mime4j.util.ByteSequence;
+
+/**
+ * {@link DefaultMessageWriter} that can also write to a
+ * {@link WritableByteChannel}.
+ * <p>
+ * The channel is adapted to an <code>OutputStream</code> the inherited
+ * methods write the message to, so that both writers produce the same bytes.
+ * Header fields, boundaries and bodies held in memory are not copied: they are
+ * wrapped into buffers and handed to the channel in batches using
+ * {@link GatheringByteChannel#write(ByteBuffer[])} when the channel supports
+ * it. Bodies that are not transfer encoded are written through
+ * {@link SingleBody#writeTo(WritableByteChannel)}, which lets file backed
+ * bodies use <code>FileChannel.transferTo</code>, and so are the original
+ * bytes of an untouched {@link TransferEncodedBody}. Only other base64 and
+ * quoted-printable bodies are encoded into an intermediate buffer.
+ * <p>
+ * The channel has to be in blocking mode.
+ */
+public class ChannelMessageWriter extends DefaultMessageWriter {
+
+    // most systems limit a single gathering write to 1024 buffers
+    private static final int MAX_BUFFERS = 1024;
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+    public ChannelMessageWriter() {
+    }
+
+    /**
+     * Write the specified <code>Message</code> to the specified
+     * <code>WritableByteChannel</code>.
+     *
+     * @param message
+     *            the <code>Message</code> to write.
+     * @param channel
+     *            the channel to write to.
+     * @throws IOException
+     *             if an I/O error occurs.
+     */
+    public void writeMessage(Message message, WritableByteChannel channel) throws IOException {
+        writeEntity(message, channel);
+    }
+
+    /**
+     * Write the specified <code>Entity</code> to the specified
+     * <code>WritableByteChannel</code>.
+     *
+     * @param entity
+     *            the <code>Entity</code> to write.
+     * @param channel
+     *            the channel to write to.
+     * @throws IOException
+     *             if an I/O error occurs.
+     */
+    public void writeEntity(Entity entity, WritableByteChannel channel) throws IOException {
+        GatheringSink sink = new GatheringSink(channel);
+        writeEntity(entity, sink);
+        sink.flush();
+    }
+
+    @Override
+    public void writeBody(Body body, OutputStream out) throws IOException {
+        if (out instanceof GatheringSink && body instanceof SingleBody) {
+            GatheringSink sink = (GatheringSink) out;
+            SingleBody singleBody = (SingleBody) body;
+            ByteBuffer content = singleBody.getByteBuffer();
+            if (content != null) {
+                sink.add(content);
+            } else {
+                sink.flush();
+                singleBody.writeTo(sink.channel);
+            }
+        } else {
+            super.writeBody(body, out);
+        }
+    }
+
+    @Override
+    protected void writeBytes(ByteSequence byteSequence, OutputStream out) throws IOException {
+        if (out instanceof GatheringSink) {
+            ((GatheringSink) out).add(byteSequence);
+        } else {
+            super.writeBytes(byteSequence, out);
+        }
+    }
+
+    /**
+     * Collects buffers until they are written to the channel in one go.
+     * Bytes written through the <code>OutputStream</code> methods, which the
+     * caller may reuse, are copied into a buffer of the sink first.
+     */
+    private static final class GatheringSink extends OutputStream {
+
+        private final WritableByteChannel channel;
+        private final ByteBuffer[] buffers = new ByteBuffer[MAX_BUFFERS];
+        private final ByteBuffer copy = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+        private int count;
+        private ByteBuffer lastCopy;
+
+        GatheringSink(WritableByteChannel channel) {
+            if (channel == null)
+                throw new IllegalArgumentException("Channel may not be null");
+            this.channel = channel;
+        }
+
+        void add(ByteSequence byteSequence) throws IOException {
+            if (byteSequence instanceof ByteArrayBuffer) {
+                ByteArrayBuffer bab = (ByteArrayBuffer) byteSequence;
+                add(ByteBuffer.wrap(bab.buffer(), 0, bab.length()));
+            } else {
+                // recycled buffers may be reused before the batch is written
+                add(ByteBuffer.wrap(byteSequence.toByteArray()));
+            }
+        }
+
+        void add(ByteBuffer buffer) throws IOException {
+            if (!buffer.hasRemaining()) {
+                return;
+            }
+            if (count == buffers.length) {
+                flush();
+            }
+            buffers[count++] = buffer;
+            lastCopy = null;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (!copy.hasRemaining() || (lastCopy == null && count == buffers.length)) {
+                    flush();
+                }
+                int chunk = Math.min(len, copy.remaining());
+                copy.put(b, off, chunk);
+                if (lastCopy != null) {
+                    // consecutive writes extend the same buffer
+                    lastCopy.limit(copy.position());
+                } else {
+                    lastCopy = copy.duplicate();
+                    lastCopy.limit(copy.position());
+                    lastCopy.position(copy.position() - chunk);
+                    buffers[count++] = lastCopy;
+                }
+                off += chunk;
+                len -= chunk;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (count > 0) {
+                if (channel instanceof GatheringByteChannel) {
+                    GatheringByteChannel gathering = (GatheringByteChannel) channel;
+                    int offset = 0;
+                    while (offset < count) {
+                        gathering.write(buffers, offset, count - offset);
+                        while (offset < count && !buffers[offset].hasRemaining()) {
+                            offset++;
+                        }
+                    }
+                } else {
+                    for (int i = 0; i < count; i++) {
+                        while (buffers[i].hasRemaining()) {
+                            channel.write(buffers[i]);
+                        }
+                    }
+                }
+                for (int i = 0; i < count; i++) {
+                    buffers[i] = null;
+                }
+                count = 0;
+            }
+            copy.clear();
+            lastCopy = null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // the channel belongs to the caller; encoders close the stream
+            // they wrap, which must not end the message
+        }
+    }
+
+}
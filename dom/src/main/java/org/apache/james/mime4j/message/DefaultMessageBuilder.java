@@ -45,6 +45,7 @@ import org.apache.james.mime4j.stream.BodyDescriptorBuilder;
 import org.apache.james.mime4j.stream.Field;
 import org.apache.james.mime4j.stream.MimeConfig;
 import org.apache.james.mime4j.stream.NameValuePair;
+import org.apache.james.mime4j.stream.ParserInstrumentation;
 
 /**
  * Default implementation of {@link MessageBuilder}.
@@ -58,7 +59,9 @@ public class DefaultMessageBuilder implements MessageBuilder {
     private BodyDescriptorBuilder bodyDescBuilder = null;
     private boolean contentDecoding = true;
     private boolean flatMode = false;
+    private boolean preserveRaw = false;
     private DecodeMonitor monitor = null;
+    private ParserInstrumentation instrumentation = null;
 
     public DefaultMessageBuilder() {
         super();
@@ -96,6 +99,41 @@ public class DefaultMessageBuilder implements MessageBuilder {
         this.flatMode = flatMode;
     }
 
+    /**
+     * Sets whether base64 and quoted-printable bodies keep their original
+     * transfer encoded bytes. Such bodies are decoded on demand, and written
+     * back verbatim by {@link DefaultMessageWriter} unless the transfer
+     * encoding of their entity has been changed; modified bodies are encoded
+     * as usual. This saves decoding and encoding content that is never looked
+     * at, as when only header fields get rewritten. Overrides
+     * {@link #setContentDecoding(boolean)} when enabled.
+     *
+     * @see TransferEncodedBody
+     */
+    public void setPreserveRaw(boolean preserveRaw) {
+        this.preserveRaw = preserveRaw;
+    }
+
+    /**
+     * Sets the instrumentation notified while parsing, in place of the one
+     * of the {@link MimeConfig}. Besides the parser counters and timings, the
+     * time spent creating bodies is reported as
+     * {@link ParserInstrumentation.Phase#STORAGE}.
+     *
+     * @see MimeConfig.Builder#setInstrumentation(ParserInstrumentation)
+     */
+    public void setInstrumentation(ParserInstrumentation instrumentation) {
+        this.instrumentation = instrumentation;
+    }
+
+    private MimeConfig mimeConfig() {
+        MimeConfig cfg = config != null ? config : MimeConfig.DEFAULT;
+        if (instrumentation != null && instrumentation != cfg.getInstrumentation()) {
+            cfg = MimeConfig.copy(cfg).setInstrumentation(instrumentation).build();
+        }
+        return cfg;
+    }
+
     /**
      * Creates a new <code>Header</code> from the specified
      * <code>Header</code>. The <code>Header</code> instance is initialized
@@ -259,7 +297,7 @@ public class DefaultMessageBuilder implements MessageBuilder {
     }
 
     public Header parseHeader(final InputStream is) throws IOException, MimeIOException {
-        final MimeConfig cfg = config != null ? config : MimeConfig.DEFAULT;
+        final MimeConfig cfg = mimeConfig();
         boolean strict = cfg.isStrictParsing();
         final DecodeMonitor mon = monitor != null ? monitor :
             strict ? DecodeMonitor.STRICT : DecodeMonitor.SILENT;
@@ -302,7 +340,7 @@ public class DefaultMessageBuilder implements MessageBuilder {
     public Message parseMessage(final InputStream is) throws IOException, MimeIOException {
         try {
             MessageImpl message = newMessageImpl();
-            MimeConfig cfg = config != null ? config : MimeConfig.DEFAULT;
+            MimeConfig cfg = mimeConfig();
             boolean strict = cfg.isStrictParsing();
             DecodeMonitor mon = monitor != null ? monitor :
                 strict ? DecodeMonitor.STRICT : DecodeMonitor.SILENT;
@@ -311,8 +349,12 @@ public class DefaultMessageBuilder implements MessageBuilder {
                     strict ? DefaultFieldParser.getParser() : LenientFieldParser.getParser(), mon);
             BodyFactory bf = bodyFactory != null ? bodyFactory : new BasicBodyFactory(!strict);
             MimeStreamParser parser = new MimeStreamParser(cfg, mon, bdb);
-            parser.setContentHandler(new ParserStreamContentHandler(message, bf));
-            parser.setContentDecoding(contentDecoding);
+            ParserStreamContentHandler handler = new ParserStreamContentHandler(message, bf);
+            handler.setPreserveRaw(preserveRaw);
+            handler.setDecodeMonitor(mon);
+            handler.setInstrumentation(cfg.getInstrumentation());
+            parser.setContentHandler(handler);
+            parser.setContentDecoding(contentDecoding && !preserveRaw);
             if (flatMode) {
                 parser.setFlat();
             } else {
@@ -107,6 +107,13 @@ public class DefaultMessageWriter implements MessageWriter {
         if (body == null)
             throw new IllegalArgumentException("Missing body");
 
+        if (body instanceof TransferEncodedBody
+                && ((TransferEncodedBody) body).isEncodedAs(entity.getContentTransferEncoding())) {
+            // untouched content: copy the original encoded bytes
+            writeBody(((TransferEncodedBody) body).getEncodedBody(), out);
+            return;
+        }
+
         boolean binaryBody = body instanceof BinaryBody;
         OutputStream encOut = encodeStream(out, entity
                 .getContentTransferEncoding(), binaryBody);
@@ -258,7 +265,18 @@ public class DefaultMessageWriter implements MessageWriter {
         return ContentUtil.encode(boundary);
     }
 
-    private void writeBytes(ByteSequence byteSequence, OutputStream out)
+    /**
+     * Writes header fields, boundaries, preambles and epilogues. Subclasses
+     * can override it to hand the bytes on without copying them.
+     *
+     * @param byteSequence
+     *            the bytes to write.
+     * @param out
+     *            the OutputStream to write to.
+     * @throws IOException
+     *             if an I/O error occurs.
+     */
+    protected void writeBytes(ByteSequence byteSequence, OutputStream out)
             throws IOException {
         if (byteSequence instanceof ByteArrayBuffer) {
             ByteArrayBuffer bab = (ByteArrayBuffer) byteSequence;
@@ -0,0 +1,74 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.message;
+
+import java.io.InputStream;
+
+import org.apache.james.mime4j.codec.Base64InputStream;
+import org.apache.james.mime4j.codec.DecodeMonitor;
+import org.apache.james.mime4j.codec.QuotedPrintableInputStream;
+import org.apache.james.mime4j.dom.SingleBody;
+import org.apache.james.mime4j.util.MimeUtil;
+
+/**
+ * A body that keeps the transfer encoded bytes it has been parsed from and
+ * decodes them on demand. Message writers copy the encoded bytes verbatim as
+ * long as the transfer encoding of the enclosing entity has not been changed,
+ * instead of encoding the content again.
+ *
+ * @see DefaultMessageBuilder#setPreserveRaw(boolean)
+ */
+public interface TransferEncodedBody {
+
+    /**
+     * Returns the transfer encoding of the encoded bytes, for instance
+     * <code>base64</code> or <code>quoted-printable</code>.
+     */
+    String getTransferEncoding();
+
+    /**
+     * Returns the body holding the original transfer encoded bytes.
+     */
+    SingleBody getEncodedBody();
+
+    /**
+     * Tells whether the encoded bytes can be written as they are for an
+     * entity with the given transfer encoding.
+     */
+    default boolean isEncodedAs(String transferEncoding) {
+        return transferEncoding != null
+                && transferEncoding.trim().equalsIgnoreCase(getTransferEncoding());
+    }
+
+    /**
+     * Returns a stream decoding the given encoded stream according to the
+     * given transfer encoding.
+     */
+    static InputStream decode(InputStream encoded, String transferEncoding, DecodeMonitor monitor) {
+        if (MimeUtil.isBase64Encoding(transferEncoding)) {
+            return new Base64InputStream(encoded, monitor);
+        } else if (MimeUtil.isQuotedPrintableEncoded(transferEncoding)) {
+            return new QuotedPrintableInputStream(encoded, monitor);
+        } else {
+            return encoded;
+        }
+    }
+
+}
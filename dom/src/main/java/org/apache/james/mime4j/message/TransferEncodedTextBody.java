@@ -0,0 +1,90 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.message;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+import org.apache.james.mime4j.Charsets;
+import org.apache.james.mime4j.codec.DecodeMonitor;
+import org.apache.james.mime4j.dom.TextBody;
+
+/**
+ * Text body holding its original transfer encoded bytes. The charset is the
+ * one of the text body holding the encoded bytes.
+ */
+public class TransferEncodedTextBody extends TextBody implements TransferEncodedBody {
+
+    private final TextBody encoded;
+    private final String transferEncoding;
+    private final DecodeMonitor monitor;
+
+    public TransferEncodedTextBody(TextBody encoded, String transferEncoding, DecodeMonitor monitor) {
+        if (encoded == null || transferEncoding == null)
+            throw new IllegalArgumentException();
+
+        this.encoded = encoded;
+        this.transferEncoding = transferEncoding;
+        this.monitor = monitor != null ? monitor : DecodeMonitor.SILENT;
+    }
+
+    public String getTransferEncoding() {
+        return transferEncoding;
+    }
+
+    public TextBody getEncodedBody() {
+        return encoded;
+    }
+
+    @Override
+    public String getMimeCharset() {
+        return encoded.getMimeCharset();
+    }
+
+    @Override
+    public Charset getCharset() {
+        return encoded.getCharset();
+    }
+
+    @Override
+    public Reader getReader() throws IOException {
+        Charset charset = getCharset();
+        return new InputStreamReader(getInputStream(), charset != null ? charset : Charsets.DEFAULT_CHARSET);
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return TransferEncodedBody.decode(encoded.getInputStream(), transferEncoding, monitor);
+    }
+
+    @Override
+    public TransferEncodedTextBody copy() {
+        return new TransferEncodedTextBody((TextBody) encoded.copy(), transferEncoding, monitor);
+    }
+
+    @Override
+    public void dispose() {
+        encoded.dispose();
+    }
+
+}
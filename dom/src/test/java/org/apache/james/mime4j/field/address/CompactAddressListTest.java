@@ -0,0 +1,221 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.field.address;
+
+import java.util.Random;
+
+import org.apache.james.mime4j.codec.DecodeMonitor;
+import org.apache.james.mime4j.dom.address.Address;
+import org.apache.james.mime4j.dom.address.AddressList;
+import org.apache.james.mime4j.dom.address.Group;
+import org.apache.james.mime4j.dom.address.Mailbox;
+import org.apache.james.mime4j.dom.address.MailboxList;
+import org.apache.james.mime4j.field.AddressListFieldLenientImpl;
+import org.apache.james.mime4j.stream.ParserCursor;
+import org.apache.james.mime4j.stream.RawField;
+import org.apache.james.mime4j.stream.RawFieldParser;
+import org.apache.james.mime4j.util.ByteSequence;
+import org.apache.james.mime4j.util.ContentUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompactAddressListTest {
+
+    private final LenientAddressParser parser = LenientAddressParser.DEFAULT;
+
+    @Test
+    public void testOffsets() throws Exception {
+        String s = "John Doe <john@example.com>, jane@Example.ORG , \"Smith, Bob\" <bob@mail.example.net>";
+        CompactAddressList list = parser.parseCompactAddressList(s);
+
+        Assert.assertEquals(3, list.size());
+        Assert.assertEquals(0, list.getGroupCount());
+
+        Assert.assertEquals("John Doe", s.substring(list.getDisplayNameStart(0), list.getDisplayNameEnd(0)));
+        Assert.assertEquals("john", s.substring(list.getLocalPartStart(0), list.getLocalPartEnd(0)));
+        Assert.assertEquals("example.com", s.substring(list.getDomainStart(0), list.getDomainEnd(0)));
+
+        Assert.assertEquals(-1, list.getDisplayNameStart(1));
+        Assert.assertNull(list.getDisplayName(1));
+        Assert.assertEquals("jane", list.getLocalPart(1));
+        Assert.assertEquals("Example.ORG", list.getDomain(1));
+        Assert.assertTrue(list.isDomain(1, "example.org"));
+        Assert.assertFalse(list.isDomain(1, "example.com"));
+
+        Assert.assertEquals("Smith, Bob", list.getDisplayName(2));
+        Assert.assertEquals("mail.example.net", list.getDomain(2));
+    }
+
+    @Test
+    public void testLazyMailbox() throws Exception {
+        CompactAddressList list = parser.parseCompactAddressList(
+                "=?ISO-8859-1?Q?Keld_J=F8rn_Simonsen?= <keld@dkuug.dk>");
+
+        Assert.assertEquals(1, list.size());
+        Assert.assertEquals("Keld J\u00f8rn Simonsen", list.getDisplayName(0));
+        Mailbox mailbox = list.getMailbox(0);
+        Assert.assertSame(mailbox, list.getMailbox(0));
+        Assert.assertEquals("keld@dkuug.dk", mailbox.getAddress());
+    }
+
+    @Test
+    public void testComplexParts() throws Exception {
+        CompactAddressList list = parser.parseCompactAddressList(
+                "\"john doe\" @ machine (comment).  example (dot). com");
+
+        Assert.assertEquals(1, list.size());
+        Assert.assertEquals("john doe", list.getLocalPart(0));
+        Assert.assertEquals("machine.example.com", list.getDomain(0));
+        Assert.assertTrue(list.isDomain(0, "MACHINE.example.com"));
+    }
+
+    @Test
+    public void testGroups() throws Exception {
+        String s = "undisclosed-recipients:;, Friends: a@b.c, C <d@e.f>; g@h.i, empty : ;";
+        CompactAddressList list = parser.parseCompactAddressList(s);
+
+        Assert.assertEquals(3, list.size());
+        Assert.assertEquals(3, list.getGroupCount());
+        Assert.assertEquals("undisclosed-recipients", list.getGroupName(0));
+        Assert.assertEquals(0, list.getGroupSize(0));
+        Assert.assertEquals("Friends", list.getGroupName(1));
+        Assert.assertEquals(0, list.getGroupFirst(1));
+        Assert.assertEquals(2, list.getGroupSize(1));
+        Assert.assertEquals(1, list.getGroupIndex(0));
+        Assert.assertEquals(1, list.getGroupIndex(1));
+        Assert.assertEquals(-1, list.getGroupIndex(2));
+        Assert.assertEquals("empty", list.getGroupName(2));
+        Assert.assertEquals(3, list.getGroupFirst(2));
+
+        assertSame(parser.parseAddressList(s), list.toAddressList());
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        CompactAddressList list = parser.parseCompactAddressList(" , ,, \"\" ");
+        Assert.assertTrue(list.isEmpty());
+        Assert.assertEquals(0, list.toAddressList().size());
+    }
+
+    @Test
+    public void testRange() throws Exception {
+        String s = "To: a@b.c, d@e.f";
+        ByteSequence raw = ContentUtil.encode(s);
+        CompactAddressList list = parser.parseCompactAddressList(raw, new ParserCursor(3, raw.length()));
+        Assert.assertSame(raw, list.getRaw());
+        Assert.assertEquals(2, list.size());
+        Assert.assertEquals("d", list.getLocalPart(1));
+        Assert.assertEquals(s.indexOf('d'), list.getLocalPartStart(1));
+    }
+
+    @Test
+    public void testField() throws Exception {
+        RawField raw = RawFieldParser.DEFAULT.parseField(ContentUtil.encode("To: a@b.c,\r\n d@e.f"));
+        AddressListFieldLenientImpl field =
+                (AddressListFieldLenientImpl) AddressListFieldLenientImpl.PARSER.parse(raw, DecodeMonitor.SILENT);
+        CompactAddressList list = field.getCompactAddressList();
+        Assert.assertEquals(2, list.size());
+        Assert.assertEquals("e.f", list.getDomain(1));
+    }
+
+    @Test
+    public void testSameAsAddressList() throws Exception {
+        String[] inputs = {
+            "",
+            "a",
+            "<>",
+            "< >, <a>, <a@>, <@b>",
+            "Name <@route1,@route2:local@domain> junk",
+            "\"quoted \\\" name\" (comment) <local (c) @ domain (d)> (trailer), next@host",
+            "<foo> bar, baz@qux",
+            "a@b@c, d e f, \"\" <>",
+            "group: a, b@c; d, group2: <e@f>, \"g\" h@i;, j",
+            "unterminated: a@b, c <d@e",
+            "\"unterminated quote, a@b",
+            "(unterminated comment, a@b",
+            "=?UTF-8?B?w6k=?= <x@y>, =?UTF-8?Q?a?=@b",
+            "caf\u00e9 <caf\u00e9@\u00e9xample.com>",
+        };
+        for (String input : inputs) {
+            assertSame(input);
+        }
+    }
+
+    @Test
+    public void testRandomSameAsAddressList() throws Exception {
+        String alphabet = "ab.@<>,;:\"\\() \t";
+        Random random = new Random(5322);
+        StringBuilder sb = new StringBuilder();
+        for (int n = 0; n < 5000; n++) {
+            sb.setLength(0);
+            int len = random.nextInt(30);
+            for (int i = 0; i < len; i++) {
+                sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            assertSame(sb.toString());
+        }
+    }
+
+    private void assertSame(String input) {
+        ByteSequence raw = ContentUtil.encode(input);
+        AddressList expected = parser.parseAddressList(raw, new ParserCursor(0, raw.length()));
+        CompactAddressList list = parser.parseCompactAddressList(raw, new ParserCursor(0, raw.length()));
+        String message = "input: " + input;
+
+        Assert.assertEquals(message, expected.flatten().size(), list.size());
+        assertSame(expected, list.toAddressList());
+
+        MailboxList mailboxes = expected.flatten();
+        for (int i = 0; i < list.size(); i++) {
+            Mailbox mailbox = mailboxes.get(i);
+            Assert.assertEquals(message, mailbox.getName(), list.getDisplayName(i));
+            Assert.assertEquals(message, mailbox.getLocalPart(), list.getLocalPart(i));
+            Assert.assertEquals(message, mailbox.getDomain(), list.getDomain(i));
+        }
+    }
+
+    private static void assertSame(AddressList expected, AddressList actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Address e = expected.get(i);
+            Address a = actual.get(i);
+            Assert.assertEquals(e.getClass(), a.getClass());
+            if (e instanceof Group) {
+                Assert.assertEquals(((Group) e).getName(), ((Group) a).getName());
+                MailboxList em = ((Group) e).getMailboxes();
+                MailboxList am = ((Group) a).getMailboxes();
+                Assert.assertEquals(em.size(), am.size());
+                for (int j = 0; j < em.size(); j++) {
+                    assertSame(em.get(j), am.get(j));
+                }
+            } else {
+                assertSame((Mailbox) e, (Mailbox) a);
+            }
+        }
+    }
+
+    private static void assertSame(Mailbox expected, Mailbox actual) {
+        Assert.assertEquals(expected.getName(), actual.getName());
+        Assert.assertEquals(expected.getRoute(), actual.getRoute());
+        Assert.assertEquals(expected.getLocalPart(), actual.getLocalPart());
+        Assert.assertEquals(expected.getDomain(), actual.getDomain());
+    }
+
+}
@@ -0,0 +1,246 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.field.address;
+
+import java.io.StringReader;
+import java.util.Random;
+
+import org.apache.james.mime4j.codec.DecodeMonitor;
+import org.apache.james.mime4j.dom.address.Address;
+import org.apache.james.mime4j.dom.address.AddressList;
+import org.apache.james.mime4j.dom.address.Group;
+import org.apache.james.mime4j.dom.address.Mailbox;
+import org.apache.james.mime4j.dom.address.MailboxList;
+import org.apache.james.mime4j.stream.ParserCursor;
+import org.apache.james.mime4j.util.ByteSequence;
+import org.apache.james.mime4j.util.ContentUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks {@link StrictAddressParser} against the JJTree generated parser.
+ */
+public class StrictAddressParserTest {
+
+    private static final String[] INPUTS = {
+        "",
+        " , ,",
+        "a@b",
+        "a.b.c@d.e.f",
+        "a. b .c@d. e",
+        "a b@c",
+        "\"a\".b@c",
+        "\"a\" b@c",
+        "\"a b\"@c",
+        "a..b@c",
+        ".a@b",
+        "a@b.",
+        "a@b c",
+        "a@[1.2.3.4]",
+        "a@[1.2\\].3]",
+        "a@[1[2]",
+        "John Doe <john@example.com>",
+        "John  (the man)  Doe <john@example.com>",
+        "\"Doe, John\" <john@example.com>",
+        "=?ISO-8859-1?Q?Keld_J=F8rn_Simonsen?= <keld@dkuug.dk>",
+        "<@route1,,@route2:a@b>",
+        "<@route1 @route2:a@b>",
+        "<@route1:a@b>, c@d",
+        "<a@b",
+        "<a@b> junk",
+        "group: a@b, C <d@e>, ;",
+        "group:;",
+        "group: a@b",
+        "a (comment (nested) \\) ) @ b (more)",
+        "a (unterminated@b",
+        "\"unterminated@b",
+        "a\r\n@b",
+        "a)@b",
+        "caf\u00e9 <caf\u00e9@\u00e9xample.com>",
+        "\"caf\u00e9\"@example.com",
+        "Name <\"quoted\\\"local\"@example.com>",
+        "a@\u00e9",
+        "\u00e9@a",
+        "\u00e9 <a@b>",
+        "a@\u20ac",
+        "a@\u00e9\u00e9",
+        "a@\u00e9.",
+        "a@b.\u00e9",
+        "\u00e9\u00e9 <a@b>",
+        "a@\ud83d\ude00",
+    };
+
+    @Test
+    public void testAddressListSameAsJJTree() throws Exception {
+        for (String input : INPUTS) {
+            assertSameAddressList(input);
+        }
+    }
+
+    @Test
+    public void testAddressSameAsJJTree() throws Exception {
+        for (String input : INPUTS) {
+            assertSameAddress(input);
+        }
+    }
+
+    @Test
+    public void testMailboxSameAsJJTree() throws Exception {
+        for (String input : INPUTS) {
+            assertSameMailbox(input);
+        }
+    }
+
+    @Test
+    public void testRandomSameAsJJTree() throws Exception {
+        String alphabet = "ab.@<>,;:\"\\()[] \t=?\u00e9";
+        Random random = new Random(5322);
+        StringBuilder sb = new StringBuilder();
+        for (int n = 0; n < 5000; n++) {
+            sb.setLength(0);
+            int len = random.nextInt(24);
+            for (int i = 0; i < len; i++) {
+                sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            assertSameAddressList(sb.toString());
+            assertSameMailbox(sb.toString());
+        }
+    }
+
+    @Test
+    public void testParseRange() throws Exception {
+        String s = "To: John Doe <john@example.com>, jane@example.org";
+        ByteSequence raw = ContentUtil.encode(s);
+        AddressList list = StrictAddressParser.DEFAULT.parseAddressList(
+                raw, new ParserCursor(3, raw.length()), DecodeMonitor.STRICT);
+        Assert.assertEquals(2, list.size());
+        Mailbox mailbox = (Mailbox) list.get(0);
+        Assert.assertEquals("John Doe", mailbox.getName());
+        Assert.assertEquals("john@example.com", mailbox.getAddress());
+        Assert.assertEquals("jane@example.org", ((Mailbox) list.get(1)).getAddress());
+    }
+
+    @Test
+    public void testParseExceptions() throws Exception {
+        String[] invalid = { "a b@c", "a@b c", "<a@b", "group: a@b", "a\r\n@b", "a (b@c", "\"a\" b@c",
+                "a@\u00e9", "\u00e9@a", "\u00e9 <a@b>" };
+        for (String input : invalid) {
+            try {
+                StrictAddressParser.DEFAULT.parseAddressList(input);
+                Assert.fail("ParseException expected for " + input);
+            } catch (ParseException expected) {
+            }
+        }
+        // longer runs of non ASCII characters are atoms
+        Assert.assertEquals("a@\u00e9\u00e9", StrictAddressParser.DEFAULT.parseMailbox("a@\u00e9\u00e9").getAddress());
+        try {
+            StrictAddressParser.DEFAULT.parseGroup("a@b");
+            Assert.fail();
+        } catch (ParseException expected) {
+        }
+    }
+
+    private static void assertSameAddressList(String input) {
+        AddressList expected = null;
+        AddressList actual = null;
+        try {
+            AddressListParser parser = new AddressListParser(new StringReader(input));
+            expected = Builder.getInstance().buildAddressList(parser.parseAddressList(), DecodeMonitor.STRICT);
+        } catch (ParseException e) {
+        }
+        try {
+            actual = StrictAddressParser.DEFAULT.parseAddressList(input, DecodeMonitor.STRICT);
+        } catch (ParseException e) {
+        }
+        String message = "input: " + input;
+        if (expected == null) {
+            Assert.assertNull(message, actual);
+            return;
+        }
+        Assert.assertNotNull(message, actual);
+        Assert.assertEquals(message, expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(message, expected.get(i), actual.get(i));
+        }
+    }
+
+    private static void assertSameAddress(String input) {
+        Address expected = null;
+        Address actual = null;
+        try {
+            AddressListParser parser = new AddressListParser(new StringReader(input));
+            expected = Builder.getInstance().buildAddress(parser.parseAddress(), DecodeMonitor.STRICT);
+        } catch (ParseException e) {
+        }
+        try {
+            actual = StrictAddressParser.DEFAULT.parseAddress(input, DecodeMonitor.STRICT);
+        } catch (ParseException e) {
+        }
+        String message = "input: " + input;
+        if (expected == null) {
+            Assert.assertNull(message, actual);
+        } else {
+            Assert.assertNotNull(message, actual);
+            assertSame(message, expected, actual);
+        }
+    }
+
+    private static void assertSameMailbox(String input) {
+        Mailbox expected = null;
+        Mailbox actual = null;
+        try {
+            AddressListParser parser = new AddressListParser(new StringReader(input));
+            expected = Builder.getInstance().buildMailbox(parser.parseMailbox(), DecodeMonitor.STRICT);
+        } catch (ParseException e) {
+        }
+        try {
+            actual = StrictAddressParser.DEFAULT.parseMailbox(input, DecodeMonitor.STRICT);
+        } catch (ParseException e) {
+        }
+        String message = "input: " + input;
+        if (expected == null) {
+            Assert.assertNull(message, actual);
+        } else {
+            Assert.assertNotNull(message, actual);
+            assertSame(message, expected, actual);
+        }
+    }
+
+    private static void assertSame(String message, Address expected, Address actual) {
+        Assert.assertEquals(message, expected.getClass(), actual.getClass());
+        if (expected instanceof Group) {
+            Assert.assertEquals(message, ((Group) expected).getName(), ((Group) actual).getName());
+            MailboxList em = ((Group) expected).getMailboxes();
+            MailboxList am = ((Group) actual).getMailboxes();
+            Assert.assertEquals(message, em.size(), am.size());
+            for (int i = 0; i < em.size(); i++) {
+                assertSame(message, em.get(i), am.get(i));
+            }
+        } else {
+            Mailbox em = (Mailbox) expected;
+            Mailbox am = (Mailbox) actual;
+            Assert.assertEquals(message, em.getName(), am.getName());
+            Assert.assertEquals(message, em.getRoute(), am.getRoute());
+            Assert.assertEquals(message, em.getLocalPart(), am.getLocalPart());
+            Assert.assertEquals(message, em.getDomain(), am.getDomain());
+        }
+    }
+
+}
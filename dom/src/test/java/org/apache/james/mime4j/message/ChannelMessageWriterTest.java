@@ -0,0 +1,139 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.message;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.james.mime4j.dom.Message;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ChannelMessageWriterTest {
+
+    private static final String MESSAGE =
+        "From: sender@localhost\r\n" +
+        "To: receiver@localhost\r\n" +
+        "Subject: Channel\r\n" +
+        "MIME-Version: 1.0\r\n" +
+        "Content-Type: multipart/mixed; boundary=\"outer\"\r\n" +
+        "\r\n" +
+        "preamble\r\n" +
+        "--outer\r\n" +
+        "Content-Type: text/plain; charset=us-ascii\r\n" +
+        "\r\n" +
+        "plain text\r\n" +
+        "--outer\r\n" +
+        "Content-Type: text/plain; charset=iso-8859-1\r\n" +
+        "Content-Transfer-Encoding: quoted-printable\r\n" +
+        "\r\n" +
+        "caf=E9 cr=E8me\r\n" +
+        "--outer\r\n" +
+        "Content-Type: application/octet-stream\r\n" +
+        "Content-Transfer-Encoding: base64\r\n" +
+        "\r\n" +
+        "AAECAwQFBgcICQoLDA0ODxAREhMUFRYXGBkaGxwdHh8=\r\n" +
+        "--outer\r\n" +
+        "Content-Type: message/rfc822\r\n" +
+        "\r\n" +
+        "Subject: inner\r\n" +
+        "\r\n" +
+        "inner body\r\n" +
+        "--outer--\r\n" +
+        "epilogue\r\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writeMessageShouldMatchDefaultMessageWriterOnFileChannel() throws Exception {
+        Message message = parse(MESSAGE.getBytes(StandardCharsets.US_ASCII));
+        File file = folder.newFile();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            new ChannelMessageWriter().writeMessage(message, channel);
+        }
+
+        assertThat(Files.readAllBytes(file.toPath())).isEqualTo(DefaultMessageWriter.asBytes(message));
+    }
+
+    @Test
+    public void writeMessageShouldMatchDefaultMessageWriterOnPlainChannel() throws Exception {
+        Message message = parse(MESSAGE.getBytes(StandardCharsets.US_ASCII));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        new ChannelMessageWriter().writeMessage(message, Channels.newChannel(out));
+
+        assertThat(out.toByteArray()).isEqualTo(DefaultMessageWriter.asBytes(message));
+    }
+
+    @Test
+    public void writeMessageShouldHandleMoreFieldsThanOneGatheringWrite() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 600; i++) {
+            sb.append("X-Field-").append(i).append(": value ").append(i).append("\r\n");
+        }
+        sb.append("\r\nbody\r\n");
+        Message message = parse(sb.toString().getBytes(StandardCharsets.US_ASCII));
+        File file = folder.newFile();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            new ChannelMessageWriter().writeMessage(message, channel);
+        }
+
+        assertThat(Files.readAllBytes(file.toPath())).isEqualTo(DefaultMessageWriter.asBytes(message));
+    }
+
+    @Test
+    public void writeMessageShouldMatchDefaultMessageWriterWithLargeEncodedBodies() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Content-Type: multipart/mixed; boundary=\"b\"\r\n\r\n");
+        for (int part = 0; part < 3; part++) {
+            sb.append("--b\r\nContent-Type: text/plain\r\n");
+            sb.append("Content-Transfer-Encoding: ").append(part == 1 ? "quoted-printable" : "base64").append("\r\n\r\n");
+            for (int i = 0; i < 2000; i++) {
+                sb.append(part == 1 ? "caf=E9 line " : "Y2Fmw6kgbGluZSA=").append("\r\n");
+            }
+        }
+        sb.append("--b--\r\n");
+        Message message = parse(sb.toString().getBytes(StandardCharsets.US_ASCII));
+        File file = folder.newFile();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            new ChannelMessageWriter().writeMessage(message, channel);
+        }
+
+        assertThat(Files.readAllBytes(file.toPath())).isEqualTo(DefaultMessageWriter.asBytes(message));
+    }
+
+    private static Message parse(byte[] bytes) throws Exception {
+        return new DefaultMessageBuilder().parseMessage(new ByteArrayInputStream(bytes));
+    }
+
+}
@@ -0,0 +1,124 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.message;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.james.mime4j.dom.Entity;
+import org.apache.james.mime4j.dom.Message;
+import org.apache.james.mime4j.dom.Multipart;
+import org.apache.james.mime4j.dom.TextBody;
+import org.apache.james.mime4j.field.Fields;
+import org.apache.james.mime4j.util.ContentUtil;
+import org.junit.Test;
+
+public class TransferEncodedBodyTest {
+
+    // base64 lines of unusual length and quoted-printable soft line breaks
+    // that encoding the content again would not reproduce
+    private static final String MESSAGE =
+        "From: sender@localhost\r\n" +
+        "Subject: original\r\n" +
+        "MIME-Version: 1.0\r\n" +
+        "Content-Type: multipart/mixed; boundary=\"outer\"\r\n" +
+        "\r\n" +
+        "--outer\r\n" +
+        "Content-Type: text/plain; charset=iso-8859-1\r\n" +
+        "Content-Transfer-Encoding: quoted-printable\r\n" +
+        "\r\n" +
+        "caf=E9 =\r\n" +
+        "cr=E8me\r\n" +
+        "--outer\r\n" +
+        "Content-Type: application/octet-stream\r\n" +
+        "Content-Transfer-Encoding: base64\r\n" +
+        "\r\n" +
+        "aGVsbG8g\r\n" +
+        "d29ybGQ=\r\n" +
+        "--outer--\r\n";
+
+    @Test
+    public void preservedBodiesShouldBeDecodedOnDemand() throws Exception {
+        Message message = parse(true);
+        Multipart multipart = (Multipart) message.getBody();
+
+        TextBody text = (TextBody) multipart.getBodyParts().get(0).getBody();
+        assertThat(text).isInstanceOf(TransferEncodedBody.class);
+        assertThat(ContentUtil.buffer(text.getReader())).isEqualTo("café crème");
+
+        TransferEncodedBinaryBody binary = (TransferEncodedBinaryBody) multipart.getBodyParts().get(1).getBody();
+        assertThat(binary.getTransferEncoding()).isEqualTo("base64");
+        assertThat(ContentUtil.buffer(binary.getInputStream())).isEqualTo("hello world".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void writerShouldCopyUntouchedBodiesVerbatim() throws Exception {
+        Message message = parse(true);
+        message.getHeader().setField(Fields.subject("rewritten"));
+
+        String expected = MESSAGE.replace("Subject: original", "Subject: rewritten");
+        assertThat(new String(DefaultMessageWriter.asBytes(message), StandardCharsets.US_ASCII)).isEqualTo(expected);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ChannelMessageWriter().writeMessage(message, Channels.newChannel(out));
+        assertThat(new String(out.toByteArray(), StandardCharsets.US_ASCII)).isEqualTo(expected);
+    }
+
+    @Test
+    public void writerShouldEncodeAgainWhenTransferEncodingChanged() throws Exception {
+        Message message = parse(true);
+        Entity part = ((Multipart) message.getBody()).getBodyParts().get(1);
+        part.getHeader().setField(Fields.contentTransferEncoding("quoted-printable"));
+
+        String written = new String(DefaultMessageWriter.asBytes(message), StandardCharsets.US_ASCII);
+
+        assertThat(written).contains("Content-Transfer-Encoding: quoted-printable\r\n\r\nhello=20world");
+        assertThat(written).doesNotContain("aGVsbG8g");
+    }
+
+    @Test
+    public void writerShouldEncodeBodiesWhenRawIsNotPreserved() throws Exception {
+        Message message = parse(false);
+
+        String written = new String(DefaultMessageWriter.asBytes(message), StandardCharsets.US_ASCII);
+
+        assertThat(written).contains("aGVsbG8gd29ybGQ=");
+    }
+
+    @Test
+    public void copyShouldPreserveEncodedBytes() throws Exception {
+        Message message = parse(true);
+
+        Message copy = new DefaultMessageBuilder().copy(message);
+
+        assertThat(DefaultMessageWriter.asBytes(copy)).isEqualTo(MESSAGE.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static Message parse(boolean preserveRaw) throws Exception {
+        DefaultMessageBuilder builder = new DefaultMessageBuilder();
+        builder.setPreserveRaw(preserveRaw);
+        return builder.parseMessage(new ByteArrayInputStream(MESSAGE.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+}
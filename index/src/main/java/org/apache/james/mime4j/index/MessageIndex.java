@@ -0,0 +1,281 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mime4j.index;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Read only view of an index written by {@link MessageIndexBuilder}.
+ * <p>
+ * The dictionary is loaded in memory when the index is opened; postings
+ * stay on disk and are read with positional reads, so a single instance can
+ * be searched from several threads. Queries are split into terms the same
+ * way message text was, hence matching is case insensitive, and terms longer
+ * than the maximum term length of the index are ignored.
+ * </p>
+ */
+public class MessageIndex implements Closeable {
+
+    private static final int HEADER_LENGTH = 12;
+
+    private final FileChannel channel;
+    private final int maxTermLength;
+    private final String[] messageIds;
+    private final String[] terms;
+    private final int[] counts;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final long postingsStart;
+
+    private MessageIndex(FileChannel channel, int maxTermLength, String[] messageIds, String[] terms, int[] counts,
+            long[] offsets, int[] lengths, long postingsStart) {
+        this.channel = channel;
+        this.maxTermLength = maxTermLength;
+        this.messageIds = messageIds;
+        this.terms = terms;
+        this.counts = counts;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.postingsStart = postingsStart;
+    }
+
+    public static MessageIndex open(Path path) throws IOException {
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            final ByteBuffer header = read(channel, 0, HEADER_LENGTH);
+            if (header.getInt() != MessageIndexBuilder.MAGIC) {
+                throw new IOException("Not a message index: " + path);
+            }
+            final int version = header.getInt();
+            if (version != MessageIndexBuilder.VERSION) {
+                throw new IOException("Unsupported message index version " + version + ": " + path);
+            }
+            final int dictionaryLength = header.getInt();
+            final ByteBuffer dictionary = read(channel, HEADER_LENGTH, dictionaryLength);
+
+            final int maxTermLength = VarInts.read(dictionary);
+            final String[] messageIds = new String[VarInts.read(dictionary)];
+            for (int i = 0; i < messageIds.length; i++) {
+                messageIds[i] = VarInts.readString(dictionary);
+            }
+            final int termCount = VarInts.read(dictionary);
+            final String[] terms = new String[termCount];
+            final int[] counts = new int[termCount];
+            final long[] offsets = new long[termCount];
+            final int[] lengths = new int[termCount];
+            long offset = 0;
+            for (int i = 0; i < termCount; i++) {
+                terms[i] = VarInts.readString(dictionary);
+                counts[i] = VarInts.read(dictionary);
+                lengths[i] = VarInts.read(dictionary);
+                offsets[i] = offset;
+                offset += lengths[i];
+            }
+            return new MessageIndex(channel, maxTermLength, messageIds, terms, counts, offsets, lengths,
+                    HEADER_LENGTH + dictionaryLength);
+        } catch (BufferUnderflowException e) {
+            channel.close();
+            throw new EOFException("Truncated message index dictionary: " + path);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int getMessageCount() {
+        return messageIds.length;
+    }
+
+    public int getTermCount() {
+        return terms.length;
+    }
+
+    /**
+     * @return the occurrences of a single term, ordered by message then part.
+     */
+    public List<Posting> getPostings(String term) throws IOException {
+        final int index = Arrays.binarySearch(terms, normalize(term));
+        if (index < 0) {
+            return Collections.emptyList();
+        }
+        final List<Posting> result = new ArrayList<Posting>(counts[index]);
+        final ByteBuffer bytes = readPostings(index);
+        int doc = -1;
+        int part = 0;
+        for (int i = 0; i < counts[index]; i++) {
+            final int docDelta = VarInts.read(bytes);
+            if (docDelta == 0) {
+                part += VarInts.read(bytes);
+            } else {
+                doc += docDelta;
+                part = VarInts.read(bytes);
+            }
+            result.add(new Posting(messageIds[doc], part));
+        }
+        return result;
+    }
+
+    /**
+     * @return ids of the messages containing every term of the query, in
+     *         indexing order. An empty query matches no message.
+     */
+    public Set<String> search(String query) throws IOException {
+        final List<Integer> indexes = lookupTerms(query);
+        if (indexes == null || indexes.isEmpty()) {
+            return Collections.emptySet();
+        }
+        // Intersect starting from the rarest term
+        Collections.sort(indexes, (a, b) -> Integer.compare(counts[a], counts[b]));
+        int[] docs = readDocs(indexes.get(0));
+        for (int i = 1; i < indexes.size() && docs.length > 0; i++) {
+            docs = intersect(docs, readDocs(indexes.get(i)));
+        }
+        return toMessageIds(docs);
+    }
+
+    /**
+     * @return ids of the messages containing any term of the query, in
+     *         indexing order.
+     */
+    public Set<String> searchAny(String query) throws IOException {
+        final boolean[] found = new boolean[messageIds.length];
+        final List<String> queryTerms = tokenize(query);
+        for (String term : queryTerms) {
+            final int index = Arrays.binarySearch(terms, term);
+            if (index >= 0) {
+                for (int doc : readDocs(index)) {
+                    found[doc] = true;
+                }
+            }
+        }
+        final Set<String> result = new LinkedHashSet<String>();
+        for (int doc = 0; doc < found.length; doc++) {
+            if (found[doc]) {
+                result.add(messageIds[doc]);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * @return dictionary indexes of the query terms, <code>null</code> if
+     *         one of them is not in the index.
+     */
+    private List<Integer> lookupTerms(String query) {
+        final List<Integer> indexes = new ArrayList<Integer>();
+        for (String term : tokenize(query)) {
+            final int index = Arrays.binarySearch(terms, term);
+            if (index < 0) {
+                return null;
+            }
+            if (!indexes.contains(index)) {
+                indexes.add(index);
+            }
+        }
+        return indexes;
+    }
+
+    private int[] readDocs(int index) throws IOException {
+        final ByteBuffer bytes = readPostings(index);
+        final int[] docs = new int[counts[index]];
+        int size = 0;
+        int doc = -1;
+        for (int i = 0; i < counts[index]; i++) {
+            final int docDelta = VarInts.read(bytes);
+            VarInts.read(bytes);
+            if (docDelta != 0) {
+                doc += docDelta;
+                docs[size++] = doc;
+            }
+        }
+        return Arrays.copyOf(docs, size);
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        final int[] result = new int[Math.min(a.length, b.length)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private Set<String> toMessageIds(int[] docs) {
+        final Set<String> result = new LinkedHashSet<String>();
+        for (int doc : docs) {
+            result.add(messageIds[doc]);
+        }
+        return result;
+    }
+
+    private ByteBuffer readPostings(int index) throws IOException {
+        return read(channel, postingsStart + offsets[index], lengths[index]);
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Truncated message index");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private List<String> tokenize(String query) {
+        final List<String> result = new ArrayList<String>();
+        new TermTokenizer(maxTermLength).tokenize(query, result::add);
+        return result;
+    }
+
+    private String normalize(String term) {
+        final List<String> tokens = tokenize(term);
+        return tokens.size() == 1 ? tokens.get(0) : term;
+    }
+
+}
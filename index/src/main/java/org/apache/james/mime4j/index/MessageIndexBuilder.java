@@ -0,0 +1,301 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mime4j.index;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.apache.james.mime4j.Charsets;
+import org.apache.james.mime4j.MimeException;
+import org.apache.james.mime4j.codec.DecodeMonitor;
+import org.apache.james.mime4j.codec.DecoderUtil;
+import org.apache.james.mime4j.stream.EntityState;
+import org.apache.james.mime4j.stream.Field;
+import org.apache.james.mime4j.stream.MimeConfig;
+import org.apache.james.mime4j.stream.MimeTokenStream;
+import org.apache.james.mime4j.util.ByteArrayBuffer;
+
+/**
+ * Builds an inverted index of messages, to be written to disk and searched
+ * with {@link MessageIndex}.
+ * <p>
+ * Messages are walked with a {@link MimeTokenStream}. The transfer and
+ * charset decoded content of <code>text/*</code> bodies and the decoded
+ * bodies of the selected header fields are split into terms, and every term
+ * records the message parts it occurs in. Parts are numbered in parsing
+ * order, the top level entity being part <code>0</code>. Postings are kept
+ * delta and variable length encoded while messages are added.
+ * </p>
+ * <p>
+ * The index only knows about terms: a phrase found in the index is present
+ * word by word in the returned messages, which can then be verified with a
+ * <code>MessageMatcher</code>. Instances are not thread safe.
+ * </p>
+ */
+public class MessageIndexBuilder {
+
+    /** Header fields indexed by default. */
+    public static final Set<String> DEFAULT_HEADERS = Collections.unmodifiableSet(
+            new HashSet<String>(Arrays.asList("subject", "from", "to", "cc")));
+
+    static final int MAGIC = 0x4D344958;
+    static final int VERSION = 1;
+
+    private final Set<String> headers;
+    private final MimeConfig config;
+    private final Map<String, TermPostings> postings;
+    private final List<String> messageIds;
+    private int maxTermLength;
+
+    public MessageIndexBuilder() {
+        this(DEFAULT_HEADERS);
+    }
+
+    /**
+     * @param headers
+     *            names of the header fields to index, case insensitive.
+     */
+    public MessageIndexBuilder(Collection<String> headers) {
+        this.headers = new HashSet<String>();
+        for (String header : headers) {
+            this.headers.add(header.toLowerCase(Locale.US));
+        }
+        this.config = MimeConfig.PERMISSIVE;
+        this.postings = new HashMap<String, TermPostings>();
+        this.messageIds = new ArrayList<String>();
+        this.maxTermLength = 64;
+    }
+
+    /**
+     * Sets the maximum length of indexed terms. Longer terms, usually
+     * encoded data or URLs, are skipped. The limit is saved with the index
+     * and applied to queries as well.
+     */
+    public void setMaxTermLength(int maxTermLength) {
+        if (maxTermLength < 1) {
+            throw new IllegalArgumentException("Maximum term length must be positive");
+        }
+        this.maxTermLength = maxTermLength;
+    }
+
+    /**
+     * @return number of messages added so far.
+     */
+    public int getMessageCount() {
+        return messageIds.size();
+    }
+
+    /**
+     * @return number of distinct terms added so far.
+     */
+    public int getTermCount() {
+        return postings.size();
+    }
+
+    /**
+     * Parses and indexes a message. The message is only added once it has
+     * been parsed successfully: when parsing fails, the index is left as it
+     * was.
+     *
+     * @param messageId
+     *            identifier returned by searches matching this message.
+     * @param input
+     *            message content, not closed by this method.
+     */
+    public void addMessage(String messageId, InputStream input) throws IOException, MimeException {
+        if (messageId == null) {
+            throw new IllegalArgumentException("Message id may not be null");
+        }
+        final TermTokenizer tokenizer = new TermTokenizer(maxTermLength);
+        final PendingTerms pending = new PendingTerms();
+        final int[] part = {-1};
+        final Consumer<String> consumer = term -> pending.add(term, part[0]);
+
+        final MimeTokenStream parser = new MimeTokenStream(config);
+        parser.parse(input);
+        for (EntityState state = parser.getState();
+                state != EntityState.T_END_OF_STREAM;
+                state = parser.next()) {
+            switch (state) {
+                case T_START_MESSAGE:
+                case T_START_BODYPART:
+                    part[0]++;
+                    break;
+                case T_FIELD:
+                    final Field field = parser.getField();
+                    if (headers.contains(field.getNameLowerCase())) {
+                        tokenizer.tokenize(DecoderUtil.decodeEncodedWords(field.getBody(), DecodeMonitor.SILENT), consumer);
+                    }
+                    break;
+                case T_BODY:
+                    if ("text".equals(parser.getBodyDescriptor().getMediaType())) {
+                        try (Reader reader = openReader(parser)) {
+                            tokenizer.tokenize(reader, consumer);
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        final int doc = messageIds.size();
+        messageIds.add(messageId);
+        for (int i = 0; i < pending.size; i++) {
+            TermPostings termPostings = postings.get(pending.terms[i]);
+            if (termPostings == null) {
+                termPostings = new TermPostings();
+                postings.put(pending.terms[i], termPostings);
+            }
+            termPostings.add(doc, pending.parts[i]);
+        }
+    }
+
+    private Reader openReader(MimeTokenStream parser) {
+        try {
+            return parser.getReader();
+        } catch (UnsupportedEncodingException e) {
+            return new InputStreamReader(parser.getDecodedInputStream(), Charsets.US_ASCII);
+        }
+    }
+
+    /**
+     * Writes the index to the given file, replacing it if it exists.
+     * The builder can still be used afterwards.
+     */
+    public void write(Path path) throws IOException {
+        try (OutputStream out = Files.newOutputStream(path)) {
+            write(out);
+        }
+    }
+
+    /**
+     * Writes the index to the given stream. The layout is a header (magic
+     * number, version, dictionary length), the dictionary (maximum term
+     * length, message ids, then every term in natural order with its posting count and encoded
+     * length), then the postings of every term in the same order. Within the
+     * dictionary, numbers are written as {@link VarInts} and strings as their
+     * UTF-8 bytes preceded by their length, so that they are not limited in
+     * size.
+     */
+    public void write(OutputStream outputStream) throws IOException {
+        final String[] terms = postings.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+
+        final ByteArrayBuffer dictionary = new ByteArrayBuffer(1024);
+        VarInts.write(dictionary, maxTermLength);
+        VarInts.write(dictionary, messageIds.size());
+        for (String messageId : messageIds) {
+            VarInts.writeString(dictionary, messageId);
+        }
+        VarInts.write(dictionary, terms.length);
+        for (String term : terms) {
+            final TermPostings termPostings = postings.get(term);
+            VarInts.writeString(dictionary, term);
+            VarInts.write(dictionary, termPostings.count);
+            VarInts.write(dictionary, termPostings.bytes.length());
+        }
+
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(dictionary.length());
+        out.write(dictionary.buffer(), 0, dictionary.length());
+        for (String term : terms) {
+            final ByteArrayBuffer bytes = postings.get(term).bytes;
+            out.write(bytes.buffer(), 0, bytes.length());
+        }
+        out.flush();
+    }
+
+    /**
+     * Terms of the message being added, in parsing order, each recorded once
+     * per part.
+     */
+    private static final class PendingTerms {
+
+        private final Map<String, Integer> lastParts = new HashMap<String, Integer>();
+        private String[] terms = new String[64];
+        private int[] parts = new int[64];
+        private int size;
+
+        void add(String term, int part) {
+            final Integer lastPart = lastParts.put(term, part);
+            if (lastPart != null && lastPart == part) {
+                return;
+            }
+            if (size == terms.length) {
+                terms = Arrays.copyOf(terms, size * 2);
+                parts = Arrays.copyOf(parts, size * 2);
+            }
+            terms[size] = term;
+            parts[size] = part;
+            size++;
+        }
+    }
+
+    /**
+     * Postings of one term, sorted by message then part. Each posting is
+     * the message delta followed by the part, itself a delta when the
+     * message did not change.
+     */
+    private static final class TermPostings {
+
+        private final ByteArrayBuffer bytes = new ByteArrayBuffer(16);
+        private int count;
+        private int lastDoc = -1;
+        private int lastPart;
+
+        void add(int doc, int part) {
+            if (doc == lastDoc) {
+                if (part == lastPart) {
+                    return;
+                }
+                VarInts.write(bytes, 0);
+                VarInts.write(bytes, part - lastPart);
+            } else {
+                VarInts.write(bytes, doc - lastDoc);
+                VarInts.write(bytes, part);
+            }
+            lastDoc = doc;
+            lastPart = part;
+            count++;
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mime4j.index;
+
+/**
+ * Occurrence of a term in a message part. Parts are numbered in parsing
+ * order, the top level entity being part <code>0</code>.
+ */
+public final class Posting {
+
+    private final String messageId;
+    private final int part;
+
+    Posting(String messageId, int part) {
+        this.messageId = messageId;
+        this.part = part;
+    }
+
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public int getPart() {
+        return part;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Posting)) {
+            return false;
+        }
+        Posting other = (Posting) obj;
+        return part == other.part && messageId.equals(other.messageId);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * messageId.hashCode() + part;
+    }
+
+    @Override
+    public String toString() {
+        return messageId + "#" + part;
+    }
+
+}
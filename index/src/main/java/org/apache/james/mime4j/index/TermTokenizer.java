@@ -0,0 +1,76 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mime4j.index;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * Splits text into lower cased terms made of letters and digits.
+ */
+final class TermTokenizer {
+
+    private static final int BUFFER_SIZE = 2048;
+
+    private final int maxTermLength;
+    private final StringBuilder term;
+
+    TermTokenizer(int maxTermLength) {
+        this.maxTermLength = maxTermLength;
+        this.term = new StringBuilder();
+    }
+
+    void tokenize(CharSequence text, Consumer<String> consumer) {
+        term.setLength(0);
+        for (int i = 0; i < text.length(); i++) {
+            accept(text.charAt(i), consumer);
+        }
+        flush(consumer);
+    }
+
+    void tokenize(Reader reader, Consumer<String> consumer) throws IOException {
+        term.setLength(0);
+        final char[] buffer = new char[BUFFER_SIZE];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            for (int i = 0; i < read; i++) {
+                accept(buffer[i], consumer);
+            }
+        }
+        flush(consumer);
+    }
+
+    private void accept(char ch, Consumer<String> consumer) {
+        if (Character.isLetterOrDigit(ch) || Character.isSurrogate(ch)) {
+            term.append(ch);
+        } else {
+            flush(consumer);
+        }
+    }
+
+    private void flush(Consumer<String> consumer) {
+        if (term.length() > 0 && term.length() <= maxTermLength) {
+            consumer.accept(term.toString().toLowerCase(Locale.ROOT));
+        }
+        term.setLength(0);
+    }
+
+}
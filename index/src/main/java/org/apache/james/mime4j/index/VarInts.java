@@ -0,0 +1,74 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mime4j.index;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import org.apache.james.mime4j.Charsets;
+import org.apache.james.mime4j.util.ByteArrayBuffer;
+
+/**
+ * Variable length encoding of non negative integers, seven bits per byte,
+ * least significant group first, and of strings as their UTF-8 bytes
+ * preceded by their length.
+ */
+final class VarInts {
+
+    private VarInts() {
+    }
+
+    static void write(ByteArrayBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.append((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.append(value);
+    }
+
+    static int read(ByteBuffer in) {
+        int value = 0;
+        int shift = 0;
+        while (true) {
+            final byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+
+    static void writeString(ByteArrayBuffer out, String value) {
+        final byte[] bytes = value.getBytes(Charsets.UTF_8);
+        write(out, bytes.length);
+        out.append(bytes, 0, bytes.length);
+    }
+
+    static String readString(ByteBuffer in) {
+        final int length = read(in);
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        final String value = new String(in.array(), in.arrayOffset() + in.position(), length, Charsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+}
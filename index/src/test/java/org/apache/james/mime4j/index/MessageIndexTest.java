@@ -0,0 +1,212 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mime4j.index;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.james.mime4j.MimeException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MessageIndexTest {
+
+    private static final String MULTIPART =
+        "From: Alice <alice@example.org>\r\n" +
+        "To: bob@example.org\r\n" +
+        "Subject: =?ISO-8859-1?Q?Caf=E9_meeting?=\r\n" +
+        "Content-Type: multipart/mixed; boundary=\"frontier\"\r\n" +
+        "\r\n" +
+        "--frontier\r\n" +
+        "Content-Type: text/plain; charset=UTF-8\r\n" +
+        "Content-Transfer-Encoding: quoted-printable\r\n" +
+        "\r\n" +
+        "Let's meet at the cr=C3=A8me bakery tomorrow.\r\n" +
+        "--frontier\r\n" +
+        "Content-Type: application/octet-stream\r\n" +
+        "Content-Transfer-Encoding: base64\r\n" +
+        "\r\n" +
+        "aGlkZGVuIHdvcmRz\r\n" +
+        "--frontier\r\n" +
+        "Content-Type: text/html\r\n" +
+        "\r\n" +
+        "<p>Bakery map attached</p>\r\n" +
+        "--frontier--\r\n";
+
+    private static final String SIMPLE =
+        "From: carol@example.org\r\n" +
+        "Subject: Weekly report\r\n" +
+        "X-Ignored: bakery\r\n" +
+        "\r\n" +
+        "Sales went up this week.\r\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void searchShouldFindTermsOfTextParts() throws Exception {
+        try (MessageIndex index = buildIndex()) {
+            assertThat(index.search("bakery")).containsExactly("m1");
+            assertThat(index.search("CRÈME Tomorrow")).containsExactly("m1");
+            assertThat(index.search("sales week")).containsExactly("m2");
+        }
+    }
+
+    @Test
+    public void searchShouldFindDecodedSelectedHeaders() throws Exception {
+        try (MessageIndex index = buildIndex()) {
+            assertThat(index.search("café")).containsExactly("m1");
+            assertThat(index.search("example")).containsExactly("m1", "m2");
+        }
+    }
+
+    @Test
+    public void searchShouldIgnoreNonTextPartsAndOtherHeaders() throws Exception {
+        try (MessageIndex index = buildIndex()) {
+            assertThat(index.search("hidden")).isEmpty();
+            assertThat(index.search("ignored")).isEmpty();
+        }
+    }
+
+    @Test
+    public void searchShouldRequireEveryTerm() throws Exception {
+        try (MessageIndex index = buildIndex()) {
+            assertThat(index.search("bakery sales")).isEmpty();
+            assertThat(index.search("")).isEmpty();
+            assertThat(index.searchAny("bakery sales")).containsExactly("m1", "m2");
+        }
+    }
+
+    @Test
+    public void getPostingsShouldReportParts() throws Exception {
+        try (MessageIndex index = buildIndex()) {
+            assertThat(index.getPostings("Bakery")).containsExactly(new Posting("m1", 1), new Posting("m1", 3));
+            assertThat(index.getPostings("example")).containsExactly(new Posting("m1", 0), new Posting("m2", 0));
+            assertThat(index.getPostings("unknown")).isEmpty();
+        }
+    }
+
+    @Test
+    public void indexShouldHandleManyMessages() throws Exception {
+        MessageIndexBuilder builder = new MessageIndexBuilder();
+        for (int i = 0; i < 1000; i++) {
+            add(builder, "m" + i, "Subject: message " + (i % 7 == 0 ? "seven" : "other") + "\r\n\r\nbody " + i + "\r\n");
+        }
+        File file = folder.newFile("many.idx");
+        builder.write(file.toPath());
+
+        try (MessageIndex index = MessageIndex.open(file.toPath())) {
+            assertThat(index.getMessageCount()).isEqualTo(1000);
+            assertThat(index.search("seven")).hasSize(143);
+            assertThat(index.search("seven 700")).containsExactly("m700");
+            assertThat(index.getPostings("message")).hasSize(1000);
+        }
+    }
+
+    @Test
+    public void failedMessagesShouldNotBeIndexed() throws Exception {
+        MessageIndexBuilder builder = new MessageIndexBuilder();
+        add(builder, "m1", SIMPLE);
+        final byte[] spam = "Subject: poison\r\n\r\nhalf indexed body\r\n".getBytes(StandardCharsets.US_ASCII);
+        try {
+            builder.addMessage("m2", new FilterInputStream(new ByteArrayInputStream(spam)) {
+                private int reads;
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (++reads > 4) {
+                        throw new IOException("broken");
+                    }
+                    return super.read(b, off, Math.min(len, 8));
+                }
+            });
+            fail("IOException expected");
+        } catch (IOException expected) {
+        }
+        assertThat(builder.getMessageCount()).isEqualTo(1);
+        File file = folder.newFile("failed.idx");
+        builder.write(file.toPath());
+
+        try (MessageIndex index = MessageIndex.open(file.toPath())) {
+            assertThat(index.search("poison")).isEmpty();
+            assertThat(index.search("sales")).containsExactly("m1");
+        }
+    }
+
+    @Test
+    public void searchShouldIgnoreTermsLongerThanIndexedOnes() throws Exception {
+        MessageIndexBuilder builder = new MessageIndexBuilder();
+        builder.setMaxTermLength(8);
+        add(builder, "m1", "Subject: short averyveryverylongterm\r\n\r\nbody\r\n");
+        File file = folder.newFile("long.idx");
+        builder.write(file.toPath());
+
+        try (MessageIndex index = MessageIndex.open(file.toPath())) {
+            assertThat(index.search("short averyveryverylongterm")).containsExactly("m1");
+            assertThat(index.searchAny("averyveryverylongterm body")).containsExactly("m1");
+        }
+    }
+
+    @Test
+    public void indexShouldKeepIdsAndTermsLongerThan64KiB() throws Exception {
+        char[] id = new char[40000];
+        Arrays.fill(id, '\u00e9');
+        char[] term = new char[70000];
+        Arrays.fill(term, 'x');
+        MessageIndexBuilder builder = new MessageIndexBuilder();
+        builder.setMaxTermLength(term.length);
+        add(builder, new String(id), "Subject: " + new String(term) + "\r\n\r\nbody\r\n");
+        File file = folder.newFile("huge.idx");
+        builder.write(file.toPath());
+
+        try (MessageIndex index = MessageIndex.open(file.toPath())) {
+            assertThat(index.search(new String(term))).containsExactly(new String(id));
+            assertThat(index.search("body")).containsExactly(new String(id));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void openShouldRejectOtherFiles() throws Exception {
+        File file = folder.newFile("other.idx");
+        java.nio.file.Files.write(file.toPath(), "not an index at all".getBytes(StandardCharsets.US_ASCII));
+        MessageIndex.open(file.toPath());
+    }
+
+    private MessageIndex buildIndex() throws IOException, MimeException {
+        MessageIndexBuilder builder = new MessageIndexBuilder(Arrays.asList("From", "To", "Subject"));
+        add(builder, "m1", MULTIPART);
+        add(builder, "m2", SIMPLE);
+        File file = folder.newFile("index.idx");
+        builder.write(file.toPath());
+        return MessageIndex.open(file.toPath());
+    }
+
+    private static void add(MessageIndexBuilder builder, String id, String message) throws IOException, MimeException {
+        builder.addMessage(id, new ByteArrayInputStream(message.getBytes(StandardCharsets.UTF_8)));
+    }
+
+}
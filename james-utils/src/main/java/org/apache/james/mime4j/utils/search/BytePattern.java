@@ -0,0 +1,98 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mime4j.utils.search;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A search term encoded once into a given charset, matched directly against
+ * bytes using the Knuth-Morris-Pratt algorithm. Scanned bytes can go through
+ * a translation table first, mapping each byte to the byte of its case folded
+ * character, or to <code>-1</code> when no byte of the pattern can match it.
+ * Instances are immutable and can be shared between threads.
+ */
+final class BytePattern {
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private final int[] pattern;
+    private final int[] failure;
+    private final int[] translation;
+
+    /**
+     * @param pattern
+     *            encoded search term, already translated.
+     * @param translation
+     *            table of 256 entries applied to every scanned byte, or
+     *            <code>null</code> to compare bytes as they are.
+     */
+    BytePattern(byte[] pattern, int[] translation) {
+        this.pattern = new int[pattern.length];
+        for (int i = 0; i < pattern.length; i++) {
+            this.pattern[i] = pattern[i] & 0xff;
+        }
+        this.translation = translation;
+        this.failure = computeFailure(this.pattern);
+    }
+
+    /**
+     * Is the pattern found in the given stream? Like its char based
+     * counterpart, an empty pattern only matches non empty content.
+     */
+    boolean isFoundIn(InputStream in) throws IOException {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        int matched = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            if (read > 0 && pattern.length == 0) {
+                return true;
+            }
+            for (int i = 0; i < read; i++) {
+                final int next = translation != null ? translation[buffer[i] & 0xff] : buffer[i] & 0xff;
+                while (matched > 0 && pattern[matched] != next) {
+                    matched = failure[matched - 1];
+                }
+                if (pattern[matched] == next) {
+                    matched++;
+                    if (matched == pattern.length) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static int[] computeFailure(int[] pattern) {
+        final int[] failure = new int[pattern.length];
+        int j = 0;
+        for (int i = 1; i < pattern.length; i++) {
+            while (j > 0 && pattern[i] != pattern[j]) {
+                j = failure[j - 1];
+            }
+            if (pattern[i] == pattern[j]) {
+                j++;
+            }
+            failure[i] = j;
+        }
+        return failure;
+    }
+
+}
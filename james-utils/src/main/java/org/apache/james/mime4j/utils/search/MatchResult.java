@@ -0,0 +1,79 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mime4j.utils.search;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of searching one {@link MessageSource} with
+ * {@link ParallelMessageMatcher}.
+ */
+public final class MatchResult {
+
+    private final MessageSource source;
+    private final boolean matches;
+    private final Exception failure;
+    private final long elapsedNanos;
+
+    MatchResult(MessageSource source, boolean matches, Exception failure, long elapsedNanos) {
+        this.source = source;
+        this.matches = matches;
+        this.failure = failure;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public MessageSource getSource() {
+        return source;
+    }
+
+    public String getId() {
+        return source.getId();
+    }
+
+    /**
+     * @return <code>true</code> if the message matches the search.
+     *         Always <code>false</code> when the search failed.
+     */
+    public boolean matches() {
+        return matches;
+    }
+
+    /**
+     * @return the exception raised while opening or searching the message,
+     *         <code>null</code> if the search completed.
+     */
+    public Exception getFailure() {
+        return failure;
+    }
+
+    /**
+     * @return time spent opening and searching the message.
+     */
+    public long getElapsed(TimeUnit unit) {
+        return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return "MatchResult[" + source.getId()
+            + (failure != null ? ", failed: " + failure : ", matches: " + matches)
+            + ", " + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + "ms]";
+    }
+
+}
@@ -19,10 +19,12 @@
 package org.apache.james.mime4j.utils.search;
 
 import com.google.common.collect.ImmutableList;
+import org.apache.james.mime4j.Charsets;
 import org.apache.james.mime4j.MimeException;
 import org.apache.james.mime4j.stream.EntityState;
 import org.apache.james.mime4j.stream.MimeConfig;
 import org.apache.james.mime4j.stream.MimeTokenStream;
+import org.apache.james.mime4j.util.CharsetUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,16 +33,41 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
+import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
 import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.UnsupportedCharsetException;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Searches an email for content.
+ * <p>
+ * When the charset of a part allows it, search contents are encoded once per
+ * charset and looked up directly in the transfer decoded bytes, without
+ * decoding them to chars. This applies to single byte charsets and to UTF-8,
+ * which is self synchronizing. In UTF-8, case insensitive searches only fold
+ * ASCII letters, so search contents that are not ASCII, or that contain a
+ * letter which is also the upper case of a non ASCII char (such as I for
+ * U+0131 or S for U+017F), fall back to char decoding.
+ * Multi-byte and stateful charsets are always decoded to chars.
+ * </p>
+ * <p>
+ * Instances are thread safe and can be shared, see {@link ParallelMessageMatcher}.
+ * </p>
  */
 public class MessageMatcher {
 
+    /**
+     * ASCII chars that are also the upper case of some non ASCII char, which
+     * folding UTF-8 bytes cannot match.
+     */
+    private static final boolean[] NON_ASCII_UPPER_CASES = nonAsciiUpperCases();
+
     public static class MessageMatcherBuilder {
 
         private List<CharSequence> searchContents;
@@ -105,6 +132,7 @@ public class MessageMatcher {
     private final boolean isCaseInsensitive;
     private final boolean includeHeaders;
     private final boolean ignoringMime;
+    private final ConcurrentMap<Charset, BytePattern[]> bytePatterns;
 
     private MessageMatcher(List<CharSequence> searchContents, boolean isCaseInsensitive, boolean includeHeaders,
                            boolean ignoringMime, List<String> contentTypes, Logger logger) {
@@ -114,6 +142,7 @@ public class MessageMatcher {
         this.includeHeaders = includeHeaders;
         this.ignoringMime = ignoringMime;
         this.logger = logger;
+        this.bytePatterns = new ConcurrentHashMap<>();
     }
 
     /**
@@ -127,15 +156,16 @@ public class MessageMatcher {
      * @throws MimeException
      */
     public boolean messageMatches(final InputStream input) throws IOException, MimeException {
-        for (CharSequence charSequence : searchContents) {
+        for (int index = 0; index < searchContents.size(); index++) {
+            final CharSequence charSequence = searchContents.get(index);
             if (charSequence != null) {
                 final CharBuffer buffer = createBuffer(charSequence);
                 if (ignoringMime) {
-                    if (! isFoundIn(new InputStreamReader(input), buffer)) {
+                    if (! isFoundIn(input, Charset.defaultCharset(), index, buffer)) {
                         return false;
                     }
                 } else {
-                    if (!matchBufferInMailBeingMimeAware(input, buffer)) {
+                    if (!matchBufferInMailBeingMimeAware(input, index, buffer)) {
                         return false;
                     }
                 }
@@ -144,7 +174,7 @@ public class MessageMatcher {
         return true;
     }
 
-    private boolean matchBufferInMailBeingMimeAware(final InputStream input, final CharBuffer buffer) throws IOException, MimeException {
+    private boolean matchBufferInMailBeingMimeAware(final InputStream input, final int index, final CharBuffer buffer) throws IOException, MimeException {
         try {
             MimeConfig config = MimeConfig.custom().setMaxLineLen(-1).setMaxHeaderLen(-1).build();
 
@@ -157,7 +187,7 @@ public class MessageMatcher {
                     case T_EPILOGUE:
                     case T_BODY:
                         if (contentTypes.isEmpty() || contentTypes.contains(parser.getBodyDescriptor().getMimeType())) {
-                            if (checkBody(buffer, parser)) {
+                            if (checkBody(index, buffer, parser)) {
                                 return true;
                             }
                         }
@@ -198,12 +228,136 @@ public class MessageMatcher {
         return isFoundIn(reader, buffer);
     }
 
-    private boolean checkBody(final CharBuffer buffer, MimeTokenStream parser) throws IOException {
+    private boolean checkBody(final int index, final CharBuffer buffer, MimeTokenStream parser) throws IOException {
+        final Charset charset = lookupCharset(parser.getBodyDescriptor().getCharset());
+        if (charset != null) {
+            try (InputStream input = parser.getDecodedInputStream()) {
+                return isFoundIn(input, charset, index, buffer);
+            }
+        }
         try (Reader reader = parser.getReader()) {
             return isFoundIn(reader, buffer);
         }
     }
 
+    private boolean isFoundIn(final InputStream input, final Charset charset, final int index, final CharBuffer buffer) throws IOException {
+        final BytePattern pattern = bytePatterns.computeIfAbsent(charset, this::createBytePatterns)[index];
+        if (pattern != null) {
+            return pattern.isFoundIn(input);
+        }
+        return isFoundIn(new InputStreamReader(input, charset), buffer);
+    }
+
+    private Charset lookupCharset(String mimeCharset) {
+        if (mimeCharset == null || "".equals(mimeCharset)) {
+            return Charsets.US_ASCII;
+        }
+        return CharsetUtil.lookup(mimeCharset);
+    }
+
+    private BytePattern[] createBytePatterns(Charset charset) {
+        final BytePattern[] patterns = new BytePattern[searchContents.size()];
+        final int[] translation;
+        if (Charsets.UTF_8.equals(charset)) {
+            translation = isCaseInsensitive ? asciiUpperCaseTable() : null;
+        } else if (isSingleByte(charset)) {
+            translation = singleByteTable(charset);
+        } else {
+            return patterns;
+        }
+        for (int i = 0; i < patterns.length; i++) {
+            final CharSequence searchContent = searchContents.get(i);
+            if (searchContent != null) {
+                patterns[i] = createBytePattern(createBuffer(searchContent), charset, translation);
+            }
+        }
+        return patterns;
+    }
+
+    private BytePattern createBytePattern(final CharBuffer term, Charset charset, int[] translation) {
+        if (Charsets.UTF_8.equals(charset) && isCaseInsensitive && !isFoldableInUtf8(term)) {
+            return null;
+        }
+        final CharsetEncoder encoder = charset.newEncoder();
+        if (!encoder.canEncode(term)) {
+            return null;
+        }
+        final byte[] encoded;
+        try {
+            final ByteBuffer bytes = encoder.encode(term.duplicate());
+            encoded = new byte[bytes.remaining()];
+            bytes.get(encoded);
+        } catch (CharacterCodingException e) {
+            return null;
+        }
+        // Several chars may share a byte in some single byte charsets
+        if (!charset.decode(ByteBuffer.wrap(encoded)).equals(term)) {
+            return null;
+        }
+        return new BytePattern(encoded, translation);
+    }
+
+    private static boolean isSingleByte(Charset charset) {
+        return charset.canEncode()
+            && charset.newEncoder().maxBytesPerChar() == 1.0f
+            && charset.newDecoder().maxCharsPerByte() == 1.0f;
+    }
+
+    private static boolean isFoldableInUtf8(final CharBuffer term) {
+        for (int i = term.position(); i < term.limit(); i++) {
+            final char c = term.get(i);
+            if (c >= NON_ASCII_UPPER_CASES.length || NON_ASCII_UPPER_CASES[c]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean[] nonAsciiUpperCases() {
+        final boolean[] upperCases = new boolean[0x80];
+        for (int c = 0x80; c <= Character.MAX_VALUE; c++) {
+            final char upperCase = Character.toUpperCase((char) c);
+            if (upperCase < upperCases.length) {
+                upperCases[upperCase] = true;
+            }
+        }
+        return upperCases;
+    }
+
+    private static int[] asciiUpperCaseTable() {
+        final int[] table = new int[256];
+        for (int b = 0; b < table.length; b++) {
+            table[b] = (b >= 'a' && b <= 'z') ? b - ('a' - 'A') : b;
+        }
+        return table;
+    }
+
+    /**
+     * Maps every byte to the byte of the char it decodes to, upper cased when
+     * searching case insensitively, or to <code>-1</code> when that char has
+     * no byte of its own in the charset.
+     */
+    private int[] singleByteTable(Charset charset) {
+        final CharsetEncoder encoder = charset.newEncoder();
+        final int[] table = new int[256];
+        for (int b = 0; b < table.length; b++) {
+            final char decoded = charset.decode(ByteBuffer.wrap(new byte[] {(byte) b})).get();
+            final char target = computeNextChar(isCaseInsensitive, decoded);
+            table[b] = -1;
+            if (encoder.canEncode(target)) {
+                try {
+                    final byte encoded = encoder.encode(CharBuffer.wrap(new char[] {target})).get();
+                    if (charset.decode(ByteBuffer.wrap(new byte[] {encoded})).get() == target) {
+                        table[b] = encoded & 0xff;
+                    }
+                } catch (CharacterCodingException e) {
+                    // not reachable by the pattern
+                }
+            }
+        }
+        return table;
+    }
+
     private CharBuffer createBuffer(final CharSequence searchContent) {
         final CharBuffer buffer;
         if (isCaseInsensitive) {
@@ -226,16 +380,53 @@ public class MessageMatcher {
         logger.debug("Failed to read body.", e);
     }
 
+    /**
+     * Is the content of the buffer found in the given reader? Uses the same
+     * Knuth-Morris-Pratt matching as {@link BytePattern}, so that results do
+     * not depend on whether a body can be searched on bytes.
+     */
     public boolean isFoundIn(final Reader reader, final CharBuffer buffer) throws IOException {
+        final CharBuffer pattern = buffer.slice();
+        final int length = pattern.remaining();
+        final int[] failure = computeFailure(pattern);
+        final char[] chunk = new char[1024];
+        int matched = 0;
         int read;
-        while ((read = reader.read()) != -1) {
-            if (matches(buffer, computeNextChar(isCaseInsensitive, (char) read))) {
+        while ((read = reader.read(chunk)) != -1) {
+            if (read > 0 && length == 0) {
                 return true;
             }
+            for (int i = 0; i < read; i++) {
+                final char next = computeNextChar(isCaseInsensitive, chunk[i]);
+                while (matched > 0 && pattern.get(matched) != next) {
+                    matched = failure[matched - 1];
+                }
+                if (pattern.get(matched) == next) {
+                    matched++;
+                    if (matched == length) {
+                        return true;
+                    }
+                }
+            }
         }
         return false;
     }
 
+    private static int[] computeFailure(final CharBuffer pattern) {
+        final int[] failure = new int[pattern.remaining()];
+        int j = 0;
+        for (int i = 1; i < failure.length; i++) {
+            while (j > 0 && pattern.get(i) != pattern.get(j)) {
+                j = failure[j - 1];
+            }
+            if (pattern.get(i) == pattern.get(j)) {
+                j++;
+            }
+            failure[i] = j;
+        }
+        return failure;
+    }
+
     private char computeNextChar(boolean isCaseInsensitive, char read) {
         if (isCaseInsensitive) {
             return Character.toUpperCase(read);
@@ -244,20 +435,4 @@ public class MessageMatcher {
         }
     }
 
-    private boolean matches(final CharBuffer buffer, final char next) {
-        if (buffer.hasRemaining()) {
-            final boolean partialMatch = (buffer.position() > 0);
-            final char matching = buffer.get();
-            if (next != matching) {
-                buffer.rewind();
-                if (partialMatch) {
-                    return matches(buffer, next);
-                }
-            }
-        } else {
-            return true;
-        }
-        return false;
-    }
-
 }
@@ -0,0 +1,108 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mime4j.utils.search;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.james.mime4j.io.InputStreams;
+
+/**
+ * A message to be searched by {@link ParallelMessageMatcher}. The content is
+ * only opened once the message is scheduled, so large collections of
+ * sources do not hold any resource until then.
+ */
+public abstract class MessageSource {
+
+    private final String id;
+
+    protected MessageSource(String id) {
+        if (id == null) {
+            throw new IllegalArgumentException("Message source id may not be null");
+        }
+        this.id = id;
+    }
+
+    /**
+     * @return identifier of the message, reported in the {@link MatchResult}.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Opens a new stream over the message content. The caller is responsible
+     * for closing it.
+     */
+    public abstract InputStream openStream() throws IOException;
+
+    @Override
+    public String toString() {
+        return id;
+    }
+
+    public static MessageSource of(String id, final Path path) {
+        if (path == null) {
+            throw new IllegalArgumentException("Path may not be null");
+        }
+        return new MessageSource(id) {
+            @Override
+            public InputStream openStream() throws IOException {
+                return Files.newInputStream(path);
+            }
+        };
+    }
+
+    public static MessageSource of(Path path) {
+        return of(path.toString(), path);
+    }
+
+    public static MessageSource of(String id, final byte[] bytes) {
+        if (bytes == null) {
+            throw new IllegalArgumentException("Byte array may not be null");
+        }
+        return new MessageSource(id) {
+            @Override
+            public InputStream openStream() {
+                return InputStreams.create(bytes);
+            }
+        };
+    }
+
+    /**
+     * The buffer is not consumed: every stream reads the content between its
+     * position and its limit at the time of the call.
+     */
+    public static MessageSource of(String id, final ByteBuffer buffer) {
+        if (buffer == null) {
+            throw new IllegalArgumentException("Byte buffer may not be null");
+        }
+        final ByteBuffer content = buffer.duplicate();
+        return new MessageSource(id) {
+            @Override
+            public InputStream openStream() {
+                return InputStreams.create(content.duplicate());
+            }
+        };
+    }
+
+}
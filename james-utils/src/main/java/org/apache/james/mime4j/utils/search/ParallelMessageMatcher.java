@@ -0,0 +1,320 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mime4j.utils.search;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Evaluates a {@link MessageMatcher} over many messages concurrently.
+ * <p>
+ * A {@link MessageMatcher} holds no per-message state, so a single instance
+ * is shared by all the searches. Messages are pulled lazily from the given
+ * sources, at most <code>parallelism</code> of them being searched at a time,
+ * and results are handed to the consumer as soon as each message is done.
+ * The consumer is never called concurrently.
+ * </p>
+ * <p>
+ * Searches run on a {@link ForkJoinPool#commonPool()} by default. Any
+ * {@link Executor} can be supplied instead, for instance one starting a
+ * virtual thread per task.
+ * </p>
+ */
+public class ParallelMessageMatcher {
+
+    public static class ParallelMessageMatcherBuilder {
+
+        private MessageMatcher messageMatcher;
+        private Executor executor;
+        private int parallelism;
+        private int maxResults;
+
+        public ParallelMessageMatcherBuilder() {
+            this.executor = ForkJoinPool.commonPool();
+            this.parallelism = Runtime.getRuntime().availableProcessors();
+            this.maxResults = -1;
+        }
+
+        public ParallelMessageMatcherBuilder messageMatcher(MessageMatcher messageMatcher) {
+            this.messageMatcher = messageMatcher;
+            return this;
+        }
+
+        public ParallelMessageMatcherBuilder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of messages searched at the same time.
+         */
+        public ParallelMessageMatcherBuilder parallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Sets the number of matching messages after which a search stops.
+         * A negative value means no limit, zero completes a search without
+         * reading any message.
+         */
+        public ParallelMessageMatcherBuilder maxResults(int maxResults) {
+            this.maxResults = maxResults;
+            return this;
+        }
+
+        public ParallelMessageMatcher build() {
+            if (messageMatcher == null) {
+                throw new IllegalArgumentException("Message matcher may not be null");
+            }
+            if (executor == null) {
+                throw new IllegalArgumentException("Executor may not be null");
+            }
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("Parallelism must be positive");
+            }
+            return new ParallelMessageMatcher(messageMatcher, executor, parallelism, maxResults);
+        }
+
+    }
+
+    public static ParallelMessageMatcherBuilder builder() {
+        return new ParallelMessageMatcherBuilder();
+    }
+
+    private final MessageMatcher messageMatcher;
+    private final Executor executor;
+    private final int parallelism;
+    private final int maxResults;
+
+    private ParallelMessageMatcher(MessageMatcher messageMatcher, Executor executor, int parallelism, int maxResults) {
+        this.messageMatcher = messageMatcher;
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.maxResults = maxResults;
+    }
+
+    /**
+     * Starts searching the given messages.
+     *
+     * @param sources
+     *            messages to search, iterated lazily from the executor threads.
+     * @param consumer
+     *            receives one {@link MatchResult} per searched message.
+     * @return a handle to cancel or wait for the search.
+     */
+    public Search search(Iterable<? extends MessageSource> sources, Consumer<? super MatchResult> consumer) {
+        return search(sources.iterator(), consumer);
+    }
+
+    /**
+     * @see #search(Iterable, Consumer)
+     */
+    public Search search(Stream<? extends MessageSource> sources, Consumer<? super MatchResult> consumer) {
+        return search(sources.iterator(), consumer);
+    }
+
+    private Search search(Iterator<? extends MessageSource> sources, Consumer<? super MatchResult> consumer) {
+        if (consumer == null) {
+            throw new IllegalArgumentException("Consumer may not be null");
+        }
+        Search search = new Search(sources, consumer);
+        for (int i = 0; i < parallelism && !search.completion.isDone(); i++) {
+            search.scheduleNext();
+        }
+        return search;
+    }
+
+    /**
+     * A running search. It completes once every message has been searched,
+     * the maximum number of results has been reached, or it is cancelled.
+     * No result is delivered after that point.
+     */
+    public class Search {
+
+        private final Iterator<? extends MessageSource> sources;
+        private final Consumer<? super MatchResult> consumer;
+        private final CompletableFuture<Void> completion;
+        private final ThreadLocal<int[]> pendingSchedules = new ThreadLocal<>();
+        private volatile boolean stopped;
+        private int inFlight;
+        private int matches;
+
+        private Search(Iterator<? extends MessageSource> sources, Consumer<? super MatchResult> consumer) {
+            this.sources = sources;
+            this.consumer = consumer;
+            this.completion = new CompletableFuture<>();
+            this.stopped = maxResults == 0;
+        }
+
+        /**
+         * Stops scheduling messages and aborts the ones being searched.
+         */
+        public void cancel() {
+            synchronized (this) {
+                stopped = true;
+                if (inFlight == 0) {
+                    completion.complete(null);
+                }
+            }
+        }
+
+        public boolean isDone() {
+            return completion.isDone();
+        }
+
+        /**
+         * @return the number of matching messages delivered so far.
+         */
+        public synchronized int getMatchCount() {
+            return matches;
+        }
+
+        /**
+         * @return a future completed when the search is over, exceptionally
+         *         if the sources or the consumer failed.
+         */
+        public CompletableFuture<Void> completion() {
+            return completion;
+        }
+
+        /**
+         * Schedules the next message. When the executor runs tasks inline,
+         * scheduling from within a task only records the request, which the
+         * outermost call then serves in a loop rather than recursing once per
+         * message.
+         */
+        private void scheduleNext() {
+            int[] pending = pendingSchedules.get();
+            if (pending != null) {
+                pending[0]++;
+                return;
+            }
+            pending = new int[] {1};
+            pendingSchedules.set(pending);
+            try {
+                while (pending[0] > 0) {
+                    pending[0]--;
+                    scheduleOne();
+                }
+            } finally {
+                pendingSchedules.remove();
+            }
+        }
+
+        private void scheduleOne() {
+            final MessageSource source;
+            synchronized (this) {
+                try {
+                    if (stopped || !sources.hasNext()) {
+                        if (inFlight == 0) {
+                            completion.complete(null);
+                        }
+                        return;
+                    }
+                    source = sources.next();
+                } catch (RuntimeException e) {
+                    fail(e);
+                    return;
+                }
+                inFlight++;
+            }
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        deliver(evaluate(source));
+                        scheduleNext();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    inFlight--;
+                    fail(e);
+                }
+            }
+        }
+
+        private MatchResult evaluate(MessageSource source) {
+            final long start = System.nanoTime();
+            try (InputStream input = new CancellableInputStream(source.openStream())) {
+                boolean matches = messageMatcher.messageMatches(input);
+                return new MatchResult(source, matches, null, System.nanoTime() - start);
+            } catch (Exception e) {
+                return new MatchResult(source, false, e, System.nanoTime() - start);
+            }
+        }
+
+        private synchronized void deliver(MatchResult result) {
+            inFlight--;
+            if (stopped) {
+                return;
+            }
+            try {
+                consumer.accept(result);
+            } catch (RuntimeException e) {
+                fail(e);
+                return;
+            }
+            if (result.matches() && ++matches == maxResults) {
+                stopped = true;
+            }
+        }
+
+        private synchronized void fail(Exception e) {
+            stopped = true;
+            completion.completeExceptionally(e);
+        }
+
+        private class CancellableInputStream extends FilterInputStream {
+
+            CancellableInputStream(InputStream in) {
+                super(in);
+            }
+
+            @Override
+            public int read() throws IOException {
+                checkNotStopped();
+                return super.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                checkNotStopped();
+                return super.read(b, off, len);
+            }
+
+            private void checkNotStopped() throws InterruptedIOException {
+                if (stopped) {
+                    throw new InterruptedIOException("Search cancelled");
+                }
+            }
+        }
+    }
+
+}
@@ -19,7 +19,13 @@
 package org.apache.james.mime4j.utils.search;
 
 import com.google.common.collect.Lists;
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import org.junit.Test;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -160,6 +166,92 @@ public class MessageMatcherTest {
         assertThat(messageMatcher.messageMatches(getResourceStream("sampleMail.msg"))).isFalse();
     }
 
+    @Test
+    public void isFoundInShouldMatchUtf8Base64Bodies() throws Exception {
+        MessageMatcher messageMatcher = MessageMatcher.builder()
+            .searchContents(Lists.<CharSequence>newArrayList("caf\u00e9 cr\u00e8me"))
+            .build();
+        assertThat(messageMatcher.messageMatches(base64Message("une caf\u00e9 cr\u00e8me", StandardCharsets.UTF_8))).isTrue();
+    }
+
+    @Test
+    public void isFoundInShouldFoldAsciiLettersOfUtf8Bodies() throws Exception {
+        MessageMatcher messageMatcher = MessageMatcher.builder()
+            .searchContents(Lists.<CharSequence>newArrayList("CAF\u00e9"))
+            .caseInsensitive(true)
+            .build();
+        assertThat(messageMatcher.messageMatches(base64Message("une caf\u00e9 cr\u00e8me", StandardCharsets.UTF_8))).isTrue();
+    }
+
+    @Test
+    public void isFoundInShouldFoldNonAsciiLettersOfUtf8BodiesLikeChars() throws Exception {
+        MessageMatcher messageMatcher = MessageMatcher.builder()
+            .searchContents(Lists.<CharSequence>newArrayList("is"))
+            .caseInsensitive(true)
+            .build();
+        assertThat(messageMatcher.messageMatches(base64Message("\u0131\u017f", StandardCharsets.UTF_8))).isTrue();
+    }
+
+    @Test
+    public void isFoundInShouldFoldLettersOfSingleByteBodies() throws Exception {
+        MessageMatcher messageMatcher = MessageMatcher.builder()
+            .searchContents(Lists.<CharSequence>newArrayList("CAF\u00c9 CR\u00c8ME"))
+            .caseInsensitive(true)
+            .build();
+        assertThat(messageMatcher.messageMatches(base64Message("une caf\u00e9 cr\u00e8me", StandardCharsets.ISO_8859_1))).isTrue();
+    }
+
+    @Test
+    public void isFoundInShouldNotMatchOtherCharsOfSingleByteBodies() throws Exception {
+        MessageMatcher messageMatcher = MessageMatcher.builder()
+            .searchContents(Lists.<CharSequence>newArrayList("caf\u00e9"))
+            .build();
+        assertThat(messageMatcher.messageMatches(base64Message("une caf\u00c9 cr\u00e8me", StandardCharsets.ISO_8859_1))).isFalse();
+    }
+
+    @Test
+    public void isFoundInShouldMatchMultiByteCharsetBodies() throws Exception {
+        MessageMatcher messageMatcher = MessageMatcher.builder()
+            .searchContents(Lists.<CharSequence>newArrayList("\u65e5\u672c\u8a9e"))
+            .build();
+        assertThat(messageMatcher.messageMatches(base64Message("\u3053\u308c\u306f\u65e5\u672c\u8a9e\u3067\u3059", Charset.forName("ISO-2022-JP")))).isTrue();
+    }
+
+    @Test
+    public void isFoundInShouldMatchAfterPartialRepeatedPrefix() throws Exception {
+        MessageMatcher messageMatcher = MessageMatcher.builder()
+            .searchContents(Lists.<CharSequence>newArrayList("aab"))
+            .build();
+        assertThat(messageMatcher.messageMatches(base64Message("xaaab", StandardCharsets.UTF_8))).isTrue();
+    }
+
+    @Test
+    public void isFoundInShouldMatchAfterPartialRepeatedPrefixInMultiByteCharsetBodies() throws Exception {
+        MessageMatcher messageMatcher = MessageMatcher.builder()
+            .searchContents(Lists.<CharSequence>newArrayList("\u65e5\u65e5\u672c"))
+            .build();
+        assertThat(messageMatcher.messageMatches(base64Message("x\u65e5\u65e5\u65e5\u672c", Charset.forName("ISO-2022-JP")))).isTrue();
+    }
+
+    @Test
+    public void isFoundInShouldMatchAfterPartialRepeatedPrefixInReaders() throws Exception {
+        MessageMatcher messageMatcher = MessageMatcher.builder()
+            .searchContents(Lists.<CharSequence>newArrayList("aab"))
+            .build();
+        assertThat(messageMatcher.isFoundIn(new StringReader("xaaab"), CharBuffer.wrap("aab"))).isTrue();
+        assertThat(messageMatcher.isFoundIn(new StringReader("xaabab"), CharBuffer.wrap("abab"))).isTrue();
+        assertThat(messageMatcher.isFoundIn(new StringReader("xaaba"), CharBuffer.wrap("aab"))).isTrue();
+        assertThat(messageMatcher.isFoundIn(new StringReader("xabab"), CharBuffer.wrap("aab"))).isFalse();
+    }
+
+    private InputStream base64Message(String body, Charset charset) {
+        String message = "Content-Type: text/plain; charset=" + charset.name() + "\r\n"
+            + "Content-Transfer-Encoding: base64\r\n"
+            + "\r\n"
+            + Base64.getMimeEncoder().encodeToString(body.getBytes(charset)) + "\r\n";
+        return new ByteArrayInputStream(message.getBytes(StandardCharsets.US_ASCII));
+    }
+
     private InputStream getResourceStream(String resourceName) {
         return ClassLoader.getSystemClassLoader().getResourceAsStream(resourceName);
     }
@@ -0,0 +1,197 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mime4j.utils.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class ParallelMessageMatcherTest {
+
+    private ExecutorService executor;
+    private MessageMatcher messageMatcher;
+    private byte[] sampleMail;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(4);
+        messageMatcher = MessageMatcher.builder()
+            .searchContents(Lists.<CharSequence>newArrayList("as attachment !"))
+            .caseInsensitive(true)
+            .build();
+        try (InputStream input = ClassLoader.getSystemClassLoader().getResourceAsStream("sampleMail.msg")) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            sampleMail = out.toByteArray();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void searchShouldReportEveryMessage() throws Exception {
+        List<MessageSource> sources = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            sources.add(i % 2 == 0
+                ? MessageSource.of("match-" + i, sampleMail)
+                : MessageSource.of("other-" + i, "Subject: test\r\n\r\nnothing here\r\n".getBytes(StandardCharsets.US_ASCII)));
+        }
+        List<MatchResult> results = Collections.synchronizedList(new ArrayList<MatchResult>());
+
+        ParallelMessageMatcher.Search search = ParallelMessageMatcher.builder()
+            .messageMatcher(messageMatcher)
+            .executor(executor)
+            .parallelism(3)
+            .build()
+            .search(sources, results::add);
+        search.completion().get(10, TimeUnit.SECONDS);
+
+        assertThat(results).hasSize(20);
+        for (MatchResult result : results) {
+            assertThat(result.getFailure()).isNull();
+            assertThat(result.matches()).isEqualTo(result.getId().startsWith("match-"));
+            assertThat(result.getElapsed(TimeUnit.NANOSECONDS)).isGreaterThan(0);
+        }
+        assertThat(search.getMatchCount()).isEqualTo(10);
+    }
+
+    @Test
+    public void searchShouldStopAfterMaxResults() throws Exception {
+        List<MatchResult> results = Collections.synchronizedList(new ArrayList<MatchResult>());
+
+        ParallelMessageMatcher.Search search = ParallelMessageMatcher.builder()
+            .messageMatcher(messageMatcher)
+            .executor(executor)
+            .maxResults(5)
+            .build()
+            .search(IntStream.range(0, 1000).mapToObj(i -> MessageSource.of("m" + i, ByteBuffer.wrap(sampleMail))),
+                results::add);
+        search.completion().get(10, TimeUnit.SECONDS);
+
+        assertThat(results).hasSize(5);
+        assertThat(search.getMatchCount()).isEqualTo(5);
+    }
+
+    @Test
+    public void cancelShouldStopDelivery() throws Exception {
+        List<MatchResult> results = Collections.synchronizedList(new ArrayList<MatchResult>());
+        final ParallelMessageMatcher.Search[] search = new ParallelMessageMatcher.Search[1];
+
+        search[0] = ParallelMessageMatcher.builder()
+            .messageMatcher(messageMatcher)
+            .executor(executor)
+            .parallelism(1)
+            .build()
+            .search(IntStream.range(0, 1000).mapToObj(i -> MessageSource.of("m" + i, sampleMail)),
+                result -> {
+                    results.add(result);
+                    search[0].cancel();
+                });
+        search[0].completion().get(10, TimeUnit.SECONDS);
+
+        assertThat(search[0].isDone()).isTrue();
+        assertThat(results).hasSize(1);
+    }
+
+    @Test
+    public void searchShouldReportFailures() throws Exception {
+        List<MatchResult> results = Collections.synchronizedList(new ArrayList<MatchResult>());
+
+        ParallelMessageMatcher.builder()
+            .messageMatcher(messageMatcher)
+            .executor(executor)
+            .build()
+            .search(Lists.newArrayList(MessageSource.of(Paths.get("does-not-exist.msg"))), results::add)
+            .completion().get(10, TimeUnit.SECONDS);
+
+        assertThat(results).hasSize(1);
+        assertThat(results.get(0).matches()).isFalse();
+        assertThat(results.get(0).getFailure()).isNotNull();
+    }
+
+    @Test
+    public void searchShouldCompleteOnEmptySources() throws Exception {
+        ParallelMessageMatcher.Search search = ParallelMessageMatcher.builder()
+            .messageMatcher(messageMatcher)
+            .build()
+            .search(Collections.<MessageSource>emptyList(), result -> { });
+
+        assertThat(search.isDone()).isTrue();
+    }
+
+    @Test
+    public void searchShouldNotRecurseWithInlineExecutor() throws Exception {
+        byte[] message = "Subject: test\r\n\r\nnothing here\r\n".getBytes(StandardCharsets.US_ASCII);
+        AtomicInteger results = new AtomicInteger();
+
+        ParallelMessageMatcher.Search search = ParallelMessageMatcher.builder()
+            .messageMatcher(messageMatcher)
+            .executor(Runnable::run)
+            .parallelism(2)
+            .build()
+            .search(IntStream.range(0, 50000).mapToObj(i -> MessageSource.of("m" + i, message)),
+                result -> results.incrementAndGet());
+
+        assertThat(search.isDone()).isTrue();
+        search.completion().get();
+        assertThat(results.get()).isEqualTo(50000);
+    }
+
+    @Test
+    public void zeroMaxResultsShouldNotSearchAnything() throws Exception {
+        List<MatchResult> results = Collections.synchronizedList(new ArrayList<MatchResult>());
+
+        ParallelMessageMatcher.Search search = ParallelMessageMatcher.builder()
+            .messageMatcher(messageMatcher)
+            .executor(executor)
+            .maxResults(0)
+            .build()
+            .search(IntStream.range(0, 10).mapToObj(i -> MessageSource.of("m" + i, sampleMail)), results::add);
+
+        assertThat(search.isDone()).isTrue();
+        assertThat(results).isEmpty();
+        assertThat(search.getMatchCount()).isEqualTo(0);
+    }
+
+}
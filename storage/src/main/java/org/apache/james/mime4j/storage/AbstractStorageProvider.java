@@ -43,7 +43,8 @@ public abstract class AbstractStorageProvider implements StorageProvider {
      * {@link StorageProvider#createStorageOutputStream() createStorageOutputStream()}
      * and copies the content of the given input stream to that output stream.
      * It then calls {@link StorageOutputStream#toStorage()} on the output
-     * stream and returns this object.
+     * stream and returns this object. If the copy fails, the output stream is
+     * closed without being turned into a storage.
      *
      * @param in
      *            stream containing the data to store.
@@ -53,8 +54,36 @@ public abstract class AbstractStorageProvider implements StorageProvider {
      *             if an I/O error occurs.
      */
     public final Storage store(InputStream in) throws IOException {
-        StorageOutputStream out = createStorageOutputStream();
-        ContentUtil.copy(in, out);
+        return store(in, createStorageOutputStream());
+    }
+
+    /**
+     * This implementation is equivalent to {@link #store(InputStream)}, with
+     * an output stream obtained from
+     * {@link StorageProvider#createStorageOutputStream(long) createStorageOutputStream(expectedSize)}.
+     *
+     * @param in
+     *            stream containing the data to store.
+     * @param expectedSize
+     *            expected number of bytes, or <code>-1</code> if unknown.
+     * @return a {@link Storage} instance that can be used to retrieve the
+     *         stored content.
+     * @throws IOException
+     *             if an I/O error occurs.
+     */
+    public final Storage store(InputStream in, long expectedSize) throws IOException {
+        return store(in, createStorageOutputStream(expectedSize));
+    }
+
+    private static Storage store(InputStream in, StorageOutputStream out) throws IOException {
+        boolean copied = false;
+        try {
+            ContentUtil.copy(in, out);
+            copied = true;
+        } finally {
+            if (!copied)
+                out.close();
+        }
         return out.toStorage();
     }
 
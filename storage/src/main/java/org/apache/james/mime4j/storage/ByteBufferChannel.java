@@ -0,0 +1,97 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * Read-only channel over the content of a buffer.
+ */
+final class ByteBufferChannel implements SeekableByteChannel {
+
+    private final ByteBuffer buffer;
+    private boolean open;
+
+    /**
+     * @param buffer content of the channel, from its position to its limit.
+     */
+    ByteBufferChannel(ByteBuffer buffer) {
+        this.buffer = buffer.slice();
+        this.open = true;
+    }
+
+    public int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        if (!buffer.hasRemaining())
+            return -1;
+
+        int n = Math.min(buffer.remaining(), dst.remaining());
+        ByteBuffer chunk = buffer.duplicate();
+        chunk.limit(chunk.position() + n);
+        dst.put(chunk);
+        buffer.position(buffer.position() + n);
+        return n;
+    }
+
+    public int write(ByteBuffer src) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    public long position() throws IOException {
+        ensureOpen();
+        return buffer.position();
+    }
+
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0)
+            throw new IllegalArgumentException();
+
+        buffer.position((int) Math.min(newPosition, buffer.limit()));
+        return this;
+    }
+
+    public long size() throws IOException {
+        ensureOpen();
+        return buffer.limit();
+    }
+
+    public SeekableByteChannel truncate(long size) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    public void close() {
+        open = false;
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!open)
+            throw new ClosedChannelException();
+    }
+
+}
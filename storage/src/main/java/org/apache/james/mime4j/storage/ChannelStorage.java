@@ -0,0 +1,79 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * A {@link Storage} whose data can also be read through NIO, as a single
+ * buffer or through a channel, without going through an
+ * <code>InputStream</code>.
+ */
+public interface ChannelStorage extends Storage {
+
+    /**
+     * Returns the number of bytes stored.
+     *
+     * @throws IOException
+     *             if an I/O error occurs.
+     * @throws IllegalStateException
+     *             if this <code>Storage</code> instance has been deleted.
+     */
+    long size() throws IOException;
+
+    /**
+     * Returns the stored data as a read-only buffer, independent from the
+     * buffers returned by previous calls. File backed storages map large
+     * files into memory, and read small ones.
+     *
+     * @throws IOException
+     *             if an I/O error occurs, or the data is too large to fit in
+     *             a single buffer.
+     * @throws IllegalStateException
+     *             if this <code>Storage</code> instance has been deleted.
+     */
+    ByteBuffer getByteBuffer() throws IOException;
+
+    /**
+     * Returns whether the data is held in memory, in which case
+     * {@link #getByteBuffer()} returns a view of it instead of reading,
+     * mapping or decrypting it.
+     * <p>
+     * This implementation returns <code>false</code>.
+     */
+    default boolean isInMemory() {
+        return false;
+    }
+
+    /**
+     * Returns a read-only channel on the stored data, supporting positional
+     * reads. The channel should be closed by the caller when it is no longer
+     * needed.
+     *
+     * @throws IOException
+     *             if an I/O error occurs.
+     * @throws IllegalStateException
+     *             if this <code>Storage</code> instance has been deleted.
+     */
+    SeekableByteChannel getChannel() throws IOException;
+
+}
@@ -0,0 +1,445 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.storage;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * A {@link StorageProvider} that transparently encrypts and authenticates the
+ * data stored by another <code>StorageProvider</code>, using AES in GCM mode.
+ * <p>
+ * Unlike {@link CipherStorageProvider}, which enciphers the data as a single
+ * stream, the data is split into chunks of a fixed size which are encrypted
+ * independently, each with its own authentication tag. Reading a range of
+ * the data through {@link ChannelStorage#getChannel()} only decrypts the
+ * chunks covering that range, and any tampering with the stored data is
+ * detected as an <code>IOException</code> when the affected chunk is read.
+ * Each storage is encrypted with its own key. The nonce of a chunk is derived
+ * from its index and from whether it is the last chunk, so that reordered,
+ * truncated or extended data fails authentication too.
+ * <p>
+ * Positional reads are efficient if the back-end returns
+ * {@link ChannelStorage}s; otherwise the encrypted data is skipped through
+ * from the start.
+ *
+ * <p>
+ * Example usage:
+ *
+ * <pre>
+ * StorageProvider mistrusted = new TempFileStorageProvider();
+ * StorageProvider enciphered = new ChunkedCipherStorageProvider(mistrusted);
+ * StorageProvider provider = new ThresholdStorageProvider(enciphered);
+ * DefaultStorageProvider.setInstance(provider);
+ * </pre>
+ */
+public class ChunkedCipherStorageProvider extends AbstractStorageProvider {
+
+    private static final String ALGORITHM = "AES";
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int TAG_LENGTH = 16;
+    private static final int NONCE_LENGTH = 12;
+
+    private static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    private static final int DEFAULT_KEY_SIZE = 128;
+
+    private final StorageProvider backend;
+    private final int chunkSize;
+    private final KeyGenerator keygen;
+
+    /**
+     * Creates a new <code>ChunkedCipherStorageProvider</code> for the given
+     * back-end using 64 KB chunks and 128 bit keys.
+     *
+     * @param backend
+     *            back-end storage strategy to encrypt.
+     */
+    public ChunkedCipherStorageProvider(StorageProvider backend) {
+        this(backend, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a new <code>ChunkedCipherStorageProvider</code> for the given
+     * back-end and chunk size using 128 bit keys.
+     *
+     * @param backend
+     *            back-end storage strategy to encrypt.
+     * @param chunkSize
+     *            number of plaintext bytes per encrypted chunk.
+     */
+    public ChunkedCipherStorageProvider(StorageProvider backend, int chunkSize) {
+        this(backend, chunkSize, DEFAULT_KEY_SIZE);
+    }
+
+    /**
+     * Creates a new <code>ChunkedCipherStorageProvider</code> for the given
+     * back-end, chunk size and key size.
+     *
+     * @param backend
+     *            back-end storage strategy to encrypt.
+     * @param chunkSize
+     *            number of plaintext bytes per encrypted chunk.
+     * @param keySize
+     *            AES key size in bits, 128, 192 or 256.
+     */
+    public ChunkedCipherStorageProvider(StorageProvider backend, int chunkSize,
+            int keySize) {
+        if (backend == null)
+            throw new IllegalArgumentException();
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException();
+
+        try {
+            this.backend = backend;
+            this.chunkSize = chunkSize;
+            this.keygen = KeyGenerator.getInstance(ALGORITHM);
+            this.keygen.init(keySize);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    public StorageOutputStream createStorageOutputStream() throws IOException {
+        return new ChunkedCipherStorageOutputStream(
+                backend.createStorageOutputStream(), keygen.generateKey(),
+                chunkSize);
+    }
+
+    @Override
+    public StorageOutputStream createStorageOutputStream(long expectedSize)
+            throws IOException {
+        long encryptedSize = expectedSize < 0 ? expectedSize
+                : expectedSize + (expectedSize / chunkSize + 1) * TAG_LENGTH;
+        return new ChunkedCipherStorageOutputStream(
+                backend.createStorageOutputStream(encryptedSize),
+                keygen.generateKey(), chunkSize);
+    }
+
+    private static Cipher newCipher() throws IOException {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (GeneralSecurityException e) {
+            throw (IOException) new IOException().initCause(e);
+        }
+    }
+
+    private static GCMParameterSpec nonce(long index, boolean last) {
+        byte[] iv = new byte[NONCE_LENGTH];
+        for (int i = 0; i < 8; i++) {
+            iv[i] = (byte) (index >>> (56 - 8 * i));
+        }
+        iv[8] = (byte) (last ? 1 : 0);
+        return new GCMParameterSpec(TAG_LENGTH * 8, iv);
+    }
+
+    private static final class ChunkedCipherStorageOutputStream extends
+            StorageOutputStream {
+        private final StorageOutputStream storageOut;
+        private final SecretKey key;
+        private final int chunkSize;
+        private final Cipher cipher;
+        private final byte[] sealed;
+        private byte[] plain;
+        private int count;
+        private long index;
+        private long size;
+
+        public ChunkedCipherStorageOutputStream(StorageOutputStream out,
+                SecretKey key, int chunkSize) throws IOException {
+            this.storageOut = out;
+            this.key = key;
+            this.chunkSize = chunkSize;
+            this.cipher = newCipher();
+            this.plain = new byte[chunkSize];
+            this.sealed = new byte[chunkSize + TAG_LENGTH];
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            if (plain != null) {
+                // the last chunk is sealed even if empty, marking the end
+                // of the data
+                seal(true);
+                plain = null;
+                storageOut.close();
+            }
+        }
+
+        @Override
+        protected void write0(byte[] buffer, int offset, int length)
+                throws IOException {
+            while (length > 0) {
+                if (count == plain.length) {
+                    seal(false);
+                }
+                int n = Math.min(plain.length - count, length);
+                System.arraycopy(buffer, offset, plain, count, n);
+                count += n;
+                offset += n;
+                length -= n;
+            }
+        }
+
+        private void seal(boolean last) throws IOException {
+            try {
+                cipher.init(Cipher.ENCRYPT_MODE, key, nonce(index, last));
+                int n = cipher.doFinal(plain, 0, count, sealed, 0);
+                storageOut.write(sealed, 0, n);
+            } catch (GeneralSecurityException e) {
+                throw (IOException) new IOException().initCause(e);
+            }
+            index++;
+            size += count;
+            count = 0;
+        }
+
+        @Override
+        protected Storage toStorage0() throws IOException {
+            // the last chunk has already been sealed because toStorage calls
+            // close
+            Storage encrypted = storageOut.toStorage();
+            return new ChunkedCipherStorage(encrypted, key, chunkSize, size);
+        }
+    }
+
+    private static final class ChunkedCipherStorage implements ChannelStorage {
+        private Storage encrypted;
+        private final SecretKey key;
+        private final int chunkSize;
+        private final long size;
+
+        public ChunkedCipherStorage(Storage encrypted, SecretKey key,
+                int chunkSize, long size) {
+            this.encrypted = encrypted;
+            this.key = key;
+            this.chunkSize = chunkSize;
+            this.size = size;
+        }
+
+        public void delete() {
+            if (encrypted != null) {
+                encrypted.delete();
+                encrypted = null;
+            }
+        }
+
+        public InputStream getInputStream() throws IOException {
+            return Channels.newInputStream(getChannel());
+        }
+
+        public long size() {
+            if (encrypted == null)
+                throw new IllegalStateException("storage has been deleted");
+
+            return size;
+        }
+
+        public ByteBuffer getByteBuffer() throws IOException {
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("Data too large to fit in a buffer: " + size + " bytes");
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            try (SeekableByteChannel channel = getChannel()) {
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0)
+                        break;
+                }
+            }
+            buffer.flip();
+            return buffer.asReadOnlyBuffer();
+        }
+
+        public SeekableByteChannel getChannel() throws IOException {
+            if (encrypted == null)
+                throw new IllegalStateException("storage has been deleted");
+
+            return new ChunkChannel(encrypted, key, chunkSize, size);
+        }
+    }
+
+    /**
+     * Read-only channel decrypting one chunk at a time.
+     */
+    private static final class ChunkChannel implements SeekableByteChannel {
+        private final Storage encrypted;
+        private final SecretKey key;
+        private final int chunkSize;
+        private final long size;
+        private final Cipher cipher;
+        private final byte[] sealed;
+        private final byte[] chunk;
+        private long chunkIndex = -1;
+        private int chunkLength;
+        private long position;
+        private boolean open = true;
+
+        // source of the encrypted data, whichever the back-end supports
+        private SeekableByteChannel sealedChannel;
+        private InputStream sealedIn;
+        private long sealedInPosition;
+
+        ChunkChannel(Storage encrypted, SecretKey key, int chunkSize,
+                long size) throws IOException {
+            this.encrypted = encrypted;
+            this.key = key;
+            this.chunkSize = chunkSize;
+            this.size = size;
+            this.cipher = newCipher();
+            this.sealed = new byte[chunkSize + TAG_LENGTH];
+            this.chunk = new byte[chunkSize];
+            if (encrypted instanceof ChannelStorage) {
+                sealedChannel = ((ChannelStorage) encrypted).getChannel();
+            }
+        }
+
+        public int read(ByteBuffer dst) throws IOException {
+            ensureOpen();
+            if (position >= size)
+                return -1;
+
+            long index = position / chunkSize;
+            if (index != chunkIndex) {
+                load(index);
+            }
+            int offset = (int) (position - index * chunkSize);
+            int n = Math.min(chunkLength - offset, dst.remaining());
+            dst.put(chunk, offset, n);
+            position += n;
+            return n;
+        }
+
+        private void load(long index) throws IOException {
+            long start = index * chunkSize;
+            int length = (int) Math.min(chunkSize, size - start);
+            boolean last = start + length == size;
+            readSealed(index * (chunkSize + TAG_LENGTH), length + TAG_LENGTH);
+            try {
+                cipher.init(Cipher.DECRYPT_MODE, key, nonce(index, last));
+                chunkLength = cipher.doFinal(sealed, 0, length + TAG_LENGTH, chunk, 0);
+            } catch (GeneralSecurityException e) {
+                chunkIndex = -1;
+                throw (IOException) new IOException(
+                        "Chunk " + index + " of encrypted storage failed authentication").initCause(e);
+            }
+            chunkIndex = index;
+        }
+
+        private void readSealed(long offset, int length) throws IOException {
+            if (sealedChannel != null) {
+                sealedChannel.position(offset);
+                ByteBuffer dst = ByteBuffer.wrap(sealed, 0, length);
+                while (dst.hasRemaining()) {
+                    if (sealedChannel.read(dst) < 0)
+                        throw new EOFException("Encrypted storage is truncated");
+                }
+                return;
+            }
+
+            if (sealedIn == null || offset < sealedInPosition) {
+                if (sealedIn != null) {
+                    sealedIn.close();
+                }
+                sealedIn = encrypted.getInputStream();
+                sealedInPosition = 0;
+            }
+            while (sealedInPosition < offset) {
+                long skipped = sealedIn.skip(offset - sealedInPosition);
+                if (skipped <= 0) {
+                    if (sealedIn.read() < 0)
+                        throw new EOFException("Encrypted storage is truncated");
+                    skipped = 1;
+                }
+                sealedInPosition += skipped;
+            }
+            int count = 0;
+            while (count < length) {
+                int n = sealedIn.read(sealed, count, length - count);
+                if (n < 0)
+                    throw new EOFException("Encrypted storage is truncated");
+                count += n;
+            }
+            sealedInPosition += length;
+        }
+
+        public int write(ByteBuffer src) throws IOException {
+            throw new NonWritableChannelException();
+        }
+
+        public long position() throws IOException {
+            ensureOpen();
+            return position;
+        }
+
+        public SeekableByteChannel position(long newPosition) throws IOException {
+            ensureOpen();
+            if (newPosition < 0)
+                throw new IllegalArgumentException();
+
+            position = newPosition;
+            return this;
+        }
+
+        public long size() throws IOException {
+            ensureOpen();
+            return size;
+        }
+
+        public SeekableByteChannel truncate(long size) throws IOException {
+            throw new NonWritableChannelException();
+        }
+
+        public boolean isOpen() {
+            return open;
+        }
+
+        public void close() throws IOException {
+            if (!open)
+                return;
+
+            open = false;
+            if (sealedChannel != null) {
+                sealedChannel.close();
+            }
+            if (sealedIn != null) {
+                sealedIn.close();
+            }
+        }
+
+        private void ensureOpen() throws ClosedChannelException {
+            if (!open)
+                throw new ClosedChannelException();
+        }
+    }
+
+}
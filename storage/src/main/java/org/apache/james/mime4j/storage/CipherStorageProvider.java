@@ -33,6 +33,10 @@ import javax.crypto.spec.SecretKeySpec;
 /**
  * A {@link StorageProvider} that transparently scrambles and unscrambles the
  * data stored by another <code>StorageProvider</code>.
+ * <p>
+ * The data is enciphered as a single stream and is not authenticated. See
+ * {@link ChunkedCipherStorageProvider} for authenticated encryption
+ * supporting positional reads.
  *
  * <p>
  * Example usage:
@@ -0,0 +1,342 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link StorageProvider} that stores identical data only once. The data
+ * is hashed with SHA-256 while it is written to a temporary file of a private
+ * directory, and each distinct content is kept in a single file. Storing data
+ * that is already present, such as the same attachment received by many
+ * recipients, returns another reference to the existing file instead of a
+ * new copy.
+ * <p>
+ * Every returned <code>Storage</code> is an independent reference to the
+ * shared file, counted by a {@link MultiReferenceStorage}: the file is
+ * deleted when all of them have been deleted. The files themselves are
+ * managed by a {@link ManagedTempFileStorageProvider}, so that a file is only
+ * deleted once the streams opened on it have been closed, failed deletions
+ * are retried, and {@link #close()} deletes the files still alive, without
+ * resorting to <code>File.deleteOnExit()</code>. Reference counts are kept in
+ * memory, so the directory should not be shared with other providers or
+ * processes.
+ * <p>
+ * Example usage:
+ *
+ * <pre>
+ * File directory = new File(&quot;/var/mime4j/blobs&quot;);
+ * StorageProvider deduplicating = new DeduplicatingStorageProvider(directory);
+ * StorageProvider provider = new ThresholdStorageProvider(deduplicating);
+ * DefaultStorageProvider.setInstance(provider);
+ * </pre>
+ */
+public class DeduplicatingStorageProvider extends AbstractStorageProvider implements Closeable {
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final ManagedTempFileStorageProvider files;
+    private final Map<String, Blob> blobs = new HashMap<String, Blob>();
+
+    private long storedBodies;
+    private long deduplicatedBodies;
+    private long deduplicatedBytes;
+    private long blobBytes;
+
+    /**
+     * Creates a new <code>DeduplicatingStorageProvider</code> storing its
+     * files in the given directory.
+     *
+     * @param directory
+     *            the directory in which the files are stored.
+     * @throws IllegalArgumentException
+     *             if the directory is <code>null</code> or does not exist and
+     *             cannot be created.
+     */
+    public DeduplicatingStorageProvider(File directory) {
+        if (directory == null)
+            throw new IllegalArgumentException();
+
+        this.files = new ManagedTempFileStorageProvider("m4j", ".tmp", directory);
+    }
+
+    public StorageOutputStream createStorageOutputStream() throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw (IOException) new IOException().initCause(e);
+        }
+
+        return new DeduplicatingStorageOutputStream(files.createStorageOutputStream(), digest);
+    }
+
+    /**
+     * Deletes the files of all the storages of this provider which have not
+     * been deleted yet. No storage can be created afterwards.
+     *
+     * @see ManagedTempFileStorageProvider#close()
+     */
+    public void close() {
+        files.close();
+        synchronized (this) {
+            blobs.clear();
+            blobBytes = 0;
+        }
+    }
+
+    /**
+     * Returns the number of storages created by this provider.
+     */
+    public synchronized long getStoredBodies() {
+        return storedBodies;
+    }
+
+    /**
+     * Returns the number of storages that shared a file already present
+     * rather than creating a new one.
+     */
+    public synchronized long getDeduplicatedBodies() {
+        return deduplicatedBodies;
+    }
+
+    /**
+     * Returns the total size of the data that did not have to be stored
+     * again because it was already present.
+     */
+    public synchronized long getDeduplicatedBytes() {
+        return deduplicatedBytes;
+    }
+
+    /**
+     * Returns the ratio of deduplicated storages to created storages, or
+     * <code>0</code> if no storage has been created yet.
+     */
+    public synchronized double getHitRate() {
+        return storedBodies == 0 ? 0 : (double) deduplicatedBodies / storedBodies;
+    }
+
+    /**
+     * Returns the number of distinct files currently stored.
+     */
+    public synchronized int getBlobCount() {
+        return blobs.size();
+    }
+
+    /**
+     * Returns the total size of the distinct files currently stored.
+     */
+    public synchronized long getBlobBytes() {
+        return blobBytes;
+    }
+
+    /**
+     * Returns a reference to the blob holding the given data, which becomes
+     * that blob unless the same data is already stored. Only the map is
+     * updated under the lock; the file of a duplicate is deleted afterwards.
+     */
+    private Storage share(ChannelStorage storage, long size, String hash) {
+        Blob blob;
+        boolean duplicate = false;
+        synchronized (this) {
+            storedBodies++;
+            blob = blobs.get(hash);
+            if (blob != null) {
+                try {
+                    blob.references.addReference();
+                    deduplicatedBodies++;
+                    deduplicatedBytes += size;
+                    duplicate = true;
+                } catch (IllegalStateException e) {
+                    // the last reference is being deleted; this blob
+                    // replaces it
+                    blobs.remove(hash);
+                    blobBytes -= blob.size;
+                }
+            }
+            if (!duplicate) {
+                blob = new Blob(hash, storage, size);
+                blobs.put(hash, blob);
+                blobBytes += size;
+            }
+        }
+        if (duplicate) {
+            storage.delete();
+        }
+        return new BlobReference(blob);
+    }
+
+    private void release(Blob blob) {
+        synchronized (this) {
+            // a blob can have been replaced while its last reference was
+            // being deleted, its successor then has a file of its own
+            if (blobs.get(blob.hash) == blob) {
+                blobs.remove(blob.hash);
+                blobBytes -= blob.size;
+            }
+        }
+        blob.storage.delete();
+    }
+
+    private static String toHex(byte[] digest) {
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(digest[i] >> 4) & 0x0f];
+            hex[2 * i + 1] = HEX_DIGITS[digest[i] & 0x0f];
+        }
+        return new String(hex);
+    }
+
+    private final class DeduplicatingStorageOutputStream extends
+            StorageOutputStream {
+        private final StorageOutputStream file;
+        private final OutputStream out;
+        private final MessageDigest digest;
+        private long size;
+
+        public DeduplicatingStorageOutputStream(StorageOutputStream file, MessageDigest digest) {
+            this.digest = digest;
+            this.file = file;
+            this.out = new BufferedOutputStream(file);
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            out.close();
+        }
+
+        @Override
+        protected void write0(byte[] buffer, int offset, int length)
+                throws IOException {
+            out.write(buffer, offset, length);
+            digest.update(buffer, offset, length);
+            size += length;
+        }
+
+        @Override
+        protected Storage toStorage0() throws IOException {
+            // out has already been closed because toStorage calls close
+            return share((ChannelStorage) file.toStorage(), size, toHex(digest.digest()));
+        }
+    }
+
+    /**
+     * A stored file, shared by all the storages holding the same data.
+     */
+    private final class Blob implements ChannelStorage {
+        private final String hash;
+        private final ChannelStorage storage;
+        private final long size;
+        private final MultiReferenceStorage references;
+
+        Blob(String hash, ChannelStorage storage, long size) {
+            this.hash = hash;
+            this.storage = storage;
+            this.size = size;
+            this.references = new MultiReferenceStorage(this);
+        }
+
+        public void delete() {
+            release(this);
+        }
+
+        public InputStream getInputStream() throws IOException {
+            return storage.getInputStream();
+        }
+
+        @Override
+        public long transferTo(WritableByteChannel channel) throws IOException {
+            return storage.transferTo(channel);
+        }
+
+        public long size() {
+            return size;
+        }
+
+        public ByteBuffer getByteBuffer() throws IOException {
+            return storage.getByteBuffer();
+        }
+
+        public SeekableByteChannel getChannel() throws IOException {
+            return storage.getChannel();
+        }
+    }
+
+    /**
+     * One reference to a blob, to be deleted once by its owner.
+     */
+    private static final class BlobReference implements ChannelStorage {
+        private Blob blob;
+
+        BlobReference(Blob blob) {
+            this.blob = blob;
+        }
+
+        public synchronized void delete() {
+            if (blob != null) {
+                blob.references.delete();
+                blob = null;
+            }
+        }
+
+        public InputStream getInputStream() throws IOException {
+            return blob().getInputStream();
+        }
+
+        @Override
+        public long transferTo(WritableByteChannel channel) throws IOException {
+            return blob().transferTo(channel);
+        }
+
+        public long size() {
+            return blob().size();
+        }
+
+        public ByteBuffer getByteBuffer() throws IOException {
+            return blob().getByteBuffer();
+        }
+
+        public SeekableByteChannel getChannel() throws IOException {
+            return blob().getChannel();
+        }
+
+        private synchronized Blob blob() {
+            if (blob == null)
+                throw new IllegalStateException("storage has been deleted");
+
+            return blob;
+        }
+    }
+
+}
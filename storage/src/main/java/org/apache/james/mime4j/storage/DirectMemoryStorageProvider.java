@@ -0,0 +1,569 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * A {@link StorageProvider} that stores the data off-heap, in blocks of
+ * direct memory taken from a pool of bounded capacity, so that holding many
+ * bodies does not weigh on the garbage collector.
+ * </p>
+ * <p>
+ * The pool is made of slabs of direct memory, allocated on demand up to the
+ * capacity of the provider and cut into blocks of equal size. A storage which
+ * does not fit in the blocks left in the pool is written to the back-end
+ * provider instead. The blocks of a storage return to the pool once it has
+ * been deleted (for a storage shared through {@link MultiReferenceStorage},
+ * once its last reference has been deleted) and all the streams opened on
+ * it have been closed. Blocks of storages garbage collected without having
+ * been deleted are reclaimed as well.
+ * </p>
+ * <p>
+ * Example usage:
+ *
+ * <pre>
+ * StorageProvider files = new ManagedTempFileStorageProvider();
+ * StorageProvider provider = new DirectMemoryStorageProvider(files, 256 * 1024 * 1024);
+ * DefaultStorageProvider.setInstance(provider);
+ * </pre>
+ */
+public class DirectMemoryStorageProvider extends AbstractStorageProvider {
+
+    private static final int DEFAULT_BLOCK_SIZE = 8 * 1024;
+
+    private static final int SLAB_SIZE = 1024 * 1024;
+
+    private final StorageProvider backend;
+    private final long capacity;
+    private final int blockSize;
+    private final int blocksPerSlab;
+
+    private final Queue<ByteBuffer> freeBlocks;
+    private final AtomicLong allocated;
+    private final AtomicLong usedBlocks;
+    private final AtomicLong spilled;
+    private final ReferenceQueue<Object> queue;
+    private final Set<Handle> handles;
+
+    /**
+     * Creates a new <code>DirectMemoryStorageProvider</code> using blocks of
+     * 8 KiB.
+     */
+    public DirectMemoryStorageProvider(StorageProvider backend, long capacity) {
+        this(backend, capacity, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Creates a new <code>DirectMemoryStorageProvider</code>.
+     *
+     * @param backend
+     *            used to store the data that does not fit in the pool.
+     * @param capacity
+     *            maximum number of bytes of direct memory allocated by this
+     *            provider.
+     * @param blockSize
+     *            size of the blocks storages are made of; the last block of a
+     *            storage is only partially used.
+     */
+    public DirectMemoryStorageProvider(StorageProvider backend, long capacity, int blockSize) {
+        if (backend == null)
+            throw new IllegalArgumentException();
+        if (blockSize < 1 || capacity < blockSize)
+            throw new IllegalArgumentException();
+
+        this.backend = backend;
+        this.blockSize = blockSize;
+        this.blocksPerSlab = Math.max(1, SLAB_SIZE / blockSize);
+        this.capacity = capacity - capacity % blockSize;
+        this.freeBlocks = new ConcurrentLinkedQueue<ByteBuffer>();
+        this.allocated = new AtomicLong();
+        this.usedBlocks = new AtomicLong();
+        this.spilled = new AtomicLong();
+        this.queue = new ReferenceQueue<Object>();
+        this.handles = ConcurrentHashMap.newKeySet();
+    }
+
+    public StorageOutputStream createStorageOutputStream() throws IOException {
+        return new DirectStorageOutputStream();
+    }
+
+    /**
+     * Creates a {@link StorageOutputStream} writing directly to the back-end
+     * if the expected size exceeds the capacity left, so that the data does
+     * not have to be moved to the back-end once the pool is exhausted.
+     */
+    @Override
+    public StorageOutputStream createStorageOutputStream(long expectedSize) throws IOException {
+        if (expectedSize > capacity - getUsedBytes()) {
+            spilled.incrementAndGet();
+            return backend.createStorageOutputStream(expectedSize);
+        }
+
+        return new DirectStorageOutputStream();
+    }
+
+    /**
+     * Returns the maximum number of bytes of direct memory of this provider.
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of bytes of direct memory allocated so far, used or
+     * pooled.
+     */
+    public long getAllocatedBytes() {
+        return allocated.get();
+    }
+
+    /**
+     * Returns the number of bytes of direct memory held by storages and
+     * storage output streams.
+     */
+    public long getUsedBytes() {
+        return usedBlocks.get() * blockSize;
+    }
+
+    /**
+     * Returns the number of storages written to the back-end because the pool
+     * was exhausted.
+     */
+    public long getSpilledStorages() {
+        return spilled.get();
+    }
+
+    private ByteBuffer allocateBlock() {
+        reclaim();
+        for (;;) {
+            ByteBuffer block = freeBlocks.poll();
+            if (block != null) {
+                usedBlocks.incrementAndGet();
+                block.clear();
+                return block;
+            }
+            if (!allocateSlab())
+                return null;
+        }
+    }
+
+    private boolean allocateSlab() {
+        long slabBytes;
+        for (;;) {
+            long current = allocated.get();
+            slabBytes = Math.min((long) blocksPerSlab * blockSize, capacity - current);
+            if (slabBytes < blockSize)
+                return false;
+            if (allocated.compareAndSet(current, current + slabBytes))
+                break;
+        }
+        ByteBuffer slab = ByteBuffer.allocateDirect((int) slabBytes);
+        for (int offset = 0; offset < slabBytes; offset += blockSize) {
+            slab.limit(offset + blockSize).position(offset);
+            freeBlocks.offer(slab.slice());
+        }
+        return true;
+    }
+
+    private void releaseBlocks(List<ByteBuffer> blocks) {
+        usedBlocks.addAndGet(-blocks.size());
+        freeBlocks.addAll(blocks);
+        blocks.clear();
+    }
+
+    private void reclaim() {
+        Reference<?> reference;
+        while ((reference = queue.poll()) != null) {
+            ((Handle) reference).dispose();
+        }
+    }
+
+    /**
+     * The blocks of a storage, returned to the pool when their reference count
+     * drops to zero: one reference is held by the output stream, then by the
+     * storage, and one by each open input stream.
+     */
+    private final class Blocks {
+
+        final List<ByteBuffer> list = new ArrayList<ByteBuffer>();
+        final AtomicInteger references = new AtomicInteger(1);
+        long length;
+
+        void acquire() {
+            for (;;) {
+                int count = references.get();
+                if (count == 0)
+                    throw new IllegalStateException("storage has been deleted");
+                if (references.compareAndSet(count, count + 1))
+                    return;
+            }
+        }
+
+        void release() {
+            if (references.decrementAndGet() == 0) {
+                releaseBlocks(list);
+            }
+        }
+
+    }
+
+    /**
+     * Releases the reference of a storage or stream to its blocks, when it is
+     * deleted or closed, or becomes unreachable.
+     */
+    private final class Handle extends PhantomReference<Object> {
+
+        final Blocks blocks;
+        final AtomicBoolean released = new AtomicBoolean();
+
+        Handle(Object referent, Blocks blocks) {
+            super(referent, queue);
+            this.blocks = blocks;
+            handles.add(this);
+        }
+
+        void dispose() {
+            if (released.compareAndSet(false, true)) {
+                clear();
+                handles.remove(this);
+                blocks.release();
+            }
+        }
+
+    }
+
+    private final class DirectStorageOutputStream extends StorageOutputStream {
+
+        private final Blocks blocks;
+        private final Handle handle;
+        private ByteBuffer current;
+        private StorageOutputStream tail;
+
+        DirectStorageOutputStream() {
+            this.blocks = new Blocks();
+            this.handle = new Handle(this, blocks);
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+
+            if (tail != null)
+                tail.close();
+        }
+
+        @Override
+        protected void write0(byte[] buffer, int offset, int length) throws IOException {
+            while (tail == null && length > 0) {
+                if (current == null || !current.hasRemaining()) {
+                    current = allocateBlock();
+                    if (current == null) {
+                        spill();
+                        break;
+                    }
+                    blocks.list.add(current);
+                }
+                int n = Math.min(current.remaining(), length);
+                current.put(buffer, offset, n);
+                blocks.length += n;
+                offset += n;
+                length -= n;
+            }
+
+            if (length > 0)
+                tail.write(buffer, offset, length);
+        }
+
+        private void spill() throws IOException {
+            spilled.incrementAndGet();
+            tail = backend.createStorageOutputStream();
+            for (ByteBuffer block : blocks.list) {
+                block.flip();
+                if (block.hasArray()) {
+                    tail.write(block.array(), block.arrayOffset(), block.limit());
+                } else {
+                    byte[] chunk = new byte[block.limit()];
+                    block.get(chunk);
+                    tail.write(chunk);
+                }
+            }
+            current = null;
+            handle.dispose();
+        }
+
+        @Override
+        protected Storage toStorage0() throws IOException {
+            if (tail != null)
+                return tail.toStorage();
+
+            for (ByteBuffer block : blocks.list) {
+                block.flip();
+            }
+            blocks.acquire();
+            handle.dispose();
+            return new DirectStorage(blocks);
+        }
+
+    }
+
+    private final class DirectStorage implements ChannelStorage {
+
+        private final Blocks blocks;
+        private final Handle handle;
+
+        DirectStorage(Blocks blocks) {
+            this.blocks = blocks;
+            this.handle = new Handle(this, blocks);
+        }
+
+        public InputStream getInputStream() {
+            if (handle.released.get())
+                throw new IllegalStateException("storage has been deleted");
+
+            blocks.acquire();
+            return new BlockInputStream(blocks);
+        }
+
+        @Override
+        public long transferTo(WritableByteChannel channel) throws IOException {
+            if (handle.released.get())
+                throw new IllegalStateException("storage has been deleted");
+
+            blocks.acquire();
+            try {
+                ByteBuffer[] buffers = new ByteBuffer[blocks.list.size()];
+                for (int i = 0; i < buffers.length; i++) {
+                    buffers[i] = blocks.list.get(i).duplicate();
+                }
+                if (channel instanceof GatheringByteChannel) {
+                    GatheringByteChannel gathering = (GatheringByteChannel) channel;
+                    long written = 0;
+                    while (written < blocks.length) {
+                        written += gathering.write(buffers);
+                    }
+                } else {
+                    for (ByteBuffer buffer : buffers) {
+                        while (buffer.hasRemaining()) {
+                            channel.write(buffer);
+                        }
+                    }
+                }
+                return blocks.length;
+            } finally {
+                blocks.release();
+            }
+        }
+
+        public long size() {
+            if (handle.released.get())
+                throw new IllegalStateException("storage has been deleted");
+
+            return blocks.length;
+        }
+
+        /**
+         * Returns a copy of the data on the heap: a view of the blocks could
+         * outlive the storage and see them reused by another one.
+         */
+        public ByteBuffer getByteBuffer() {
+            if (handle.released.get())
+                throw new IllegalStateException("storage has been deleted");
+
+            blocks.acquire();
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate((int) blocks.length);
+                for (ByteBuffer block : blocks.list) {
+                    buffer.put(block.duplicate());
+                }
+                buffer.flip();
+                return buffer.asReadOnlyBuffer();
+            } finally {
+                blocks.release();
+            }
+        }
+
+        /**
+         * Returns a channel reading the blocks in place, which keeps them out
+         * of the pool until it is closed.
+         */
+        public SeekableByteChannel getChannel() {
+            if (handle.released.get())
+                throw new IllegalStateException("storage has been deleted");
+
+            blocks.acquire();
+            return new BlockChannel(blocks);
+        }
+
+        public void delete() {
+            handle.dispose();
+        }
+
+    }
+
+    private final class BlockChannel implements SeekableByteChannel {
+
+        private final Handle handle;
+        private final List<ByteBuffer> list;
+        private final long length;
+        private long position;
+
+        BlockChannel(Blocks blocks) {
+            this.handle = new Handle(this, blocks);
+            this.list = blocks.list;
+            this.length = blocks.length;
+        }
+
+        public int read(ByteBuffer dst) throws IOException {
+            ensureOpen();
+            if (position >= length)
+                return -1;
+
+            int read = 0;
+            while (dst.hasRemaining() && position < length) {
+                // all the blocks but the last one are full
+                ByteBuffer block = list.get((int) (position / blockSize)).duplicate();
+                block.position((int) (position % blockSize));
+                if (block.remaining() > dst.remaining())
+                    block.limit(block.position() + dst.remaining());
+                int n = block.remaining();
+                dst.put(block);
+                position += n;
+                read += n;
+            }
+            return read;
+        }
+
+        public int write(ByteBuffer src) throws IOException {
+            throw new NonWritableChannelException();
+        }
+
+        public long position() throws IOException {
+            ensureOpen();
+            return position;
+        }
+
+        public SeekableByteChannel position(long newPosition) throws IOException {
+            ensureOpen();
+            if (newPosition < 0)
+                throw new IllegalArgumentException();
+
+            position = Math.min(newPosition, length);
+            return this;
+        }
+
+        public long size() throws IOException {
+            ensureOpen();
+            return length;
+        }
+
+        public SeekableByteChannel truncate(long size) throws IOException {
+            throw new NonWritableChannelException();
+        }
+
+        public boolean isOpen() {
+            return !handle.released.get();
+        }
+
+        public void close() {
+            handle.dispose();
+        }
+
+        private void ensureOpen() throws ClosedChannelException {
+            if (handle.released.get())
+                throw new ClosedChannelException();
+        }
+
+    }
+
+    private final class BlockInputStream extends InputStream {
+
+        private final Handle handle;
+        private final List<ByteBuffer> list;
+        private int index;
+        private ByteBuffer current;
+
+        BlockInputStream(Blocks blocks) {
+            this.handle = new Handle(this, blocks);
+            this.list = blocks.list;
+        }
+
+        private boolean next() throws IOException {
+            if (handle.released.get())
+                throw new IOException("Stream has been closed");
+
+            while (current == null || !current.hasRemaining()) {
+                if (index == list.size())
+                    return false;
+                current = list.get(index++).duplicate();
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return next() ? current.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (!next())
+                return -1;
+
+            int n = Math.min(len, current.remaining());
+            current.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return current != null && !handle.released.get() ? current.remaining() : 0;
+        }
+
+        @Override
+        public void close() {
+            handle.dispose();
+        }
+
+    }
+
+}
@@ -0,0 +1,532 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.storage;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * <p>
+ * A {@link StorageProvider} that stores the data in temporary files, like
+ * {@link TempFileStorageProvider}, but manages their lifecycle itself instead
+ * of relying on <code>File.deleteOnExit()</code>, whose bookkeeping grows for
+ * as long as the JVM lives.
+ * </p>
+ * <ul>
+ * <li>A file is deleted once its {@link Storage} has been deleted and all the
+ * streams opened on it have been closed, so that deletion does not fail on
+ * platforms which do not delete open files.</li>
+ * <li>A file whose {@link Storage} (or {@link StorageOutputStream}) is garbage
+ * collected without having been deleted, or whose input streams are garbage
+ * collected without having been closed, is released by a background reaper
+ * thread, shared by all providers.</li>
+ * <li>A file which cannot be deleted is retried by the reaper until it can.</li>
+ * <li>{@link #close()} deletes all the files of the provider still alive.
+ * Files still open which the platform refuses to delete are deleted when
+ * their streams get closed, or else when the JVM exits.</li>
+ * </ul>
+ * <p>
+ * Bookkeeping is lock-free, so that parallel parsing threads do not contend
+ * on it, and the provider exposes the number of live files and bytes.
+ * </p>
+ * <p>
+ * Example usage:
+ *
+ * <pre>
+ * ManagedTempFileStorageProvider files = new ManagedTempFileStorageProvider(directory);
+ * DefaultStorageProvider.setInstance(new ThresholdStorageProvider(files));
+ * ...
+ * files.close();
+ * </pre>
+ */
+public class ManagedTempFileStorageProvider extends AbstractStorageProvider implements Closeable {
+
+    private static final String DEFAULT_PREFIX = "m4j";
+
+    private final String prefix;
+    private final String suffix;
+    private final File directory;
+
+    private final Set<Handle> handles;
+    private final AtomicLong liveFiles;
+    private final AtomicLong liveBytes;
+    private final AtomicLong reclaimedReferences;
+    private volatile boolean closed;
+
+    /**
+     * Equivalent to using constructor
+     * <code>ManagedTempFileStorageProvider("m4j", null, null)</code>.
+     */
+    public ManagedTempFileStorageProvider() {
+        this(DEFAULT_PREFIX, null, null);
+    }
+
+    /**
+     * Equivalent to using constructor
+     * <code>ManagedTempFileStorageProvider("m4j", null, directory)</code>.
+     */
+    public ManagedTempFileStorageProvider(File directory) {
+        this(DEFAULT_PREFIX, null, directory);
+    }
+
+    /**
+     * Creates a new <code>ManagedTempFileStorageProvider</code> using the
+     * given values.
+     *
+     * @see TempFileStorageProvider#TempFileStorageProvider(String, String, File)
+     */
+    public ManagedTempFileStorageProvider(String prefix, String suffix, File directory) {
+        if (prefix == null || prefix.length() < 3)
+            throw new IllegalArgumentException("invalid prefix");
+
+        if (directory != null) {
+            try {
+                FileUtils.forceMkdir(directory);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("invalid directory");
+            }
+        }
+
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.directory = directory;
+        this.handles = ConcurrentHashMap.newKeySet();
+        this.liveFiles = new AtomicLong();
+        this.liveBytes = new AtomicLong();
+        this.reclaimedReferences = new AtomicLong();
+    }
+
+    public StorageOutputStream createStorageOutputStream() throws IOException {
+        if (closed)
+            throw new IllegalStateException("storage provider has been closed");
+
+        File file;
+        if (directory == null) {
+            file = Files.createTempFile(prefix, suffix).toFile();
+        } else {
+            file = Files.createTempFile(directory.toPath(), prefix, suffix).toFile();
+        }
+        liveFiles.incrementAndGet();
+
+        TempFile tempFile = new TempFile(this, file);
+        try {
+            return new ManagedStorageOutputStream(tempFile);
+        } catch (IOException e) {
+            tempFile.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of files created by this provider and not deleted
+     * yet, including those still being written and those whose deletion
+     * failed and is being retried.
+     */
+    public long getLiveFiles() {
+        return liveFiles.get();
+    }
+
+    /**
+     * Returns the number of bytes held by the live files.
+     */
+    public long getLiveBytes() {
+        return liveBytes.get();
+    }
+
+    /**
+     * Returns the number of storages and output streams garbage collected
+     * without having been deleted, and of input streams garbage collected
+     * without having been closed, whose reference to their file has been
+     * released by the reaper.
+     */
+    public long getReclaimedReferences() {
+        return reclaimedReferences.get();
+    }
+
+    /**
+     * Deletes the files of all the storages of this provider which have not
+     * been deleted yet, including those with open streams. Where the platform
+     * does not delete open files, these are deleted when the streams get
+     * closed and, failing that, when the JVM exits. No storage can be created
+     * afterwards.
+     */
+    public void close() {
+        closed = true;
+        for (Handle handle : handles) {
+            if (!handle.stream) {
+                handle.dispose();
+            }
+        }
+        for (Handle handle : handles) {
+            File file = handle.tempFile.file;
+            try {
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException e) {
+                // still open, retried once the streams are closed
+            }
+            if (file.exists()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    private void track(Handle handle) {
+        handles.add(handle);
+        Reaper.start();
+    }
+
+    /**
+     * A temporary file, deleted when its reference count drops to zero: one
+     * reference is held by the output stream, then by the storage, and one by
+     * each open input stream.
+     */
+    private static final class TempFile {
+
+        final ManagedTempFileStorageProvider provider;
+        final File file;
+        final AtomicInteger references;
+        volatile long size;
+
+        TempFile(ManagedTempFileStorageProvider provider, File file) {
+            this.provider = provider;
+            this.file = file;
+            this.references = new AtomicInteger(1);
+        }
+
+        void acquire() {
+            for (;;) {
+                int count = references.get();
+                if (count == 0)
+                    throw new IllegalStateException("storage has been deleted");
+                if (references.compareAndSet(count, count + 1))
+                    return;
+            }
+        }
+
+        void release() {
+            if (references.decrementAndGet() == 0 && !delete()) {
+                Reaper.retry(this);
+            }
+        }
+
+        boolean delete() {
+            try {
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException e) {
+                return false;
+            }
+            provider.liveFiles.decrementAndGet();
+            provider.liveBytes.addAndGet(-size);
+            return true;
+        }
+
+    }
+
+    /**
+     * Releases the reference of a storage, output or input stream to its
+     * file, when it is deleted or closed, or becomes unreachable.
+     */
+    private static final class Handle extends PhantomReference<Object> {
+
+        final TempFile tempFile;
+        final boolean stream;
+        final AtomicBoolean released;
+
+        Handle(Object referent, TempFile tempFile, boolean stream) {
+            super(referent, Reaper.QUEUE);
+            this.tempFile = tempFile;
+            this.stream = stream;
+            this.released = new AtomicBoolean();
+            tempFile.provider.track(this);
+        }
+
+        boolean dispose() {
+            if (!released.compareAndSet(false, true))
+                return false;
+            clear();
+            tempFile.provider.handles.remove(this);
+            tempFile.release();
+            return true;
+        }
+
+    }
+
+    /**
+     * The daemon thread shared by all providers, releasing the files of
+     * unreachable storages and retrying failed deletions.
+     */
+    private static final class Reaper implements Runnable {
+
+        static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<Object>();
+
+        private static final long RETRY_INTERVAL = 1000;
+
+        private static final Queue<TempFile> RETRIES = new ConcurrentLinkedQueue<TempFile>();
+
+        private static final AtomicBoolean STARTED = new AtomicBoolean();
+
+        static void start() {
+            if (STARTED.get() || !STARTED.compareAndSet(false, true))
+                return;
+            Thread thread = new Thread(new Reaper(), "mime4j-temp-file-reaper");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        static void retry(TempFile tempFile) {
+            RETRIES.offer(tempFile);
+        }
+
+        public void run() {
+            for (;;) {
+                try {
+                    Reference<?> reference = QUEUE.remove(RETRY_INTERVAL);
+                    while (reference != null) {
+                        Handle handle = (Handle) reference;
+                        if (handle.dispose()) {
+                            handle.tempFile.provider.reclaimedReferences.incrementAndGet();
+                        }
+                        reference = QUEUE.poll();
+                    }
+                } catch (InterruptedException e) {
+                    // keep reaping, the thread lives as long as the JVM
+                } catch (RuntimeException e) {
+                    // a failing storage must not stop the reaper
+                }
+                for (int i = RETRIES.size(); i > 0; i--) {
+                    TempFile tempFile = RETRIES.poll();
+                    if (tempFile == null)
+                        break;
+                    if (!tempFile.delete())
+                        RETRIES.offer(tempFile);
+                }
+            }
+        }
+
+    }
+
+    private static final class ManagedStorageOutputStream extends StorageOutputStream {
+
+        private final TempFile tempFile;
+        private final Handle handle;
+        private final OutputStream out;
+
+        ManagedStorageOutputStream(TempFile tempFile) throws IOException {
+            this.tempFile = tempFile;
+            this.out = new FileOutputStream(tempFile.file);
+            this.handle = new Handle(this, tempFile, false);
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            out.close();
+        }
+
+        @Override
+        protected void write0(byte[] buffer, int offset, int length) throws IOException {
+            out.write(buffer, offset, length);
+            tempFile.size += length;
+            tempFile.provider.liveBytes.addAndGet(length);
+        }
+
+        @Override
+        protected Storage toStorage0() throws IOException {
+            // out has already been closed because toStorage calls close
+            tempFile.acquire();
+            handle.dispose();
+            return new ManagedStorage(tempFile);
+        }
+
+    }
+
+    private static final class ManagedStorage implements ChannelStorage {
+
+        private final TempFile tempFile;
+        private final Handle handle;
+
+        ManagedStorage(TempFile tempFile) {
+            this.tempFile = tempFile;
+            this.handle = new Handle(this, tempFile, false);
+        }
+
+        public InputStream getInputStream() throws IOException {
+            if (handle.released.get())
+                throw new IllegalStateException("storage has been deleted");
+
+            tempFile.acquire();
+            try {
+                return new BufferedInputStream(new ReleasingInputStream(new FileInputStream(tempFile.file), tempFile));
+            } catch (IOException e) {
+                tempFile.release();
+                throw e;
+            }
+        }
+
+        @Override
+        public long transferTo(WritableByteChannel channel) throws IOException {
+            if (handle.released.get())
+                throw new IllegalStateException("storage has been deleted");
+
+            tempFile.acquire();
+            try {
+                return StorageFiles.transferTo(tempFile.file, channel);
+            } finally {
+                tempFile.release();
+            }
+        }
+
+        public long size() {
+            if (handle.released.get())
+                throw new IllegalStateException("storage has been deleted");
+
+            return tempFile.size;
+        }
+
+        /**
+         * The file of a mapped buffer is deleted regardless of the buffer; on
+         * platforms which do not delete mapped files, the deletion is retried
+         * until the buffer has been garbage collected.
+         */
+        public ByteBuffer getByteBuffer() throws IOException {
+            if (handle.released.get())
+                throw new IllegalStateException("storage has been deleted");
+
+            tempFile.acquire();
+            try {
+                return StorageFiles.getByteBuffer(tempFile.file);
+            } finally {
+                tempFile.release();
+            }
+        }
+
+        public SeekableByteChannel getChannel() throws IOException {
+            if (handle.released.get())
+                throw new IllegalStateException("storage has been deleted");
+
+            tempFile.acquire();
+            try {
+                return new ReleasingChannel(StorageFiles.getChannel(tempFile.file), tempFile);
+            } catch (IOException e) {
+                tempFile.release();
+                throw e;
+            }
+        }
+
+        public void delete() {
+            handle.dispose();
+        }
+
+    }
+
+    private static final class ReleasingInputStream extends FilterInputStream {
+
+        private final Handle handle;
+
+        ReleasingInputStream(InputStream in, TempFile tempFile) {
+            super(in);
+            this.handle = new Handle(this, tempFile, true);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                handle.dispose();
+            }
+        }
+
+    }
+
+    private static final class ReleasingChannel implements SeekableByteChannel {
+
+        private final SeekableByteChannel channel;
+        private final Handle handle;
+
+        ReleasingChannel(SeekableByteChannel channel, TempFile tempFile) {
+            this.channel = channel;
+            this.handle = new Handle(this, tempFile, true);
+        }
+
+        public int read(ByteBuffer dst) throws IOException {
+            return channel.read(dst);
+        }
+
+        public int write(ByteBuffer src) throws IOException {
+            return channel.write(src);
+        }
+
+        public long position() throws IOException {
+            return channel.position();
+        }
+
+        public SeekableByteChannel position(long newPosition) throws IOException {
+            channel.position(newPosition);
+            return this;
+        }
+
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        public SeekableByteChannel truncate(long size) throws IOException {
+            channel.truncate(size);
+            return this;
+        }
+
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        public void close() throws IOException {
+            try {
+                channel.close();
+            } finally {
+                handle.dispose();
+            }
+        }
+
+    }
+
+}
@@ -22,6 +22,9 @@ package org.apache.james.mime4j.storage;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
 
 import org.apache.james.mime4j.util.ByteArrayBuffer;
 
@@ -63,7 +66,7 @@ public class MemoryStorageProvider extends AbstractStorageProvider {
         }
     }
 
-    static final class MemoryStorage implements Storage {
+    static final class MemoryStorage implements ChannelStorage {
         private byte[] data;
         private final int count;
 
@@ -79,6 +82,41 @@ public class MemoryStorageProvider extends AbstractStorageProvider {
             return new ByteArrayInputStream(data, 0, count);
         }
 
+        @Override
+        public long transferTo(WritableByteChannel channel) throws IOException {
+            if (data == null)
+                throw new IllegalStateException("storage has been deleted");
+
+            ByteBuffer buffer = ByteBuffer.wrap(data, 0, count);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            return count;
+        }
+
+        public long size() {
+            if (data == null)
+                throw new IllegalStateException("storage has been deleted");
+
+            return count;
+        }
+
+        public ByteBuffer getByteBuffer() {
+            if (data == null)
+                throw new IllegalStateException("storage has been deleted");
+
+            return ByteBuffer.wrap(data, 0, count).asReadOnlyBuffer();
+        }
+
+        @Override
+        public boolean isInMemory() {
+            return true;
+        }
+
+        public SeekableByteChannel getChannel() {
+            return new ByteBufferChannel(getByteBuffer());
+        }
+
         public void delete() {
             data = null;
         }
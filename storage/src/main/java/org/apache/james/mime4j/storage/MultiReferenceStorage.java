@@ -21,6 +21,9 @@ package org.apache.james.mime4j.storage;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * <p>
@@ -102,6 +105,51 @@ public class MultiReferenceStorage implements Storage {
         return storage.getInputStream();
     }
 
+    /**
+     * Writes the data of the inner <code>Storage</code> object to the given
+     * channel.
+     *
+     * @return the number of bytes written.
+     */
+    @Override
+    public long transferTo(WritableByteChannel channel) throws IOException {
+        return storage.transferTo(channel);
+    }
+
+    /**
+     * Returns the data of the inner <code>Storage</code> object as a
+     * read-only buffer if it is a {@link ChannelStorage}.
+     *
+     * @return a buffer, or <code>null</code> if the inner storage cannot
+     *         provide one.
+     * @see ChannelStorage#getByteBuffer()
+     */
+    public ByteBuffer getByteBuffer() throws IOException {
+        return storage instanceof ChannelStorage ? ((ChannelStorage) storage).getByteBuffer() : null;
+    }
+
+    /**
+     * Returns whether the inner <code>Storage</code> object is a
+     * {@link ChannelStorage} holding its data in memory.
+     *
+     * @see ChannelStorage#isInMemory()
+     */
+    public boolean isInMemory() {
+        return storage instanceof ChannelStorage && ((ChannelStorage) storage).isInMemory();
+    }
+
+    /**
+     * Returns a channel on the data of the inner <code>Storage</code> object
+     * if it is a {@link ChannelStorage}.
+     *
+     * @return a channel, or <code>null</code> if the inner storage cannot
+     *         provide one.
+     * @see ChannelStorage#getChannel()
+     */
+    public SeekableByteChannel getChannel() throws IOException {
+        return storage instanceof ChannelStorage ? ((ChannelStorage) storage).getChannel() : null;
+    }
+
     /**
      * Synchronized increment of reference count.
      *
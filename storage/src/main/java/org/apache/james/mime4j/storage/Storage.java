@@ -21,6 +21,9 @@ package org.apache.james.mime4j.storage;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+
+import org.apache.james.mime4j.util.ContentUtil;
 
 /**
  * Can be used to read data that has been stored by a {@link StorageProvider}.
@@ -44,6 +47,26 @@ public interface Storage {
      */
     InputStream getInputStream() throws IOException;
 
+    /**
+     * Writes the stored data to the given channel. The default implementation
+     * copies the stream returned by {@link #getInputStream()}; implementations
+     * should override it when they can hand their data to the channel
+     * directly, for example through <code>FileChannel.transferTo</code>.
+     *
+     * @param channel
+     *            the channel to write to, in blocking mode.
+     * @return the number of bytes written.
+     * @throws IOException
+     *             if an I/O error occurs.
+     * @throws IllegalStateException
+     *             if this <code>Storage</code> instance has been deleted.
+     */
+    default long transferTo(WritableByteChannel channel) throws IOException {
+        try (InputStream in = getInputStream()) {
+            return ContentUtil.copy(in, channel);
+        }
+    }
+
     /**
      * Deletes the data held by this <code>Storage</code> as soon as possible.
      * Deleting an already deleted <code>Storage</code> has no effect.
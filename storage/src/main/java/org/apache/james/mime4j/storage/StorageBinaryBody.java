@@ -22,6 +22,9 @@ package org.apache.james.mime4j.storage;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 
 import org.apache.james.mime4j.dom.BinaryBody;
 import org.apache.james.mime4j.util.ContentUtil;
@@ -53,6 +56,30 @@ class StorageBinaryBody extends BinaryBody {
         in.close();
     }
 
+    @Override
+    public long writeTo(WritableByteChannel channel) throws IOException {
+        if (channel == null)
+            throw new IllegalArgumentException();
+
+        return storage.transferTo(channel);
+    }
+
+    /**
+     * Returns the content as a read-only buffer if the storage holds it in
+     * memory. File, cipher and deduplicating storages are read through
+     * {@link #getChannel()} or {@link #writeTo(WritableByteChannel)} instead.
+     */
+    @Override
+    public ByteBuffer getByteBuffer() throws IOException {
+        return storage.isInMemory() ? storage.getByteBuffer() : null;
+    }
+
+    @Override
+    public ReadableByteChannel getChannel() throws IOException {
+        ReadableByteChannel channel = storage.getChannel();
+        return channel != null ? channel : super.getChannel();
+    }
+
     @Override
     public StorageBinaryBody copy() {
         storage.addReference();
@@ -30,7 +30,10 @@ import org.apache.james.mime4j.dom.Disposable;
 import org.apache.james.mime4j.dom.SingleBody;
 import org.apache.james.mime4j.dom.TextBody;
 import org.apache.james.mime4j.message.BodyFactory;
+import org.apache.james.mime4j.message.MaximalBodyDescriptor;
+import org.apache.james.mime4j.stream.BodyDescriptor;
 import org.apache.james.mime4j.util.CharsetUtil;
+import org.apache.james.mime4j.util.MimeUtil;
 
 /**
  * Factory for creating message bodies.
@@ -95,6 +98,22 @@ public class StorageBodyFactory implements BodyFactory {
         return new StorageBinaryBody(new MultiReferenceStorage(storage));
     }
 
+    /**
+     * Creates a {@link BinaryBody} that holds the content of the given input
+     * stream, passing the size expected from the given descriptor to the
+     * storage provider.
+     *
+     * @see StorageProvider#store(InputStream, long)
+     */
+    @Override
+    public BinaryBody binaryBody(InputStream is, BodyDescriptor bd) throws IOException {
+        if (is == null)
+            throw new IllegalArgumentException();
+
+        Storage storage = storageProvider.store(is, expectedSize(bd));
+        return new StorageBinaryBody(new MultiReferenceStorage(storage));
+    }
+
     /**
      * Creates a {@link BinaryBody} that holds the content of the given
      * {@link Storage}.
@@ -170,6 +189,50 @@ public class StorageBodyFactory implements BodyFactory {
         return new StorageTextBody(new MultiReferenceStorage(storage), charset);
     }
 
+    /**
+     * Creates a {@link TextBody} that holds the content of the given input
+     * stream, passing the size expected from the given descriptor to the
+     * storage provider.
+     *
+     * @see StorageProvider#store(InputStream, long)
+     */
+    @Override
+    public TextBody textBody(InputStream is, String mimeCharset, BodyDescriptor bd)
+            throws IOException {
+        if (is == null)
+            throw new IllegalArgumentException();
+        if (mimeCharset == null)
+            throw new IllegalArgumentException();
+
+        Storage storage = storageProvider.store(is, expectedSize(bd));
+        Charset charset = toJavaCharset(mimeCharset, false, monitor);
+        return new StorageTextBody(new MultiReferenceStorage(storage), charset);
+    }
+
+    /**
+     * Estimates the size of a body from the <code>size</code> parameter of
+     * its Content-Disposition field, or else from its Content-Length field,
+     * shrunk by a quarter for Base64 encoded bodies.
+     *
+     * @return the expected number of bytes, or <code>-1</code> if unknown.
+     */
+    static long expectedSize(BodyDescriptor bd) {
+        if (bd == null)
+            return -1;
+
+        if (bd instanceof MaximalBodyDescriptor) {
+            long size = ((MaximalBodyDescriptor) bd).getContentDispositionSize();
+            if (size >= 0)
+                return size;
+        }
+
+        long length = bd.getContentLength();
+        if (length < 0)
+            return -1;
+
+        return MimeUtil.isBase64Encoding(bd.getTransferEncoding()) ? length / 4 * 3 : length;
+    }
+
     /**
      * Creates a {@link TextBody} that holds the content of the given
      * {@link Storage}.
@@ -0,0 +1,83 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reading of the files of file backed storages.
+ */
+final class StorageFiles {
+
+    /**
+     * Files at least this large are mapped into memory rather than read, as
+     * mapping has a fixed cost which only pays off for larger files.
+     */
+    static final long MAP_THRESHOLD = 128 * 1024;
+
+    private StorageFiles() {
+    }
+
+    static ByteBuffer getByteBuffer(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("File too large to fit in a buffer: " + size + " bytes");
+
+            if (size >= MAP_THRESHOLD) {
+                // the mapping remains valid after the channel is closed
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, buffer.position()) < 0)
+                    break;
+            }
+            buffer.flip();
+            return buffer.asReadOnlyBuffer();
+        }
+    }
+
+    static long transferTo(File file, WritableByteChannel channel) throws IOException {
+        try (FileChannel source = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = source.size();
+            long position = 0;
+            while (position < size) {
+                long transferred = source.transferTo(position, size - position, channel);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
+            return position;
+        }
+    }
+
+    static FileChannel getChannel(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    }
+
+}
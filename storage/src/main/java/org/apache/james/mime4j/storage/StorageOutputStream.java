@@ -68,13 +68,25 @@ public abstract class StorageOutputStream extends OutputStream {
             throw new IllegalStateException(
                     "toStorage may be invoked only once");
 
+        usedUp = true;
         if (!closed)
             close();
 
-        usedUp = true;
         return toStorage0();
     }
 
+    /**
+     * Returns whether {@link #toStorage()} has been invoked, which is already
+     * the case when it closes this stream. A subclass can thus tell in
+     * {@link #close()} whether the data is about to be handed over to a
+     * {@link Storage} or has been abandoned.
+     *
+     * @return <code>true</code> if {@link #toStorage()} has been invoked.
+     */
+    protected final boolean isUsedUp() {
+        return usedUp;
+    }
+
     @Override
     public final void write(int b) throws IOException {
         if (closed)
@@ -48,4 +48,36 @@ public interface StorageProvider {
      *             if an I/O error occurs.
      */
     StorageOutputStream createStorageOutputStream() throws IOException;
+
+    /**
+     * Stores the contents of the given <code>InputStream</code>, whose size
+     * is expected to be about the given number of bytes. The default
+     * implementation ignores the expected size.
+     *
+     * @param in stream containing the data to store.
+     * @param expectedSize expected number of bytes, or <code>-1</code> if
+     *        unknown; a hint only, the actual size may differ.
+     * @return a {@link Storage} instance that can be used to retrieve the
+     *         stored content.
+     * @throws IOException if an I/O error occurs.
+     */
+    default Storage store(InputStream in, long expectedSize) throws IOException {
+        return store(in);
+    }
+
+    /**
+     * Creates a {@link StorageOutputStream} for data whose size is expected
+     * to be about the given number of bytes, so that the provider can choose
+     * where to store it up front. The default implementation ignores the
+     * expected size.
+     *
+     * @param expectedSize expected number of bytes, or <code>-1</code> if
+     *        unknown; a hint only, the actual size may differ.
+     * @return a {@link StorageOutputStream} where data can be written to.
+     * @throws IOException
+     *             if an I/O error occurs.
+     */
+    default StorageOutputStream createStorageOutputStream(long expectedSize) throws IOException {
+        return createStorageOutputStream();
+    }
 }
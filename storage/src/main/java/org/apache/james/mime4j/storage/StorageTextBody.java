@@ -23,6 +23,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 
 import org.apache.james.mime4j.dom.TextBody;
@@ -60,6 +63,30 @@ class StorageTextBody extends TextBody {
         return storage.getInputStream();
     }
 
+    @Override
+    public long writeTo(WritableByteChannel channel) throws IOException {
+        if (channel == null)
+            throw new IllegalArgumentException();
+
+        return storage.transferTo(channel);
+    }
+
+    /**
+     * Returns the content as a read-only buffer if the storage holds it in
+     * memory. File, cipher and deduplicating storages are read through
+     * {@link #getChannel()} or {@link #writeTo(WritableByteChannel)} instead.
+     */
+    @Override
+    public ByteBuffer getByteBuffer() throws IOException {
+        return storage.isInMemory() ? storage.getByteBuffer() : null;
+    }
+
+    @Override
+    public ReadableByteChannel getChannel() throws IOException {
+        ReadableByteChannel channel = storage.getChannel();
+        return channel != null ? channel : super.getChannel();
+    }
+
     @Override
     public StorageTextBody copy() {
         storage.addReference();
@@ -26,6 +26,9 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -46,6 +49,9 @@ import org.apache.commons.io.FileUtils;
  * StorageProvider provider = new TempFileStorageProvider(directory);
  * DefaultStorageProvider.setInstance(provider);
  * </pre>
+ * <p>
+ * Files are registered with <code>File.deleteOnExit()</code>; long-lived
+ * applications should rather use {@link ManagedTempFileStorageProvider}.
  */
 public class TempFileStorageProvider extends AbstractStorageProvider {
 
@@ -149,7 +155,7 @@ public class TempFileStorageProvider extends AbstractStorageProvider {
         }
     }
 
-    private static final class TempFileStorage implements Storage {
+    private static final class TempFileStorage implements ChannelStorage {
 
         private File file;
 
@@ -192,6 +198,35 @@ public class TempFileStorageProvider extends AbstractStorageProvider {
             return new BufferedInputStream(new FileInputStream(file));
         }
 
+        @Override
+        public long transferTo(WritableByteChannel channel) throws IOException {
+            if (file == null)
+                throw new IllegalStateException("storage has been deleted");
+
+            return StorageFiles.transferTo(file, channel);
+        }
+
+        public long size() {
+            if (file == null)
+                throw new IllegalStateException("storage has been deleted");
+
+            return file.length();
+        }
+
+        public ByteBuffer getByteBuffer() throws IOException {
+            if (file == null)
+                throw new IllegalStateException("storage has been deleted");
+
+            return StorageFiles.getByteBuffer(file);
+        }
+
+        public SeekableByteChannel getChannel() throws IOException {
+            if (file == null)
+                throw new IllegalStateException("storage has been deleted");
+
+            return StorageFiles.getChannel(file);
+        }
+
     }
 
 }
@@ -22,7 +22,10 @@ package org.apache.james.mime4j.storage;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.io.SequenceInputStream;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.james.mime4j.util.ByteArrayBuffer;
 
@@ -38,11 +41,20 @@ import org.apache.james.mime4j.util.ByteArrayBuffer;
  * StorageProvider provider = new ThresholdStorageProvider(tempStore, 4096);
  * DefaultStorageProvider.setInstance(provider);
  * </pre>
+ * <p>
+ * Data whose expected size exceeds the threshold size (see
+ * {@link #createStorageOutputStream(long)}) is written to the back-end
+ * directly. The total amount of memory held by the storages of the provider
+ * can be bounded by a memory budget, shared by all the threads using the
+ * provider: data that does not fit in the budget is written to the
+ * back-end, and the budget is replenished as storages get deleted.
  */
 public class ThresholdStorageProvider extends AbstractStorageProvider {
 
     private final StorageProvider backend;
     private final int thresholdSize;
+    private final long memoryBudget;
+    private final AtomicLong memoryUsed;
 
     /**
      * Creates a new <code>ThresholdStorageProvider</code> for the given
@@ -65,17 +77,101 @@ public class ThresholdStorageProvider extends AbstractStorageProvider {
      *            the data.
      */
     public ThresholdStorageProvider(StorageProvider backend, int thresholdSize) {
+        this(backend, thresholdSize, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a new <code>ThresholdStorageProvider</code> for the given
+     * back-end, threshold size and memory budget.
+     *
+     * @param backend
+     *            used to store the remainder of the data if the threshold size
+     *            gets exceeded.
+     * @param thresholdSize
+     *            determines how much bytes are kept in memory before that
+     *            back-end storage provider is used to store the remainder of
+     *            the data.
+     * @param memoryBudget
+     *            maximum number of bytes kept in memory by all the storages of
+     *            this provider which have not been deleted yet, or
+     *            <code>Long.MAX_VALUE</code> for no limit. Storages must be
+     *            deleted (bodies disposed of) for the budget to be
+     *            replenished.
+     */
+    public ThresholdStorageProvider(StorageProvider backend, int thresholdSize, long memoryBudget) {
         if (backend == null)
             throw new IllegalArgumentException();
         if (thresholdSize < 1)
             throw new IllegalArgumentException();
+        if (memoryBudget < 0)
+            throw new IllegalArgumentException();
 
         this.backend = backend;
         this.thresholdSize = thresholdSize;
+        this.memoryBudget = memoryBudget;
+        this.memoryUsed = new AtomicLong();
     }
 
     public StorageOutputStream createStorageOutputStream() {
-        return new ThresholdStorageOutputStream();
+        return new ThresholdStorageOutputStream(-1);
+    }
+
+    /**
+     * Creates a {@link StorageOutputStream} writing directly to the back-end
+     * if the expected size exceeds the threshold size, so that large data is
+     * not buffered first, and keeping data in memory up to the threshold size
+     * otherwise.
+     */
+    @Override
+    public StorageOutputStream createStorageOutputStream(long expectedSize) throws IOException {
+        if (expectedSize > thresholdSize)
+            return backend.createStorageOutputStream(expectedSize);
+
+        return new ThresholdStorageOutputStream(expectedSize);
+    }
+
+    /**
+     * Returns the memory budget of this provider, <code>Long.MAX_VALUE</code>
+     * if unbounded.
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Returns the number of bytes of the memory budget currently used; always
+     * zero for an unbounded budget.
+     */
+    public long getMemoryUsed() {
+        return memoryUsed.get();
+    }
+
+    private boolean isBudgeted() {
+        return memoryBudget != Long.MAX_VALUE;
+    }
+
+    /**
+     * Reserves up to the given number of bytes of the memory budget.
+     *
+     * @return the number of bytes granted.
+     */
+    private int reserve(int length) {
+        if (!isBudgeted())
+            return length;
+
+        for (;;) {
+            long used = memoryUsed.get();
+            int granted = (int) Math.min(length, memoryBudget - used);
+            if (granted <= 0)
+                return 0;
+            if (memoryUsed.compareAndSet(used, used + granted))
+                return granted;
+        }
+    }
+
+    private void release(int length) {
+        if (isBudgeted())
+            memoryUsed.addAndGet(-length);
     }
 
     private final class ThresholdStorageOutputStream extends
@@ -84,9 +180,11 @@ public class ThresholdStorageProvider extends AbstractStorageProvider {
         private final ByteArrayBuffer head;
         private StorageOutputStream tail;
 
-        public ThresholdStorageOutputStream() {
-            final int bufferSize = Math.min(thresholdSize, 1024);
-            head = new ByteArrayBuffer(bufferSize);
+        public ThresholdStorageOutputStream(long expectedSize) {
+            // the expected size comes from the message, the head grows as
+            // bytes are written
+            final long bufferSize = expectedSize >= 0 ? Math.max(expectedSize, 1) : thresholdSize;
+            head = new ByteArrayBuffer((int) Math.min(bufferSize, 1024));
         }
 
         @Override
@@ -95,14 +193,24 @@ public class ThresholdStorageProvider extends AbstractStorageProvider {
 
             if (tail != null)
                 tail.close();
+
+            if (!isUsedUp()) {
+                // abandoned, no storage will ever release the head
+                release(head.length());
+                head.clear();
+                if (tail != null) {
+                    tail.toStorage().delete();
+                    tail = null;
+                }
+            }
         }
 
         @Override
         protected void write0(byte[] buffer, int offset, int length)
                 throws IOException {
-            int remainingHeadSize = thresholdSize - head.length();
+            int remainingHeadSize = tail == null ? thresholdSize - head.length() : 0;
             if (remainingHeadSize > 0) {
-                int n = Math.min(remainingHeadSize, length);
+                int n = reserve(Math.min(remainingHeadSize, length));
                 head.append(buffer, offset, n);
                 offset += n;
                 length -= n;
@@ -118,17 +226,17 @@ public class ThresholdStorageProvider extends AbstractStorageProvider {
 
         @Override
         protected Storage toStorage0() throws IOException {
-            if (tail == null)
+            if (tail == null && !isBudgeted())
                 return new MemoryStorageProvider.MemoryStorage(head.buffer(),
                         head.length());
 
-            return new ThresholdStorage(head.buffer(), head.length(), tail
-                    .toStorage());
+            return new ThresholdStorage(head.buffer(), head.length(),
+                    tail != null ? tail.toStorage() : null);
         }
 
     }
 
-    private static final class ThresholdStorage implements Storage {
+    private final class ThresholdStorage implements Storage {
 
         private byte[] head;
         private final int headLen;
@@ -143,8 +251,11 @@ public class ThresholdStorageProvider extends AbstractStorageProvider {
         public void delete() {
             if (head != null) {
                 head = null;
-                tail.delete();
-                tail = null;
+                release(headLen);
+                if (tail != null) {
+                    tail.delete();
+                    tail = null;
+                }
             }
         }
 
@@ -153,9 +264,24 @@ public class ThresholdStorageProvider extends AbstractStorageProvider {
                 throw new IllegalStateException("storage has been deleted");
 
             InputStream headStream = new ByteArrayInputStream(head, 0, headLen);
+            if (tail == null)
+                return headStream;
+
             InputStream tailStream = tail.getInputStream();
             return new SequenceInputStream(headStream, tailStream);
         }
 
+        @Override
+        public long transferTo(WritableByteChannel channel) throws IOException {
+            if (head == null)
+                throw new IllegalStateException("storage has been deleted");
+
+            ByteBuffer buffer = ByteBuffer.wrap(head, 0, headLen);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            return tail != null ? headLen + tail.transferTo(channel) : headLen;
+        }
+
     }
 }
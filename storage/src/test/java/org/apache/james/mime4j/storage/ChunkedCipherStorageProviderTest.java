@@ -0,0 +1,179 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+
+import org.apache.james.mime4j.util.ContentUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ChunkedCipherStorageProviderTest {
+
+    /**
+     * Keeps the encrypted bytes in a field the test can alter, and only
+     * gives access to them through an <code>InputStream</code>.
+     */
+    private static final class ExposedStorageProvider extends AbstractStorageProvider {
+
+        byte[] stored;
+
+        public StorageOutputStream createStorageOutputStream() {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            return new StorageOutputStream() {
+                @Override
+                protected void write0(byte[] buffer, int offset, int length) {
+                    out.write(buffer, offset, length);
+                }
+
+                @Override
+                protected Storage toStorage0() {
+                    stored = out.toByteArray();
+                    return new Storage() {
+                        public InputStream getInputStream() {
+                            return new ByteArrayInputStream(stored);
+                        }
+
+                        public void delete() {
+                        }
+                    };
+                }
+            };
+        }
+
+    }
+
+    private static byte[] createData(int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        return data;
+    }
+
+    private static byte[] read(SeekableByteChannel channel, long position, int length) throws IOException {
+        channel.position(position);
+        ByteBuffer dst = ByteBuffer.allocate(length);
+        while (dst.hasRemaining() && channel.read(dst) > 0) {
+        }
+        return Arrays.copyOf(dst.array(), dst.position());
+    }
+
+    @Test
+    public void testEncryptedLayout() throws IOException {
+        ExposedStorageProvider backend = new ExposedStorageProvider();
+        StorageProvider provider = new ChunkedCipherStorageProvider(backend, 100);
+
+        byte[] data = createData(250);
+        Storage storage = provider.store(new ByteArrayInputStream(data));
+        // three chunks, each followed by a 16 byte tag
+        Assert.assertEquals(250 + 3 * 16, backend.stored.length);
+        Assert.assertFalse(Arrays.equals(Arrays.copyOf(backend.stored, 100), Arrays.copyOf(data, 100)));
+        Assert.assertArrayEquals(data, ContentUtil.buffer(storage.getInputStream()));
+
+        provider.store(new ByteArrayInputStream(data, 0, 200));
+        Assert.assertEquals(200 + 2 * 16, backend.stored.length);
+
+        provider.store(new ByteArrayInputStream(new byte[0]));
+        Assert.assertEquals(16, backend.stored.length);
+    }
+
+    @Test
+    public void testPositionalReads() throws IOException {
+        ExposedStorageProvider backend = new ExposedStorageProvider();
+        StorageProvider provider = new ChunkedCipherStorageProvider(backend, 100);
+
+        byte[] data = createData(1000);
+        ChannelStorage storage = (ChannelStorage) provider.store(new ByteArrayInputStream(data));
+        Assert.assertEquals(1000, storage.size());
+
+        try (SeekableByteChannel channel = storage.getChannel()) {
+            Assert.assertArrayEquals(Arrays.copyOfRange(data, 750, 850), read(channel, 750, 100));
+            Assert.assertArrayEquals(Arrays.copyOfRange(data, 99, 301), read(channel, 99, 202));
+            Assert.assertArrayEquals(Arrays.copyOfRange(data, 990, 1000), read(channel, 990, 50));
+            Assert.assertEquals(0, read(channel, 1000, 10).length);
+        }
+    }
+
+    @Test
+    public void testTamperedChunkIsDetected() throws IOException {
+        ExposedStorageProvider backend = new ExposedStorageProvider();
+        StorageProvider provider = new ChunkedCipherStorageProvider(backend, 100);
+
+        byte[] data = createData(300);
+        ChannelStorage storage = (ChannelStorage) provider.store(new ByteArrayInputStream(data));
+        // flip a bit of the second chunk
+        backend.stored[116 + 10] ^= 1;
+
+        try (SeekableByteChannel channel = storage.getChannel()) {
+            Assert.assertArrayEquals(Arrays.copyOfRange(data, 0, 100), read(channel, 0, 100));
+            Assert.assertArrayEquals(Arrays.copyOfRange(data, 200, 300), read(channel, 200, 100));
+            try {
+                read(channel, 150, 10);
+                Assert.fail("IOException expected");
+            } catch (IOException expected) {
+            }
+        }
+
+        try {
+            ContentUtil.buffer(storage.getInputStream());
+            Assert.fail("IOException expected");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void testTruncationIsDetected() throws IOException {
+        ExposedStorageProvider backend = new ExposedStorageProvider();
+        StorageProvider provider = new ChunkedCipherStorageProvider(backend, 100);
+
+        Storage storage = provider.store(new ByteArrayInputStream(createData(200)));
+        backend.stored = Arrays.copyOf(backend.stored, 116);
+        try {
+            ContentUtil.buffer(storage.getInputStream());
+            Assert.fail("IOException expected");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void testReorderedChunksAreDetected() throws IOException {
+        ExposedStorageProvider backend = new ExposedStorageProvider();
+        StorageProvider provider = new ChunkedCipherStorageProvider(backend, 100);
+
+        Storage storage = provider.store(new ByteArrayInputStream(createData(200)));
+        byte[] swapped = new byte[232];
+        System.arraycopy(backend.stored, 116, swapped, 0, 116);
+        System.arraycopy(backend.stored, 0, swapped, 116, 116);
+        backend.stored = swapped;
+        try {
+            ContentUtil.buffer(storage.getInputStream());
+            Assert.fail("IOException expected");
+        } catch (IOException expected) {
+        }
+    }
+
+}
@@ -0,0 +1,153 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.james.mime4j.util.ContentUtil;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DeduplicatingStorageProviderTest {
+
+    private File directory;
+    private DeduplicatingStorageProvider provider;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("m4j-test").toFile();
+        provider = new DeduplicatingStorageProvider(directory);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    private static byte[] createData(int size, int seed) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (i * 31 + seed);
+        }
+        return data;
+    }
+
+    private static byte[] read(Storage storage) throws IOException {
+        try (InputStream in = storage.getInputStream()) {
+            return ContentUtil.buffer(in);
+        }
+    }
+
+    private int countFiles() {
+        return FileUtils.listFiles(directory, null, true).size();
+    }
+
+    @Test
+    public void testIdenticalDataIsStoredOnce() throws IOException {
+        byte[] data = createData(5000, 0);
+        Storage first = provider.store(new ByteArrayInputStream(data));
+        Storage second = provider.store(new ByteArrayInputStream(data));
+        Storage other = provider.store(new ByteArrayInputStream(createData(5000, 1)));
+
+        Assert.assertEquals(3, provider.getStoredBodies());
+        Assert.assertEquals(1, provider.getDeduplicatedBodies());
+        Assert.assertEquals(5000, provider.getDeduplicatedBytes());
+        Assert.assertEquals(1.0 / 3, provider.getHitRate(), 1e-9);
+        Assert.assertEquals(2, provider.getBlobCount());
+        Assert.assertEquals(10000, provider.getBlobBytes());
+        Assert.assertEquals(2, countFiles());
+
+        Assert.assertArrayEquals(data, read(first));
+        Assert.assertArrayEquals(data, read(second));
+        Assert.assertEquals(5000, ((ChannelStorage) second).size());
+
+        other.delete();
+        Assert.assertEquals(1, provider.getBlobCount());
+        Assert.assertEquals(1, countFiles());
+    }
+
+    @Test
+    public void testFileDeletedWithLastReference() throws IOException {
+        byte[] data = createData(100, 0);
+        Storage first = provider.store(new ByteArrayInputStream(data));
+        Storage second = provider.store(new ByteArrayInputStream(data));
+
+        first.delete();
+        // deleting a reference twice does not release another one
+        first.delete();
+        Assert.assertEquals(1, provider.getBlobCount());
+        Assert.assertArrayEquals(data, read(second));
+        try {
+            first.getInputStream();
+            Assert.fail();
+        } catch (IllegalStateException expected) {
+        }
+
+        second.delete();
+        Assert.assertEquals(0, provider.getBlobCount());
+        Assert.assertEquals(0, provider.getBlobBytes());
+        Assert.assertEquals(0, countFiles());
+
+        Storage third = provider.store(new ByteArrayInputStream(data));
+        Assert.assertEquals(1, provider.getBlobCount());
+        Assert.assertArrayEquals(data, read(third));
+        third.delete();
+    }
+
+    @Test
+    public void testFileDeletedOnceStreamsAreClosed() throws IOException {
+        byte[] data = createData(100, 0);
+        Storage storage = provider.store(new ByteArrayInputStream(data));
+        InputStream in = storage.getInputStream();
+
+        storage.delete();
+        Assert.assertEquals(0, provider.getBlobCount());
+        Assert.assertEquals(1, countFiles());
+        Assert.assertArrayEquals(data, ContentUtil.buffer(in));
+
+        in.close();
+        Assert.assertEquals(0, countFiles());
+    }
+
+    @Test
+    public void testCloseDeletesLiveFiles() throws IOException {
+        provider.store(new ByteArrayInputStream(createData(100, 0)));
+        provider.store(new ByteArrayInputStream(createData(100, 1)));
+        Assert.assertEquals(2, countFiles());
+
+        provider.close();
+        Assert.assertEquals(0, provider.getBlobCount());
+        Assert.assertEquals(0, countFiles());
+    }
+
+    @Test
+    public void testNoMetricsInitially() {
+        Assert.assertEquals(0, provider.getStoredBodies());
+        Assert.assertEquals(0.0, provider.getHitRate(), 0.0);
+    }
+
+}
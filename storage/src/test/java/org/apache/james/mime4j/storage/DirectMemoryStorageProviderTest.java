@@ -0,0 +1,146 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+
+import org.apache.james.mime4j.util.ContentUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DirectMemoryStorageProviderTest {
+
+    private static byte[] createData(int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        return data;
+    }
+
+    @Test
+    public void testBlocksReturnToPool() throws IOException {
+        DirectMemoryStorageProvider provider = new DirectMemoryStorageProvider(new MemoryStorageProvider(), 16 * 1024, 1024);
+        Assert.assertEquals(16 * 1024, provider.getCapacity());
+        Assert.assertEquals(0, provider.getAllocatedBytes());
+
+        byte[] data = createData(3000);
+        Storage storage = provider.store(new ByteArrayInputStream(data));
+        Assert.assertTrue(storage instanceof ChannelStorage);
+        Assert.assertEquals(3 * 1024, provider.getUsedBytes());
+        Assert.assertEquals(16 * 1024, provider.getAllocatedBytes());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertEquals(3000, storage.transferTo(Channels.newChannel(out)));
+        Assert.assertArrayEquals(data, out.toByteArray());
+
+        storage.delete();
+        Assert.assertEquals(0, provider.getUsedBytes());
+        Assert.assertEquals(0, provider.getSpilledStorages());
+    }
+
+    @Test
+    public void testSpillToBackend() throws IOException {
+        DirectMemoryStorageProvider provider = new DirectMemoryStorageProvider(new MemoryStorageProvider(), 4 * 1024, 1024);
+        Storage first = provider.store(new ByteArrayInputStream(createData(3000)));
+
+        byte[] data = createData(5000);
+        Storage second = provider.store(new ByteArrayInputStream(data));
+        Assert.assertEquals(1, provider.getSpilledStorages());
+        Assert.assertEquals(3 * 1024, provider.getUsedBytes());
+        Assert.assertArrayEquals(data, ContentUtil.buffer(second.getInputStream()));
+
+        first.delete();
+        Storage third = provider.store(new ByteArrayInputStream(data, 0, 4096));
+        Assert.assertEquals(1, provider.getSpilledStorages());
+        Assert.assertEquals(4 * 1024, provider.getUsedBytes());
+        Assert.assertEquals(4096, ((ChannelStorage) third).size());
+        third.delete();
+        second.delete();
+        Assert.assertEquals(0, provider.getUsedBytes());
+    }
+
+    @Test
+    public void testOpenStreamKeepsBlocks() throws IOException {
+        DirectMemoryStorageProvider provider = new DirectMemoryStorageProvider(new MemoryStorageProvider(), 16 * 1024, 1024);
+        byte[] data = createData(2000);
+        MultiReferenceStorage storage = new MultiReferenceStorage(provider.store(new ByteArrayInputStream(data)));
+        storage.addReference();
+
+        InputStream in = storage.getInputStream();
+        storage.delete();
+        storage.delete();
+        Assert.assertEquals(2 * 1024, provider.getUsedBytes());
+
+        Assert.assertArrayEquals(data, ContentUtil.buffer(in));
+        in.close();
+        Assert.assertEquals(0, provider.getUsedBytes());
+    }
+
+    @Test
+    public void testOpenChannelKeepsBlocks() throws IOException {
+        DirectMemoryStorageProvider provider = new DirectMemoryStorageProvider(new MemoryStorageProvider(), 16 * 1024, 1024);
+        byte[] data = createData(2000);
+        ChannelStorage storage = (ChannelStorage) provider.store(new ByteArrayInputStream(data));
+
+        ByteBuffer buffer = storage.getByteBuffer();
+        SeekableByteChannel channel = storage.getChannel();
+        storage.delete();
+        Assert.assertEquals(2 * 1024, provider.getUsedBytes());
+
+        // blocks handed to another storage must not show through
+        Storage other = provider.store(new ByteArrayInputStream(new byte[2000]));
+        channel.position(1000);
+        ByteBuffer dst = ByteBuffer.allocate(2000);
+        while (channel.read(dst) != -1) {
+        }
+        dst.flip();
+        Assert.assertEquals(ByteBuffer.wrap(data, 1000, 1000), dst);
+        Assert.assertEquals(ByteBuffer.wrap(data), buffer);
+
+        channel.close();
+        Assert.assertFalse(channel.isOpen());
+        Assert.assertEquals(2 * 1024, provider.getUsedBytes());
+        other.delete();
+        Assert.assertEquals(0, provider.getUsedBytes());
+    }
+
+    @Test
+    public void testUnreachableStorageIsReclaimed() throws Exception {
+        DirectMemoryStorageProvider provider = new DirectMemoryStorageProvider(new MemoryStorageProvider(), 16 * 1024, 1024);
+        provider.store(new ByteArrayInputStream(createData(2000)));
+        Assert.assertEquals(2 * 1024, provider.getUsedBytes());
+
+        for (int i = 0; i < 100 && provider.getUsedBytes() > 1024; i++) {
+            System.gc();
+            Thread.sleep(50);
+            // reclaiming happens on allocation
+            provider.store(new ByteArrayInputStream(createData(1))).delete();
+        }
+        Assert.assertEquals(0, provider.getUsedBytes());
+    }
+
+}
@@ -0,0 +1,179 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.james.mime4j.util.ContentUtil;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ManagedTempFileStorageProviderTest {
+
+    private File directory;
+    private ManagedTempFileStorageProvider provider;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("m4j-test").toFile();
+        provider = new ManagedTempFileStorageProvider(directory);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        provider.close();
+        FileUtils.deleteDirectory(directory);
+    }
+
+    private int files() {
+        return directory.list().length;
+    }
+
+    private static byte[] createData(int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    @Test
+    public void testReadWriteDelete() throws IOException {
+        byte[] data = createData(20000);
+        Storage storage = provider.store(new ByteArrayInputStream(data));
+        Assert.assertEquals(1, files());
+        Assert.assertEquals(1, provider.getLiveFiles());
+        Assert.assertEquals(20000, provider.getLiveBytes());
+
+        try (InputStream in = storage.getInputStream()) {
+            Assert.assertArrayEquals(data, ContentUtil.buffer(in));
+        }
+
+        storage.delete();
+        Assert.assertEquals(0, files());
+        Assert.assertEquals(0, provider.getLiveFiles());
+        Assert.assertEquals(0, provider.getLiveBytes());
+
+        try {
+            storage.getInputStream();
+            Assert.fail();
+        } catch (IllegalStateException expected) {
+        }
+        storage.delete();
+        Assert.assertEquals(0, provider.getLiveFiles());
+    }
+
+    @Test
+    public void testDeleteWithOpenStream() throws IOException {
+        byte[] data = createData(1024);
+        Storage storage = provider.store(new ByteArrayInputStream(data));
+        InputStream in = storage.getInputStream();
+        storage.delete();
+        Assert.assertEquals(1, files());
+        Assert.assertArrayEquals(data, ContentUtil.buffer(in));
+
+        in.close();
+        Assert.assertEquals(0, files());
+        Assert.assertEquals(0, provider.getLiveFiles());
+        in.close();
+        Assert.assertEquals(0, provider.getLiveFiles());
+    }
+
+    @Test
+    public void testUnreachableStorageIsReclaimed() throws Exception {
+        provider.store(new ByteArrayInputStream(createData(100)));
+        provider.createStorageOutputStream().write(createData(10));
+        Assert.assertEquals(2, files());
+
+        for (int i = 0; i < 100 && provider.getLiveFiles() > 0; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        Assert.assertEquals(0, provider.getLiveFiles());
+        Assert.assertEquals(0, provider.getLiveBytes());
+        Assert.assertEquals(2, provider.getReclaimedReferences());
+        Assert.assertEquals(0, files());
+    }
+
+    @Test
+    public void testClose() throws IOException {
+        Storage storage = provider.store(new ByteArrayInputStream(createData(100)));
+        provider.store(new ByteArrayInputStream(createData(100)));
+        InputStream in = storage.getInputStream();
+        provider.close();
+        // deleted already where open files can be, the stream still reads it
+        Assert.assertEquals(100, ContentUtil.buffer(in).length);
+        Assert.assertEquals(1, provider.getLiveFiles());
+        in.close();
+        Assert.assertEquals(0, files());
+        Assert.assertEquals(0, provider.getLiveFiles());
+
+        try {
+            provider.createStorageOutputStream();
+            Assert.fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 50; i++) {
+                        byte[] data = createData(i * 10);
+                        Storage storage = provider.store(new ByteArrayInputStream(data));
+                        ByteArrayOutputStream out = new ByteArrayOutputStream();
+                        try (InputStream in = storage.getInputStream()) {
+                            ContentUtil.copy(in, out);
+                        }
+                        Assert.assertArrayEquals(data, out.toByteArray());
+                        storage.delete();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(0, provider.getLiveFiles());
+        Assert.assertEquals(0, provider.getLiveBytes());
+        Assert.assertEquals(0, files());
+    }
+
+}
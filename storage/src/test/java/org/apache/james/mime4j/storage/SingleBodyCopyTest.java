@@ -21,6 +21,8 @@ package org.apache.james.mime4j.storage;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 
 import org.apache.james.mime4j.Charsets;
 import org.apache.james.mime4j.dom.SingleBody;
@@ -56,6 +58,35 @@ public class SingleBodyCopyTest {
         copyTest(body);
     }
 
+    @Test
+    public void testStorageBodyBufferAndChannel() throws Exception {
+        Storage storage = new TempFileStorageProvider()
+                .store(new ByteArrayInputStream("test".getBytes()));
+        SingleBody body = new StorageBinaryBody(new MultiReferenceStorage(storage));
+
+        // not held in memory
+        Assert.assertNull(body.getByteBuffer());
+
+        ByteBuffer dst = ByteBuffer.allocate(16);
+        try (ReadableByteChannel channel = body.getChannel()) {
+            while (channel.read(dst) != -1) {
+            }
+        }
+        dst.flip();
+        Assert.assertEquals(ByteBuffer.wrap("test".getBytes()), dst);
+        body.dispose();
+    }
+
+    @Test
+    public void testMemoryStorageBodyBuffer() throws Exception {
+        Storage storage = new MemoryStorageProvider()
+                .store(new ByteArrayInputStream("test".getBytes()));
+        SingleBody body = new StorageTextBody(new MultiReferenceStorage(storage), Charsets.US_ASCII);
+
+        Assert.assertEquals(ByteBuffer.wrap("test".getBytes()), body.getByteBuffer());
+        body.dispose();
+    }
+
     @Test
     public void testDisposeStorageBinaryBody() throws Exception {
         Storage storage = new MemoryStorageProvider()
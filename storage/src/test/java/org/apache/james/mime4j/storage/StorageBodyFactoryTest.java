@@ -0,0 +1,101 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.james.mime4j.dom.BinaryBody;
+import org.apache.james.mime4j.dom.Message;
+import org.apache.james.mime4j.dom.Multipart;
+import org.apache.james.mime4j.field.LenientFieldParser;
+import org.apache.james.mime4j.message.DefaultBodyDescriptorBuilder;
+import org.apache.james.mime4j.message.DefaultMessageBuilder;
+import org.apache.james.mime4j.stream.BodyDescriptorBuilder;
+import org.apache.james.mime4j.stream.RawField;
+import org.apache.james.mime4j.util.ContentUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StorageBodyFactoryTest {
+
+    /**
+     * Records the expected sizes passed to its back-end.
+     */
+    static final class RecordingStorageProvider extends AbstractStorageProvider {
+
+        final List<Long> expectedSizes = new ArrayList<>();
+        final StorageProvider backend = new MemoryStorageProvider();
+
+        public StorageOutputStream createStorageOutputStream() throws IOException {
+            return createStorageOutputStream(-1);
+        }
+
+        @Override
+        public StorageOutputStream createStorageOutputStream(long expectedSize) throws IOException {
+            expectedSizes.add(expectedSize);
+            return backend.createStorageOutputStream();
+        }
+
+    }
+
+    private static long expectedSize(String... fields) throws Exception {
+        BodyDescriptorBuilder builder = new DefaultBodyDescriptorBuilder(null, LenientFieldParser.getParser(), null);
+        for (String field : fields) {
+            int colon = field.indexOf(':');
+            builder.addField(new RawField(field.substring(0, colon), field.substring(colon + 1).trim()));
+        }
+        return StorageBodyFactory.expectedSize(builder.build());
+    }
+
+    @Test
+    public void testExpectedSize() throws Exception {
+        Assert.assertEquals(-1, expectedSize());
+        Assert.assertEquals(1000, expectedSize("Content-Length: 1000"));
+        Assert.assertEquals(750, expectedSize("Content-Length: 1000", "Content-Transfer-Encoding: base64"));
+        Assert.assertEquals(1234, expectedSize("Content-Length: 1000",
+                "Content-Disposition: attachment; filename=a.bin; size=1234"));
+        Assert.assertEquals(-1, StorageBodyFactory.expectedSize(null));
+    }
+
+    @Test
+    public void testSizeHintsReachStorageProvider() throws Exception {
+        String message = "Content-Type: multipart/mixed; boundary=b\r\n\r\n"
+                + "--b\r\nContent-Type: text/plain\r\n\r\nsmall\r\n"
+                + "--b\r\nContent-Type: application/octet-stream\r\n"
+                + "Content-Disposition: attachment; size=500000\r\n\r\nlarge\r\n"
+                + "--b--\r\n";
+        RecordingStorageProvider provider = new RecordingStorageProvider();
+        DefaultMessageBuilder builder = new DefaultMessageBuilder();
+        builder.setBodyFactory(new StorageBodyFactory(provider, null));
+        Message parsed = builder.parseMessage(new ByteArrayInputStream(ContentUtil.toAsciiByteArray(message)));
+
+        List<Long> expected = new ArrayList<>();
+        expected.add(-1L);
+        expected.add(500000L);
+        Assert.assertEquals(expected, provider.expectedSizes);
+        BinaryBody body = (BinaryBody) ((Multipart) parsed.getBody()).getBodyParts().get(1).getBody();
+        Assert.assertEquals("large", ContentUtil.toAsciiString(ContentUtil.buffer(body.getInputStream())));
+        parsed.dispose();
+    }
+
+}
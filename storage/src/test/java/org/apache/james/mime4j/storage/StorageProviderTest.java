@@ -21,8 +21,16 @@ package org.apache.james.mime4j.storage;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.james.mime4j.util.ContentUtil;
 import org.junit.Assert;
 import org.junit.Test;
@@ -49,6 +57,35 @@ public class StorageProviderTest {
         testReadWrite(provider, 1);
         testReadWrite(provider, 1024);
         testReadWrite(provider, 20000);
+        testReadWrite(provider, 200000);
+
+        testDelete(provider);
+    }
+
+    @Test
+    public void testManagedTempFileStorageProvider() throws Exception {
+        ManagedTempFileStorageProvider provider = new ManagedTempFileStorageProvider();
+
+        testReadWrite(provider, 0);
+        testReadWrite(provider, 1);
+        testReadWrite(provider, 1024);
+        testReadWrite(provider, 20000);
+        testReadWrite(provider, 200000);
+
+        testDelete(provider);
+        provider.close();
+    }
+
+    @Test
+    public void testDirectMemoryStorageProvider() throws Exception {
+        StorageProvider backend = new TempFileStorageProvider();
+        StorageProvider provider = new DirectMemoryStorageProvider(backend, 64 * 1024, 1024);
+
+        testReadWrite(provider, 0);
+        testReadWrite(provider, 1);
+        testReadWrite(provider, 1024);
+        testReadWrite(provider, 20000);
+        testReadWrite(provider, 200000);
 
         testDelete(provider);
     }
@@ -71,6 +108,84 @@ public class StorageProviderTest {
         testDelete(provider);
     }
 
+    @Test
+    public void testThresholdStorageProviderSizeHint() throws Exception {
+        StorageBodyFactoryTest.RecordingStorageProvider backend = new StorageBodyFactoryTest.RecordingStorageProvider();
+        StorageProvider provider = new ThresholdStorageProvider(backend, 100);
+
+        byte[] data = createData(300);
+        Storage storage = provider.store(new ByteArrayInputStream(data, 0, 80), 50);
+        Assert.assertTrue(backend.expectedSizes.isEmpty());
+        Assert.assertEquals(80, ContentUtil.buffer(storage.getInputStream()).length);
+
+        storage = provider.store(new ByteArrayInputStream(data), 300);
+        Assert.assertEquals(1, backend.expectedSizes.size());
+        Assert.assertEquals(300L, backend.expectedSizes.get(0).longValue());
+        verifyData(data, ContentUtil.buffer(storage.getInputStream()));
+    }
+
+    @Test
+    public void testThresholdStorageProviderMemoryBudget() throws Exception {
+        StorageBodyFactoryTest.RecordingStorageProvider backend = new StorageBodyFactoryTest.RecordingStorageProvider();
+        ThresholdStorageProvider provider = new ThresholdStorageProvider(backend, 64, 100);
+
+        byte[] data = createData(64);
+        Storage first = provider.store(new ByteArrayInputStream(data));
+        Assert.assertEquals(64, provider.getMemoryUsed());
+        Assert.assertTrue(backend.expectedSizes.isEmpty());
+
+        Storage second = provider.store(new ByteArrayInputStream(data));
+        Assert.assertEquals(100, provider.getMemoryUsed());
+        Assert.assertEquals(1, backend.expectedSizes.size());
+        verifyData(data, ContentUtil.buffer(first.getInputStream()));
+        verifyData(data, ContentUtil.buffer(second.getInputStream()));
+
+        first.delete();
+        Assert.assertEquals(36, provider.getMemoryUsed());
+        second.delete();
+        Assert.assertEquals(0, provider.getMemoryUsed());
+        testReadWrite(provider, 1000);
+    }
+
+    @Test
+    public void testThresholdStorageProviderAbandonedStreams() throws Exception {
+        StorageBodyFactoryTest.RecordingStorageProvider backend = new StorageBodyFactoryTest.RecordingStorageProvider();
+        ThresholdStorageProvider provider = new ThresholdStorageProvider(backend, 64, 100);
+
+        InputStream failing = new FilterInputStream(new ByteArrayInputStream(createData(200))) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (in.available() < 150)
+                    throw new IOException("connection reset");
+                return super.read(b, off, Math.min(len, 40));
+            }
+        };
+        try {
+            provider.store(failing);
+            Assert.fail();
+        } catch (IOException expected) {
+        }
+        Assert.assertEquals(0, provider.getMemoryUsed());
+
+        // a large expected size does not allocate the head up front
+        new ThresholdStorageProvider(backend, Integer.MAX_VALUE)
+                .createStorageOutputStream(Integer.MAX_VALUE - 8).close();
+
+        StorageOutputStream out = provider.createStorageOutputStream(64);
+        out.write(createData(64));
+        Assert.assertEquals(64, provider.getMemoryUsed());
+        out.close();
+        Assert.assertEquals(0, provider.getMemoryUsed());
+
+        out = provider.createStorageOutputStream();
+        out.write(createData(64));
+        Storage storage = out.toStorage();
+        out.close();
+        Assert.assertEquals(64, provider.getMemoryUsed());
+        storage.delete();
+        Assert.assertEquals(0, provider.getMemoryUsed());
+    }
+
     @Test
     public void testCipherStorageProvider() throws Exception {
         StorageProvider backend = new TempFileStorageProvider();
@@ -84,10 +199,87 @@ public class StorageProviderTest {
         testDelete(provider);
     }
 
+    @Test
+    public void testChunkedCipherStorageProvider() throws Exception {
+        StorageProvider backend = new TempFileStorageProvider();
+        StorageProvider provider = new ChunkedCipherStorageProvider(backend, 1024);
+
+        testReadWrite(provider, 0);
+        testReadWrite(provider, 1);
+        testReadWrite(provider, 1024);
+        testReadWrite(provider, 1025);
+        testReadWrite(provider, 20000);
+
+        testDelete(provider);
+    }
+
+    @Test
+    public void testDeduplicatingStorageProvider() throws Exception {
+        File directory = Files.createTempDirectory("m4j-test").toFile();
+        StorageProvider provider = new DeduplicatingStorageProvider(directory);
+
+        testReadWrite(provider, 0);
+        testReadWrite(provider, 1);
+        testReadWrite(provider, 1024);
+        testReadWrite(provider, 20000);
+        testReadWrite(provider, 200000);
+
+        testDelete(provider);
+        FileUtils.deleteDirectory(directory);
+    }
+
     private void testReadWrite(StorageProvider provider, int size)
             throws IOException {
         testStore(provider, size);
         testCreateStorageOutputStream(provider, size);
+        testTransferTo(provider, size);
+        testChannelStorage(provider, size);
+    }
+
+    private void testChannelStorage(StorageProvider provider, int size)
+            throws IOException {
+        byte[] data = createData(size);
+
+        Storage storage = provider.store(new ByteArrayInputStream(data));
+        if (!(storage instanceof ChannelStorage))
+            return;
+
+        ChannelStorage channelStorage = (ChannelStorage) storage;
+        Assert.assertEquals(size, channelStorage.size());
+
+        ByteBuffer buffer = channelStorage.getByteBuffer();
+        Assert.assertTrue(buffer.isReadOnly());
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        verifyData(data, bytes);
+
+        try (SeekableByteChannel channel = channelStorage.getChannel()) {
+            Assert.assertEquals(size, channel.size());
+            if (size > 1) {
+                channel.position(size / 2);
+                ByteBuffer dst = ByteBuffer.allocateDirect(size - size / 2);
+                while (dst.hasRemaining() && channel.read(dst) > 0) {
+                }
+                dst.flip();
+                Assert.assertEquals(data[size / 2], dst.get(0));
+                Assert.assertEquals(data[size - 1], dst.get(dst.limit() - 1));
+            }
+        }
+
+        storage.delete();
+    }
+
+    private void testTransferTo(StorageProvider provider, int size)
+            throws IOException {
+        byte[] data = createData(size);
+
+        Storage storage = provider.store(new ByteArrayInputStream(data));
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Assert.assertEquals(size, storage.transferTo(Channels.newChannel(baos)));
+        verifyData(data, baos.toByteArray());
+
+        storage.delete();
     }
 
     private void testStore(StorageProvider provider, int size)
@@ -98,8 +290,12 @@ public class StorageProviderTest {
         Storage storage = provider.store(new ByteArrayInputStream(data));
 
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ContentUtil.copy(storage.getInputStream(), baos);
+        try (InputStream in = storage.getInputStream()) {
+            ContentUtil.copy(in, baos);
+        }
         verifyData(data, baos.toByteArray());
+
+        storage.delete();
     }
 
     private void testCreateStorageOutputStream(StorageProvider provider,
@@ -112,8 +308,12 @@ public class StorageProviderTest {
         Storage storage = out.toStorage();
 
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ContentUtil.copy(storage.getInputStream(), baos);
+        try (InputStream in = storage.getInputStream()) {
+            ContentUtil.copy(in, baos);
+        }
         verifyData(data, baos.toByteArray());
+
+        storage.delete();
     }
 
     private void verifyData(byte[] expected, byte[] actual) {